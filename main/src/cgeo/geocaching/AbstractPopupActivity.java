@@ -9,6 +9,7 @@ import cgeo.geocaching.gcvote.GCVoteRating;
 import cgeo.geocaching.geopoint.Geopoint;
 import cgeo.geocaching.geopoint.Units;
 import cgeo.geocaching.sensors.GeoDirHandler;
+import cgeo.geocaching.sensors.GeoDirSampling;
 import cgeo.geocaching.sensors.IGeoData;
 import cgeo.geocaching.settings.Settings;
 import cgeo.geocaching.ui.CacheDetailsCreator;
@@ -43,7 +44,7 @@ public abstract class AbstractPopupActivity extends AbstractActivity implements
     private TextView cacheDistance = null;
     private final int layout;
 
-    private final GeoDirHandler geoUpdate = new GeoDirHandler() {
+    private final GeoDirHandler geoUpdate = new GeoDirHandler(GeoDirSampling.LIST) {
 
         @Override
         public void updateGeoDir(final IGeoData geo, final float dir) {
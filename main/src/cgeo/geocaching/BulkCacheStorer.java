@@ -0,0 +1,303 @@
+package cgeo.geocaching;
+
+import cgeo.geocaching.concurrent.PriorityThreadFactory;
+import cgeo.geocaching.connector.ConnectorFactory;
+import cgeo.geocaching.enumerations.LoadFlags.RemoveFlag;
+import cgeo.geocaching.settings.Settings;
+import cgeo.geocaching.utils.CancellableHandler;
+import cgeo.geocaching.utils.Log;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import android.content.res.Resources;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Store or refresh a list of caches for offline use, downloading several caches at the same time.
+ *
+ * The number of caches downloaded at once is limited globally and per connector host, so that a single site is not
+ * flooded with requests. Caches without static maps are downloaded first, to give them a chance to get a copy
+ * before the static maps limit expires. The remaining time is estimated from the measured throughput.
+ */
+public final class BulkCacheStorer {
+
+    /**
+     * Default number of caches downloaded at the same time. This is a fixed value and not a setting: most caches come
+     * from geocaching.com, which is limited by {@link #DEFAULT_PARALLELISM_PER_HOST}, so a third download only helps
+     * for lists mixing several connectors.
+     */
+    public static final int DEFAULT_PARALLELISM = 3;
+    /** Default number of caches downloaded at the same time from the same host. */
+    public static final int DEFAULT_PARALLELISM_PER_HOST = 2;
+
+    /** Assumed download time of a single cache, used until the first cache has been stored. */
+    private static final int ESTIMATED_SECONDS_PER_CACHE = 7;
+
+    /**
+     * Notifications of the progress, called from the download threads.
+     */
+    public interface Listener {
+        /**
+         * A cache has been processed, successfully or not.
+         */
+        void onCacheStored(@NonNull final String geocode);
+    }
+
+    private final List<String> geocodes;
+    private final int listId;
+    private final boolean refresh;
+    private final CancellableHandler handler;
+    private final int parallelism;
+    private int defaultHostLimit = DEFAULT_PARALLELISM_PER_HOST;
+    private final Map<String, Integer> hostLimits = new HashMap<String, Integer>();
+
+    /** Geocodes waiting to be downloaded, in download order. Guarded by <tt>this</tt>. */
+    private final LinkedList<String> pending = new LinkedList<String>();
+    /** Number of running downloads per host. Guarded by <tt>this</tt>. */
+    private final Map<String, Integer> running = new HashMap<String, Integer>();
+
+    private final AtomicInteger stored = new AtomicInteger();
+    private volatile long startTime = 0;
+    private volatile long endTime = 0;
+
+    /**
+     * @param geocodes
+     *            the caches to store
+     * @param listId
+     *            the list to store the caches in
+     * @param refresh
+     *            <tt>true</tt> to download the caches again even if they are already stored, <tt>false</tt> to skip
+     *            the stored caches
+     * @param handler
+     *            the handler used to cancel the downloads
+     * @param parallelism
+     *            the maximum number of caches downloaded at the same time, {@link #DEFAULT_PARALLELISM} in the
+     *            application
+     */
+    public BulkCacheStorer(@NonNull final List<String> geocodes, final int listId, final boolean refresh, @NonNull final CancellableHandler handler, final int parallelism) {
+        this.geocodes = new ArrayList<String>(geocodes);
+        this.listId = listId;
+        this.refresh = refresh;
+        this.handler = handler;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public BulkCacheStorer(@NonNull final List<String> geocodes, final int listId, final boolean refresh, @NonNull final CancellableHandler handler) {
+        this(geocodes, listId, refresh, handler, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Limit the number of caches downloaded at the same time from the given host.
+     *
+     * @param host
+     *            the host of the connector, or <tt>null</tt> to change the limit of all hosts without their own limit
+     */
+    public void setHostLimit(@Nullable final String host, final int limit) {
+        if (host == null) {
+            defaultHostLimit = Math.max(1, limit);
+        } else {
+            hostLimits.put(host, Math.max(1, limit));
+        }
+    }
+
+    /**
+     * Store all the caches, blocking until they have been processed or the handler has been cancelled.
+     */
+    public void storeAll(@Nullable final Listener listener) {
+        synchronized (this) {
+            pending.clear();
+            pending.addAll(getDownloadOrder());
+        }
+        stored.set(0);
+        startTime = System.currentTimeMillis();
+        endTime = 0;
+
+        final int workers = Math.min(parallelism, geocodes.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, workers), new PriorityThreadFactory(Thread.NORM_PRIORITY));
+        for (int i = 0; i < workers; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String geocode;
+                    while ((geocode = nextGeocode()) != null) {
+                        try {
+                            storeCache(geocode);
+                        } catch (final Exception e) {
+                            Log.e("BulkCacheStorer.storeAll", e);
+                        } finally {
+                            release(geocode);
+                            stored.incrementAndGet();
+                            if (listener != null) {
+                                listener.onCacheStored(geocode);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (handler.isCancelled()) {
+                    wakeUpWorkers();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Log.i("BulkCacheStorer.storeAll interrupted");
+            executor.shutdownNow();
+        }
+        endTime = System.currentTimeMillis();
+        Log.i(String.format(Locale.US, "BulkCacheStorer: %d of %d caches in %.1f s with %d threads (%.1f caches/min)%s",
+                stored.get(), geocodes.size(), getElapsedMillis() / 1000.0, workers, getCachesPerMinute(), handler.isCancelled() ? ", cancelled" : ""));
+    }
+
+    private List<String> getDownloadOrder() {
+        if (!Settings.isStoreOfflineMaps()) {
+            return geocodes;
+        }
+        final List<String> ordered = new ArrayList<String>(geocodes.size());
+        final List<String> withStaticMaps = new ArrayList<String>();
+        for (final String geocode : geocodes) {
+            if (StaticMapsProvider.hasStaticMap(geocode)) {
+                withStaticMaps.add(geocode);
+            } else {
+                ordered.add(geocode);
+            }
+        }
+        ordered.addAll(withStaticMaps);
+        return ordered;
+    }
+
+    private void storeCache(final String geocode) {
+        if (handler.isCancelled()) {
+            return;
+        }
+        if (refresh) {
+            // the handler is not given to avoid progress messages for the single steps of a cache
+            DataStore.removeCache(geocode, EnumSet.of(RemoveFlag.REMOVE_CACHE));
+            Geocache.storeCache(null, geocode, listId, true, null);
+        } else if (!DataStore.isOffline(geocode, null)) {
+            Geocache.storeCache(null, geocode, listId, false, handler);
+        }
+    }
+
+    /**
+     * Take the first pending geocode whose host has a free download slot, waiting for a slot if needed.
+     *
+     * @return the geocode, or <tt>null</tt> if all caches have been taken or the download has been cancelled
+     */
+    private synchronized String nextGeocode() {
+        while (!pending.isEmpty() && !handler.isCancelled()) {
+            for (final Iterator<String> it = pending.iterator(); it.hasNext();) {
+                final String geocode = it.next();
+                final String host = getHost(geocode);
+                final int count = getRunning(host);
+                if (count < getHostLimit(host)) {
+                    it.remove();
+                    running.put(host, count + 1);
+                    return geocode;
+                }
+            }
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void release(final String geocode) {
+        final String host = getHost(geocode);
+        running.put(host, getRunning(host) - 1);
+        notifyAll();
+    }
+
+    private synchronized void wakeUpWorkers() {
+        notifyAll();
+    }
+
+    private int getRunning(final String host) {
+        final Integer count = running.get(host);
+        return count != null ? count : 0;
+    }
+
+    private int getHostLimit(final String host) {
+        final Integer limit = hostLimits.get(host);
+        return limit != null ? limit : defaultHostLimit;
+    }
+
+    @NonNull
+    private static String getHost(final String geocode) {
+        return StringUtils.defaultString(ConnectorFactory.getConnector(geocode).getHost());
+    }
+
+    /**
+     * @return the number of caches processed so far
+     */
+    public int getStoredCount() {
+        return stored.get();
+    }
+
+    public int getTotalCount() {
+        return geocodes.size();
+    }
+
+    private long getElapsedMillis() {
+        if (startTime == 0) {
+            return 0;
+        }
+        return (endTime != 0 ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    /**
+     * @return the measured throughput, or 0 as long as no cache has been processed
+     */
+    public double getCachesPerMinute() {
+        final long elapsed = getElapsedMillis();
+        return elapsed > 0 ? stored.get() * 60000.0 / elapsed : 0;
+    }
+
+    /**
+     * Estimate the remaining time, from the measured throughput once some caches have been stored.
+     *
+     * @return the estimated number of seconds until all caches have been stored
+     */
+    public int getRemainingSeconds() {
+        final int done = stored.get();
+        final int remaining = geocodes.size() - done;
+        if (done == 0) {
+            // all caches of a round are downloaded concurrently
+            final int rounds = (remaining + parallelism - 1) / parallelism;
+            return rounds * ESTIMATED_SECONDS_PER_CACHE;
+        }
+        return (int) (getElapsedMillis() * remaining / done / 1000);
+    }
+
+    /**
+     * @return the progress message with the estimated remaining time
+     */
+    @NonNull
+    public String getProgressMessage(@NonNull final Resources res) {
+        final int minutesRemaining = Math.round(getRemainingSeconds() / 60.0f);
+        if (minutesRemaining < 1) {
+            return res.getString(R.string.caches_downloading) + " " + res.getString(R.string.caches_eta_ltm);
+        }
+        return res.getString(R.string.caches_downloading) + " " + minutesRemaining + " " + res.getQuantityString(R.plurals.caches_eta_mins, minutesRemaining);
+    }
+
+}
@@ -3,6 +3,8 @@ package cgeo.geocaching;
 import cgeo.geocaching.DataStore.StorageLocation;
 import cgeo.geocaching.connector.gc.Tile;
 import cgeo.geocaching.enumerations.CacheType;
+import cgeo.geocaching.geopoint.Geopoint;
+import cgeo.geocaching.geopoint.SpatialGrid;
 import cgeo.geocaching.geopoint.Viewport;
 import cgeo.geocaching.utils.LeastRecentlyUsedMap;
 import cgeo.geocaching.utils.LeastRecentlyUsedMap.RemoveHandler;
@@ -10,17 +12,29 @@ import cgeo.geocaching.utils.Log;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Cache for Caches. Every cache is stored in memory while c:geo is active to
  * speed up the app and to minimize network request - which are slow.
+ *
+ * The cached caches are additionally indexed by their {@link SpatialGrid} cell, so that viewport lookups only
+ * examine the caches of the overlapping cells. The spatial index can be read without holding the monitor of the
+ * CacheCache, it is only modified while holding it.
  */
 public class CacheCache {
 
     private static final int MAX_CACHED_CACHES = 1000;
     final private LeastRecentlyUsedMap<String, Geocache> cachesCache;
+    /** caches by spatial grid cell, then by geocode */
+    final private ConcurrentHashMap<Integer, ConcurrentHashMap<String, Geocache>> cachesByCell = new ConcurrentHashMap<Integer, ConcurrentHashMap<String, Geocache>>();
+    /** spatial grid cell under which each cache has been indexed, only accessed with the monitor held */
+    final private Map<String, Integer> cellByGeocode = new HashMap<String, Integer>();
 
     public CacheCache() {
         cachesCache = new LeastRecentlyUsedMap.LruCache<String, Geocache>(MAX_CACHED_CACHES);
@@ -29,6 +43,8 @@ public class CacheCache {
 
     public synchronized void removeAllFromCache() {
         cachesCache.clear();
+        cachesByCell.clear();
+        cellByGeocode.clear();
     }
 
     /**
@@ -60,7 +76,48 @@ public class CacheCache {
         }
         synchronized(this) {
             cache.addStorageLocation(StorageLocation.CACHE);
+            // replacing an existing entry does not trigger the remove handler
+            removeFromSpatialIndex(cache.getGeocode());
             cachesCache.put(cache.getGeocode(), cache);
+            addToSpatialIndex(cache);
+        }
+    }
+
+    /**
+     * Index a cache by its current coordinates. Must be called with the monitor held.
+     */
+    private void addToSpatialIndex(final Geocache cache) {
+        final Geopoint coords = cache.getCoords();
+        if (coords == null) {
+            // FIXME: this kludge must be removed, it is only present to help us debug the cases where
+            // caches contain null coordinates.
+            Log.e("CacheCache.addToSpatialIndex: got cache with null coordinates: " + cache.getGeocode());
+            return;
+        }
+        final Integer cell = SpatialGrid.getCell(coords);
+        ConcurrentHashMap<String, Geocache> bucket = cachesByCell.get(cell);
+        if (bucket == null) {
+            bucket = new ConcurrentHashMap<String, Geocache>();
+            cachesByCell.put(cell, bucket);
+        }
+        bucket.put(cache.getGeocode(), cache);
+        cellByGeocode.put(cache.getGeocode(), cell);
+    }
+
+    /**
+     * Remove a cache from the spatial index. Must be called with the monitor held.
+     */
+    private void removeFromSpatialIndex(final String geocode) {
+        final Integer cell = cellByGeocode.remove(geocode);
+        if (cell == null) {
+            return;
+        }
+        final ConcurrentHashMap<String, Geocache> bucket = cachesByCell.get(cell);
+        if (bucket != null) {
+            bucket.remove(geocode);
+            if (bucket.isEmpty()) {
+                cachesByCell.remove(cell);
+            }
         }
     }
 
@@ -78,20 +135,39 @@ public class CacheCache {
         }
     }
 
-    public synchronized Set<String> getInViewport(final Viewport viewport, final CacheType cacheType) {
+    /**
+     * Get the geocodes of the cached caches in a viewport. This does not lock the CacheCache, concurrent
+     * modifications may or may not be reflected in the result.
+     *
+     * @param viewport
+     *            the viewport to look into
+     * @param cacheType
+     *            the cache type to look for
+     * @return the geocodes of the matching caches
+     */
+    public Set<String> getInViewport(final Viewport viewport, final CacheType cacheType) {
         final Set<String> geocodes = new HashSet<String>();
-        for (final Geocache cache : cachesCache.values()) {
-            if (cache.getCoords() == null) {
-                // FIXME: this kludge must be removed, it is only present to help us debug the cases where
-                // caches contain null coordinates.
-                Log.e("CacheCache.getInViewport: got cache with null coordinates: " + cache.getGeocode());
-                continue;
+        if (SpatialGrid.countCells(viewport) <= cachesByCell.size()) {
+            for (final int cell : SpatialGrid.getCells(viewport)) {
+                final ConcurrentHashMap<String, Geocache> bucket = cachesByCell.get(cell);
+                if (bucket != null) {
+                    addInViewport(bucket.values(), viewport, cacheType, geocodes);
+                }
+            }
+        } else {
+            for (final ConcurrentHashMap<String, Geocache> bucket : cachesByCell.values()) {
+                addInViewport(bucket.values(), viewport, cacheType, geocodes);
             }
+        }
+        return geocodes;
+    }
+
+    private static void addInViewport(final Collection<Geocache> caches, final Viewport viewport, final CacheType cacheType, final Set<String> geocodes) {
+        for (final Geocache cache : caches) {
             if (cacheType.contains(cache) && viewport.contains(cache)) {
                 geocodes.add(cache.getGeocode());
             }
         }
-        return geocodes;
     }
 
     @Override
@@ -99,10 +175,12 @@ public class CacheCache {
         return StringUtils.join(cachesCache.keySet(), ' ');
     }
 
-    private static class CacheRemoveHandler implements RemoveHandler<Geocache> {
+    private class CacheRemoveHandler implements RemoveHandler<Geocache> {
 
         @Override
         public void onRemove(final Geocache removed) {
+            // called from within the LRU map, the monitor is already held
+            removeFromSpatialIndex(removed.getGeocode());
             // FIXME: as above, we sometimes get caches with null coordinates, that may then provoke
             // a NullPointerException down the invocation chain.
             if (removed.getCoords() != null) {
@@ -25,13 +25,13 @@ import cgeo.geocaching.sensors.IGeoData;
 import cgeo.geocaching.settings.Settings;
 import cgeo.geocaching.ui.AbstractCachingPageViewCreator;
 import cgeo.geocaching.ui.AnchorAwareLinkMovementMethod;
+import cgeo.geocaching.ui.AsyncImageGetter;
 import cgeo.geocaching.ui.CacheDetailsCreator;
 import cgeo.geocaching.ui.CoordinatesFormatSwitcher;
 import cgeo.geocaching.ui.DecryptTextClickListener;
 import cgeo.geocaching.ui.EditNoteDialog;
 import cgeo.geocaching.ui.EditNoteDialog.EditNoteDialogListener;
 import cgeo.geocaching.ui.Formatter;
-import cgeo.geocaching.ui.HtmlImageCounter;
 import cgeo.geocaching.ui.ImagesList;
 import cgeo.geocaching.ui.IndexOutOfBoundsAvoidingTextView;
 import cgeo.geocaching.ui.LoggingUI;
@@ -42,7 +42,9 @@ import cgeo.geocaching.ui.logs.CacheLogsViewCreator;
 import cgeo.geocaching.utils.CancellableHandler;
 import cgeo.geocaching.utils.CryptUtils;
 import cgeo.geocaching.sensors.GeoDirHandler;
+import cgeo.geocaching.sensors.GeoDirSampling;
 import cgeo.geocaching.utils.ImageUtils;
+import cgeo.geocaching.utils.LeastRecentlyUsedMap;
 import cgeo.geocaching.utils.Log;
 import cgeo.geocaching.utils.MatcherWrapper;
 import cgeo.geocaching.utils.SimpleCancellableHandler;
@@ -136,6 +138,12 @@ public class CacheDetailActivity extends AbstractViewPagerActivity<CacheDetailAc
     private static final Pattern[] LIGHT_COLOR_PATTERNS = {
             Pattern.compile("((?<!bg)color)=\"#" + "([F][6-9A-F]){3}" + "\"", Pattern.CASE_INSENSITIVE),
             Pattern.compile("((?<!bg)color)=\"" + "white" + "\"", Pattern.CASE_INSENSITIVE) };
+    /**
+     * Rendered descriptions by geocode, update time and description, to reopen a cache or rotate the screen without
+     * parsing again. Kept small, as the images of the descriptions are part of them.
+     */
+    private static final int MAX_RENDERED_DESCRIPTIONS = 6;
+    private static final LeastRecentlyUsedMap<String, Spanned> RENDERED_DESCRIPTIONS = new LeastRecentlyUsedMap.LruCache<String, Spanned>(MAX_RENDERED_DESCRIPTIONS);
     public static final String STATE_PAGE_INDEX = "cgeo.geocaching.pageIndex";
 
     private Geocache cache;
@@ -143,7 +151,7 @@ public class CacheDetailActivity extends AbstractViewPagerActivity<CacheDetailAc
 
     private SearchResult search;
 
-    private final GeoDirHandler locationUpdater = new GeoDirHandler() {
+    private final GeoDirHandler locationUpdater = new GeoDirHandler(GeoDirSampling.LIST) {
         @Override
         public void updateGeoDir(final IGeoData geo, final float dir) {
             if (cacheDistanceView == null) {
@@ -1570,20 +1578,36 @@ public class CacheDetailActivity extends AbstractViewPagerActivity<CacheDetailAc
             @Override
             public void call(final Subscriber<? super Spanned> subscriber) {
                 try {
-                    // Fast preview: parse only HTML without loading any images
-                    final HtmlImageCounter imageCounter = new HtmlImageCounter();
+                    final String key = cache.getGeocode() + ':' + cache.getDetailedUpdate() + ':' + descriptionString.hashCode();
+                    synchronized (RENDERED_DESCRIPTIONS) {
+                        final Spanned rendered = RENDERED_DESCRIPTIONS.get(key);
+                        if (rendered != null) {
+                            subscriber.onNext(rendered);
+                            subscriber.onCompleted();
+                            return;
+                        }
+                    }
+
+                    // Fast preview: the images are loaded while the HTML is parsed, and shown once all are there
+                    final AsyncImageGetter imageGetter = new AsyncImageGetter(new HtmlImage(cache.getGeocode(), true, cache.getListId(), false));
                     final UnknownTagsHandler unknownTagsHandler = new UnknownTagsHandler();
-                    Spanned description = Html.fromHtml(descriptionString, imageCounter, unknownTagsHandler);
+                    final Spanned description = Html.fromHtml(descriptionString, imageGetter, unknownTagsHandler);
                     addWarning(unknownTagsHandler, description);
                     subscriber.onNext(description);
 
-                    if (imageCounter.getImageCount() > 0) {
-                        // Complete view: parse again with loading images - if necessary ! If there are any images causing problems the user can see at least the preview
-                        description = Html.fromHtml(descriptionString, new HtmlImage(cache.getGeocode(), true, cache.getListId(), false), unknownTagsHandler);
-                        addWarning(unknownTagsHandler, description);
+                    boolean allImagesLoaded = true;
+                    if (imageGetter.getImageCount() > 0) {
+                        // Complete view: lay out the same text again with the sizes of the loaded images
+                        allImagesLoaded = imageGetter.waitForImages();
                         subscriber.onNext(description);
                     }
 
+                    // images which could not be loaded are tried again the next time
+                    if (allImagesLoaded) {
+                        synchronized (RENDERED_DESCRIPTIONS) {
+                            RENDERED_DESCRIPTIONS.put(key, description);
+                        }
+                    }
                     subscriber.onCompleted();
                 } catch (final Exception e) {
                     Log.e("loadDescription", e);
@@ -1622,6 +1646,7 @@ public class CacheDetailActivity extends AbstractViewPagerActivity<CacheDetailAc
                     @Override
                     public void onNext(final Spanned description) {
                         if (StringUtils.isNotBlank(descriptionString)) {
+                            AsyncImageGetter.showLoadedImages(description);
                             try {
                                 descriptionView.setText(description, TextView.BufferType.SPANNABLE);
                             } catch (final Exception e) {
@@ -37,12 +37,14 @@ import cgeo.geocaching.network.Cookies;
 import cgeo.geocaching.network.Network;
 import cgeo.geocaching.network.Parameters;
 import cgeo.geocaching.sensors.GeoDirHandler;
+import cgeo.geocaching.sensors.GeoDirSampling;
 import cgeo.geocaching.sensors.IGeoData;
 import cgeo.geocaching.settings.Settings;
 import cgeo.geocaching.sorting.CacheComparator;
 import cgeo.geocaching.sorting.ComparatorUserInterface;
 import cgeo.geocaching.ui.CacheListAdapter;
 import cgeo.geocaching.ui.LoggingUI;
+import cgeo.geocaching.ui.PagedCacheList;
 import cgeo.geocaching.ui.WeakReferenceHandler;
 import cgeo.geocaching.ui.dialog.Dialogs;
 import cgeo.geocaching.utils.AsyncTaskWithProgress;
@@ -53,7 +55,6 @@ import cgeo.geocaching.utils.Log;
 import ch.boye.httpclientandroidlib.HttpResponse;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jdt.annotation.NonNull;
 
@@ -90,9 +91,10 @@ import android.widget.TextView;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 public class CacheListActivity extends AbstractListActivity implements FilteredActivity, LoaderManager.LoaderCallbacks<SearchResult> {
 
@@ -109,9 +111,11 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
 
     private CacheListType type = null;
     private Geopoint coords = null;
+    /** The coordinates the stored caches were loaded around, by distance from there */
+    private Geopoint offlineSearchCenter = null;
     private SearchResult search = null;
     /** The list of shown caches shared with Adapter. Don't manipulate outside of main thread only with Handler */
-    private final List<Geocache> cacheList = new ArrayList<Geocache>();
+    private final PagedCacheList cacheList = new PagedCacheList();
     private CacheListAdapter adapter = null;
     private LayoutInflater inflater = null;
     private View listFooter = null;
@@ -119,10 +123,9 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
     private final Progress progress = new Progress();
     private String title = "";
     private int detailTotal = 0;
-    private int detailProgress = 0;
-    private long detailProgressTime = 0L;
+    private volatile BulkCacheStorer detailsStorer = null;
     private int listId = StoredList.TEMPORARY_LIST_ID; // Only meaningful for the OFFLINE type
-    private final GeoDirHandler geoDirHandler = new GeoDirHandler() {
+    private final GeoDirHandler geoDirHandler = new GeoDirHandler(GeoDirSampling.LIST) {
 
         @Override
         public void updateGeoDir(final IGeoData geo, final float dir) {
@@ -233,13 +236,9 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
-                    cacheList.clear();
-
                     // The database search was moved into the UI call intentionally. If this is done before the runOnUIThread,
                     // then we have 2 sets of caches in memory. This can lead to OOM for huge cache lists.
-                    final Set<Geocache> cachesFromSearchResult = search.getCachesFromSearchResult(LoadFlags.LOAD_CACHE_OR_DB);
-
-                    cacheList.addAll(cachesFromSearchResult);
+                    fillCacheList(search);
                     adapter.reFilter();
                     updateTitle();
                     showFooterMoreCaches();
@@ -248,6 +247,27 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
         }
     }
 
+    /**
+     * Fill the {@link #cacheList} with the caches of a search. The caches of a stored list are only loaded page by page
+     * when shown, in the order of the search.
+     */
+    private void fillCacheList(final SearchResult searchResult) {
+        if (type == CacheListType.OFFLINE) {
+            cacheList.setGeocodes(searchResult.getGeocodes(), offlineSearchCenter);
+        } else {
+            cacheList.clear();
+            cacheList.addAll(searchResult.getCachesFromSearchResult(LoadFlags.LOAD_CACHE_OR_DB));
+        }
+    }
+
+    /**
+     * @return the coordinates to load the stored caches around, which are the current position unless the list was
+     *         opened for some coordinates, so that the caches are loaded in the order shown
+     */
+    private Geopoint getOfflineSearchCenter() {
+        return coords != null ? coords : app.currentGeo().getCoords();
+    }
+
     protected void updateTitle() {
         final ArrayList<Integer> numbers = new ArrayList<Integer>();
         if (adapter.isFiltered()) {
@@ -275,22 +295,14 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
 
                 adapter.notifyDataSetChanged();
 
-                final int secondsElapsed = (int) ((System.currentTimeMillis() - detailProgressTime) / 1000);
-                final int minutesRemaining = ((detailTotal - detailProgress) * secondsElapsed / ((detailProgress > 0) ? detailProgress : 1) / 60);
-
-                progress.setProgress(detailProgress);
-                if (minutesRemaining < 1) {
-                    progress.setMessage(res.getString(R.string.caches_downloading) + " " + res.getString(R.string.caches_eta_ltm));
-                } else {
-                    progress.setMessage(res.getString(R.string.caches_downloading) + " " + minutesRemaining + " " + res.getQuantityString(R.plurals.caches_eta_mins, minutesRemaining));
+                final BulkCacheStorer storer = detailsStorer;
+                if (storer != null) {
+                    progress.setProgress(storer.getStoredCount());
+                    progress.setMessage(storer.getProgressMessage(res));
                 }
             } else {
-                if (search != null) {
-                    final Set<Geocache> cacheListTmp = search.getCachesFromSearchResult(LoadFlags.LOAD_CACHE_OR_DB);
-                    if (CollectionUtils.isNotEmpty(cacheListTmp)) {
-                        cacheList.clear();
-                        cacheList.addAll(cacheListTmp);
-                    }
+                if (search != null && !search.isEmpty()) {
+                    fillCacheList(search);
                 }
 
                 setAdapterCurrentCoordinates(false);
@@ -577,7 +589,12 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
     }
 
     private boolean containsEvents() {
-        for (final Geocache cache : adapter.getCheckedOrAllCaches()) {
+        final List<Geocache> caches = adapter.getCheckedOrAllLoadedCaches();
+        if (caches == null) {
+            // not known without loading all the caches of the list
+            return true;
+        }
+        for (final Geocache cache : caches) {
             if (cache.isEventCache()) {
                 return true;
             }
@@ -586,7 +603,12 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
     }
 
     private boolean containsOfflineLogs() {
-        for (final Geocache cache : adapter.getCheckedOrAllCaches()) {
+        final List<Geocache> caches = adapter.getCheckedOrAllLoadedCaches();
+        if (caches == null) {
+            // not known without loading all the caches of the list
+            return true;
+        }
+        for (final Geocache cache : caches) {
             if (cache.isLogOffline()) {
                 return true;
             }
@@ -616,7 +638,12 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
                 return true;
             case R.id.menu_refresh_stored_top:
             case R.id.menu_refresh_stored:
-                refreshStored(adapter.getCheckedOrAllCaches());
+                adapter.getCheckedOrAllCaches(new Action1<List<Geocache>>() {
+                    @Override
+                    public void call(final List<Geocache> caches) {
+                        refreshStored(caches);
+                    }
+                });
                 invalidateOptionsMenuCompatible();
                 return true;
             case R.id.menu_drop_caches:
@@ -678,7 +705,12 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
                 importWeb();
                 return false;
             case R.id.menu_export:
-                ExportFactory.showExportMenu(adapter.getCheckedOrAllCaches(), this);
+                adapter.getCheckedOrAllCaches(new Action1<List<Geocache>>() {
+                    @Override
+                    public void call(final List<Geocache> caches) {
+                        ExportFactory.showExportMenu(caches, CacheListActivity.this);
+                    }
+                });
                 return false;
             case R.id.menu_remove_from_history:
                 removeFromHistoryCheck();
@@ -700,12 +732,28 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
                 if (!isThereAnyCacheToShowOnMap()) {
                     return false;
                 }
-                return CacheListAppFactory.onMenuItemSelected(item, cacheList, this, getFilteredSearch());
+                return invokeCacheListApp(item, getFilteredSearch());
             default:
-                return CacheListAppFactory.onMenuItemSelected(item, cacheList, this, search);
+                return invokeCacheListApp(item, search);
         }
     }
 
+    /**
+     * Invoke a cache list app once the caches of the list are loaded.
+     */
+    private boolean invokeCacheListApp(final MenuItem item, final SearchResult searchResult) {
+        if (!cacheList.isPaged()) {
+            return CacheListAppFactory.onMenuItemSelected(item, cacheList, this, searchResult);
+        }
+        adapter.loadAllCaches(new Runnable() {
+            @Override
+            public void run() {
+                CacheListAppFactory.onMenuItemSelected(item, cacheList, CacheListActivity.this, searchResult);
+            }
+        });
+        return true;
+    }
+
     private boolean isThereAnyCacheToShowOnMap() {
         if (search == null || CollectionUtils.isEmpty(cacheList)) {
             showToast(res.getString(R.string.warn_no_cache_coord));
@@ -715,26 +763,32 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
     }
 
     private SearchResult getFilteredSearch() {
-        final Set<String> geocodes = new HashSet<String>();
-        for (final Geocache cache : adapter.getFilteredList()) {
-            geocodes.add(cache.getGeocode());
-        }
-        return new SearchResult(geocodes);
+        return new SearchResult(new HashSet<String>(cacheList.getGeocodes()));
     }
 
     public void deletePastEvents() {
-        final List<Geocache> deletion = new ArrayList<Geocache>();
-        for (final Geocache cache : adapter.getCheckedOrAllCaches()) {
-            if (DateUtils.isPastEvent(cache)) {
-                deletion.add(cache);
+        adapter.getCheckedOrAllCaches(new Action1<List<Geocache>>() {
+            @Override
+            public void call(final List<Geocache> caches) {
+                final List<Geocache> deletion = new ArrayList<Geocache>();
+                for (final Geocache cache : caches) {
+                    if (DateUtils.isPastEvent(cache)) {
+                        deletion.add(cache);
+                    }
+                }
+                new DropDetailsTask(false).execute(deletion.toArray(new Geocache[deletion.size()]));
             }
-        }
-        new DropDetailsTask(false).execute(deletion.toArray(new Geocache[deletion.size()]));
+        });
     }
 
     public void clearOfflineLogs() {
-        progress.show(this, null, res.getString(R.string.caches_clear_offlinelogs_progress), true, clearOfflineLogsHandler.cancelMessage());
-        new ClearOfflineLogsThread(clearOfflineLogsHandler).start();
+        adapter.getCheckedOrAllCaches(new Action1<List<Geocache>>() {
+            @Override
+            public void call(final List<Geocache> caches) {
+                progress.show(CacheListActivity.this, null, res.getString(R.string.caches_clear_offlinelogs_progress), true, clearOfflineLogsHandler.cancelMessage());
+                new ClearOfflineLogsThread(clearOfflineLogsHandler, caches).start();
+            }
+        });
     }
 
     /**
@@ -800,11 +854,16 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
         new StoredList.UserInterface(this).promptForListSelection(R.string.cache_menu_move_list, new Action1<Integer>() {
 
             @Override
-            public void call(Integer newListId) {
-                DataStore.moveToList(adapter.getCheckedOrAllCaches(), newListId);
-                adapter.setSelectMode(false);
+            public void call(final Integer newListId) {
+                adapter.getCheckedOrAllCaches(new Action1<List<Geocache>>() {
+                    @Override
+                    public void call(final List<Geocache> caches) {
+                        DataStore.moveToList(caches, newListId);
+                        adapter.setSelectMode(false);
 
-                refreshCurrentList();
+                        refreshCurrentList();
+                    }
+                });
             }
         }, true, listId);
     }
@@ -1043,24 +1102,14 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
     }
 
     private void refreshStored(final List<Geocache> caches, final int storeListId) {
-        detailProgress = 0;
-
         showProgress(false);
 
-        final int etaTime = ((detailTotal * 25) / 60);
-        String message;
-        if (etaTime < 1) {
-            message = res.getString(R.string.caches_downloading) + " " + res.getString(R.string.caches_eta_ltm);
-        } else {
-            message = res.getString(R.string.caches_downloading) + " " + etaTime + " " + res.getQuantityString(R.plurals.caches_eta_mins, etaTime);
-        }
+        final LoadDetailsThread threadDetails = new LoadDetailsThread(loadDetailsHandler, caches, storeListId);
+        detailsStorer = threadDetails.storer;
 
-        progress.show(this, null, message, ProgressDialog.STYLE_HORIZONTAL, loadDetailsHandler.cancelMessage());
+        progress.show(this, null, threadDetails.storer.getProgressMessage(res), ProgressDialog.STYLE_HORIZONTAL, loadDetailsHandler.cancelMessage());
         progress.setMaxProgressAndReset(detailTotal);
 
-        detailProgressTime = System.currentTimeMillis();
-
-        final LoadDetailsThread threadDetails = new LoadDetailsThread(loadDetailsHandler, caches, storeListId);
         threadDetails.start();
     }
 
@@ -1077,19 +1126,14 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
     }
 
     public void removeFromHistory() {
-        final List<Geocache> caches = adapter.getCheckedOrAllCaches();
-        final String[] geocodes = new String[caches.size()];
-        for (int i = 0; i < geocodes.length; i++) {
-            geocodes[i] = caches.get(i).getGeocode();
-        }
+        final List<String> checkedOrAll = adapter.getCheckedOrAllGeocodes();
+        final String[] geocodes = checkedOrAll.toArray(new String[checkedOrAll.size()]);
         final Bundle b = new Bundle();
         b.putStringArray(Intents.EXTRA_CACHELIST, geocodes);
         getSupportLoaderManager().initLoader(CacheListLoaderType.REMOVE_FROM_HISTORY.getLoaderId(), b, this);
     }
 
     public void importWeb() {
-        detailProgress = 0;
-
         showProgress(false);
         progress.show(this, null, res.getString(R.string.web_import_waiting), true, downloadFromWebHandler.cancelMessage());
 
@@ -1109,9 +1153,13 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
         });
     }
 
-    public void dropSelected(boolean removeListAfterwards) {
-        final List<Geocache> selected = adapter.getCheckedOrAllCaches();
-        new DropDetailsTask(removeListAfterwards).execute(selected.toArray(new Geocache[selected.size()]));
+    public void dropSelected(final boolean removeListAfterwards) {
+        adapter.getCheckedOrAllCaches(new Action1<List<Geocache>>() {
+            @Override
+            public void call(final List<Geocache> selected) {
+                new DropDetailsTask(removeListAfterwards).execute(selected.toArray(new Geocache[selected.size()]));
+            }
+        });
     }
 
     /**
@@ -1121,59 +1169,36 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
     private class LoadDetailsThread extends Thread {
 
         final private CancellableHandler handler;
-        final private int listIdLD;
-        final private List<Geocache> caches;
+        final private BulkCacheStorer storer;
+        final private Map<String, Geocache> caches = new HashMap<String, Geocache>();
 
         public LoadDetailsThread(CancellableHandler handler, List<Geocache> caches, int listId) {
             this.handler = handler;
-            this.caches = caches;
+            final List<String> geocodes = new ArrayList<String>(caches.size());
+            for (final Geocache cache : caches) {
+                geocodes.add(cache.getGeocode());
+                this.caches.put(cache.getGeocode(), cache);
+            }
 
             // in case of online lists, set the list id to the standard list
-            this.listIdLD = Math.max(listId, StoredList.STANDARD_LIST_ID);
+            this.storer = new BulkCacheStorer(geocodes, Math.max(listId, StoredList.STANDARD_LIST_ID), true, handler);
         }
 
         @Override
         public void run() {
-            // First refresh caches that do not yet have static maps to get them a chance to get a copy
-            // before the limit expires, unless we do not want to store offline maps.
-            final List<Geocache> allCaches = Settings.isStoreOfflineMaps() ?
-                    ListUtils.union(ListUtils.selectRejected(caches, Geocache.hasStaticMap),
-                            ListUtils.select(caches, Geocache.hasStaticMap)) :
-                    caches;
-
-            for (final Geocache cache : allCaches) {
-                if (!refreshCache(cache)) {
-                    break;
-                }
-            }
+            // caches without static maps are refreshed first by the storer
+            storer.storeAll(new BulkCacheStorer.Listener() {
 
-            handler.sendEmptyMessage(MSG_DONE);
-        }
-
-        /**
-         * Refreshes the cache information.
-         *
-         * @param cache
-         *            The cache to refresh
-         * @return
-         *         <code>false</code> if the storing was interrupted, <code>true</code> otherwise
-         */
-        private boolean refreshCache(Geocache cache) {
-            try {
-                if (handler.isCancelled()) {
-                    throw new InterruptedException("Stopped storing process.");
+                @Override
+                public void onCacheStored(final String geocode) {
+                    final int index = cacheList.indexOf(caches.get(geocode));
+                    if (index >= 0) {
+                        handler.sendEmptyMessage(index);
+                    }
                 }
-                detailProgress++;
-                cache.refreshSynchronous(listIdLD, null);
-                handler.sendEmptyMessage(cacheList.indexOf(cache));
-            } catch (final InterruptedException e) {
-                Log.i(e.getMessage());
-                return false;
-            } catch (final Exception e) {
-                Log.e("CacheListActivity.LoadDetailsThread", e);
-            }
+            });
 
-            return true;
+            handler.sendEmptyMessage(MSG_DONE);
         }
     }
 
@@ -1263,9 +1288,9 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
         final private Handler handler;
         final private List<Geocache> selected;
 
-        public ClearOfflineLogsThread(Handler handlerIn) {
+        public ClearOfflineLogsThread(Handler handlerIn, final List<Geocache> selected) {
             handler = handlerIn;
-            selected = adapter.getCheckedOrAllCaches();
+            this.selected = selected;
         }
 
         @Override
@@ -1342,7 +1367,8 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
         currentLoader = (OfflineGeocacheListLoader) getSupportLoaderManager().initLoader(CacheListType.OFFLINE.getLoaderId(), new Bundle(), this);
         currentLoader.reset();
         ((OfflineGeocacheListLoader) currentLoader).setListId(listId);
-        ((OfflineGeocacheListLoader) currentLoader).setSearchCenter(coords);
+        offlineSearchCenter = getOfflineSearchCenter();
+        ((OfflineGeocacheListLoader) currentLoader).setSearchCenter(offlineSearchCenter);
         adapter.setComparator(null); // delete current sorting
         currentLoader.startLoading();
 
@@ -1567,7 +1593,8 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
                     title = list.title;
                 }
 
-                loader = new OfflineGeocacheListLoader(this.getBaseContext(), coords, listId);
+                offlineSearchCenter = getOfflineSearchCenter();
+                loader = new OfflineGeocacheListLoader(this.getBaseContext(), offlineSearchCenter, listId);
 
                 break;
             case HISTORY:
@@ -1653,9 +1680,7 @@ public class CacheListActivity extends AbstractListActivity implements FilteredA
         // The database search was moved into the UI call intentionally. If this is done before the runOnUIThread,
         // then we have 2 sets of caches in memory. This can lead to OOM for huge cache lists.
         if (searchIn != null) {
-            cacheList.clear();
-            final Set<Geocache> cachesFromSearchResult = searchIn.getCachesFromSearchResult(LoadFlags.LOAD_CACHE_OR_DB);
-            cacheList.addAll(cachesFromSearchResult);
+            fillCacheList(searchIn);
             search = searchIn;
             adapter.reFilter();
             adapter.setInitialComparator();
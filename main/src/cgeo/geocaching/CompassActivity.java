@@ -16,6 +16,7 @@ import cgeo.geocaching.ui.CompassView;
 import cgeo.geocaching.ui.Formatter;
 import cgeo.geocaching.ui.LoggingUI;
 import cgeo.geocaching.sensors.GeoDirHandler;
+import cgeo.geocaching.sensors.GeoDirSampling;
 import cgeo.geocaching.utils.Log;
 
 import org.apache.commons.lang3.StringUtils;
@@ -260,7 +261,7 @@ public class CompassActivity extends AbstractActivity {
         headingView.setText(Math.round(cacheHeading) + "°");
     }
 
-    private GeoDirHandler geoDirHandler = new GeoDirHandler() {
+    private GeoDirHandler geoDirHandler = new GeoDirHandler(GeoDirSampling.COMPASS) {
         @Override
         public void updateGeoDir(final IGeoData geo, final float dir) {
             try {
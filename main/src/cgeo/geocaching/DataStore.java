@@ -1,5 +1,6 @@
 package cgeo.geocaching;
 
+import cgeo.geocaching.compatibility.Compatibility;
 import cgeo.geocaching.connector.IConnector;
 import cgeo.geocaching.connector.gc.Tile;
 import cgeo.geocaching.enumerations.CacheSize;
@@ -11,7 +12,10 @@ import cgeo.geocaching.enumerations.LoadFlags.SaveFlag;
 import cgeo.geocaching.enumerations.LogType;
 import cgeo.geocaching.enumerations.WaypointType;
 import cgeo.geocaching.files.LocalStorage;
+import cgeo.geocaching.gcvote.GCVote;
+import cgeo.geocaching.gcvote.GCVoteRating;
 import cgeo.geocaching.geopoint.Geopoint;
+import cgeo.geocaching.geopoint.SpatialGrid;
 import cgeo.geocaching.geopoint.Viewport;
 import cgeo.geocaching.list.AbstractList;
 import cgeo.geocaching.list.PseudoList;
@@ -22,9 +26,11 @@ import cgeo.geocaching.utils.FileUtils;
 import cgeo.geocaching.utils.Log;
 
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import rx.android.observables.AndroidObservable;
 import rx.functions.Action1;
 import rx.functions.Func0;
@@ -51,6 +57,7 @@ import android.provider.BaseColumns;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -60,6 +67,8 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -139,15 +148,37 @@ public class DataStore {
     /** The list of fields needed for mapping. */
     private static final String[] WAYPOINT_COLUMNS = new String[] { "_id", "geocode", "updated", "type", "prefix", "lookup", "name", "latlon", "latitude", "longitude", "note", "own", "visited" };
 
+    /** Maximum number of geocodes in a single "geocode in (...)" clause, to stay below the SQLite limits */
+    private static final int MAX_GEOCODES_PER_QUERY = 500;
+
+    /** Maximum number of rows of a dependent table (attributes, waypoints, logs...) loaded per cache */
+    private static final int MAX_DEPENDENT_ROWS = 100;
+
+    /** Maximum number of geocodes whose logs are loaded in a single query, which has a compound select per geocode */
+    private static final int MAX_GEOCODES_PER_LOG_QUERY = 100;
+
     /** Number of days (as ms) after temporarily saved caches are deleted */
     private final static long DAYS_AFTER_CACHE_IS_DELETED = 3 * 24 * 60 * 60 * 1000;
 
+    /** Number of days (as ms) after GCVote ratings which have not been refreshed are deleted */
+    private final static long DAYS_AFTER_RATING_IS_DELETED = 30L * 24 * 60 * 60 * 1000;
+
     /**
      * holds the column indexes of the cache table to avoid lookups
      */
     private static CacheCache cacheCache = new CacheCache();
+    /** Time during which repeated writes of the same caches are coalesced before being committed */
+    private static final long WRITE_BEHIND_DELAY_MS = 100;
+    private static final WriteBehindQueue<CacheSnapshot> writeBehind = new WriteBehindQueue<CacheSnapshot>(new WriteBehindQueue.Committer<CacheSnapshot>() {
+        @Override
+        public Set<String> commit(final Map<String, CacheSnapshot> saves, final Map<String, Integer> moves, final Map<String, Long> visits) {
+            return commitWrites(saves, moves, visits);
+        }
+    }, WRITE_BEHIND_DELAY_MS);
     private static SQLiteDatabase database = null;
-    private static final int dbVersion = 68;
+    /** Read-only connection for the queries, only used in write-ahead-logging mode */
+    private static SQLiteDatabase reader = null;
+    private static final int dbVersion = 72;
     public static final int customListIdOffset = 10;
     private static final String dbName = "data";
     private static final String dbTableCaches = "cg_caches";
@@ -161,6 +192,7 @@ public class DataStore {
     private static final String dbTableLogsOffline = "cg_logs_offline";
     private static final String dbTableTrackables = "cg_trackables";
     private static final String dbTableSearchDestionationHistory = "cg_search_destination_history";
+    private static final String dbTableRatings = "cg_gcvote";
     private static final String dbCreateCaches = ""
             + "create table " + dbTableCaches + " ("
             + "_id integer primary key autoincrement, "
@@ -206,7 +238,8 @@ public class DataStore {
             + "onWatchlist integer default 0, "
             + "coordsChanged integer default 0, "
             + "finalDefined integer default 0, "
-            + "logPasswordRequired integer default 0"
+            + "logPasswordRequired integer default 0, "
+            + "grid_cell integer"
             + "); ";
     private static final String dbCreateLists = ""
             + "create table " + dbTableLists + " ("
@@ -238,7 +271,8 @@ public class DataStore {
             + "longitude double, "
             + "note text, "
             + "own integer default 0, "
-            + "visited integer default 0"
+            + "visited integer default 0, "
+            + "grid_cell integer"
             + "); ";
     private static final String dbCreateSpoilers = ""
             + "create table " + dbTableSpoilers + " ("
@@ -308,6 +342,30 @@ public class DataStore {
             + "longitude double "
             + "); ";
 
+    private static final String dbCreateRatings = ""
+            + "create table " + dbTableRatings + " ("
+            + "geocode text primary key, "
+            + "updated long not null, " // date of download
+            + "rating float, "
+            + "votes integer, "
+            + "myvote float, "
+            + "voter text " // GCVote user the own vote belongs to
+            + "); ";
+
+    /**
+     * Searchable columns by table. Each table has a full text search table named after it with the {@link #FTS_SUFFIX},
+     * whose documents have the id of the row they index and are kept up to date by triggers.
+     */
+    private static final String[][] FULL_TEXT_SEARCH = {
+            { dbTableCaches, "geocode", "name", "owner" },
+            { dbTableLogs, "author" },
+            { dbTableTrackables, "tbcode", "title" }
+    };
+    private static final String FTS_SUFFIX = "_fts";
+    /** Separators of the tokens of the full text search, which are the ASCII characters except letters and digits */
+    private static final Pattern FTS_SEPARATORS = Pattern.compile("[\\x00-\\x2F\\x3A-\\x40\\x5B-\\x60\\x7B-\\x7F]+");
+    private static final Pattern FTS_OPERATORS = Pattern.compile("AND|OR|NOT|NEAR");
+
     private static boolean newlyCreatedDatabase = false;
     private static boolean databaseCleaned = false;
 
@@ -315,7 +373,35 @@ public class DataStore {
         if (database != null) {
             return;
         }
+        open();
+    }
+
+    /**
+     * Open the database and wait for the queued writes of all caches, so that the caller reads its own writes.
+     */
+    private static void initWithWrites() {
+        initWithWrites(null);
+    }
+
+    /**
+     * Open the database and wait for the queued writes if some of them are for the given caches, so that the caller
+     * reads its own writes without waiting for the writes of other caches.
+     *
+     * @param geocodes
+     *            the geocodes of the caches to be read, or <tt>null</tt> to wait for the writes of all caches
+     */
+    private static void initWithWrites(@Nullable final Collection<String> geocodes) {
+        init();
+        // a transaction may be committing the writes itself
+        if (database.inTransaction()) {
+            return;
+        }
+        if (!writeBehind.flush(geocodes)) {
+            Log.w("DataStore: some of the queued writes could not be committed");
+        }
+    }
 
+    private static void open() {
         synchronized(DataStore.class) {
             if (database != null) {
                 return;
@@ -327,9 +413,50 @@ public class DataStore {
                 Log.e("DataStore.init: unable to open database for R/W", e);
                 recreateDatabase(dbHelper);
             }
+            if (database != null) {
+                openReader();
+            }
         }
     }
 
+    /**
+     * Open the read-only connection if the database can use write-ahead logging. Otherwise, the writing connection
+     * is used for the queries as well, as a second connection would fail to read while the database is written.
+     */
+    private static void openReader() {
+        if (!Compatibility.enableWriteAheadLogging(database)) {
+            return;
+        }
+        try {
+            reader = SQLiteDatabase.openDatabase(database.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+            Log.i("DataStore.init: using write-ahead logging with a separate reading connection");
+        } catch (Exception e) {
+            Log.e("DataStore.init: unable to open database for reading", e);
+        }
+    }
+
+    /**
+     * Get the connection for the queries. In write-ahead-logging mode this is a separate read-only connection, which
+     * is not blocked by the transactions of the writing connection.
+     *
+     * @param ownWrites
+     *            <tt>true</tt> to wait for the queued writes first, <tt>false</tt> for queries which can do with the
+     *            last committed state, like the ones of the map
+     */
+    private static SQLiteDatabase getReader(final boolean ownWrites) {
+        if (ownWrites) {
+            initWithWrites();
+        } else {
+            init();
+        }
+        final SQLiteDatabase readOnly = reader;
+        // a transaction has to read its own uncommitted changes
+        if (readOnly == null || database.inTransaction()) {
+            return database;
+        }
+        return readOnly;
+    }
+
     /**
      * Attempt to recreate the database if opening has failed
      *
@@ -355,8 +482,15 @@ public class DataStore {
             return;
         }
 
+        writeBehind.flush();
+
         cacheCache.removeAllFromCache();
         PreparedStatements.clearPreparedStatements();
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        // closing the last connection also moves the write-ahead log into the database file
         database.close();
         database = null;
     }
@@ -448,6 +582,9 @@ public class DataStore {
 
         final File sourceFile = getBackupFileInternal();
         closeDb();
+        // a log left over from a crash must not be applied to the restored database
+        FileUtils.deleteIgnoringFailure(new File(databasePath().getPath() + "-wal"));
+        FileUtils.deleteIgnoringFailure(new File(databasePath().getPath() + "-shm"));
         final boolean restoreDone = LocalStorage.copy(sourceFile, databasePath());
         init();
 
@@ -502,8 +639,35 @@ public class DataStore {
             db.execSQL(dbCreateLogsOffline);
             db.execSQL(dbCreateTrackables);
             db.execSQL(dbCreateSearchDestinationHistory);
+            db.execSQL(dbCreateRatings);
 
             createIndices(db);
+            createFullTextSearch(db, false);
+        }
+
+        /**
+         * Create the full text search tables and the triggers updating them together with the indexed tables.
+         *
+         * @param backfill
+         *            <tt>true</tt> to index the rows already present
+         */
+        static private void createFullTextSearch(final SQLiteDatabase db, final boolean backfill) {
+            for (final String[] searchable : FULL_TEXT_SEARCH) {
+                final String table = searchable[0];
+                final String fts = table + FTS_SUFFIX;
+                final String columns = StringUtils.join(searchable, ", ", 1, searchable.length);
+                final String insert = "insert into " + fts + " (docid, " + columns + ") ";
+                final String insertNew = insert + "values (new._id, new." + StringUtils.join(searchable, ", new.", 1, searchable.length) + "); ";
+                final String deleteOld = "delete from " + fts + " where docid = old._id; ";
+
+                db.execSQL("create virtual table " + fts + " using fts3(" + columns + ")");
+                db.execSQL("create trigger " + fts + "_insert after insert on " + table + " begin " + insertNew + "end");
+                db.execSQL("create trigger " + fts + "_update after update of " + columns + " on " + table + " begin " + deleteOld + insertNew + "end");
+                db.execSQL("create trigger " + fts + "_delete after delete on " + table + " begin " + deleteOld + "end");
+                if (backfill) {
+                    db.execSQL(insert + "select _id, " + columns + " from " + table);
+                }
+            }
         }
 
         static private void createIndices(final SQLiteDatabase db) {
@@ -515,9 +679,11 @@ public class DataStore {
             db.execSQL("create index if not exists in_caches_detailed on " + dbTableCaches + " (detailed)");
             db.execSQL("create index if not exists in_caches_type on " + dbTableCaches + " (type)");
             db.execSQL("create index if not exists in_caches_visit_detail on " + dbTableCaches + " (visiteddate, detailedupdate)");
+            db.execSQL("create index if not exists in_caches_grid on " + dbTableCaches + " (grid_cell)");
             db.execSQL("create index if not exists in_attr_geo on " + dbTableAttributes + " (geocode)");
             db.execSQL("create index if not exists in_wpts_geo on " + dbTableWaypoints + " (geocode)");
             db.execSQL("create index if not exists in_wpts_geo_type on " + dbTableWaypoints + " (geocode, type)");
+            db.execSQL("create index if not exists in_wpts_grid on " + dbTableWaypoints + " (grid_cell)");
             db.execSQL("create index if not exists in_spoil_geo on " + dbTableSpoilers + " (geocode)");
             db.execSQL("create index if not exists in_logs_geo on " + dbTableLogs + " (geocode)");
             db.execSQL("create index if not exists in_logcount_geo on " + dbTableLogCount + " (geocode)");
@@ -794,6 +960,47 @@ public class DataStore {
 
                         }
                     }
+                    // Introduces the spatial grid index on caches and waypoints
+                    if (oldVersion < 69) {
+                        try {
+                            db.execSQL("alter table " + dbTableCaches + " add column grid_cell integer");
+                            db.execSQL("alter table " + dbTableWaypoints + " add column grid_cell integer");
+                            db.execSQL("update " + dbTableCaches + " set grid_cell = " + SpatialGrid.sqlCellExpression(null) + " where latitude is not null and longitude is not null");
+                            db.execSQL("update " + dbTableWaypoints + " set grid_cell = " + SpatialGrid.sqlCellExpression(null) + " where latitude is not null and longitude is not null");
+                            db.execSQL("create index if not exists in_caches_grid on " + dbTableCaches + " (grid_cell)");
+                            db.execSQL("create index if not exists in_wpts_grid on " + dbTableWaypoints + " (grid_cell)");
+                        } catch (Exception e) {
+                            Log.e("Failed to upgrade to ver. 69", e);
+
+                        }
+                    }
+                    // Introduces the GCVote ratings table
+                    if (oldVersion < 70) {
+                        try {
+                            db.execSQL(dbCreateRatings);
+                        } catch (Exception e) {
+                            Log.e("Failed to upgrade to ver. 70", e);
+
+                        }
+                    }
+
+                    // full text search of the suggestions
+                    if (oldVersion < 71) {
+                        try {
+                            createFullTextSearch(db, true);
+                        } catch (Exception e) {
+                            Log.e("Failed to upgrade to ver. 71", e);
+                        }
+                    }
+
+                    // the own vote is stored with its user, the table created for an older version lacks the column
+                    if (oldVersion >= 70 && oldVersion < 72) {
+                        try {
+                            db.execSQL("alter table " + dbTableRatings + " add column voter text");
+                        } catch (Exception e) {
+                            Log.e("Failed to upgrade to ver. 72", e);
+                        }
+                    }
                 }
 
                 db.setTransactionSuccessful();
@@ -914,10 +1121,14 @@ public class DataStore {
         db.execSQL("drop table if exists " + dbTableLogCount);
         db.execSQL("drop table if exists " + dbTableLogsOffline);
         db.execSQL("drop table if exists " + dbTableTrackables);
+        db.execSQL("drop table if exists " + dbTableRatings);
+        for (final String[] searchable : FULL_TEXT_SEARCH) {
+            db.execSQL("drop table if exists " + searchable[0] + FTS_SUFFIX);
+        }
     }
 
     public static boolean isThere(String geocode, String guid, boolean detailed, boolean checkTime) {
-        init();
+        initWithWrites(StringUtils.isNotBlank(geocode) ? Collections.singletonList(geocode) : null);
 
         long dataUpdated = 0;
         long dataDetailedUpdate = 0;
@@ -985,7 +1196,7 @@ public class DataStore {
         if (StringUtils.isBlank(geocode) && StringUtils.isBlank(guid)) {
             return false;
         }
-        init();
+        initWithWrites(StringUtils.isNotBlank(geocode) ? Collections.singletonList(geocode) : null);
 
         try {
             final SQLiteStatement listId;
@@ -1015,7 +1226,7 @@ public class DataStore {
         if (StringUtils.isBlank(guid)) {
             return null;
         }
-        init();
+        initWithWrites();
 
         try {
             final SQLiteStatement description = PreparedStatements.getGeocodeOfGuid();
@@ -1036,7 +1247,7 @@ public class DataStore {
         if (StringUtils.isBlank(geocode)) {
             return null;
         }
-        init();
+        initWithWrites(Collections.singletonList(geocode));
 
         try {
             final SQLiteStatement description = PreparedStatements.getCacheIdOfGeocode();
@@ -1118,16 +1329,188 @@ public class DataStore {
             }
         }
 
-        for (Geocache geocache : toBeStored) {
-            storeIntoDatabase(geocache);
+        if (!toBeStored.isEmpty()) {
+            // take the values to store now, as the caches may change before the writes are committed
+            final Map<String, CacheSnapshot> snapshots = new LinkedHashMap<String, CacheSnapshot>();
+            for (final Geocache cache : toBeStored) {
+                snapshots.put(cache.getGeocode(), new CacheSnapshot(cache));
+            }
+            writeBehind.save(snapshots);
         }
     }
 
-    private static boolean storeIntoDatabase(final Geocache cache) {
-        cache.addStorageLocation(StorageLocation.DATABASE);
-        cacheCache.putCacheInCache(cache);
-        Log.d("Saving " + cache.toString() + " (" + cache.getListId() + ") to DB");
+    /**
+     * Wait until all the saves, list moves and visit dates queued before are written to the database. Reads through
+     * {@link DataStore} wait on their own, this is only needed to access the database file directly.
+     *
+     * @return <tt>false</tt> if some of the writes could not be committed
+     */
+    public static boolean flush() {
+        return writeBehind.flush();
+    }
+
+    /**
+     * Values of a cache to be stored, taken when the cache is saved so that the write committed later does not see the
+     * changes made to the cache meanwhile.
+     */
+    private static final class CacheSnapshot {
+        final Geocache cache;
+        final ContentValues values;
+        final List<String> attributes;
+        /** The waypoints are only used to get and set their ids */
+        final List<Waypoint> waypoints;
+        final List<ContentValues> waypointValues;
+        final List<Image> spoilers;
+        final List<LogEntry> logs;
+        final Map<LogType, Integer> logCounts;
+        final List<TrackableSnapshot> inventory;
+
+        CacheSnapshot(final Geocache cache) {
+            this.cache = cache;
+            values = createCacheValues(cache);
+            // the attributes must be fetched first because lazy loading may load a null set otherwise
+            attributes = new ArrayList<String>(cache.getAttributes());
+            waypoints = new ArrayList<Waypoint>(cache.getWaypoints());
+            waypointValues = createWaypointValues(cache.getGeocode(), waypoints);
+            spoilers = new ArrayList<Image>(cache.getSpoilers());
+            logs = copyLogs(cache.getLogs());
+            logCounts = cache.getLogCounts() == null ? Collections.<LogType, Integer> emptyMap() : new HashMap<LogType, Integer>(cache.getLogCounts());
+            inventory = TrackableSnapshot.of(cache.getInventory());
+        }
+
+        String getGeocode() {
+            return values.getAsString("geocode");
+        }
+    }
 
+    /**
+     * Values of a trackable to be stored, see {@link CacheSnapshot}.
+     */
+    private static final class TrackableSnapshot {
+        final ContentValues values;
+        final List<LogEntry> logs;
+
+        private TrackableSnapshot(final Trackable trackable) {
+            values = new ContentValues();
+            values.put("tbcode", trackable.getGeocode());
+            values.put("guid", trackable.getGuid());
+            values.put("title", trackable.getName());
+            values.put("owner", trackable.getOwner());
+            if (trackable.getReleased() != null) {
+                values.put("released", trackable.getReleased().getTime());
+            } else {
+                values.put("released", 0L);
+            }
+            values.put("goal", trackable.getGoal());
+            values.put("description", trackable.getDetails());
+            logs = copyLogs(trackable.getLogs());
+        }
+
+        static List<TrackableSnapshot> of(final List<Trackable> trackables) {
+            if (CollectionUtils.isEmpty(trackables)) {
+                return Collections.emptyList();
+            }
+            final List<TrackableSnapshot> snapshots = new ArrayList<TrackableSnapshot>(trackables.size());
+            for (final Trackable trackable : trackables) {
+                snapshots.add(new TrackableSnapshot(trackable));
+            }
+            return snapshots;
+        }
+    }
+
+    private static List<LogEntry> copyLogs(final List<LogEntry> logs) {
+        if (CollectionUtils.isEmpty(logs)) {
+            return Collections.emptyList();
+        }
+        final List<LogEntry> copies = new ArrayList<LogEntry>(logs.size());
+        for (final LogEntry log : logs) {
+            final LogEntry copy = new LogEntry(log.author, log.date, log.type, log.log);
+            copy.found = log.found;
+            copy.friend = log.friend;
+            for (final Image image : log.getLogImages()) {
+                copy.addLogImage(image);
+            }
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * Commit the writes taken from the write-behind queue, all in a single transaction. If the transaction fails, the
+     * caches are stored again one by one, so that a single bad cache does not prevent the others from being stored.
+     * The caches are marked as stored in the database only once their transaction is committed.
+     *
+     * @return the geocodes whose writes could not be committed
+     */
+    private static Set<String> commitWrites(final Map<String, CacheSnapshot> saves, final Map<String, Integer> moves, final Map<String, Long> visits) {
+        init();
+
+        database.beginTransaction();
+        boolean success = false;
+        try {
+            for (final CacheSnapshot snapshot : saves.values()) {
+                storeIntoDatabaseWithoutTransaction(snapshot);
+            }
+            moveToListWithoutTransaction(moves);
+            setVisitDateWithoutTransaction(visits);
+            database.setTransactionSuccessful();
+            success = true;
+        } catch (Exception e) {
+            Log.e("DataStore.commitWrites: committing " + saves.size() + " caches, " + moves.size() + " moves and " + visits.size() + " visits at once failed", e);
+        } finally {
+            database.endTransaction();
+        }
+
+        final Set<String> failed = new HashSet<String>();
+        if (success) {
+            for (final CacheSnapshot snapshot : saves.values()) {
+                snapshot.cache.addStorageLocation(StorageLocation.DATABASE);
+            }
+            return failed;
+        }
+
+        for (final CacheSnapshot snapshot : saves.values()) {
+            if (storeIntoDatabase(snapshot)) {
+                snapshot.cache.addStorageLocation(StorageLocation.DATABASE);
+            } else {
+                failed.add(snapshot.getGeocode());
+            }
+        }
+        database.beginTransaction();
+        try {
+            moveToListWithoutTransaction(moves);
+            setVisitDateWithoutTransaction(visits);
+            database.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e("DataStore.commitWrites: committing " + moves.size() + " moves and " + visits.size() + " visits failed", e);
+            failed.addAll(moves.keySet());
+            failed.addAll(visits.keySet());
+        } finally {
+            database.endTransaction();
+        }
+        return failed;
+    }
+
+    private static boolean storeIntoDatabase(final CacheSnapshot snapshot) {
+        init();
+
+        //try to update record else insert fresh..
+        database.beginTransaction();
+
+        try {
+            storeIntoDatabaseWithoutTransaction(snapshot);
+            database.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            Log.e("SaveCache", e);
+        } finally {
+            database.endTransaction();
+        }
+
+        return false;
+    }
+
+    private static ContentValues createCacheValues(final Geocache cache) {
         ContentValues values = new ContentValues();
 
         if (cache.getUpdated() == 0) {
@@ -1178,44 +1561,42 @@ public class DataStore {
         values.put("coordsChanged", cache.hasUserModifiedCoords() ? 1 : 0);
         values.put("finalDefined", cache.hasFinalDefined() ? 1 : 0);
         values.put("logPasswordRequired", cache.isLogPasswordRequired() ? 1 : 0);
+        return values;
+    }
 
-        init();
+    private static void storeIntoDatabaseWithoutTransaction(final CacheSnapshot snapshot) {
+        final String geocode = snapshot.getGeocode();
+        Log.d("Saving " + geocode + " (" + snapshot.values.getAsInteger("reason") + ") to DB");
 
-        //try to update record else insert fresh..
-        database.beginTransaction();
+        saveAttributesWithoutTransaction(geocode, snapshot.attributes);
+        saveWaypointsWithoutTransaction(geocode, snapshot.waypoints, snapshot.waypointValues);
+        saveSpoilersWithoutTransaction(geocode, snapshot.spoilers);
+        saveLogsWithoutTransaction(geocode, snapshot.logs);
+        saveLogCountsWithoutTransaction(geocode, snapshot.logCounts);
+        saveInventoryWithoutTransaction(geocode, snapshot.inventory);
 
-        try {
-            saveAttributesWithoutTransaction(cache);
-            saveWaypointsWithoutTransaction(cache);
-            saveSpoilersWithoutTransaction(cache);
-            saveLogsWithoutTransaction(cache.getGeocode(), cache.getLogs());
-            saveLogCountsWithoutTransaction(cache);
-            saveInventoryWithoutTransaction(cache.getGeocode(), cache.getInventory());
-
-            int rows = database.update(dbTableCaches, values, "geocode = ?", new String[] { cache.getGeocode() });
-            if (rows == 0) {
-                // cache is not in the DB, insert it
-                /* long id = */
-                database.insert(dbTableCaches, null, values);
-            }
-            database.setTransactionSuccessful();
-            return true;
-        } catch (Exception e) {
-            Log.e("SaveCache", e);
-        } finally {
-            database.endTransaction();
+        int rows = database.update(dbTableCaches, snapshot.values, "geocode = ?", new String[] { geocode });
+        if (rows == 0) {
+            // cache is not in the DB, insert it
+            /* long id = */
+            database.insert(dbTableCaches, null, snapshot.values);
         }
-
-        return false;
     }
 
-    private static void saveAttributesWithoutTransaction(final Geocache cache) {
-        final String geocode = cache.getGeocode();
+    /**
+     * Delete the rows of a cache using a compiled statement, which is cheaper than {@link SQLiteDatabase#delete} when
+     * many caches are stored in a row.
+     *
+     * @param statement
+     *            a delete statement with the geocode as only parameter
+     */
+    private static void executeDelete(final SQLiteStatement statement, final String geocode) {
+        statement.bindString(1, geocode);
+        statement.execute();
+    }
 
-        // The attributes must be fetched first because lazy loading may load
-        // a null set otherwise.
-        final List<String> attributes = cache.getAttributes();
-        database.delete(dbTableAttributes, "geocode = ?", new String[]{geocode});
+    private static void saveAttributesWithoutTransaction(final String geocode, final List<String> attributes) {
+        executeDelete(PreparedStatements.getDeleteAttributes(), geocode);
 
         if (attributes.isEmpty()) {
             return;
@@ -1254,11 +1635,12 @@ public class DataStore {
     }
 
     public static boolean saveWaypoints(final Geocache cache) {
-        init();
+        initWithWrites(Collections.singletonList(cache.getGeocode()));
         database.beginTransaction();
 
         try {
-            saveWaypointsWithoutTransaction(cache);
+            final List<Waypoint> waypoints = cache.getWaypoints();
+            saveWaypointsWithoutTransaction(cache.getGeocode(), waypoints, createWaypointValues(cache.getGeocode(), waypoints));
             database.setTransactionSuccessful();
             return true;
         } catch (Exception e) {
@@ -1269,28 +1651,46 @@ public class DataStore {
         return false;
     }
 
-    private static void saveWaypointsWithoutTransaction(final Geocache cache) {
-        String geocode = cache.getGeocode();
+    private static List<ContentValues> createWaypointValues(final String geocode, final List<Waypoint> waypoints) {
+        if (CollectionUtils.isEmpty(waypoints)) {
+            return Collections.emptyList();
+        }
+        final List<ContentValues> waypointValues = new ArrayList<ContentValues>(waypoints.size());
+        final long timeStamp = System.currentTimeMillis();
+        for (final Waypoint waypoint : waypoints) {
+            waypointValues.add(createWaypointValues(geocode, waypoint, timeStamp));
+        }
+        return waypointValues;
+    }
+
+    private static ContentValues createWaypointValues(final String geocode, final Waypoint waypoint, final long timeStamp) {
+        final ContentValues values = new ContentValues();
+        values.put("geocode", geocode);
+        values.put("updated", timeStamp);
+        values.put("type", waypoint.getWaypointType() != null ? waypoint.getWaypointType().id : null);
+        values.put("prefix", waypoint.getPrefix());
+        values.put("lookup", waypoint.getLookup());
+        values.put("name", waypoint.getName());
+        values.put("latlon", waypoint.getLatlon());
+        putCoords(values, waypoint.getCoords());
+        values.put("note", waypoint.getNote());
+        values.put("own", waypoint.isUserDefined() ? 1 : 0);
+        values.put("visited", waypoint.isVisited() ? 1 : 0);
+        return values;
+    }
 
-        List<Waypoint> waypoints = cache.getWaypoints();
+    /**
+     * @param waypoints
+     *            the waypoints, only used to get and set their ids
+     * @param waypointValues
+     *            the values to store for each waypoint
+     */
+    private static void saveWaypointsWithoutTransaction(final String geocode, final List<Waypoint> waypoints, final List<ContentValues> waypointValues) {
         if (CollectionUtils.isNotEmpty(waypoints)) {
             final ArrayList<String> currentWaypointIds = new ArrayList<String>();
-            ContentValues values = new ContentValues();
-            long timeStamp = System.currentTimeMillis();
-            for (Waypoint oneWaypoint : waypoints) {
-
-                values.clear();
-                values.put("geocode", geocode);
-                values.put("updated", timeStamp);
-                values.put("type", oneWaypoint.getWaypointType() != null ? oneWaypoint.getWaypointType().id : null);
-                values.put("prefix", oneWaypoint.getPrefix());
-                values.put("lookup", oneWaypoint.getLookup());
-                values.put("name", oneWaypoint.getName());
-                values.put("latlon", oneWaypoint.getLatlon());
-                putCoords(values, oneWaypoint.getCoords());
-                values.put("note", oneWaypoint.getNote());
-                values.put("own", oneWaypoint.isUserDefined() ? 1 : 0);
-                values.put("visited", oneWaypoint.isVisited() ? 1 : 0);
+            for (int i = 0; i < waypoints.size(); i++) {
+                final Waypoint oneWaypoint = waypoints.get(i);
+                final ContentValues values = waypointValues.get(i);
                 if (oneWaypoint.getId() < 0) {
                     final long rowId = database.insert(dbTableWaypoints, null, values);
                     oneWaypoint.setId((int) rowId);
@@ -1300,24 +1700,24 @@ public class DataStore {
                 currentWaypointIds.add(Integer.toString(oneWaypoint.getId()));
             }
 
-            removeOutdatedWaypointsOfCache(cache, currentWaypointIds);
+            removeOutdatedWaypointsOfCache(geocode, currentWaypointIds);
         }
     }
 
     /**
      * remove all waypoints of the given cache, where the id is not in the given list
      *
-     * @param cache
+     * @param geocode
      * @param remainingWaypointIds
      *            ids of waypoints which shall not be deleted
      */
-    private static void removeOutdatedWaypointsOfCache(final @NonNull Geocache cache, final @NonNull Collection<String> remainingWaypointIds) {
+    private static void removeOutdatedWaypointsOfCache(final @NonNull String geocode, final @NonNull Collection<String> remainingWaypointIds) {
         final String idList = StringUtils.join(remainingWaypointIds, ',');
-        database.delete(dbTableWaypoints, "geocode = ? AND _id NOT in (" + idList + ")", new String[] { cache.getGeocode() });
+        database.delete(dbTableWaypoints, "geocode = ? AND _id NOT in (" + idList + ")", new String[] { geocode });
     }
 
     /**
-     * Save coordinates into a ContentValues
+     * Save coordinates and their spatial grid cell into a ContentValues
      *
      * @param values
      *            a ContentValues to save coordinates in
@@ -1327,6 +1727,7 @@ public class DataStore {
     private static void putCoords(final ContentValues values, final Geopoint coords) {
         values.put("latitude", coords == null ? null : coords.getLatitude());
         values.put("longitude", coords == null ? null : coords.getLongitude());
+        values.put("grid_cell", coords == null ? null : SpatialGrid.getCell(coords));
     }
 
     /**
@@ -1353,23 +1754,12 @@ public class DataStore {
             return false;
         }
 
-        init();
+        initWithWrites(StringUtils.isNotBlank(geocode) ? Collections.singletonList(geocode) : null);
 
         database.beginTransaction();
         boolean ok = false;
         try {
-            ContentValues values = new ContentValues();
-            values.put("geocode", geocode);
-            values.put("updated", System.currentTimeMillis());
-            values.put("type", waypoint.getWaypointType() != null ? waypoint.getWaypointType().id : null);
-            values.put("prefix", waypoint.getPrefix());
-            values.put("lookup", waypoint.getLookup());
-            values.put("name", waypoint.getName());
-            values.put("latlon", waypoint.getLatlon());
-            putCoords(values, waypoint.getCoords());
-            values.put("note", waypoint.getNote());
-            values.put("own", waypoint.isUserDefined() ? 1 : 0);
-            values.put("visited", waypoint.isVisited() ? 1 : 0);
+            final ContentValues values = createWaypointValues(geocode, waypoint, System.currentTimeMillis());
             if (id <= 0) {
                 final long rowId = database.insert(dbTableWaypoints, null, values);
                 waypoint.setId((int) rowId);
@@ -1396,11 +1786,9 @@ public class DataStore {
         return database.delete(dbTableWaypoints, "_id = " + id, null) > 0;
     }
 
-    private static void saveSpoilersWithoutTransaction(final Geocache cache) {
-        String geocode = cache.getGeocode();
-        database.delete(dbTableSpoilers, "geocode = ?", new String[]{geocode});
+    private static void saveSpoilersWithoutTransaction(final String geocode, final List<Image> spoilers) {
+        executeDelete(PreparedStatements.getDeleteSpoilers(), geocode);
 
-        List<Image> spoilers = cache.getSpoilers();
         if (CollectionUtils.isNotEmpty(spoilers)) {
             SQLiteStatement insertSpoiler = PreparedStatements.getInsertSpoiler();
             final long timestamp = System.currentTimeMillis();
@@ -1423,7 +1811,7 @@ public class DataStore {
 
     private static void saveLogsWithoutTransaction(final String geocode, final List<LogEntry> logs) {
         // TODO delete logimages referring these logs
-        database.delete(dbTableLogs, "geocode = ?", new String[]{geocode});
+        executeDelete(PreparedStatements.getDeleteLogs(), geocode);
 
         if (logs.isEmpty()) {
             return;
@@ -1453,11 +1841,9 @@ public class DataStore {
         }
     }
 
-    private static void saveLogCountsWithoutTransaction(final Geocache cache) {
-        String geocode = cache.getGeocode();
-        database.delete(dbTableLogCount, "geocode = ?", new String[]{geocode});
+    private static void saveLogCountsWithoutTransaction(final String geocode, final Map<LogType, Integer> logCounts) {
+        executeDelete(PreparedStatements.getDeleteLogCounts(), geocode);
 
-        Map<LogType, Integer> logCounts = cache.getLogCounts();
         if (MapUtils.isNotEmpty(logCounts)) {
             Set<Entry<LogType, Integer>> logCountsItems = logCounts.entrySet();
             SQLiteStatement insertLogCounts = PreparedStatements.getInsertLogCounts();
@@ -1478,46 +1864,34 @@ public class DataStore {
 
         database.beginTransaction();
         try {
-            saveInventoryWithoutTransaction(null, Collections.singletonList(trackable));
+            saveInventoryWithoutTransaction(null, TrackableSnapshot.of(Collections.singletonList(trackable)));
             database.setTransactionSuccessful();
         } finally {
             database.endTransaction();
         }
     }
 
-    private static void saveInventoryWithoutTransaction(final String geocode, final List<Trackable> trackables) {
+    private static void saveInventoryWithoutTransaction(final String geocode, final List<TrackableSnapshot> trackables) {
         if (geocode != null) {
-            database.delete(dbTableTrackables, "geocode = ?", new String[]{geocode});
+            executeDelete(PreparedStatements.getDeleteInventory(), geocode);
         }
 
         if (CollectionUtils.isNotEmpty(trackables)) {
-            ContentValues values = new ContentValues();
             long timeStamp = System.currentTimeMillis();
-            for (Trackable trackable : trackables) {
-                final String tbCode = trackable.getGeocode();
+            for (TrackableSnapshot trackable : trackables) {
+                final String tbCode = trackable.values.getAsString("tbcode");
                 if (StringUtils.isNotBlank(tbCode)) {
                     database.delete(dbTableTrackables, "tbcode = ?", new String[] { tbCode });
                 }
-                values.clear();
+                final ContentValues values = new ContentValues(trackable.values);
                 if (geocode != null) {
                     values.put("geocode", geocode);
                 }
                 values.put("updated", timeStamp);
-                values.put("tbcode", tbCode);
-                values.put("guid", trackable.getGuid());
-                values.put("title", trackable.getName());
-                values.put("owner", trackable.getOwner());
-                if (trackable.getReleased() != null) {
-                    values.put("released", trackable.getReleased().getTime());
-                } else {
-                    values.put("released", 0L);
-                }
-                values.put("goal", trackable.getGoal());
-                values.put("description", trackable.getDetails());
 
                 database.insert(dbTableTrackables, null, values);
 
-                saveLogsWithoutTransaction(tbCode, trackable.getLogs());
+                saveLogsWithoutTransaction(tbCode, trackable.logs);
             }
         }
     }
@@ -1527,8 +1901,37 @@ public class DataStore {
             return null;
         }
 
-        final Set<Geocache> caches = loadCaches(geocodes, LoadFlags.LOAD_CACHE_OR_DB);
-        return Viewport.containing(caches);
+        // caches in memory may have unsaved coordinates, only ask the database for the bounds of the others
+        final List<ICoordinates> points = new ArrayList<ICoordinates>();
+        final Set<String> remaining = new HashSet<String>();
+        for (final String geocode : geocodes) {
+            final Geocache cache = cacheCache.getCacheFromCache(geocode);
+            if (cache != null) {
+                points.add(cache);
+            } else {
+                remaining.add(geocode);
+            }
+        }
+
+        if (!remaining.isEmpty()) {
+            initWithWrites(remaining);
+            final Cursor cursor = database.rawQuery("SELECT min(latitude), min(longitude), max(latitude), max(longitude) FROM " + dbTableCaches +
+                    " WHERE " + whereGeocodeIn(remaining), null);
+            try {
+                if (cursor.moveToFirst()) {
+                    final Geopoint bottomLeft = getCoords(cursor, 0, 1);
+                    final Geopoint topRight = getCoords(cursor, 2, 3);
+                    if (bottomLeft != null && topRight != null) {
+                        points.add(bottomLeft);
+                        points.add(topRight);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        return Viewport.containing(points);
     }
 
     /**
@@ -1615,7 +2018,7 @@ public class DataStore {
         }
 
         // do not log the entire collection of geo codes to the debug log. This can be more than 100 KB of text for large lists!
-        init();
+        initWithWrites(geocodes);
 
         final StringBuilder query = new StringBuilder(QUERY_CACHE_DATA);
         if (loadFlags.contains(LoadFlag.LOAD_OFFLINE_LOG)) {
@@ -1630,71 +2033,281 @@ public class DataStore {
         query.append(" WHERE ").append(dbTableCaches).append('.');
         query.append(DataStore.whereGeocodeIn(geocodes));
 
-        Cursor cursor = database.rawQuery(query.toString(), null);
+        final Map<String, Geocache> caches = new HashMap<String, Geocache>();
+        final Cursor cursor = database.rawQuery(query.toString(), null);
         try {
-            final Set<Geocache> caches = new HashSet<Geocache>();
             int logIndex = -1;
 
             while (cursor.moveToNext()) {
                 Geocache cache = DataStore.createCacheFromDatabaseContent(cursor);
 
-                if (loadFlags.contains(LoadFlag.LOAD_ATTRIBUTES)) {
-                    cache.setAttributes(loadAttributes(cache.getGeocode()));
+                if (loadFlags.contains(LoadFlag.LOAD_OFFLINE_LOG)) {
+                    if (logIndex < 0) {
+                        logIndex = cursor.getColumnIndex("log");
+                    }
+                    cache.setLogOffline(!cursor.isNull(logIndex));
                 }
 
-                if (loadFlags.contains(LoadFlag.LOAD_WAYPOINTS)) {
-                    final List<Waypoint> waypoints = loadWaypoints(cache.getGeocode());
-                    if (CollectionUtils.isNotEmpty(waypoints)) {
-                        cache.setWaypoints(waypoints, false);
-                    }
+                caches.put(cache.getGeocode(), cache);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // the dependent tables are loaded for all the caches at once
+        int queries = 1;
+
+        if (loadFlags.contains(LoadFlag.LOAD_ATTRIBUTES)) {
+            final Map<String, List<String>> attributes = new HashMap<String, List<String>>();
+            queries += loadAttributes(caches.keySet(), attributes);
+            for (final Geocache cache : caches.values()) {
+                final List<String> cacheAttributes = attributes.get(cache.getGeocode());
+                cache.setAttributes(cacheAttributes != null ? cacheAttributes : new LinkedList<String>());
+            }
+        }
+
+        if (loadFlags.contains(LoadFlag.LOAD_WAYPOINTS)) {
+            final Map<String, List<Waypoint>> waypoints = new HashMap<String, List<Waypoint>>();
+            queries += loadWaypoints(caches.keySet(), waypoints);
+            for (final Geocache cache : caches.values()) {
+                final List<Waypoint> cacheWaypoints = waypoints.get(cache.getGeocode());
+                if (CollectionUtils.isNotEmpty(cacheWaypoints)) {
+                    cache.setWaypoints(cacheWaypoints, false);
                 }
+            }
+        }
+
+        if (loadFlags.contains(LoadFlag.LOAD_SPOILERS)) {
+            final Map<String, List<Image>> spoilers = new HashMap<String, List<Image>>();
+            queries += loadSpoilers(caches.keySet(), spoilers);
+            for (final Geocache cache : caches.values()) {
+                final List<Image> cacheSpoilers = spoilers.get(cache.getGeocode());
+                cache.setSpoilers(cacheSpoilers != null ? cacheSpoilers : new LinkedList<Image>());
+            }
+        }
 
-                if (loadFlags.contains(LoadFlag.LOAD_SPOILERS)) {
-                    final List<Image> spoilers = loadSpoilers(cache.getGeocode());
-                    cache.setSpoilers(spoilers);
+        if (loadFlags.contains(LoadFlag.LOAD_LOGS)) {
+            final Map<String, List<LogEntry>> logs = new HashMap<String, List<LogEntry>>();
+            queries += loadLogs(caches.keySet(), logs);
+            final Map<String, Map<LogType, Integer>> logCounts = new HashMap<String, Map<LogType, Integer>>();
+            queries += loadLogCounts(caches.keySet(), logCounts);
+            for (final Geocache cache : caches.values()) {
+                final List<LogEntry> cacheLogs = logs.get(cache.getGeocode());
+                cache.setLogs(cacheLogs != null ? cacheLogs : new ArrayList<LogEntry>());
+                final Map<LogType, Integer> cacheLogCounts = logCounts.get(cache.getGeocode());
+                if (MapUtils.isNotEmpty(cacheLogCounts)) {
+                    cache.getLogCounts().clear();
+                    cache.getLogCounts().putAll(cacheLogCounts);
                 }
+            }
+        }
 
-                if (loadFlags.contains(LoadFlag.LOAD_LOGS)) {
-                    cache.setLogs(loadLogs(cache.getGeocode()));
-                    final Map<LogType, Integer> logCounts = loadLogCounts(cache.getGeocode());
-                    if (MapUtils.isNotEmpty(logCounts)) {
-                        cache.getLogCounts().clear();
-                        cache.getLogCounts().putAll(logCounts);
+        if (loadFlags.contains(LoadFlag.LOAD_INVENTORY)) {
+            final Map<String, List<Trackable>> inventories = new HashMap<String, List<Trackable>>();
+            queries += loadInventory(caches.keySet(), inventories);
+            for (final Geocache cache : caches.values()) {
+                final List<Trackable> inventory = inventories.get(cache.getGeocode());
+                if (CollectionUtils.isNotEmpty(inventory)) {
+                    if (cache.getInventory() == null) {
+                        cache.setInventory(new ArrayList<Trackable>());
+                    } else {
+                        cache.getInventory().clear();
                     }
+                    cache.getInventory().addAll(inventory);
                 }
+            }
+        }
 
-                if (loadFlags.contains(LoadFlag.LOAD_INVENTORY)) {
-                    final List<Trackable> inventory = loadInventory(cache.getGeocode());
-                    if (CollectionUtils.isNotEmpty(inventory)) {
-                        if (cache.getInventory() == null) {
-                            cache.setInventory(new ArrayList<Trackable>());
-                        } else {
-                            cache.getInventory().clear();
-                        }
-                        cache.getInventory().addAll(inventory);
+        for (final Geocache cache : caches.values()) {
+            cache.addStorageLocation(StorageLocation.DATABASE);
+            cacheCache.putCacheInCache(cache);
+        }
+
+        Log.d("DataStore.loadCachesFromGeocodes: loaded " + caches.size() + " caches using " + queries + " queries");
+        return new HashSet<Geocache>(caches.values());
+    }
+
+    /**
+     * Receiver of the stored caches walked by {@link DataStore#walkCaches(List, CacheVisitor)}.
+     */
+    public interface CacheVisitor {
+        /**
+         * Start a cache. The cache contains its texts, attributes, waypoints and inventory, but no logs.
+         */
+        void startCache(@NonNull final Geocache cache) throws IOException;
+
+        /**
+         * A log of the current cache. The logs come newest first.
+         */
+        void log(@NonNull final LogEntry log) throws IOException;
+
+        void endCache(@NonNull final Geocache cache) throws IOException;
+    }
+
+    /**
+     * Walk the stored caches in the order of the given geocodes, for an export.
+     *
+     * Every table is read with a single cursor per {@link #MAX_GEOCODES_PER_QUERY} geocodes, sorted by the position of
+     * the geocode in the list, and the cursors are walked side by side. Only a single cache is in memory at any time,
+     * and the logs are handed over one at a time. The caches do not go into the cache cache. Unknown geocodes are
+     * skipped.
+     */
+    public static void walkCaches(@NonNull final List<String> geocodes, @NonNull final CacheVisitor visitor) throws IOException {
+        initWithWrites(geocodes);
+        int queries = 0;
+        int count = 0;
+        for (final List<String> chunk : ListUtils.partition(geocodes, MAX_GEOCODES_PER_QUERY)) {
+            final String where = whereGeocodeIn(chunk).toString();
+            final String position = orderByPosition(chunk);
+            final Cursor cacheCursor = database.rawQuery(QUERY_CACHE_DATA + ",cg_caches.description," + position + " AS position" +
+                    " FROM " + dbTableCaches + " WHERE " + where + " ORDER BY position", null);
+            final Cursor attributeCursor = queryByPosition(dbTableAttributes, "geocode, attribute", where, position, "_id");
+            final Cursor waypointCursor = queryByPosition(dbTableWaypoints, StringUtils.join(WAYPOINT_COLUMNS, ", "), where, position, "_id");
+            final Cursor inventoryCursor = queryByPosition(dbTableTrackables, "tbcode, title", where, position, "title COLLATE NOCASE ASC");
+            final Cursor logCursor = queryByPosition(dbTableLogs, "_id, type, author, log, date, found, friend", where, position, "date desc, _id asc");
+            queries += 5;
+            try {
+                final int cachePositionIndex = cacheCursor.getColumnIndex("position");
+                while (cacheCursor.moveToNext()) {
+                    final int cachePosition = cacheCursor.getInt(cachePositionIndex);
+                    final Geocache cache = createCacheFromDatabaseContent(cacheCursor);
+                    cache.setHint(StringUtils.defaultString(cacheCursor.getString(13)));
+                    cache.setLocation(StringUtils.defaultString(cacheCursor.getString(20)));
+                    cache.setShortDescription(StringUtils.defaultString(cacheCursor.getString(22)));
+                    cache.setDescription(StringUtils.defaultString(cacheCursor.getString(43)));
+
+                    final List<String> attributes = new ArrayList<String>();
+                    while (moveToPosition(attributeCursor, cachePosition)) {
+                        attributes.add(attributeCursor.getString(1));
                     }
-                }
+                    cache.setAttributes(attributes);
 
-                if (loadFlags.contains(LoadFlag.LOAD_OFFLINE_LOG)) {
-                    if (logIndex < 0) {
-                        logIndex = cursor.getColumnIndex("log");
+                    final List<Waypoint> waypoints = new ArrayList<Waypoint>();
+                    while (moveToPosition(waypointCursor, cachePosition)) {
+                        waypoints.add(createWaypointFromDatabaseContent(waypointCursor));
                     }
-                    cache.setLogOffline(!cursor.isNull(logIndex));
+                    cache.setWaypoints(waypoints, false);
+
+                    final List<Trackable> inventory = new ArrayList<Trackable>();
+                    while (moveToPosition(inventoryCursor, cachePosition)) {
+                        // only what is exported, loading the logs of the trackables would need a query per trackable
+                        final Trackable trackable = new Trackable();
+                        trackable.setGeocode(inventoryCursor.getString(0));
+                        trackable.setName(inventoryCursor.getString(1));
+                        inventory.add(trackable);
+                    }
+                    cache.setInventory(inventory);
+
+                    visitor.startCache(cache);
+                    int logs = 0;
+                    while (moveToPosition(logCursor, cachePosition)) {
+                        if (logs++ >= MAX_DEPENDENT_ROWS) {
+                            continue;
+                        }
+                        final LogEntry log = new LogEntry(logCursor.getString(2), logCursor.getLong(4), LogType.getById(logCursor.getInt(1)), logCursor.getString(3));
+                        log.id = logCursor.getInt(0);
+                        log.found = logCursor.getInt(5);
+                        log.friend = logCursor.getInt(6) == 1;
+                        visitor.log(log);
+                    }
+                    visitor.endCache(cache);
+                    count++;
                 }
-                cache.addStorageLocation(StorageLocation.DATABASE);
-                cacheCache.putCacheInCache(cache);
+            } finally {
+                cacheCursor.close();
+                attributeCursor.close();
+                waypointCursor.close();
+                inventoryCursor.close();
+                logCursor.close();
+            }
+        }
+        Log.d("DataStore.walkCaches: walked " + count + " caches using " + queries + " queries");
+    }
+
+    /**
+     * @return an SQL expression giving the position of the row's geocode in the list
+     */
+    private static String orderByPosition(final List<String> geocodes) {
+        final StringBuilder position = new StringBuilder("(CASE geocode");
+        for (int i = 0; i < geocodes.size(); i++) {
+            position.append(" WHEN ").append(DatabaseUtils.sqlEscapeString(StringUtils.upperCase(geocodes.get(i)))).append(" THEN ").append(i);
+        }
+        return position.append(" END)").toString();
+    }
 
-                caches.add(cache);
+    private static Cursor queryByPosition(final String table, final String columns, final String where, final String position, final String orderBy) {
+        return database.rawQuery("SELECT " + columns + ", " + position + " AS position FROM " + table + " WHERE " + where + " ORDER BY position, " + orderBy, null);
+    }
+
+    /**
+     * Move a cursor sorted by position to its next row, if this row belongs to the given position. Rows with a lower
+     * position, whose cache does not exist, are skipped.
+     *
+     * @return <tt>true</tt> if the cursor is on a row of the given position
+     */
+    private static boolean moveToPosition(final Cursor cursor, final int position) {
+        final int positionIndex = cursor.getColumnIndex("position");
+        while (cursor.moveToNext()) {
+            final int rowPosition = cursor.getInt(positionIndex);
+            if (rowPosition == position) {
+                return true;
+            }
+            if (rowPosition > position) {
+                // leave the row to the next cache
+                cursor.moveToPrevious();
+                return false;
             }
-            return caches;
-        } finally {
-            cursor.close();
         }
+        return false;
     }
 
+    /**
+     * Load rows of a table depending on the caches table for a set of caches, using as few queries as possible.
+     * At most {@link #MAX_DEPENDENT_ROWS} rows are kept for every cache.
+     *
+     * @param table
+     *            the table to query
+     * @param columns
+     *            the columns to retrieve, must contain <tt>geocode</tt>
+     * @param geocodes
+     *            the geocodes of the caches
+     * @param orderBy
+     *            the order of the rows of every cache
+     * @param result
+     *            the map receiving the rows, by geocode
+     * @param func
+     *            the function to convert a row
+     * @return the number of queries run
+     */
+    private static <T> int loadDependentRows(@NonNull final String table, final String[] columns, final Collection<String> geocodes, final String orderBy, final Map<String, List<T>> result, final Func1<? super Cursor, ? extends T> func) {
+        initWithWrites(geocodes);
+        int queries = 0;
+        for (final List<String> chunk : ListUtils.partition(new ArrayList<String>(geocodes), MAX_GEOCODES_PER_QUERY)) {
+            final Cursor cursor = database.query(table, columns, whereGeocodeIn(chunk).toString(), null, null, null, orderBy == null ? "geocode" : "geocode, " + orderBy);
+            queries++;
+            try {
+                final int geocodeIndex = cursor.getColumnIndex("geocode");
+                while (cursor.moveToNext()) {
+                    final String geocode = cursor.getString(geocodeIndex);
+                    List<T> rows = result.get(geocode);
+                    if (rows == null) {
+                        rows = new LinkedList<T>();
+                        result.put(geocode, rows);
+                    }
+                    if (rows.size() < MAX_DEPENDENT_ROWS) {
+                        rows.add(func.call(cursor));
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return queries;
+    }
 
     /**
-     * Builds a where for a viewport with the size enhanced by 50%.
+     * Builds a where for a viewport with the size enhanced by 50%. The spatial grid index is used to
+     * preselect the rows if the viewport is small enough, the coordinates are then compared exactly.
      *
      * @param dbTable
      * @param viewport
@@ -1702,7 +2315,12 @@ public class DataStore {
      */
 
     private static StringBuilder buildCoordinateWhere(final String dbTable, final Viewport viewport) {
-        return viewport.resize(1.5).sqlWhere(dbTable);
+        final Viewport resized = viewport.resize(1.5);
+        final StringBuilder gridWhere = SpatialGrid.sqlWhere(dbTable, "grid_cell", resized);
+        if (gridWhere == null) {
+            return resized.sqlWhere(dbTable);
+        }
+        return gridWhere.append(" and ").append(resized.sqlWhere(dbTable));
     }
 
     /**
@@ -1789,6 +2407,15 @@ public class DataStore {
                 GET_STRING_0);
     }
 
+    private static int loadAttributes(final Collection<String> geocodes, final Map<String, List<String>> attributes) {
+        return loadDependentRows(dbTableAttributes, new String[] { "geocode", "attribute" }, geocodes, null, attributes, new Func1<Cursor, String>() {
+            @Override
+            public String call(final Cursor cursor) {
+                return cursor.getString(1);
+            }
+        });
+    }
+
     public static Waypoint loadWaypoint(int id) {
         if (id == 0) {
             return null;
@@ -1837,6 +2464,15 @@ public class DataStore {
                 });
     }
 
+    private static int loadWaypoints(final Collection<String> geocodes, final Map<String, List<Waypoint>> waypoints) {
+        return loadDependentRows(dbTableWaypoints, WAYPOINT_COLUMNS, geocodes, "_id", waypoints, new Func1<Cursor, Waypoint>() {
+            @Override
+            public Waypoint call(final Cursor cursor) {
+                return createWaypointFromDatabaseContent(cursor);
+            }
+        });
+    }
+
     private static Waypoint createWaypointFromDatabaseContent(final Cursor cursor) {
         final String name = cursor.getString(cursor.getColumnIndex("name"));
         final WaypointType type = WaypointType.findById(cursor.getString(cursor.getColumnIndex("type")));
@@ -1876,6 +2512,15 @@ public class DataStore {
                 });
     }
 
+    private static int loadSpoilers(final Collection<String> geocodes, final Map<String, List<Image>> spoilers) {
+        return loadDependentRows(dbTableSpoilers, new String[] { "url", "title", "description", "geocode" }, geocodes, "_id", spoilers, new Func1<Cursor, Image>() {
+            @Override
+            public Image call(final Cursor cursor) {
+                return new Image(cursor.getString(0), cursor.getString(1), cursor.getString(2));
+            }
+        });
+    }
+
     /**
      * Loads the history of previously entered destinations from
      * the database. If no destinations exist, an {@link Collections#emptyList()} will be returned.
@@ -1917,6 +2562,90 @@ public class DataStore {
         return false;
     }
 
+    /**
+     * Store GCVote ratings, replacing the former ratings of the caches.
+     *
+     * @param ratings
+     *            the ratings by geocode
+     * @param voter
+     *            the GCVote user the own votes belong to, or <tt>null</tt> if they have been requested without login
+     */
+    public static void saveRatings(final Map<String, GCVoteRating> ratings, @Nullable final String voter) {
+        if (ratings.isEmpty()) {
+            return;
+        }
+        init();
+
+        final long updated = System.currentTimeMillis();
+        database.beginTransaction();
+        try {
+            final SQLiteStatement statement = PreparedStatements.getInsertRating();
+            for (final Map.Entry<String, GCVoteRating> entry : ratings.entrySet()) {
+                final GCVoteRating rating = entry.getValue();
+                statement.bindString(1, entry.getKey());
+                statement.bindLong(2, updated);
+                statement.bindDouble(3, rating.getRating());
+                statement.bindLong(4, rating.getVotes());
+                statement.bindDouble(5, rating.getMyVote());
+                statement.bindString(6, StringUtils.defaultString(voter));
+                statement.executeInsert();
+            }
+            database.setTransactionSuccessful();
+        } catch (final Exception e) {
+            Log.e("DataStore.saveRatings", e);
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Load the stored GCVote ratings of a set of caches.
+     *
+     * @param geocodes
+     *            the caches to load the ratings of
+     * @param staleBefore
+     *            the time before which a rating is outdated
+     * @param staleGeocodes
+     *            collection receiving the geocodes of the outdated ratings, which are loaded nevertheless
+     * @param voter
+     *            the current GCVote user, whose own votes are loaded. The ratings stored for another user are loaded
+     *            without own vote and are outdated.
+     * @return the ratings by geocode
+     */
+    @NonNull
+    public static Map<String, GCVoteRating> loadRatings(final Collection<String> geocodes, final long staleBefore, final Collection<String> staleGeocodes, @Nullable final String voter) {
+        final Map<String, GCVoteRating> ratings = new HashMap<String, GCVoteRating>();
+        if (geocodes.isEmpty()) {
+            return ratings;
+        }
+        init();
+
+        for (final List<String> chunk : ListUtils.partition(new ArrayList<String>(geocodes), MAX_GEOCODES_PER_QUERY)) {
+            final Cursor cursor = database.query(dbTableRatings, new String[] { "geocode", "updated", "rating", "votes", "myvote", "voter" }, whereGeocodeIn(chunk).toString(), null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    final String geocode = cursor.getString(0);
+                    final boolean sameVoter = StringUtils.equals(StringUtils.defaultString(cursor.getString(5)), StringUtils.defaultString(voter));
+                    ratings.put(geocode, new GCVoteRating(cursor.getFloat(2), cursor.getInt(3), sameVoter ? cursor.getFloat(4) : GCVote.NO_RATING));
+                    if (!sameVoter || cursor.getLong(1) < staleBefore) {
+                        staleGeocodes.add(geocode);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return ratings;
+    }
+
+    /**
+     * Forget the stored GCVote rating of a cache, so that it is downloaded again.
+     */
+    public static void removeRating(final String geocode) {
+        init();
+        database.delete(dbTableRatings, "geocode = ?", new String[] { geocode });
+    }
+
     public static List<LogEntry> loadLogs(String geocode) {
         List<LogEntry> logs = new ArrayList<LogEntry>();
 
@@ -1924,7 +2653,7 @@ public class DataStore {
             return logs;
         }
 
-        init();
+        initWithWrites(Collections.singletonList(geocode));
 
         final Cursor cursor = database.rawQuery(
                 /*                           0       1      2      3    4      5      6                                                7       8      9     10 */
@@ -1955,12 +2684,81 @@ public class DataStore {
         return logs;
     }
 
+    /**
+     * Load the logs of a set of caches, with at most {@link #MAX_DEPENDENT_ROWS} logs per cache.
+     *
+     * @return the number of queries run
+     */
+    private static int loadLogs(final Collection<String> geocodes, final Map<String, List<LogEntry>> logs) {
+        initWithWrites(geocodes);
+        int queries = 0;
+        for (final List<String> chunk : ListUtils.partition(new ArrayList<String>(geocodes), MAX_GEOCODES_PER_LOG_QUERY)) {
+            final Cursor cursor = database.rawQuery(
+                    /*                           0       1      2      3    4      5      6                                                7       8      9     10   11 */
+                    "SELECT cg_logs._id as cg_logs_id, type, author, log, date, found, friend, " + dbTableLogImages + "._id as cg_logImages_id, log_id, title, url, geocode"
+                            + " FROM " + dbTableLogs + " LEFT OUTER JOIN " + dbTableLogImages
+                            + " ON ( cg_logs._id = log_id ) WHERE " + whereGeocodeIn(chunk) + " AND " + whereLatestLogs(chunk) + " ORDER BY geocode, date desc, cg_logs._id asc", null);
+            queries++;
+            try {
+                List<LogEntry> cacheLogs = null;
+                String geocode = null;
+                LogEntry log = null;
+                while (cursor.moveToNext()) {
+                    if (!StringUtils.equals(geocode, cursor.getString(11))) {
+                        geocode = cursor.getString(11);
+                        cacheLogs = new ArrayList<LogEntry>();
+                        logs.put(geocode, cacheLogs);
+                        log = null;
+                    }
+                    if (log == null || log.id != cursor.getInt(0)) {
+                        log = new LogEntry(
+                                cursor.getString(2),
+                                cursor.getLong(4),
+                                LogType.getById(cursor.getInt(1)),
+                                cursor.getString(3));
+                        log.id = cursor.getInt(0);
+                        log.found = cursor.getInt(5);
+                        log.friend = cursor.getInt(6) == 1;
+                        cacheLogs.add(log);
+                    }
+                    if (!cursor.isNull(7)) {
+                        log.addLogImage(new Image(cursor.getString(10), cursor.getString(9)));
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Select the ids of the most recent logs of some caches, at most {@link #MAX_DEPENDENT_ROWS} per cache, so that
+     * the older logs are neither read nor joined with their images. Combined with the selection of the geocodes, so
+     * that the logs are looked up by the geocode index.
+     */
+    private static String whereLatestLogs(final Collection<String> geocodes) {
+        final StringBuilder where = new StringBuilder("cg_logs._id in (");
+        boolean first = true;
+        for (final String geocode : geocodes) {
+            if (!first) {
+                where.append(" UNION ALL ");
+            }
+            first = false;
+            // the limit of a compound select term only applies to a subquery
+            where.append("SELECT _id FROM (SELECT _id FROM ").append(dbTableLogs)
+                    .append(" WHERE geocode = ").append(DatabaseUtils.sqlEscapeString(StringUtils.upperCase(geocode)))
+                    .append(" ORDER BY date desc, _id asc LIMIT ").append(MAX_DEPENDENT_ROWS).append(')');
+        }
+        return where.append(')').toString();
+    }
+
     public static Map<LogType, Integer> loadLogCounts(String geocode) {
         if (StringUtils.isBlank(geocode)) {
             return null;
         }
 
-        init();
+        initWithWrites(Collections.singletonList(geocode));
 
         final Map<LogType, Integer> logCounts = new HashMap<LogType, Integer>();
 
@@ -1983,32 +2781,71 @@ public class DataStore {
         return logCounts;
     }
 
-    private static List<Trackable> loadInventory(String geocode) {
-        if (StringUtils.isBlank(geocode)) {
-            return null;
+    /**
+     * Load the log counts of a set of caches.
+     *
+     * @return the number of queries run
+     */
+    private static int loadLogCounts(final Collection<String> geocodes, final Map<String, Map<LogType, Integer>> logCounts) {
+        initWithWrites(geocodes);
+        int queries = 0;
+        for (final List<String> chunk : ListUtils.partition(new ArrayList<String>(geocodes), MAX_GEOCODES_PER_QUERY)) {
+            final Cursor cursor = database.query(dbTableLogCount, new String[] { "geocode", "type", "count" }, whereGeocodeIn(chunk).toString(), null, null, null, null);
+            queries++;
+            try {
+                while (cursor.moveToNext()) {
+                    final String geocode = cursor.getString(0);
+                    Map<LogType, Integer> cacheLogCounts = logCounts.get(geocode);
+                    if (cacheLogCounts == null) {
+                        cacheLogCounts = new HashMap<LogType, Integer>();
+                        logCounts.put(geocode, cacheLogCounts);
+                    }
+                    cacheLogCounts.put(LogType.getById(cursor.getInt(1)), cursor.getInt(2));
+                }
+            } finally {
+                cursor.close();
+            }
         }
+        return queries;
+    }
 
-        init();
-
-        final List<Trackable> trackables = new ArrayList<Trackable>();
-
-        final Cursor cursor = database.query(
-                dbTableTrackables,
-                new String[]{"_id", "updated", "tbcode", "guid", "title", "owner", "released", "goal", "description"},
-                "geocode = ?",
-                new String[]{geocode},
-                null,
-                null,
-                "title COLLATE NOCASE ASC",
-                "100");
-
-        while (cursor.moveToNext()) {
-            trackables.add(createTrackableFromDatabaseContent(cursor));
+    /**
+     * Load the trackables of a set of caches, and the logs of all these trackables at once.
+     *
+     * @return the number of queries run
+     */
+    private static int loadInventory(final Collection<String> geocodes, final Map<String, List<Trackable>> inventories) {
+        int queries = loadDependentRows(dbTableTrackables,
+                new String[] { "_id", "updated", "tbcode", "guid", "title", "owner", "released", "goal", "description", "geocode" },
+                geocodes, "title COLLATE NOCASE ASC", inventories, new Func1<Cursor, Trackable>() {
+                    @Override
+                    public Trackable call(final Cursor cursor) {
+                        return createTrackableFromDatabaseContent(cursor);
+                    }
+                });
+        // the same trackable may be in the inventory of several caches
+        final Map<String, List<Trackable>> trackables = new HashMap<String, List<Trackable>>();
+        for (final List<Trackable> inventory : inventories.values()) {
+            for (final Trackable trackable : inventory) {
+                List<Trackable> instances = trackables.get(trackable.getGeocode());
+                if (instances == null) {
+                    instances = new ArrayList<Trackable>();
+                    trackables.put(trackable.getGeocode(), instances);
+                }
+                instances.add(trackable);
+            }
         }
-
-        cursor.close();
-
-        return trackables;
+        if (!trackables.isEmpty()) {
+            final Map<String, List<LogEntry>> logs = new HashMap<String, List<LogEntry>>();
+            queries += loadLogs(trackables.keySet(), logs);
+            for (final Map.Entry<String, List<Trackable>> instances : trackables.entrySet()) {
+                final List<LogEntry> trackableLogs = logs.get(instances.getKey());
+                for (final Trackable trackable : instances.getValue()) {
+                    trackable.setLogs(trackableLogs != null ? new ArrayList<LogEntry>(trackableLogs) : new ArrayList<LogEntry>());
+                }
+            }
+        }
+        return queries;
     }
 
     public static Trackable loadTrackable(final String geocode) {
@@ -2016,7 +2853,7 @@ public class DataStore {
             return null;
         }
 
-        init();
+        initWithWrites();
 
         final Cursor cursor = database.query(
                 dbTableTrackables,
@@ -2032,6 +2869,9 @@ public class DataStore {
 
         cursor.close();
 
+        if (trackable != null) {
+            trackable.setLogs(loadLogs(trackable.getGeocode()));
+        }
         return trackable;
     }
 
@@ -2052,7 +2892,6 @@ public class DataStore {
         }
         trackable.setGoal(cursor.getString(cursor.getColumnIndex("goal")));
         trackable.setDetails(cursor.getString(cursor.getColumnIndex("description")));
-        trackable.setLogs(loadLogs(trackable.getGeocode()));
         return trackable;
     }
 
@@ -2070,7 +2909,7 @@ public class DataStore {
         if (list <= 0) {
             throw new IllegalArgumentException("list must be > 0");
         }
-        init();
+        initWithWrites();
 
         try {
             StringBuilder sql = new StringBuilder("select count(_id) from " + dbTableCaches + " where detailed = 1");
@@ -2112,7 +2951,7 @@ public class DataStore {
     }
 
     public static int getAllHistoryCachesCount() {
-        init();
+        initWithWrites();
 
         try {
             return (int) PreparedStatements.getCountHistoryCaches().simpleQueryForLong();
@@ -2133,8 +2972,7 @@ public class DataStore {
                                                                      final String limit,
                                                                      final U result,
                                                                      final Func1<? super Cursor, ? extends T> func) {
-        init();
-        final Cursor cursor = database.query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+        final Cursor cursor = getReader(true).query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
         return cursorToColl(cursor, result, func);
     }
 
@@ -2156,7 +2994,7 @@ public class DataStore {
      *            the current coordinates to sort by distance, or null to sort by geocode
      * @param cacheType
      * @param listId
-     * @return a non-null set of geocodes
+     * @return a non-null set of geocodes, in the sort order
      */
     private static Set<String> loadBatchOfStoredGeocodes(final Geopoint coords, final CacheType cacheType, final int listId) {
         if (cacheType == null) {
@@ -2176,16 +3014,21 @@ public class DataStore {
 
         try {
             if (coords != null) {
+                // squared distance on an equirectangular projection, in the same order as the real distance nearby
+                final String latitude = String.format((Locale) null, "%.6f", coords.getLatitude());
+                final String longitude = String.format((Locale) null, "%.6f", coords.getLongitude());
+                final double cosLatitude = Math.cos(Math.toRadians(coords.getLatitude()));
+                final String longitudeScale = String.format((Locale) null, "%.6f", cosLatitude * cosLatitude);
                 return queryToColl(dbTableCaches,
-                        new String[]{"geocode", "(abs(latitude-" + String.format((Locale) null, "%.6f", coords.getLatitude()) +
-                                ") + abs(longitude-" + String.format((Locale) null, "%.6f", coords.getLongitude()) + ")) as dif"},
+                        new String[]{"geocode", "((latitude-" + latitude + ") * (latitude-" + latitude +
+                                ") + (longitude-" + longitude + ") * (longitude-" + longitude + ") * " + longitudeScale + ") as dif"},
                         selection.toString(),
                         selectionArgs,
                         null,
                         null,
                         "dif",
                         null,
-                        new HashSet<String>(),
+                        new LinkedHashSet<String>(),
                         GET_STRING_0);
             } else {
                 return queryToColl(dbTableCaches,
@@ -2196,7 +3039,7 @@ public class DataStore {
                         null,
                         "geocode",
                         null,
-                        new HashSet<String>(),
+                        new LinkedHashSet<String>(),
                         GET_STRING_0);
             }
         } catch (final Exception e) {
@@ -2281,14 +3124,15 @@ public class DataStore {
         }
 
         try {
-            return new SearchResult(queryToColl(dbTableCaches,
+            // the map does not wait for the queued writes, it is refreshed again anyway
+            return new SearchResult(cursorToColl(getReader(false).query(dbTableCaches,
                     new String[]{"geocode"},
                     selection.toString(),
                     selectionArgs,
                     null,
                     null,
                     null,
-                    "500",
+                    "500"),
                     geocodes,
                     GET_STRING_0));
         } catch (final Exception e) {
@@ -2298,6 +3142,78 @@ public class DataStore {
         return new SearchResult();
     }
 
+    /**
+     * Load the caches in a viewport as lightweight map rows, using a narrow query on the caches table only.
+     *
+     * @param stored
+     *            True - query only stored caches, False - query cached ones as well
+     * @param viewport
+     *            the viewport to load the caches of
+     * @param cacheType
+     *            the cache type to load
+     * @param excludeMine
+     *            true to exclude found caches
+     * @param excludeDisabled
+     *            true to exclude disabled caches
+     * @param limit
+     *            the maximum number of rows
+     * @return a non-null list of map rows
+     */
+    public static List<MapCacheRow> loadMapRowsInViewport(final boolean stored, final Viewport viewport, final CacheType cacheType,
+            final boolean excludeMine, final boolean excludeDisabled, final int limit) {
+        final StringBuilder selection = buildCoordinateWhere(dbTableCaches, viewport);
+        String[] selectionArgs = null;
+        if (cacheType != CacheType.ALL) {
+            selection.append(" and ").append(dbTableCaches).append(".type = ?");
+            selectionArgs = new String[] { String.valueOf(cacheType.id) };
+        }
+        if (stored) {
+            selection.append(" and ").append(dbTableCaches).append(".reason >= ").append(StoredList.STANDARD_LIST_ID);
+        }
+        if (excludeMine) {
+            selection.append(" and ").append(dbTableCaches).append(".found == 0");
+        }
+        if (excludeDisabled) {
+            selection.append(" and ").append(dbTableCaches).append(".disabled == 0");
+        }
+
+        try {
+            return cursorToColl(getReader(false).rawQuery(
+                    /*       0        1     2     3         4          5      6           7       8         9         10     11               12 */
+                    "SELECT geocode, name, type, latitude, longitude, owner, owner_real, reason, disabled, archived, found, reliable_latlon, coordsChanged, "
+                            /* 13 */
+                            + "personal_note IS NOT NULL, "
+                            /* 14 */
+                            + "EXISTS (SELECT 1 FROM " + dbTableLogsOffline + " WHERE " + dbTableLogsOffline + ".geocode = " + dbTableCaches + ".geocode)"
+                            + " FROM " + dbTableCaches + " WHERE " + selection + " LIMIT " + limit,
+                    selectionArgs),
+                    new ArrayList<MapCacheRow>(),
+                    new Func1<Cursor, MapCacheRow>() {
+                        @Override
+                        public MapCacheRow call(final Cursor cursor) {
+                            return new MapCacheRow(cursor.getString(0),
+                                    cursor.getString(1),
+                                    CacheType.getById(cursor.getString(2)),
+                                    getCoords(cursor, 3, 4),
+                                    cursor.getString(5),
+                                    cursor.getString(6),
+                                    cursor.getInt(7),
+                                    cursor.getInt(8) == 1,
+                                    cursor.getInt(9) == 1,
+                                    cursor.getInt(10) == 1,
+                                    cursor.getInt(11) > 0,
+                                    cursor.getInt(12) > 0,
+                                    cursor.getInt(13) == 1,
+                                    cursor.getInt(14) == 1);
+                        }
+                    });
+        } catch (final Exception e) {
+            Log.e("DataStore.loadMapRowsInViewport", e);
+        }
+
+        return Collections.emptyList();
+    }
+
     /**
      * Remove caches with listId = 0
      *
@@ -2345,6 +3261,11 @@ public class DataStore {
                 Log.d("Database clean: removing " + geocodes.size() + " geocaches from listId=0");
                 removeCaches(geocodes, LoadFlags.REMOVE_ALL);
             }
+
+            final int ratings = database.delete(dbTableRatings, "updated < ?", new String[] { Long.toString(System.currentTimeMillis() - DAYS_AFTER_RATING_IS_DELETED) });
+            if (ratings > 0) {
+                Log.d("Database clean: removed " + ratings + " old GCVote ratings");
+            }
         } catch (final Exception e) {
             Log.w("DataStore.clean", e);
         }
@@ -2398,7 +3319,7 @@ public class DataStore {
             return;
         }
 
-        init();
+        initWithWrites(geocodes);
 
         if (removeFlags.contains(RemoveFlag.REMOVE_CACHE)) {
             for (final String geocode : geocodes) {
@@ -2548,26 +3469,24 @@ public class DataStore {
             return;
         }
 
-        init();
-
-        database.beginTransaction();
-        try {
-            SQLiteStatement setVisit = PreparedStatements.getUpdateVisitDate();
+        writeBehind.visit(geocodes, visitedDate);
+    }
 
-            for (String geocode : geocodes) {
-                setVisit.bindLong(1, visitedDate);
-                setVisit.bindString(2, geocode);
-                setVisit.execute();
-            }
-            database.setTransactionSuccessful();
-        } finally {
-            database.endTransaction();
+    private static void setVisitDateWithoutTransaction(final Map<String, Long> visits) {
+        if (visits.isEmpty()) {
+            return;
+        }
+        final SQLiteStatement setVisit = PreparedStatements.getUpdateVisitDate();
+        for (final Entry<String, Long> visit : visits.entrySet()) {
+            setVisit.bindLong(1, visit.getValue());
+            setVisit.bindString(2, visit.getKey());
+            setVisit.execute();
         }
     }
 
     @NonNull
     public static List<StoredList> getLists() {
-        init();
+        initWithWrites();
 
         final Resources res = CgeoApplication.getInstance().getResources();
         final List<StoredList> lists = new ArrayList<StoredList>();
@@ -2601,7 +3520,7 @@ public class DataStore {
     }
 
     public static StoredList getList(int id) {
-        init();
+        initWithWrites();
         if (id >= customListIdOffset) {
             Cursor cursor = database.query(
                     dbTableLists,
@@ -2631,6 +3550,7 @@ public class DataStore {
     }
 
     public static int getAllCachesCount() {
+        initWithWrites();
         return (int) PreparedStatements.getCountAllCaches().simpleQueryForLong();
     }
 
@@ -2705,7 +3625,7 @@ public class DataStore {
             return false;
         }
 
-        init();
+        initWithWrites();
 
         database.beginTransaction();
         boolean status = false;
@@ -2744,21 +3664,23 @@ public class DataStore {
         if (caches.isEmpty()) {
             return;
         }
-        init();
-
-        SQLiteStatement move = PreparedStatements.getMoveToList();
+        final List<String> geocodes = new ArrayList<String>(caches.size());
+        for (Geocache cache : caches) {
+            cache.setListId(listId);
+            geocodes.add(cache.getGeocode());
+        }
+        writeBehind.move(geocodes, listId);
+    }
 
-        database.beginTransaction();
-        try {
-            for (Geocache cache : caches) {
-                move.bindLong(1, listId);
-                move.bindString(2, cache.getGeocode());
-                move.execute();
-                cache.setListId(listId);
-            }
-            database.setTransactionSuccessful();
-        } finally {
-            database.endTransaction();
+    private static void moveToListWithoutTransaction(final Map<String, Integer> moves) {
+        if (moves.isEmpty()) {
+            return;
+        }
+        final SQLiteStatement move = PreparedStatements.getMoveToList();
+        for (final Entry<String, Integer> entry : moves.entrySet()) {
+            move.bindLong(1, entry.getValue());
+            move.bindString(2, entry.getKey());
+            move.execute();
         }
     }
 
@@ -2801,7 +3723,7 @@ public class DataStore {
         partial.setHint(StringUtils.EMPTY);
         partial.setLocation(StringUtils.EMPTY);
 
-        init();
+        initWithWrites(Collections.singletonList(geocode));
 
         try {
             final Cursor cursor = database.query(
@@ -2889,7 +3811,7 @@ public class DataStore {
         }
         query.append(" FROM ").append(dbTableWaypoints).append(", ").append(dbTableCaches).append(" WHERE ").append(dbTableWaypoints).append(".geocode == ").append(dbTableCaches).append(".geocode and ").append(where);
 
-        return cursorToColl(database.rawQuery(query.toString(), null), new HashSet<Waypoint>(), new Func1<Cursor, Waypoint>() {
+        return cursorToColl(getReader(false).rawQuery(query.toString(), null), new HashSet<Waypoint>(), new Func1<Cursor, Waypoint>() {
             @Override
             public Waypoint call(final Cursor cursor) {
                 return createWaypointFromDatabaseContent(cursor);
@@ -2898,7 +3820,9 @@ public class DataStore {
     }
 
     public static void saveChangedCache(Geocache cache) {
-        DataStore.saveCache(cache, cache.getStorageLocation().contains(StorageLocation.DATABASE) ? LoadFlags.SAVE_ALL : EnumSet.of(SaveFlag.SAVE_CACHE));
+        // a cache whose save is still queued is not marked as stored in the database yet
+        final boolean stored = cache.getStorageLocation().contains(StorageLocation.DATABASE) || writeBehind.isPending(cache.getGeocode());
+        DataStore.saveCache(cache, stored ? LoadFlags.SAVE_ALL : EnumSet.of(SaveFlag.SAVE_CACHE));
     }
 
     private static class PreparedStatements {
@@ -2929,6 +3853,10 @@ public class DataStore {
             return getStatement("InsertSpoiler", "INSERT INTO " + dbTableSpoilers + " (geocode, updated, url, title, description) VALUES (?, ?, ?, ?, ?)");
         }
 
+        public static SQLiteStatement getInsertRating() {
+            return getStatement("InsertRating", "INSERT OR REPLACE INTO " + dbTableRatings + " (geocode, updated, rating, votes, myvote, voter) VALUES (?, ?, ?, ?, ?, ?)");
+        }
+
         public static SQLiteStatement getInsertSearchDestination(Destination destination) {
             final SQLiteStatement statement = getStatement("InsertSearch", "INSERT INTO " + dbTableSearchDestionationHistory + " (date, latitude, longitude) VALUES (?, ?, ?)");
             statement.bindLong(1, destination.getDate());
@@ -2975,6 +3903,26 @@ public class DataStore {
             return getStatement("InsertLog", "INSERT INTO " + dbTableLogs + " (geocode, updated, type, author, log, date, found, friend) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
         }
 
+        private static SQLiteStatement getDeleteAttributes() {
+            return getStatement("DeleteAttributes", "DELETE FROM " + dbTableAttributes + " WHERE geocode = ?");
+        }
+
+        private static SQLiteStatement getDeleteSpoilers() {
+            return getStatement("DeleteSpoilers", "DELETE FROM " + dbTableSpoilers + " WHERE geocode = ?");
+        }
+
+        private static SQLiteStatement getDeleteLogs() {
+            return getStatement("DeleteLogs", "DELETE FROM " + dbTableLogs + " WHERE geocode = ?");
+        }
+
+        private static SQLiteStatement getDeleteLogCounts() {
+            return getStatement("DeleteLogCounts", "DELETE FROM " + dbTableLogCount + " WHERE geocode = ?");
+        }
+
+        private static SQLiteStatement getDeleteInventory() {
+            return getStatement("DeleteInventory", "DELETE FROM " + dbTableTrackables + " WHERE geocode = ?");
+        }
+
         private static SQLiteStatement getInsertAttribute() {
             return getStatement("InsertAttribute", "INSERT INTO " + dbTableAttributes + " (geocode, updated, attribute) VALUES (?, ?, ?)");
         }
@@ -3073,7 +4021,6 @@ public class DataStore {
         if (StringUtils.length(searchTerm) < 3) {
             return null;
         }
-        init();
         final MatrixCursor resultCursor = new MatrixCursor(new String[] {
                 BaseColumns._ID,
                 SearchManager.SUGGEST_COLUMN_TEXT_1,
@@ -3081,25 +4028,24 @@ public class DataStore {
                 SearchManager.SUGGEST_COLUMN_INTENT_ACTION,
                 SearchManager.SUGGEST_COLUMN_QUERY
         });
+        final String match = getMatchArgument(searchTerm);
+        if (match == null) {
+            return resultCursor;
+        }
         try {
-            final String selectionArg = getSuggestionArgument(searchTerm);
-            findCaches(resultCursor, selectionArg);
-            findTrackables(resultCursor, selectionArg);
+            findCaches(resultCursor, match);
+            findTrackables(resultCursor, match);
         } catch (final Exception e) {
-            Log.e("DataStore.loadBatchOfStoredGeocodes", e);
+            Log.e("DataStore.findSuggestions", e);
         }
         return resultCursor;
     }
 
-    private static void findCaches(final MatrixCursor resultCursor, final String selectionArg) {
-        Cursor cursor = database.query(
-                dbTableCaches,
-                new String[] { "geocode", "name" },
-                "geocode IS NOT NULL AND geocode != '' AND (geocode LIKE ? OR name LIKE ? OR owner LIKE ?)",
-                new String[] { selectionArg, selectionArg, selectionArg },
-                null,
-                null,
-                "name");
+    private static void findCaches(final MatrixCursor resultCursor, final String match) {
+        Cursor cursor = getReader(false).rawQuery("SELECT geocode, name FROM " + dbTableCaches
+                + " WHERE _id IN (" + getMatchingIds(dbTableCaches, dbTableCaches + FTS_SUFFIX) + ")"
+                + " AND geocode IS NOT NULL AND geocode != ''"
+                + " ORDER BY name", new String[] { match });
         while (cursor.moveToNext()) {
             final String geocode = cursor.getString(0);
             resultCursor.addRow(new String[] {
@@ -3113,19 +4059,40 @@ public class DataStore {
         cursor.close();
     }
 
-    private static String getSuggestionArgument(String input) {
-        return "%" + StringUtils.trim(input) + "%";
+    /**
+     * Build the full text search query of an input, matching the rows with a word starting with every word of the
+     * input.
+     *
+     * @return the argument of <tt>MATCH</tt>, or <tt>null</tt> if the input has no word to search for
+     */
+    static String getMatchArgument(final String input) {
+        final StringBuilder match = new StringBuilder();
+        for (final String token : FTS_SEPARATORS.split(StringUtils.defaultString(input))) {
+            if (token.length() > 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                // lower case words are never taken for operators
+                match.append(FTS_OPERATORS.matcher(token).matches() ? StringUtils.lowerCase(token, Locale.US) : token).append('*');
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
     }
 
-    private static void findTrackables(final MatrixCursor resultCursor, final String selectionArg) {
-        Cursor cursor = database.query(
-                dbTableTrackables,
-                new String[] { "tbcode", "title" },
-                "tbcode IS NOT NULL AND tbcode != '' AND (tbcode LIKE ? OR title LIKE ?)",
-                new String[] { selectionArg, selectionArg },
-                null,
-                null,
-                "title");
+    /**
+     * @param column
+     *            the searchable column to match, or the full text search table to match all its columns
+     * @return a query for the ids of the rows of a table matching the argument of <tt>MATCH</tt>
+     */
+    private static String getMatchingIds(final String table, final String column) {
+        return "SELECT docid FROM " + table + FTS_SUFFIX + " WHERE " + column + " MATCH ?";
+    }
+
+    private static void findTrackables(final MatrixCursor resultCursor, final String match) {
+        Cursor cursor = getReader(false).rawQuery("SELECT tbcode, title FROM " + dbTableTrackables
+                + " WHERE _id IN (" + getMatchingIds(dbTableTrackables, dbTableTrackables + FTS_SUFFIX) + ")"
+                + " AND tbcode IS NOT NULL AND tbcode != ''"
+                + " ORDER BY title", new String[] { match });
         while (cursor.moveToNext()) {
             final String tbcode = cursor.getString(0);
             resultCursor.addRow(new String[] {
@@ -3139,11 +4106,18 @@ public class DataStore {
         cursor.close();
     }
 
+    /**
+     * Get the values of a searchable column with a word starting with every word of the input.
+     */
     public static String[] getSuggestions(final String table, final String column, final String input) {
-        Cursor cursor = database.rawQuery("SELECT DISTINCT " + column
+        final String match = getMatchArgument(input);
+        if (match == null) {
+            return new String[0];
+        }
+        Cursor cursor = getReader(false).rawQuery("SELECT DISTINCT " + column
                 + " FROM " + table
-                + " WHERE " + column + " LIKE ?"
-                + " ORDER BY " + column + " COLLATE NOCASE ASC;", new String[] { getSuggestionArgument(input) });
+                + " WHERE _id IN (" + getMatchingIds(table, column) + ")"
+                + " ORDER BY " + column + " COLLATE NOCASE ASC;", new String[] { match });
         return cursorToColl(cursor, new LinkedList<String>(), GET_STRING_0).toArray(new String[cursor.getCount()]);
     }
 
@@ -15,6 +15,7 @@ import cgeo.geocaching.settings.Settings;
 import cgeo.geocaching.ui.dialog.CoordinatesInputDialog;
 import cgeo.geocaching.ui.dialog.Dialogs;
 import cgeo.geocaching.sensors.GeoDirHandler;
+import cgeo.geocaching.sensors.GeoDirSampling;
 import cgeo.geocaching.utils.Log;
 import cgeo.geocaching.utils.TextUtils;
 
@@ -259,7 +260,7 @@ public class EditWaypointActivity extends AbstractActivity {
         }
     }
 
-    final private GeoDirHandler geoDirHandler = new GeoDirHandler() {
+    final private GeoDirHandler geoDirHandler = new GeoDirHandler(GeoDirSampling.LIST) {
         @Override
         public void updateGeoDir(final IGeoData geo, final float dir) {
             if (geo.getCoords() == null) {
@@ -1176,10 +1176,12 @@ public class Geocache implements ICache, IWaypoint {
     }
 
     /**
-     * @return the storageLocation
+     * @return a copy of the storageLocation, as the database location is added by the thread writing the cache
      */
     public EnumSet<StorageLocation> getStorageLocation() {
-        return storageLocation;
+        synchronized (storageLocation) {
+            return EnumSet.copyOf(storageLocation);
+        }
     }
 
     /**
@@ -1187,7 +1189,9 @@ public class Geocache implements ICache, IWaypoint {
      *            the storageLocation to set
      */
     public void addStorageLocation(final StorageLocation storageLocation) {
-        this.storageLocation.add(storageLocation);
+        synchronized (this.storageLocation) {
+            this.storageLocation.add(storageLocation);
+        }
     }
 
     /**
@@ -20,6 +20,7 @@ import cgeo.geocaching.ui.Formatter;
 import cgeo.geocaching.ui.dialog.Dialogs;
 import cgeo.geocaching.utils.DatabaseBackupUtils;
 import cgeo.geocaching.sensors.GeoDirHandler;
+import cgeo.geocaching.sensors.GeoDirSampling;
 import cgeo.geocaching.utils.Log;
 import cgeo.geocaching.utils.Version;
 
@@ -143,6 +144,10 @@ public class MainActivity extends AbstractActivity {
         private int satellitesFixed = 0;
         private int satellitesVisible = 0;
 
+        public SatellitesHandler() {
+            super(GeoDirSampling.LIST);
+        }
+
         @Override
         public void updateGeoDir(final IGeoData data, final float dir) {
             if (data.getGpsEnabled() == gpsEnabled &&
@@ -507,6 +512,10 @@ public class MainActivity extends AbstractActivity {
 
     private class UpdateLocation extends GeoDirHandler {
 
+        public UpdateLocation() {
+            super(GeoDirSampling.LIST);
+        }
+
         @Override
         public void updateGeoDir(final IGeoData geo, final float dir) {
             if (!nearestView.isClickable()) {
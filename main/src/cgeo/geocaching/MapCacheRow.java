@@ -0,0 +1,300 @@
+package cgeo.geocaching;
+
+import cgeo.geocaching.connector.ConnectorFactory;
+import cgeo.geocaching.connector.IConnector;
+import cgeo.geocaching.connector.gc.GCConnector;
+import cgeo.geocaching.enumerations.CacheSize;
+import cgeo.geocaching.enumerations.CacheType;
+import cgeo.geocaching.enumerations.LogType;
+import cgeo.geocaching.enumerations.WaypointType;
+import cgeo.geocaching.geopoint.Geopoint;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable lightweight representation of a cache, holding only the fields needed to display it on a map.
+ *
+ * Rows are read with a dedicated narrow query by {@link DataStore#loadMapRowsInViewport}, which allows the map to
+ * display a large number of stored caches without materializing complete {@link Geocache} objects. All the detail
+ * fields of {@link ICache} which are not part of a row return empty values.
+ */
+public final class MapCacheRow implements ICache, IWaypoint {
+
+    private final String geocode;
+    private final String name;
+    private final CacheType type;
+    private final Geopoint coords;
+    private final String ownerDisplayName;
+    private final String ownerUserId;
+    private final int listId;
+    private final boolean disabled;
+    private final boolean archived;
+    private final boolean found;
+    private final boolean reliableLatLon;
+    private final boolean userModifiedCoords;
+    private final boolean personalNote;
+    private final boolean logOffline;
+    private final boolean owner;
+
+    MapCacheRow(final String geocode, final String name, final CacheType type, final Geopoint coords, final String ownerDisplayName, final String ownerUserId,
+            final int listId, final boolean disabled, final boolean archived, final boolean found, final boolean reliableLatLon,
+            final boolean userModifiedCoords, final boolean personalNote, final boolean logOffline) {
+        this.geocode = geocode;
+        this.name = name;
+        this.type = type;
+        this.coords = coords;
+        this.ownerDisplayName = ownerDisplayName;
+        this.ownerUserId = ownerUserId;
+        this.listId = listId;
+        this.disabled = disabled;
+        this.archived = archived;
+        this.found = found;
+        this.reliableLatLon = reliableLatLon;
+        this.userModifiedCoords = userModifiedCoords;
+        this.personalNote = personalNote;
+        this.logOffline = logOffline;
+        this.owner = getConnector().isOwner(this);
+    }
+
+    /**
+     * Create a map row from a complete cache.
+     */
+    public MapCacheRow(final Geocache cache) {
+        geocode = cache.getGeocode();
+        name = cache.getName();
+        type = cache.getType();
+        coords = cache.getCoords();
+        ownerDisplayName = cache.getOwnerDisplayName();
+        ownerUserId = cache.getOwnerUserId();
+        listId = cache.getListId();
+        disabled = cache.isDisabled();
+        archived = cache.isArchived();
+        found = cache.isFound();
+        reliableLatLon = cache.isReliableLatLon();
+        userModifiedCoords = cache.hasUserModifiedCoords();
+        personalNote = cache.getPersonalNote() != null;
+        logOffline = cache.isLogOffline();
+        owner = cache.isOwner();
+    }
+
+    private IConnector getConnector() {
+        return ConnectorFactory.getConnector(this);
+    }
+
+    @Override
+    public String getGeocode() {
+        return geocode;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheType getType() {
+        return type;
+    }
+
+    @Override
+    public Geopoint getCoords() {
+        return coords;
+    }
+
+    @Override
+    public String getOwnerDisplayName() {
+        return ownerDisplayName;
+    }
+
+    @Override
+    public String getOwnerUserId() {
+        return ownerUserId;
+    }
+
+    @Override
+    public boolean isOwner() {
+        return owner;
+    }
+
+    public int getListId() {
+        return listId;
+    }
+
+    @Override
+    public boolean isDisabled() {
+        return disabled;
+    }
+
+    @Override
+    public boolean isArchived() {
+        return archived;
+    }
+
+    @Override
+    public boolean isFound() {
+        return found;
+    }
+
+    public boolean isReliableLatLon() {
+        return getConnector().isReliableLatLon(reliableLatLon);
+    }
+
+    public boolean hasUserModifiedCoords() {
+        return userModifiedCoords;
+    }
+
+    /**
+     * @return true if the cache has a personal note, whose text is not part of the row
+     */
+    public boolean hasPersonalNote() {
+        return personalNote;
+    }
+
+    public boolean isLogOffline() {
+        return logOffline;
+    }
+
+    public int getMapMarkerId() {
+        return getConnector().getCacheMapMarkerId(disabled || archived);
+    }
+
+    public boolean applyDistanceRule() {
+        return (type.applyDistanceRule() || userModifiedCoords) && getConnector() == GCConnector.getInstance();
+    }
+
+    @Override
+    public int getId() {
+        return 0;
+    }
+
+    @Override
+    public WaypointType getWaypointType() {
+        return null;
+    }
+
+    @Override
+    public String getCoordType() {
+        return "cache";
+    }
+
+    @Override
+    public String getNameForSorting() {
+        return name;
+    }
+
+    // Detail fields, not part of a map row
+
+    @Override
+    public CacheSize getSize() {
+        return CacheSize.UNKNOWN;
+    }
+
+    @Override
+    public float getDifficulty() {
+        return 0;
+    }
+
+    @Override
+    public float getTerrain() {
+        return 0;
+    }
+
+    @Override
+    public boolean isPremiumMembersOnly() {
+        return false;
+    }
+
+    @Override
+    public String getHint() {
+        return null;
+    }
+
+    @Override
+    public String getDescription() {
+        return null;
+    }
+
+    @Override
+    public String getShortDescription() {
+        return null;
+    }
+
+    @Override
+    public String getCacheId() {
+        return null;
+    }
+
+    @Override
+    public String getGuid() {
+        return null;
+    }
+
+    @Override
+    public String getLocation() {
+        return null;
+    }
+
+    @Override
+    public String getPersonalNote() {
+        return null;
+    }
+
+    @Override
+    public boolean isFavorite() {
+        return false;
+    }
+
+    @Override
+    public int getFavoritePoints() {
+        return 0;
+    }
+
+    @Override
+    public boolean isOnWatchlist() {
+        return false;
+    }
+
+    @Override
+    public Date getHiddenDate() {
+        return null;
+    }
+
+    @Override
+    public List<String> getAttributes() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<Trackable> getInventory() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<Image> getSpoilers() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Map<LogType, Integer> getLogCounts() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return this == obj || (obj instanceof MapCacheRow && geocode.equals(((MapCacheRow) obj).geocode));
+    }
+
+    @Override
+    public int hashCode() {
+        return geocode.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return geocode;
+    }
+
+}
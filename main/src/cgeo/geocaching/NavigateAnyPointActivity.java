@@ -16,6 +16,7 @@ import cgeo.geocaching.ui.Formatter;
 import cgeo.geocaching.ui.dialog.CoordinatesInputDialog;
 import cgeo.geocaching.ui.dialog.Dialogs;
 import cgeo.geocaching.sensors.GeoDirHandler;
+import cgeo.geocaching.sensors.GeoDirSampling;
 import cgeo.geocaching.utils.Log;
 
 import org.apache.commons.lang3.StringUtils;
@@ -451,7 +452,7 @@ public class NavigateAnyPointActivity extends AbstractActivity {
         finish();
     }
 
-    private final GeoDirHandler geoDirHandler = new GeoDirHandler() {
+    private final GeoDirHandler geoDirHandler = new GeoDirHandler(GeoDirSampling.LIST) {
         @Override
         public void updateGeoDir(final IGeoData geo, final float dir) {
             try {
@@ -25,10 +25,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 public class SearchResult implements Parcelable {
 
+    /** The geocodes, in the order of the search */
     final private Set<String> geocodes;
     final private Set<String> filteredGeocodes;
     private StatusCode error = null;
@@ -56,7 +58,7 @@ public class SearchResult implements Parcelable {
      * Build a new empty search result.
      */
     public SearchResult() {
-        this(new HashSet<String>());
+        this(new LinkedHashSet<String>());
     }
 
     /**
@@ -65,7 +67,7 @@ public class SearchResult implements Parcelable {
      * @param searchResult the original search result, which cannot be null
      */
     public SearchResult(final SearchResult searchResult) {
-        geocodes = new HashSet<String>(searchResult.geocodes);
+        geocodes = new LinkedHashSet<String>(searchResult.geocodes);
         filteredGeocodes = new HashSet<String>(searchResult.filteredGeocodes);
         error = searchResult.error;
         url = searchResult.url;
@@ -83,7 +85,7 @@ public class SearchResult implements Parcelable {
      *            from a web page)
      */
     public SearchResult(final Collection<String> geocodes, final int totalCountGC) {
-        this.geocodes = new HashSet<String>(geocodes.size());
+        this.geocodes = new LinkedHashSet<String>(geocodes.size());
         this.geocodes.addAll(geocodes);
         this.filteredGeocodes = new HashSet<String>();
         this.setTotalCountGC(totalCountGC);
@@ -101,7 +103,7 @@ public class SearchResult implements Parcelable {
     public SearchResult(final Parcel in) {
         final ArrayList<String> list = new ArrayList<String>();
         in.readStringList(list);
-        geocodes = new HashSet<String>(list);
+        geocodes = new LinkedHashSet<String>(list);
         final ArrayList<String> filteredList = new ArrayList<String>();
         in.readStringList(filteredList);
         filteredGeocodes = new HashSet<String>(filteredList);
@@ -0,0 +1,362 @@
+package cgeo.geocaching;
+
+import cgeo.geocaching.concurrent.PriorityThreadFactory;
+import cgeo.geocaching.concurrent.TokenBucket;
+import cgeo.geocaching.utils.Log;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler of the static map downloads.
+ *
+ * Several maps are downloaded at the same time, but the requests to a single host are limited by a token bucket.
+ * A request for a map which is already queued or being downloaded is not queued again, and maps whose file name
+ * identifies their content are not downloaded if the file already exists. The maps are downloaded in the order of the
+ * requests, except for urgent ones which are downloaded before all the queued maps. Callers keep the futures of their
+ * requests to wait for them or to cancel them. The number of queued and completed downloads is tracked to report the
+ * progress and the estimated remaining time.
+ */
+public final class StaticMapsDownloader {
+
+    /** Default number of maps downloaded at the same time. */
+    public static final int DEFAULT_CONCURRENCY = 3;
+    /** Default number of requests sent to a host at once after an idle period. */
+    public static final int DEFAULT_BURST = 5;
+    /** Default long term number of requests per second sent to a host. */
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 4;
+
+    /**
+     * Notifications of the download progress, called from the download threads.
+     */
+    public interface Listener {
+        /**
+         * A download has been completed, skipped, cancelled or has failed.
+         *
+         * @param completed
+         *            the number of downloads completed since the scheduler was last idle
+         * @param total
+         *            the number of downloads requested since the scheduler was last idle
+         */
+        void onProgress(final int completed, final int total);
+    }
+
+    /**
+     * Download of a single map into a file.
+     */
+    abstract static class Request {
+        @NonNull
+        final String url;
+        @NonNull
+        final File file;
+        final boolean skipIfPresent;
+
+        /**
+         * @param url
+         *            the complete URL, used to limit the requests per host and to detect identical requests
+         * @param skipIfPresent
+         *            <tt>true</tt> if the file name identifies the map, so that an existing file does not need to be
+         *            downloaded again
+         */
+        Request(@NonNull final String url, @NonNull final File file, final boolean skipIfPresent) {
+            this.url = url;
+            this.file = file;
+            this.skipIfPresent = skipIfPresent;
+        }
+
+        abstract void download();
+
+        String getKey() {
+            return file.getAbsolutePath() + '\n' + url;
+        }
+    }
+
+    /**
+     * Queued or running download, with the number of requests sharing it. Urgent downloads come first in the queue,
+     * then the downloads in the order of their requests.
+     */
+    private static final class Download extends FutureTask<Void> implements Comparable<Download> {
+        final String key;
+        final long sequence;
+        /** Guarded by the downloader, only changed while the download is out of the queue. */
+        volatile boolean urgent;
+        int requests = 1;
+
+        Download(final String key, final long sequence, final boolean urgent, final Runnable runnable) {
+            super(runnable, null);
+            this.key = key;
+            this.sequence = sequence;
+            this.urgent = urgent;
+        }
+
+        @Override
+        public int compareTo(final Download other) {
+            if (urgent != other.urgent) {
+                return urgent ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private static final StaticMapsDownloader INSTANCE = new StaticMapsDownloader(DEFAULT_CONCURRENCY);
+
+    private final ThreadPoolExecutor executor;
+    private int concurrency;
+    private final Map<String, TokenBucket> buckets = new HashMap<String, TokenBucket>();
+    private int burst = DEFAULT_BURST;
+    private double requestsPerSecond = DEFAULT_REQUESTS_PER_SECOND;
+    /** Queued and running downloads, by key. Guarded by <tt>this</tt>. */
+    private final Map<String, Download> pending = new HashMap<String, Download>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private long sequence = 0;
+
+    /** Progress since the scheduler was last idle. Guarded by <tt>this</tt>. */
+    private int total = 0;
+    private int completed = 0;
+    private long startTime = 0;
+
+    StaticMapsDownloader(final int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+        // the core threads are only kept while there are downloads, see setCorePoolSize() calls
+        executor = new ThreadPoolExecutor(0, this.concurrency, 5, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new PriorityThreadFactory(Thread.MIN_PRIORITY));
+    }
+
+    @NonNull
+    public static StaticMapsDownloader getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Change the number of maps downloaded at the same time.
+     */
+    public synchronized void setConcurrency(final int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+        final boolean busy = !pending.isEmpty();
+        if (this.concurrency > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(this.concurrency);
+            executor.setCorePoolSize(busy ? this.concurrency : 0);
+        } else {
+            executor.setCorePoolSize(busy ? this.concurrency : 0);
+            executor.setMaximumPoolSize(this.concurrency);
+        }
+    }
+
+    /**
+     * Change the rate limit of the hosts.
+     *
+     * @param burst
+     *            the number of requests sent at once after an idle period
+     * @param requestsPerSecond
+     *            the long term number of requests per second
+     */
+    public synchronized void setRateLimit(final int burst, final double requestsPerSecond) {
+        this.burst = burst;
+        this.requestsPerSecond = requestsPerSecond;
+        buckets.clear();
+    }
+
+    public void addListener(@NonNull final Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Queue a download after the ones already queued, unless the same download is already queued or running.
+     *
+     * @return the future of the download, which may be shared with an identical request
+     */
+    @NonNull
+    Future<?> download(@NonNull final Request request) {
+        return download(request, false);
+    }
+
+    /**
+     * Queue a download, unless the same download is already queued or running.
+     *
+     * @param urgent
+     *            <tt>true</tt> to download the map before all the queued ones, for a caller waiting for it
+     * @return the future of the download, which may be shared with an identical request
+     */
+    @NonNull
+    synchronized Future<?> download(@NonNull final Request request, final boolean urgent) {
+        final String key = request.getKey();
+        final Download existing = pending.get(key);
+        if (existing != null) {
+            existing.requests++;
+            // move a queued download to the front, a running one is not in the queue any longer
+            if (urgent && !existing.urgent && executor.remove(existing)) {
+                existing.urgent = true;
+                executor.execute(existing);
+            }
+            return existing;
+        }
+        final TokenBucket bucket = getBucket(request.url);
+        final Download task = new Download(key, sequence++, urgent, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (request.skipIfPresent && request.file.exists()) {
+                        return;
+                    }
+                    bucket.acquire();
+                    request.download();
+                } catch (final InterruptedException e) {
+                    Log.i("StaticMapsDownloader: download of " + request.file.getName() + " interrupted");
+                    Thread.currentThread().interrupt();
+                } catch (final Exception e) {
+                    Log.e("StaticMapsDownloader: download of " + request.file.getName() + " failed", e);
+                } finally {
+                    finished(key);
+                }
+            }
+        });
+        if (pending.isEmpty()) {
+            startTime = System.currentTimeMillis();
+            // with an unbounded queue, the executor only runs more than one thread below the core pool size
+            executor.setCorePoolSize(concurrency);
+        }
+        total++;
+        pending.put(key, task);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Wait for a download, for callers which need the map.
+     */
+    static void await(@NonNull final Future<?> future) {
+        try {
+            future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            Log.e("StaticMapsDownloader.await", e);
+        } catch (final CancellationException e) {
+            // cancelled downloads are not waited for
+        }
+    }
+
+    /**
+     * @param key
+     *            the key of the download to forget, <tt>null</tt> if already done by the caller
+     */
+    private void finished(final String key) {
+        final int done;
+        final int all;
+        synchronized (this) {
+            if (key != null) {
+                pending.remove(key);
+            }
+            completed++;
+            done = completed;
+            all = total;
+            if (pending.isEmpty()) {
+                Log.d(String.format(Locale.US, "StaticMapsDownloader: %d maps in %d ms", total, System.currentTimeMillis() - startTime));
+                // start counting again for the next downloads, and let the idle threads end
+                completed = 0;
+                total = 0;
+                executor.setCorePoolSize(0);
+            }
+        }
+        for (final Listener listener : listeners) {
+            listener.onProgress(done, all);
+        }
+    }
+
+    /**
+     * Drop the given downloads if they are still queued and no other request shares them. Running downloads are
+     * finished.
+     *
+     * @param downloads
+     *            futures returned by {@link #download(Request)}
+     */
+    public void cancel(@NonNull final Collection<? extends Future<?>> downloads) {
+        int dropped = 0;
+        synchronized (this) {
+            for (final Download download : new ArrayList<Download>(pending.values())) {
+                if (!downloads.contains(download)) {
+                    continue;
+                }
+                download.requests--;
+                // a task which is not in the queue any longer is running and finishes on its own
+                if (download.requests == 0 && executor.remove(download)) {
+                    download.cancel(false);
+                    // a new request for the same map is queued again
+                    pending.remove(download.key);
+                    dropped++;
+                }
+            }
+        }
+        // the listeners are not called with the lock held
+        for (int i = 0; i < dropped; i++) {
+            finished(null);
+        }
+    }
+
+    /**
+     * @return the number of downloads completed since the scheduler was last idle
+     */
+    public synchronized int getCompletedCount() {
+        return completed;
+    }
+
+    /**
+     * @return the number of downloads requested since the scheduler was last idle
+     */
+    public synchronized int getTotalCount() {
+        return total;
+    }
+
+    /**
+     * Estimate the remaining time from the throughput measured since the scheduler was last idle.
+     *
+     * @return the estimated number of seconds until all queued maps are downloaded, or -1 if unknown
+     */
+    public synchronized int getRemainingSeconds() {
+        if (completed == 0) {
+            return total == 0 ? 0 : -1;
+        }
+        final long elapsed = System.currentTimeMillis() - startTime;
+        return (int) (elapsed * (total - completed) / completed / 1000);
+    }
+
+    private synchronized TokenBucket getBucket(final String url) {
+        final String host = getHost(url);
+        TokenBucket bucket = buckets.get(host);
+        if (bucket == null) {
+            bucket = new TokenBucket(burst, requestsPerSecond);
+            buckets.put(host, bucket);
+        }
+        return bucket;
+    }
+
+    @NonNull
+    private static String getHost(final String url) {
+        try {
+            final String host = new URI(url).getHost();
+            return host != null ? host : "";
+        } catch (final Exception e) {
+            return "";
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package cgeo.geocaching;
 
 import cgeo.geocaching.compatibility.Compatibility;
-import cgeo.geocaching.concurrent.BlockingThreadPool;
 import cgeo.geocaching.files.LocalStorage;
 import cgeo.geocaching.geopoint.GeopointFormatter.Format;
 import cgeo.geocaching.network.Network;
@@ -19,7 +18,12 @@ import android.graphics.BitmapFactory;
 import android.graphics.Point;
 
 import java.io.File;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 public final class StaticMapsProvider {
     static final int MAPS_LEVEL_MAX = 5;
@@ -34,8 +38,8 @@ public final class StaticMapsProvider {
     /** We assume there is no real usable image with less than 1k. */
     private static final int MIN_MAP_IMAGE_BYTES = 1000;
 
-    /** ThreadPool restricting this to 1 Thread. **/
-    private static final BlockingThreadPool POOL = new BlockingThreadPool(1, Thread.MIN_PRIORITY);
+    /** Scheduler of all map downloads, limiting the requests to the maps host. **/
+    private static final StaticMapsDownloader DOWNLOADER = StaticMapsDownloader.getInstance();
 
     /**
      * max size in free API version: https://developers.google.com/maps/documentation/staticmaps/#Imagesizes
@@ -50,15 +54,23 @@ public final class StaticMapsProvider {
         return LocalStorage.getStorageFile(geocode, MAP_FILENAME_PREFIX + prefix, false, createDirs);
     }
 
-    private static void downloadDifferentZooms(final String geocode, final String markerUrl, final String prefix, final String latlonMap, final int edge, final Parameters waypoints) {
-        downloadMap(geocode, 20, SATELLITE, markerUrl, prefix + '1', "", latlonMap, edge, edge, waypoints);
-        downloadMap(geocode, 18, SATELLITE, markerUrl, prefix + '2', "", latlonMap, edge, edge, waypoints);
-        downloadMap(geocode, 16, ROADMAP, markerUrl, prefix + '3', "", latlonMap, edge, edge, waypoints);
-        downloadMap(geocode, 14, ROADMAP, markerUrl, prefix + '4', "", latlonMap, edge, edge, waypoints);
-        downloadMap(geocode, 11, ROADMAP, markerUrl, prefix + '5', "", latlonMap, edge, edge, waypoints);
+    /**
+     * Queue the downloads of all zoom levels, which run at the same time.
+     *
+     * @param skipIfPresent
+     *            <tt>true</tt> if the prefix identifies the content of the maps, so that existing maps are kept
+     */
+    private static List<Future<?>> downloadDifferentZooms(final String geocode, final String markerUrl, final String prefix, final String latlonMap, final int edge, final Parameters waypoints, final boolean skipIfPresent) {
+        final List<Future<?>> downloads = new ArrayList<Future<?>>(MAPS_LEVEL_MAX);
+        downloads.add(downloadMap(geocode, 20, SATELLITE, markerUrl, prefix + '1', "", latlonMap, edge, edge, waypoints, skipIfPresent, false));
+        downloads.add(downloadMap(geocode, 18, SATELLITE, markerUrl, prefix + '2', "", latlonMap, edge, edge, waypoints, skipIfPresent, false));
+        downloads.add(downloadMap(geocode, 16, ROADMAP, markerUrl, prefix + '3', "", latlonMap, edge, edge, waypoints, skipIfPresent, false));
+        downloads.add(downloadMap(geocode, 14, ROADMAP, markerUrl, prefix + '4', "", latlonMap, edge, edge, waypoints, skipIfPresent, false));
+        downloads.add(downloadMap(geocode, 11, ROADMAP, markerUrl, prefix + '5', "", latlonMap, edge, edge, waypoints, skipIfPresent, false));
+        return downloads;
     }
 
-    private static void downloadMap(final String geocode, final int zoom, final String mapType, final String markerUrl, final String prefix, final String shadow, final String latlonMap, final int width, final int height, final Parameters waypoints) {
+    private static Future<?> downloadMap(final String geocode, final int zoom, final String mapType, final String markerUrl, final String prefix, final String shadow, final String latlonMap, final int width, final int height, final Parameters waypoints, final boolean skipIfPresent, final boolean urgent) {
         final Parameters params = new Parameters(
                 "center", latlonMap,
                 "zoom", String.valueOf(zoom),
@@ -69,6 +81,16 @@ public final class StaticMapsProvider {
         if (waypoints != null) {
             params.addAll(waypoints);
         }
+        final File file = getMapFile(geocode, prefix, false);
+        return DOWNLOADER.download(new StaticMapsDownloader.Request(GOOGLE_STATICMAP_URL + '?' + params, file, skipIfPresent) {
+            @Override
+            void download() {
+                downloadMap(geocode, prefix, params);
+            }
+        }, urgent);
+    }
+
+    private static void downloadMap(final String geocode, final String prefix, final Parameters params) {
         final HttpResponse httpResponse = Network.getRequest(GOOGLE_STATICMAP_URL, params);
 
         if (httpResponse == null) {
@@ -93,41 +115,82 @@ public final class StaticMapsProvider {
         return Math.min(imageSize, GOOGLE_MAPS_MAX_SIZE);
     }
 
-    public static void downloadMaps(final Geocache cache) {
+    /**
+     * Download the preview map of a cache before the queued maps, and queue the downloads of its other missing static
+     * maps and of its waypoints.
+     *
+     * @return the queued downloads, to wait for them or to cancel them
+     */
+    public static List<Future<?>> downloadMaps(final Geocache cache) {
+        return downloadMaps(cache, true);
+    }
+
+    /**
+     * Queue the downloads of the missing static maps of a cache and of its waypoints.
+     *
+     * @param waitForPreview
+     *            <tt>true</tt> to download the preview map before the queued maps and wait for it, <tt>false</tt> to
+     *            queue it like the other maps when storing many caches
+     * @return the queued downloads, to wait for them or to cancel them
+     */
+    public static List<Future<?>> downloadMaps(final Geocache cache, final boolean waitForPreview) {
+        final List<Future<?>> downloads = new ArrayList<Future<?>>();
         if ((!Settings.isStoreOfflineMaps() && !Settings.isStoreOfflineWpMaps()) || StringUtils.isBlank(cache.getGeocode())) {
-            return;
+            return downloads;
         }
         int edge = guessMaxDisplaySide();
 
         if (Settings.isStoreOfflineMaps() && cache.getCoords() != null) {
-            storeCachePreviewMap(cache);
-            storeCacheStaticMap(cache, edge, false);
+            if (waitForPreview) {
+                storeCachePreviewMap(cache);
+            } else {
+                downloads.add(downloadPreviewMap(cache, false));
+            }
+            downloads.addAll(storeCacheStaticMap(cache, edge, false));
         }
 
-        // clean old and download static maps for waypoints if one is missing
+        // clean old and download missing static maps for waypoints
         if (Settings.isStoreOfflineWpMaps()) {
+            boolean missing = false;
             for (final Waypoint waypoint : cache.getWaypoints()) {
                 if (!hasAllStaticMapsForWaypoint(cache.getGeocode(), waypoint)) {
-                    refreshAllWpStaticMaps(cache, edge);
+                    missing = true;
+                    downloads.addAll(storeWaypointStaticMap(cache.getGeocode(), edge, waypoint, false));
                 }
             }
-
+            if (missing) {
+                deleteObsoleteWpStaticMaps(cache);
+            }
         }
+        return downloads;
     }
 
     /**
-     * Deletes and download all Waypoints static maps.
+     * Deletes the waypoint static maps which do not belong to a current waypoint of the cache, e.g. after a waypoint
+     * has been moved.
      *
      * @param cache
      *            The cache instance
-     * @param edge
-     *            The boundings
      */
-    private static void refreshAllWpStaticMaps(final Geocache cache, final int edge) {
-        LocalStorage.deleteFilesWithPrefix(cache.getGeocode(), MAP_FILENAME_PREFIX + WAYPOINT_PREFIX);
-        for (Waypoint waypoint : cache.getWaypoints()) {
-            storeWaypointStaticMap(cache.getGeocode(), edge, waypoint, false);
+    private static void deleteObsoleteWpStaticMaps(final Geocache cache) {
+        final Set<String> prefixes = new HashSet<String>();
+        for (final Waypoint waypoint : cache.getWaypoints()) {
+            prefixes.add(MAP_FILENAME_PREFIX + getWpMapPrefix(waypoint));
+        }
+        final File[] files = LocalStorage.getStorageDir(cache.getGeocode()).listFiles();
+        if (files == null) {
+            return;
         }
+        for (final File file : files) {
+            final String name = file.getName();
+            if (name.startsWith(MAP_FILENAME_PREFIX + WAYPOINT_PREFIX) && !prefixes.contains(StringUtils.substringBeforeLast(name, "_") + '_')) {
+                FileUtils.deleteIgnoringFailure(file);
+            }
+        }
+    }
+
+    private static String getWpMapPrefix(final Waypoint waypoint) {
+        return WAYPOINT_PREFIX + waypoint.getId() + '_' + waypoint.getStaticMapsHashcode() + '_';
     }
 
     public static void storeWaypointStaticMap(final Geocache cache, final Waypoint waypoint, final boolean waitForResult) {
@@ -135,24 +198,25 @@ public final class StaticMapsProvider {
         storeWaypointStaticMap(cache.getGeocode(), edge, waypoint, waitForResult);
     }
 
-    private static void storeWaypointStaticMap(final String geocode, final int edge, final Waypoint waypoint, final boolean waitForResult) {
+    private static List<Future<?>> storeWaypointStaticMap(final String geocode, final int edge, final Waypoint waypoint, final boolean waitForResult) {
         if (geocode == null) {
             Log.e("storeWaypointStaticMap - missing input parameter geocode");
-            return;
+            return Collections.emptyList();
         }
         if (waypoint == null) {
             Log.e("storeWaypointStaticMap - missing input parameter waypoint");
-            return;
+            return Collections.emptyList();
         }
         if (waypoint.getCoords() == null) {
-            return;
+            return Collections.emptyList();
         }
         String wpLatlonMap = waypoint.getCoords().format(Format.LAT_LON_DECDEGREE_COMMA);
         String wpMarkerUrl = getWpMarkerUrl(waypoint);
-        if (!hasAllStaticMapsForWaypoint(geocode, waypoint)) {
-            // download map images in separate background thread for higher performance
-            downloadMaps(geocode, wpMarkerUrl, WAYPOINT_PREFIX + waypoint.getId() + '_' + waypoint.getStaticMapsHashcode() + "_", wpLatlonMap, edge, null, waitForResult);
+        if (hasAllStaticMapsForWaypoint(geocode, waypoint)) {
+            return Collections.emptyList();
         }
+        // the maps of a waypoint are identified by its coordinates and type, present ones are not downloaded again
+        return downloadMaps(geocode, wpMarkerUrl, getWpMapPrefix(waypoint), wpLatlonMap, edge, null, true, waitForResult);
     }
 
     public static void storeCacheStaticMap(final Geocache cache, final boolean waitForResult) {
@@ -160,7 +224,7 @@ public final class StaticMapsProvider {
         storeCacheStaticMap(cache, edge, waitForResult);
     }
 
-    private static void storeCacheStaticMap(final Geocache cache, final int edge, final boolean waitForResult) {
+    private static List<Future<?>> storeCacheStaticMap(final Geocache cache, final int edge, final boolean waitForResult) {
         final String latlonMap = cache.getCoords().format(Format.LAT_LON_DECDEGREE_COMMA);
         final Parameters waypoints = new Parameters();
         for (final Waypoint waypoint : cache.getWaypoints()) {
@@ -172,15 +236,22 @@ public final class StaticMapsProvider {
         }
         // download map images in separate background thread for higher performance
         final String cacheMarkerUrl = getCacheMarkerUrl(cache);
-        downloadMaps(cache.getGeocode(), cacheMarkerUrl, "", latlonMap, edge, waypoints, waitForResult);
+        return downloadMaps(cache.getGeocode(), cacheMarkerUrl, "", latlonMap, edge, waypoints, false, waitForResult);
     }
 
+    /**
+     * Download the preview map of a cache before the queued maps, and wait for it.
+     */
     public static void storeCachePreviewMap(final Geocache cache) {
+        StaticMapsDownloader.await(downloadPreviewMap(cache, true));
+    }
+
+    private static Future<?> downloadPreviewMap(final Geocache cache, final boolean urgent) {
         final String latlonMap = cache.getCoords().format(Format.LAT_LON_DECDEGREE_COMMA);
         final Point displaySize = Compatibility.getDisplaySize();
         final int minSize = Math.min(displaySize.x, displaySize.y);
         final String markerUrl = MARKERS_URL + "my_location_mdpi.png";
-        downloadMap(cache.getGeocode(), 15, ROADMAP, markerUrl, PREFIX_PREVIEW, "shadow:false|", latlonMap, minSize, minSize, null);
+        return downloadMap(cache.getGeocode(), 15, ROADMAP, markerUrl, PREFIX_PREVIEW, "shadow:false|", latlonMap, minSize, minSize, null, false, urgent);
     }
 
     private static int guessMaxDisplaySide() {
@@ -188,24 +259,15 @@ public final class StaticMapsProvider {
         return Math.max(displaySize.x, displaySize.y) - 25;
     }
 
-    private static void downloadMaps(final String geocode, final String markerUrl, final String prefix, final String latlonMap, final int edge,
-            final Parameters waypoints, final boolean waitForResult) {
+    private static List<Future<?>> downloadMaps(final String geocode, final String markerUrl, final String prefix, final String latlonMap, final int edge,
+            final Parameters waypoints, final boolean skipIfPresent, final boolean waitForResult) {
+        final List<Future<?>> downloads = downloadDifferentZooms(geocode, markerUrl, prefix, latlonMap, edge, waypoints, skipIfPresent);
         if (waitForResult) {
-            downloadDifferentZooms(geocode, markerUrl, prefix, latlonMap, edge, waypoints);
-        }
-        else {
-            final Runnable currentTask = new Runnable() {
-                @Override
-                public void run() {
-                    downloadDifferentZooms(geocode, markerUrl, prefix, latlonMap, edge, waypoints);
-                }
-            };
-            try {
-                POOL.add(currentTask, 20, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                Log.e("StaticMapsProvider.downloadMaps error adding task", e);
+            for (final Future<?> download : downloads) {
+                StaticMapsDownloader.await(download);
             }
         }
+        return downloads;
     }
 
     private static String getCacheMarkerUrl(final Geocache cache) {
@@ -246,7 +308,16 @@ public final class StaticMapsProvider {
      * @return <code>true</code> if at least one map file exists; <code>false</code> otherwise
      */
     public static boolean hasStaticMap(@NonNull final Geocache cache) {
-       final String geocode = cache.getGeocode();
+        return hasStaticMap(cache.getGeocode());
+    }
+
+    /**
+     * Check if at least one map file exists for the given geocode.
+     *
+     * @param geocode
+     * @return <code>true</code> if at least one map file exists; <code>false</code> otherwise
+     */
+    public static boolean hasStaticMap(final String geocode) {
         if (StringUtils.isBlank(geocode)) {
             return false;
         }
@@ -286,10 +357,9 @@ public final class StaticMapsProvider {
      * @return <code>true</code> if all map files exist; <code>false</code> otherwise
      */
     public static boolean hasAllStaticMapsForWaypoint(final String geocode, final Waypoint waypoint) {
-        int waypointId = waypoint.getId();
-        int waypointMapHash = waypoint.getStaticMapsHashcode();
+        final String prefix = getWpMapPrefix(waypoint);
         for (int level = 1; level <= MAPS_LEVEL_MAX; level++) {
-            File mapFile = StaticMapsProvider.getMapFile(geocode, WAYPOINT_PREFIX + waypointId + "_" + waypointMapHash + "_" + level, false);
+            File mapFile = StaticMapsProvider.getMapFile(geocode, prefix + level, false);
             boolean mapExists = mapFile.exists();
             if (!mapExists) {
                 return false;
@@ -0,0 +1,286 @@
+package cgeo.geocaching;
+
+import cgeo.geocaching.concurrent.PriorityThreadFactory;
+import cgeo.geocaching.utils.Log;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of the database writes committed later by a dedicated thread.
+ *
+ * The saves are queued as snapshots of the caches taken when saving, as the caches may be changed before the writes
+ * are committed. Writes for the same cache queued before the thread gets to them are coalesced, so that only the last
+ * saved state, list and visit date of a cache are written. All the writes taken from the queue at once are committed
+ * together, in a single transaction. Writes which cannot be committed are tried again a few times before they are
+ * dropped. Readers which need the writes queued so far use {@link #flush()} or {@link #flush(Collection)} to wait for
+ * them.
+ *
+ * @param <T>
+ *            the type of the snapshots of the saved caches
+ */
+final class WriteBehindQueue<T> {
+
+    interface Committer<T> {
+        /**
+         * Write all the given changes to the database, preferably in a single transaction.
+         *
+         * @param saves
+         *            the snapshots of the caches to store by geocode
+         * @param moves
+         *            the new list by geocode
+         * @param visits
+         *            the new visit date by geocode
+         * @return the geocodes whose writes could not be committed
+         */
+        @NonNull
+        Set<String> commit(@NonNull final Map<String, T> saves, @NonNull final Map<String, Integer> moves, @NonNull final Map<String, Long> visits);
+    }
+
+    /** Number of times failing writes are tried before they are dropped */
+    static final int MAX_ATTEMPTS = 3;
+
+    private final Committer<T> committer;
+    private final long commitDelayMillis;
+    private final ThreadPoolExecutor executor;
+
+    /** Pending writes by geocode. Guarded by <tt>this</tt>. */
+    private final Map<String, T> saves = new LinkedHashMap<String, T>();
+    private final Map<String, Integer> moves = new LinkedHashMap<String, Integer>();
+    private final Map<String, Long> visits = new LinkedHashMap<String, Long>();
+    /** Geocodes of the writes being committed. Guarded by <tt>this</tt>. */
+    private final Set<String> committing = new HashSet<String>();
+
+    /**
+     * Number of writes queued, number of them already committed or dropped, and number of writes queued when writes
+     * were dropped last. Guarded by <tt>this</tt>.
+     */
+    private long queued = 0;
+    private long committed = 0;
+    private long dropped = 0;
+    private int flushing = 0;
+    private boolean running = false;
+    private volatile Thread writer = null;
+
+    /**
+     * @param commitDelayMillis
+     *            the time the writes are left in the queue to be coalesced with later ones, unless they are flushed
+     */
+    WriteBehindQueue(@NonNull final Committer<T> committer, final long commitDelayMillis) {
+        this.committer = committer;
+        this.commitDelayMillis = commitDelayMillis;
+        // the thread ends when idle for some time, and is started again for the next write
+        executor = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new PriorityThreadFactory(Thread.NORM_PRIORITY));
+    }
+
+    /**
+     * @param snapshots
+     *            the snapshots of the caches to store by geocode, which must not be changed afterwards
+     */
+    synchronized void save(@NonNull final Map<String, T> snapshots) {
+        for (final Map.Entry<String, T> snapshot : snapshots.entrySet()) {
+            // a later save overwrites the list and visit date of an earlier move or visit
+            saves.put(snapshot.getKey(), snapshot.getValue());
+            moves.remove(snapshot.getKey());
+            visits.remove(snapshot.getKey());
+        }
+        queued();
+    }
+
+    synchronized void move(@NonNull final Collection<String> geocodes, final int listId) {
+        for (final String geocode : geocodes) {
+            moves.put(geocode, listId);
+        }
+        queued();
+    }
+
+    synchronized void visit(@NonNull final Collection<String> geocodes, final long visitedDate) {
+        for (final String geocode : geocodes) {
+            visits.put(geocode, visitedDate);
+        }
+        queued();
+    }
+
+    private void queued() {
+        queued++;
+        if (!running) {
+            running = true;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    commitAll();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if called by the thread committing the writes
+     */
+    boolean isWriterThread() {
+        return Thread.currentThread() == writer;
+    }
+
+    /**
+     * Wait until all the writes queued before are committed. Returns at once when called by the thread committing
+     * them.
+     *
+     * @return <tt>false</tt> if some of the writes were dropped as they could not be committed
+     */
+    boolean flush() {
+        return flush(null);
+    }
+
+    /**
+     * Wait until all the writes queued before are committed if some of them are for the given caches, or return at
+     * once otherwise.
+     *
+     * @param geocodes
+     *            the geocodes of the caches to be read, or <tt>null</tt> to wait for the writes of all caches
+     * @return <tt>false</tt> if some of the writes were dropped as they could not be committed
+     */
+    boolean flush(final Collection<String> geocodes) {
+        if (isWriterThread()) {
+            return true;
+        }
+        boolean interrupted = false;
+        final boolean success;
+        synchronized (this) {
+            final long target = queued;
+            final long start = committed;
+            if (start >= target || (geocodes != null && !isPending(geocodes))) {
+                return true;
+            }
+            flushing++;
+            // do not let the writer wait for more writes
+            notifyAll();
+            try {
+                while (committed < target) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        // the caller relies on reading the writes, finish waiting for them
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                flushing--;
+            }
+            // writes were dropped by one of the commits waited for
+            success = dropped <= start;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return success;
+    }
+
+    /**
+     * @return <tt>true</tt> if writes for the given cache are queued or being committed
+     */
+    synchronized boolean isPending(@NonNull final String geocode) {
+        return isPending(Collections.singletonList(geocode));
+    }
+
+    private boolean isPending(final Collection<String> geocodes) {
+        for (final String geocode : geocodes) {
+            if (saves.containsKey(geocode) || moves.containsKey(geocode) || visits.containsKey(geocode) || committing.contains(geocode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void commitAll() {
+        writer = Thread.currentThread();
+        try {
+            while (true) {
+                final Map<String, T> savesToCommit;
+                final Map<String, Integer> movesToCommit;
+                final Map<String, Long> visitsToCommit;
+                final long generation;
+                synchronized (this) {
+                    if (committed == queued) {
+                        running = false;
+                        return;
+                    }
+                    if (flushing == 0 && commitDelayMillis > 0) {
+                        // let repeated writes of the same caches coalesce
+                        try {
+                            wait(commitDelayMillis);
+                        } catch (final InterruptedException e) {
+                            // commit at once
+                        }
+                    }
+                    savesToCommit = new LinkedHashMap<String, T>(saves);
+                    movesToCommit = new LinkedHashMap<String, Integer>(moves);
+                    visitsToCommit = new LinkedHashMap<String, Long>(visits);
+                    committing.addAll(saves.keySet());
+                    committing.addAll(moves.keySet());
+                    committing.addAll(visits.keySet());
+                    saves.clear();
+                    moves.clear();
+                    visits.clear();
+                    generation = queued;
+                }
+                final boolean success = commit(savesToCommit, movesToCommit, visitsToCommit);
+                synchronized (this) {
+                    committing.clear();
+                    committed = generation;
+                    if (!success) {
+                        dropped = generation;
+                    }
+                    notifyAll();
+                }
+            }
+        } finally {
+            writer = null;
+        }
+    }
+
+    /**
+     * Commit the writes, trying the failed ones again up to {@link #MAX_ATTEMPTS} times.
+     *
+     * @return <tt>false</tt> if some writes were dropped
+     */
+    private boolean commit(final Map<String, T> savesToCommit, final Map<String, Integer> movesToCommit, final Map<String, Long> visitsToCommit) {
+        for (int attempt = 1;; attempt++) {
+            Set<String> failed;
+            try {
+                failed = committer.commit(savesToCommit, movesToCommit, visitsToCommit);
+            } catch (final RuntimeException e) {
+                Log.e("WriteBehindQueue: committing " + (savesToCommit.size() + movesToCommit.size() + visitsToCommit.size()) + " writes failed", e);
+                failed = new HashSet<String>(savesToCommit.keySet());
+                failed.addAll(movesToCommit.keySet());
+                failed.addAll(visitsToCommit.keySet());
+            }
+            if (failed.isEmpty()) {
+                return true;
+            }
+            if (attempt >= MAX_ATTEMPTS) {
+                Log.e("WriteBehindQueue: dropping the writes of " + failed + " after " + attempt + " attempts");
+                return false;
+            }
+            Log.w("WriteBehindQueue: trying the writes of " + failed + " again");
+            savesToCommit.keySet().retainAll(failed);
+            movesToCommit.keySet().retainAll(failed);
+            visitsToCommit.keySet().retainAll(failed);
+            try {
+                Thread.sleep(commitDelayMillis);
+            } catch (final InterruptedException e) {
+                // try again at once
+            }
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package cgeo.geocaching.compatibility;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.database.sqlite.SQLiteDatabase;
 
 /**
  * Android level 11 support
@@ -14,4 +15,9 @@ public class AndroidLevel11 implements AndroidLevel11Interface {
         activity.invalidateOptionsMenu();
     }
 
+    @Override
+    public boolean enableWriteAheadLogging(final SQLiteDatabase database) {
+        return database.enableWriteAheadLogging();
+    }
+
 }
@@ -1,6 +1,7 @@
 package cgeo.geocaching.compatibility;
 
 import android.app.Activity;
+import android.database.sqlite.SQLiteDatabase;
 
 /**
  * implement level 11 API using older methods
@@ -12,4 +13,10 @@ public class AndroidLevel11Emulation implements AndroidLevel11Interface {
         // do nothing
     }
 
+    @Override
+    public boolean enableWriteAheadLogging(final SQLiteDatabase database) {
+        // not supported, the database keeps its rollback journal
+        return false;
+    }
+
 }
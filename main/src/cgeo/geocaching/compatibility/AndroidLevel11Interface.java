@@ -1,8 +1,11 @@
 package cgeo.geocaching.compatibility;
 
 import android.app.Activity;
+import android.database.sqlite.SQLiteDatabase;
 
 public interface AndroidLevel11Interface {
     public void invalidateOptionsMenu(final Activity activity);
 
+    public boolean enableWriteAheadLogging(final SQLiteDatabase database);
+
 }
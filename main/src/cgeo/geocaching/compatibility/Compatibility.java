@@ -9,16 +9,19 @@ import org.eclipse.jdt.annotation.NonNull;
 
 import android.app.Activity;
 import android.content.Intent;
+import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Point;
 import android.os.Build;
 import android.text.InputType;
 import android.widget.EditText;
 
 import java.io.File;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public final class Compatibility {
 
     private final static int sdkVersion = Build.VERSION.SDK_INT;
+    private final static boolean isLevel9 = sdkVersion >= 9;
     private final static boolean isLevel8 = sdkVersion >= 8;
     private final static boolean isLevel5 = sdkVersion >= 5;
 
@@ -84,10 +87,28 @@ public final class Compatibility {
         activity.startActivity(intent);
     }
 
+    /**
+     * Let the core threads of an executor end when idle. They are kept below level 9, where this is not available.
+     */
+    public static void allowCoreThreadTimeOut(final ThreadPoolExecutor executor) {
+        if (isLevel9) {
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
     public static void invalidateOptionsMenu(final Activity activity) {
         level11.invalidateOptionsMenu(activity);
     }
 
+    /**
+     * Switch the database to write-ahead logging, so that other connections can read while it is writing.
+     *
+     * @return <tt>true</tt> if the database uses write-ahead logging
+     */
+    public static boolean enableWriteAheadLogging(final SQLiteDatabase database) {
+        return level11.enableWriteAheadLogging(database);
+    }
+
     public static int getDisplayWidth() {
         return level13.getDisplayWidth();
     }
@@ -0,0 +1,76 @@
+package cgeo.geocaching.concurrent;
+
+/**
+ * Token bucket rate limiter. Tokens are added at a constant rate up to the capacity of the bucket, and every
+ * operation takes one token, so that bursts up to the capacity are allowed while the long term rate is limited.
+ */
+public class TokenBucket {
+    private final int capacity;
+    private final long nanosPerToken;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param capacity
+     *            the maximum number of tokens, which is the size of the largest burst
+     * @param tokensPerSecond
+     *            the long term rate
+     */
+    public TokenBucket(final int capacity, final double tokensPerSecond) {
+        if (capacity < 1 || tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and rate must be positive");
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = (long) (1000000000L / tokensPerSecond);
+        this.tokens = capacity;
+        this.lastRefill = nanoTime();
+    }
+
+    /**
+     * Take a token if one is available.
+     *
+     * @return <tt>true</tt> if a token has been taken
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Take a token, waiting until one is available.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            final long waitNanos;
+            synchronized (this) {
+                refill();
+                if (tokens >= 1) {
+                    tokens--;
+                    return;
+                }
+                waitNanos = (long) ((1 - tokens) * nanosPerToken);
+            }
+            Thread.sleep(Math.max(1, waitNanos / 1000000L), (int) (waitNanos % 1000000L));
+        }
+    }
+
+    private void refill() {
+        final long now = nanoTime();
+        tokens = Math.min(capacity, tokens + (double) (now - lastRefill) / nanosPerToken);
+        lastRefill = now;
+    }
+
+    /**
+     * Current time in nanoseconds. Can be overridden in tests.
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+}
@@ -10,6 +10,7 @@ import cgeo.geocaching.connector.capability.ISearchByFinder;
 import cgeo.geocaching.connector.capability.ISearchByKeyword;
 import cgeo.geocaching.connector.capability.ISearchByOwner;
 import cgeo.geocaching.connector.capability.ISearchByViewPort;
+import cgeo.geocaching.connector.capability.ISearchByViewPortIncrementally;
 import cgeo.geocaching.connector.ec.ECConnector;
 import cgeo.geocaching.connector.gc.GCConnector;
 import cgeo.geocaching.connector.gc.MapTokens;
@@ -30,6 +31,7 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import rx.Observable;
 import rx.schedulers.Schedulers;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
 
@@ -182,27 +184,40 @@ public final class ConnectorFactory {
 
     /** @see ISearchByViewPort#searchByViewport */
     public static Observable<SearchResult> searchByViewport(final @NonNull Viewport viewport, final MapTokens tokens) {
+        return searchByViewportIncrementally(viewport, tokens).reduce(new SearchResult(), new Func2<SearchResult, SearchResult, SearchResult>() {
+
+            @Override
+            public SearchResult call(final SearchResult result, final SearchResult searchResult) {
+                result.addSearchResult(searchResult);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Search the viewport on all the active connectors, emitting partial results as soon as they are available.
+     * Connectors implementing {@link ISearchByViewPortIncrementally} may emit several results.
+     *
+     * @see ISearchByViewPortIncrementally#searchByViewportIncrementally
+     */
+    public static Observable<SearchResult> searchByViewportIncrementally(final @NonNull Viewport viewport, final MapTokens tokens) {
         return Observable.from(searchByViewPortConns).filter(new Func1<ISearchByViewPort, Boolean>() {
             @Override
             public Boolean call(final ISearchByViewPort connector) {
                 return connector.isActive();
             }
-        }).parallel(new Func1<Observable<ISearchByViewPort>, Observable<SearchResult>>() {
+        }).flatMap(new Func1<ISearchByViewPort, Observable<SearchResult>>() {
             @Override
-            public Observable<SearchResult> call(final Observable<ISearchByViewPort> connector) {
-                return connector.map(new Func1<ISearchByViewPort, SearchResult>() {
+            public Observable<SearchResult> call(final ISearchByViewPort connector) {
+                if (connector instanceof ISearchByViewPortIncrementally) {
+                    return ((ISearchByViewPortIncrementally) connector).searchByViewportIncrementally(viewport, tokens);
+                }
+                return Observable.defer(new Func0<Observable<SearchResult>>() {
                     @Override
-                    public SearchResult call(final ISearchByViewPort connector) {
-                        return connector.searchByViewport(viewport, tokens);
+                    public Observable<SearchResult> call() {
+                        return Observable.from(connector.searchByViewport(viewport, tokens));
                     }
-                });
-            }
-        }, Schedulers.io()).reduce(new SearchResult(), new Func2<SearchResult, SearchResult, SearchResult>() {
-
-            @Override
-            public SearchResult call(final SearchResult result, final SearchResult searchResult) {
-                result.addSearchResult(searchResult);
-                return result;
+                }).subscribeOn(Schedulers.io());
             }
         });
     }
@@ -0,0 +1,20 @@
+package cgeo.geocaching.connector.capability;
+
+import cgeo.geocaching.SearchResult;
+import cgeo.geocaching.connector.gc.MapTokens;
+import cgeo.geocaching.geopoint.Viewport;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import rx.Observable;
+
+/**
+ * Connector capability to search a viewport with partial results being delivered while the search is still running.
+ */
+public interface ISearchByViewPortIncrementally extends ISearchByViewPort {
+    /**
+     * Search the viewport. The complete result is the combination of all the emitted partial results, which
+     * must be consistent with {@link #searchByViewport(Viewport, MapTokens)}.
+     */
+    public Observable<SearchResult> searchByViewportIncrementally(final @NonNull Viewport viewport, final MapTokens tokens);
+}
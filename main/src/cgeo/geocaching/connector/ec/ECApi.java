@@ -103,7 +103,7 @@ public class ECApi {
         }
         if (!isRetry && response.getStatusLine().getStatusCode() == 403) {
             if (ecLogin.login() == StatusCode.NO_ERROR) {
-                apiRequest(uri, params, true);
+                Network.release(apiRequest(uri, params, true));
             }
         }
         if (response.getStatusLine().getStatusCode() != 200) {
@@ -146,10 +146,12 @@ public class ECApi {
         // retry at most one time
         if (!isRetry && response.getStatusLine().getStatusCode() == 403) {
             if (ecLogin.login() == StatusCode.NO_ERROR) {
+                Network.release(response);
                 return apiRequest(uri, params, true);
             }
         }
         if (response.getStatusLine().getStatusCode() != 200) {
+            Network.release(response);
             return null;
         }
         return response;
@@ -165,6 +167,9 @@ public class ECApi {
         } catch (Exception e) {
             Log.e("Error importing gpx from extremcaching.com", e);
             return Collections.emptyList();
+        } finally {
+            // the parser may stop before the end of the body
+            Network.release(response);
         }
     }
 
@@ -18,7 +18,7 @@ import cgeo.geocaching.connector.capability.ISearchByFinder;
 import cgeo.geocaching.connector.capability.ISearchByGeocode;
 import cgeo.geocaching.connector.capability.ISearchByKeyword;
 import cgeo.geocaching.connector.capability.ISearchByOwner;
-import cgeo.geocaching.connector.capability.ISearchByViewPort;
+import cgeo.geocaching.connector.capability.ISearchByViewPortIncrementally;
 import cgeo.geocaching.enumerations.StatusCode;
 import cgeo.geocaching.geopoint.Geopoint;
 import cgeo.geocaching.geopoint.Viewport;
@@ -35,6 +35,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
+import rx.Observable;
 import rx.functions.Action1;
 
 import android.content.Context;
@@ -46,7 +47,7 @@ import java.io.File;
 import java.util.List;
 import java.util.regex.Pattern;
 
-public class GCConnector extends AbstractConnector implements ISearchByGeocode, ISearchByCenter, ISearchByViewPort, ISearchByKeyword, ILogin, ICredentials, ISearchByOwner, ISearchByFinder, FieldNotesCapability {
+public class GCConnector extends AbstractConnector implements ISearchByGeocode, ISearchByCenter, ISearchByViewPortIncrementally, ISearchByKeyword, ILogin, ICredentials, ISearchByOwner, ISearchByFinder, FieldNotesCapability {
 
     private static final String CACHE_URL_SHORT = "http://coord.info/";
     // Double slash is used to force open in browser
@@ -180,6 +181,11 @@ public class GCConnector extends AbstractConnector implements ISearchByGeocode,
         return GCMap.searchByViewport(viewport, tokens);
     }
 
+    @Override
+    public Observable<SearchResult> searchByViewportIncrementally(@NonNull final Viewport viewport, final MapTokens tokens) {
+        return GCMap.searchByViewportIncrementally(viewport, tokens);
+    }
+
     @Override
     public boolean isZippedGPXFile(final String fileName) {
         return GPX_ZIP_FILE_PATTERN.matcher(fileName).matches();
@@ -5,6 +5,7 @@ import cgeo.geocaching.R;
 import cgeo.geocaching.connector.AbstractLogin;
 import cgeo.geocaching.enumerations.StatusCode;
 import cgeo.geocaching.network.Cookies;
+import cgeo.geocaching.network.HttpCache;
 import cgeo.geocaching.network.HtmlImage;
 import cgeo.geocaching.network.Network;
 import cgeo.geocaching.network.Parameters;
@@ -244,6 +245,7 @@ public class GCLogin extends AbstractLogin {
                     "__EVENTARGUMENT", "");
             GCLogin.transferViewstates(page, params);
             final HttpResponse response = Network.postRequest(LANGUAGE_CHANGE_URI, params, new Parameters("Referer", LANGUAGE_CHANGE_URI));
+            Network.release(response);
             if (Network.isSuccess(response)) {
                 Log.i("changed language on geocaching.com to English");
                 return true;
@@ -455,7 +457,21 @@ public class GCLogin extends AbstractLogin {
      */
     @Nullable
     public String getRequestLogged(@NonNull final String uri, @Nullable final Parameters params) {
-        final HttpResponse response = Network.getRequest(uri, params);
+        return getRequestLogged(uri, params, null);
+    }
+
+    /**
+     * GET HTTP request. Do the request a second time if the user is not logged in
+     *
+     * @param uri
+     * @param params
+     * @param cache
+     *            the cache storing the page, or <tt>null</tt> to always download it
+     * @return
+     */
+    @Nullable
+    public String getRequestLogged(@NonNull final String uri, @Nullable final Parameters params, @Nullable final HttpCache cache) {
+        final HttpResponse response = getRequest(uri, params, cache);
         final String data = Network.getResponseData(response, canRemoveWhitespace(uri));
 
         // A page not found will not be found if the user logs in either
@@ -464,13 +480,18 @@ public class GCLogin extends AbstractLogin {
         }
 
         if (login() == StatusCode.NO_ERROR) {
-            return Network.getResponseData(Network.getRequest(uri, params), canRemoveWhitespace(uri));
+            return Network.getResponseData(getRequest(uri, params, cache), canRemoveWhitespace(uri));
         }
 
         Log.w("Working as guest.");
         return data;
     }
 
+    @Nullable
+    private static HttpResponse getRequest(@NonNull final String uri, @Nullable final Parameters params, @Nullable final HttpCache cache) {
+        return cache != null ? Network.getRequest(uri, params, cache) : Network.getRequest(uri, params);
+    }
+
     /**
      * Unfortunately the cache details page contains user generated whitespace in the personal note, therefore we cannot
      * remove the white space from cache details pages.
@@ -4,6 +4,8 @@ import cgeo.geocaching.CgeoApplication;
 import cgeo.geocaching.DataStore;
 import cgeo.geocaching.Geocache;
 import cgeo.geocaching.SearchResult;
+import cgeo.geocaching.compatibility.Compatibility;
+import cgeo.geocaching.concurrent.PriorityThreadFactory;
 import cgeo.geocaching.enumerations.CacheSize;
 import cgeo.geocaching.enumerations.CacheType;
 import cgeo.geocaching.enumerations.LiveMapStrategy.Strategy;
@@ -16,30 +18,65 @@ import cgeo.geocaching.geopoint.Viewport;
 import cgeo.geocaching.network.Parameters;
 import cgeo.geocaching.settings.Settings;
 import cgeo.geocaching.ui.Formatter;
-import cgeo.geocaching.utils.LeastRecentlyUsedMap;
 import cgeo.geocaching.utils.Log;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jdt.annotation.Nullable;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
 import android.graphics.Bitmap;
 
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class GCMap {
     private static Viewport lastSearchViewport = null;
 
+    /** Maximum number of live map tiles downloaded and parsed at the same time. */
+    private static final int MAX_PARALLEL_TILES = 4;
+    private static final Scheduler tileScheduler = Schedulers.executor(createTileExecutor());
+    /** Single low priority thread used to prefetch the tiles around the displayed ones. */
+    private static final Scheduler prefetchScheduler = Schedulers.executor(createPrefetchExecutor());
+
+    /**
+     * The tile threads only run while the map is used, they end after some idle time.
+     */
+    private static ThreadPoolExecutor createTileExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_TILES, MAX_PARALLEL_TILES,
+                5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        Compatibility.allowCoreThreadTimeOut(executor);
+        return executor;
+    }
+
+    private static ThreadPoolExecutor createPrefetchExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new PriorityThreadFactory(Thread.MIN_PRIORITY));
+        Compatibility.allowCoreThreadTimeOut(executor);
+        return executor;
+    }
+
     public static SearchResult searchByGeocodes(Set<String> geocodes) {
         final SearchResult result = new SearchResult();
 
@@ -119,104 +156,28 @@ public class GCMap {
 
         try {
 
-            final LeastRecentlyUsedMap<String, String> nameCache = new LeastRecentlyUsedMap.LruCache<String, String>(2000); // JSON id, cache name
-
             if (StringUtils.isEmpty(data)) {
                 throw new JSONException("No page given");
             }
 
-            // Example JSON information
-            // {"grid":[....],
-            //  "keys":["","55_55","55_54","17_25","55_53","17_27","17_26","57_53","57_55","3_62","3_61","57_54","3_60","15_27","15_26","15_25","4_60","4_61","4_62","16_25","16_26","16_27","2_62","2_60","2_61","56_53","56_54","56_55"],
-            //  "data":{"55_55":[{"i":"gEaR","n":"Spiel & Sport"}],"55_54":[{"i":"gEaR","n":"Spiel & Sport"}],"17_25":[{"i":"Rkzt","n":"EDSSW:  Rathaus "}],"55_53":[{"i":"gEaR","n":"Spiel & Sport"}],"17_27":[{"i":"Rkzt","n":"EDSSW:  Rathaus "}],"17_26":[{"i":"Rkzt","n":"EDSSW:  Rathaus "}],"57_53":[{"i":"gEaR","n":"Spiel & Sport"}],"57_55":[{"i":"gEaR","n":"Spiel & Sport"}],"3_62":[{"i":"gOWz","n":"Baumarktserie - Wer Wo Was -"}],"3_61":[{"i":"gOWz","n":"Baumarktserie - Wer Wo Was -"}],"57_54":[{"i":"gEaR","n":"Spiel & Sport"}],"3_60":[{"i":"gOWz","n":"Baumarktserie - Wer Wo Was -"}],"15_27":[{"i":"Rkzt","n":"EDSSW:  Rathaus "}],"15_26":[{"i":"Rkzt","n":"EDSSW:  Rathaus "}],"15_25":[{"i":"Rkzt","n":"EDSSW:  Rathaus "}],"4_60":[{"i":"gOWz","n":"Baumarktserie - Wer Wo Was -"}],"4_61":[{"i":"gOWz","n":"Baumarktserie - Wer Wo Was -"}],"4_62":[{"i":"gOWz","n":"Baumarktserie - Wer Wo Was -"}],"16_25":[{"i":"Rkzt","n":"EDSSW:  Rathaus "}],"16_26":[{"i":"Rkzt","n":"EDSSW:  Rathaus "}],"16_27":[{"i":"Rkzt","n":"EDSSW:  Rathaus "}],"2_62":[{"i":"gOWz","n":"Baumarktserie - Wer Wo Was -"}],"2_60":[{"i":"gOWz","n":"Baumarktserie - Wer Wo Was -"}],"2_61":[{"i":"gOWz","n":"Baumarktserie - Wer Wo Was -"}],"56_53":[{"i":"gEaR","n":"Spiel & Sport"}],"56_54":[{"i":"gEaR","n":"Spiel & Sport"}],"56_55":[{"i":"gEaR","n":"Spiel & Sport"}]}
-            //  }
+            // the parser of the current thread reuses its buffers for every tile
+            final UTFGridParser parser = UTFGridParser.get();
+            parser.parse(data);
 
-            final JSONObject json = new JSONObject(data);
+            // read all the pixels of the tile at once, they are shared by all the caches of the tile
+            final IconDecoder.TilePixels tilePixels = strategy.flags.contains(StrategyFlag.PARSE_TILES) && bitmap != null ? IconDecoder.readPixels(bitmap) : null;
 
-            final JSONArray grid = json.getJSONArray("grid");
-            if (grid == null || grid.length() != (UTFGrid.GRID_MAXY + 1)) {
-                throw new JSONException("No grid inside JSON");
-            }
-            final JSONArray keys = json.getJSONArray("keys");
-            if (keys == null) {
-                throw new JSONException("No keys inside JSON");
-            }
-            final JSONObject dataObject = json.getJSONObject("data");
-            if (dataObject == null) {
-                throw new JSONException("No data inside JSON");
-            }
-
-            /*
-             * Optimization: the grid can get ignored. The keys are the grid position in the format x_y
-             * It's not used at the moment due to optimizations
-             * But maybe we need it some day...
-             *
-             * // attach all keys with the cache positions in the tile
-             * Map<String, UTFGridPosition> keyPositions = new HashMap<String, UTFGridPosition>(); // JSON key, (x/y) in
-             * grid
-             * for (int y = 0; y < grid.length(); y++) {
-             * String rowUTF8 = grid.getString(y);
-             * if (rowUTF8.length() != (UTFGrid.GRID_MAXX + 1)) {
-             * throw new JSONException("Grid has wrong size");
-             * }
-             *
-             * for (int x = 0; x < UTFGrid.GRID_MAXX; x++) {
-             * char c = rowUTF8.charAt(x);
-             * if (c != ' ') {
-             * short id = UTFGrid.getUTFGridId(c);
-             * keyPositions.put(keys.getString(id), new UTFGridPosition(x, y));
-             * }
-             * }
-             * }
-             */
-
-            // iterate over the data and construct all caches in this tile
-            Map<String, List<UTFGridPosition>> positions = new HashMap<String, List<UTFGridPosition>>(); // JSON id as key
-            Map<String, List<UTFGridPosition>> singlePositions = new HashMap<String, List<UTFGridPosition>>(); // JSON id as key
-
-            for (int i = 1; i < keys.length(); i++) { // index 0 is empty
-                String key = keys.getString(i);
-                if (StringUtils.isNotBlank(key)) {
-                    UTFGridPosition pos = UTFGridPosition.fromString(key);
-                    JSONArray dataForKey = dataObject.getJSONArray(key);
-                    for (int j = 0; j < dataForKey.length(); j++) {
-                        JSONObject cacheInfo = dataForKey.getJSONObject(j);
-                        String id = cacheInfo.getString("i");
-                        nameCache.put(id, cacheInfo.getString("n"));
-
-                        List<UTFGridPosition> listOfPositions = positions.get(id);
-                        List<UTFGridPosition> singleListOfPositions = singlePositions.get(id);
-
-                        if (listOfPositions == null) {
-                            listOfPositions = new ArrayList<UTFGridPosition>();
-                            positions.put(id, listOfPositions);
-                            singleListOfPositions = new ArrayList<UTFGridPosition>();
-                            singlePositions.put(id, singleListOfPositions);
-                        }
-
-                        listOfPositions.add(pos);
-                        if (dataForKey.length() == 1) {
-                            singleListOfPositions.add(pos);
-                        }
-
-                    }
-                }
-            }
-
-            final ArrayList<Geocache> caches = new ArrayList<Geocache>();
-            for (Entry<String, List<UTFGridPosition>> entry : positions.entrySet()) {
-                String id = entry.getKey();
-                List<UTFGridPosition> pos = entry.getValue();
-                UTFGridPosition xy = UTFGrid.getPositionInGrid(pos);
+            final ArrayList<Geocache> caches = new ArrayList<Geocache>(parser.getCacheCount());
+            for (int index = 0; index < parser.getCacheCount(); index++) {
                 Geocache cache = new Geocache();
                 cache.setDetailed(false);
                 cache.setReliableLatLon(false);
-                cache.setGeocode(id);
-                cache.setName(nameCache.get(id));
-                cache.setCoords(tile.getCoord(xy), tile.getZoomLevel());
-                if (strategy.flags.contains(StrategyFlag.PARSE_TILES) && bitmap != null) {
-                    for (UTFGridPosition singlePos : singlePositions.get(id)) {
-                        if (IconDecoder.parseMapPNG(cache, bitmap, singlePos, tile.getZoomLevel())) {
+                cache.setGeocode(parser.getId(index));
+                cache.setName(parser.getName(index));
+                cache.setCoords(tile.getCoord(parser.getPosition(index)), tile.getZoomLevel());
+                if (tilePixels != null) {
+                    for (int single = parser.getFirstSinglePosition(index); single >= 0; single = parser.getNextSinglePosition(single)) {
+                        if (IconDecoder.parseMapPNG(cache, tilePixels, parser.getSingleX(single), parser.getSingleY(single), tile.getZoomLevel())) {
                             break; // cache parsed
                         }
                     }
@@ -250,6 +211,24 @@ public class GCMap {
         return searchResult;
     }
 
+    /**
+     * @return the current speed in km/h
+     */
+    private static int getSpeed() {
+        return (int) CgeoApplication.getInstance().currentGeo().getSpeed() * 60 * 60 / 1000;
+    }
+
+    /**
+     * @return the live map strategy to use, depending on the current speed if the strategy is automatic
+     */
+    private static Strategy getStrategy(final int speed) {
+        final Strategy strategy = Settings.getLiveMapStrategy();
+        if (strategy == Strategy.AUTO) {
+            return speed >= 30 ? Strategy.FAST : Strategy.DETAILED;
+        }
+        return strategy;
+    }
+
     /**
      * Searches the view port on the live map with Strategy.AUTO
      *
@@ -260,20 +239,32 @@ public class GCMap {
      * @return
      */
     public static SearchResult searchByViewport(final Viewport viewport, final MapTokens tokens) {
-        int speed = (int) CgeoApplication.getInstance().currentGeo().getSpeed() * 60 * 60 / 1000; // in km/h
-        Strategy strategy = Settings.getLiveMapStrategy();
-        if (strategy == Strategy.AUTO) {
-            strategy = speed >= 30 ? Strategy.FAST : Strategy.DETAILED;
-        }
-
-        SearchResult result = searchByViewport(viewport, tokens, strategy);
+        return searchByViewportIncrementally(viewport, tokens).reduce(new SearchResult(), new Func2<SearchResult, SearchResult, SearchResult>() {
+            @Override
+            public SearchResult call(final SearchResult result, final SearchResult partialResult) {
+                result.addSearchResult(partialResult);
+                return result;
+            }
+        }).toBlockingObservable().single();
+    }
 
-        if (Settings.isDebug()) {
-            StringBuilder text = new StringBuilder(Formatter.SEPARATOR).append(strategy.getL10n()).append(Formatter.SEPARATOR).append(Units.getSpeed(speed));
-            result.setUrl(result.getUrl() + text);
-        }
+    /**
+     * Searches the view port on the live map with Strategy.AUTO, emitting partial results as soon as
+     * they are available. The first result carries the debug information (if any), the tile results follow
+     * in completion order, and the filtered geocodes of vanished caches are emitted after all the tiles.
+     *
+     * @param viewport
+     *            Area to search
+     * @param tokens
+     *            Live map tokens
+     * @return an observable of partial search results
+     */
+    public static Observable<SearchResult> searchByViewportIncrementally(final Viewport viewport, final MapTokens tokens) {
+        final int speed = getSpeed();
+        final Strategy strategy = getStrategy(speed);
 
-        return result;
+        final String debugInfo = Settings.isDebug() ? new StringBuilder(Formatter.SEPARATOR).append(strategy.getL10n()).append(Formatter.SEPARATOR).append(Units.getSpeed(speed)).toString() : null;
+        return searchByViewport(viewport, tokens, strategy, debugInfo);
     }
 
     /**
@@ -281,105 +272,250 @@ public class GCMap {
      * The strategy dictates if only live map information is used or if an additional
      * searchByCoordinates query is issued.
      *
+     * Tiles are loaded in parallel on {@link #tileScheduler}, each tile being parsed on the thread which
+     * downloaded it. The nearby search, if any, runs concurrently to the tiles.
+     *
      * @param viewport
      *            Area to search
      * @param tokens
      *            Live map tokens
      * @param strategy
      *            Strategy for data retrieval and parsing, @see Strategy
+     * @param debugInfo
+     *            additional text for the debug URL, or <tt>null</tt> if not in debug mode
      * @return
      */
-    private static SearchResult searchByViewport(final Viewport viewport, final MapTokens tokens, Strategy strategy) {
+    private static Observable<SearchResult> searchByViewport(final Viewport viewport, final MapTokens tokens, final Strategy strategy, final String debugInfo) {
         Log.d("GCMap.searchByViewport" + viewport.toString());
 
-        final SearchResult searchResult = new SearchResult();
-
-        if (Settings.isDebug()) {
-            searchResult.setUrl(viewport.getCenter().format(Format.LAT_LON_DECMINUTE));
+        final StringBuilder debugUrl = new StringBuilder();
+        if (debugInfo != null) {
+            debugUrl.append(viewport.getCenter().format(Format.LAT_LON_DECMINUTE));
         }
 
+        Observable<SearchResult> tilesResults = Observable.empty();
         if (strategy.flags.contains(StrategyFlag.LOAD_TILES)) {
             final Set<Tile> tiles = Tile.getTilesForViewport(viewport);
+            final int zoomLevel = tiles.iterator().next().getZoomLevel();
 
-            if (Settings.isDebug()) {
-                searchResult.setUrl(new StringBuilder().append(tiles.iterator().next().getZoomLevel()).append(Formatter.SEPARATOR).append(searchResult.getUrl()).toString());
+            if (debugInfo != null) {
+                debugUrl.insert(0, Formatter.SEPARATOR).insert(0, zoomLevel);
             }
 
-            for (Tile tile : tiles) {
-
-                if (!Tile.cache.contains(tile)) {
-                    final Parameters params = new Parameters(
-                            "x", String.valueOf(tile.getX()),
-                            "y", String.valueOf(tile.getY()),
-                            "z", String.valueOf(tile.getZoomLevel()),
-                            "ep", "1",
-                            "app", "cgeo");
-                    if (tokens != null) {
-                        params.put("k", tokens.getUserSession(), "st", tokens.getSessionToken());
-                    }
-                    if (Settings.isExcludeMyCaches()) { // works only for PM
-                        params.put("hf", "1", "hh", "1"); // hide found, hide hidden
-                    }
-                    // ect: exclude cache type (probably), comma separated list
-                    if (Settings.getCacheType() != CacheType.ALL) {
-                        params.put("ect", getCacheTypeFilter(Settings.getCacheType()));
-                    }
-                    if (tile.getZoomLevel() != 14) {
-                        params.put("_", String.valueOf(System.currentTimeMillis()));
+            // all tiles results, needed to find the vanished caches once every tile has been loaded
+            final SearchResult loadedResults = new SearchResult();
+            final Observable<SearchResult> loadedTiles = Observable.from(tiles).flatMap(new Func1<Tile, Observable<SearchResult>>() {
+                @Override
+                public Observable<SearchResult> call(final Tile tile) {
+                    return loadTile(tile, tokens, strategy).subscribeOn(tileScheduler);
+                }
+            }).doOnNext(new Action1<SearchResult>() {
+                @Override
+                public void call(final SearchResult tileResult) {
+                    synchronized (loadedResults) {
+                        loadedResults.addSearchResult(tileResult);
                     }
+                }
+            });
 
-                    // The PNG must be requested first, otherwise the following request would always return with 204 - No Content
-                    Bitmap bitmap = Tile.requestMapTile(params);
-
-                    // Check bitmap size
-                    if (bitmap != null && (bitmap.getWidth() != Tile.TILE_SIZE ||
-                            bitmap.getHeight() != Tile.TILE_SIZE)) {
-                        bitmap.recycle();
-                        bitmap = null;
+            // Check for vanished found caches
+            if (zoomLevel >= Tile.ZOOMLEVEL_MIN_PERSONALIZED) {
+                tilesResults = Observable.concat(loadedTiles, Observable.defer(new Func0<Observable<SearchResult>>() {
+                    @Override
+                    public Observable<SearchResult> call() {
+                        final SearchResult vanished = new SearchResult();
+                        synchronized (loadedResults) {
+                            vanished.addFilteredGeocodes(DataStore.getCachedMissingFromSearch(loadedResults, tiles, GCConnector.getInstance(), Tile.ZOOMLEVEL_MIN_PERSONALIZED - 1));
+                        }
+                        return Observable.from(vanished);
                     }
+                }));
+            } else {
+                tilesResults = loadedTiles;
+            }
+        }
 
-                    String data = Tile.requestMapInfo(GCConstants.URL_MAP_INFO, params, GCConstants.URL_LIVE_MAP);
-                    if (StringUtils.isEmpty(data)) {
-                        Log.w("GCMap.searchByViewport: No data from server for tile (" + tile.getX() + "/" + tile.getY() + ")");
-                    } else {
-                        final SearchResult search = GCMap.parseMapJSON(data, tile, bitmap, strategy);
-                        if (CollectionUtils.isEmpty(search.getGeocodes())) {
-                            Log.e("GCMap.searchByViewport: No cache parsed for viewport " + viewport);
-                        }
-                        else {
-                            searchResult.addSearchResult(search);
+        Observable<SearchResult> nearbyResults = Observable.empty();
+        if (strategy.flags.contains(StrategyFlag.SEARCH_NEARBY) && Settings.isGCPremiumMember()) {
+            nearbyResults = Observable.create(new OnSubscribe<SearchResult>() {
+                @Override
+                public void call(final Subscriber<? super SearchResult> subscriber) {
+                    final Geopoint center = viewport.getCenter();
+                    if ((lastSearchViewport == null) || !lastSearchViewport.contains(center)) {
+                        //FIXME We don't have a RecaptchaReceiver!?
+                        final SearchResult search = GCParser.searchByCoords(center, Settings.getCacheType(), false, null);
+                        if (search != null && !search.isEmpty()) {
+                            final Set<String> geocodes = search.getGeocodes();
+                            lastSearchViewport = DataStore.getBounds(geocodes);
+                            subscriber.onNext(new SearchResult(geocodes));
                         }
-                        Tile.cache.add(tile);
                     }
+                    subscriber.onCompleted();
+                }
+            }).subscribeOn(Schedulers.io());
+        }
 
-                    // release native bitmap memory
-                    if (bitmap != null) {
-                        bitmap.recycle();
-                    }
+        final Observable<SearchResult> results = Observable.merge(tilesResults, nearbyResults);
+        if (debugInfo == null) {
+            return results;
+        }
+        final SearchResult debugResult = new SearchResult();
+        debugResult.setUrl(debugUrl.append(debugInfo).toString());
+        return Observable.concat(Observable.from(debugResult), results);
+    }
 
+    /**
+     * Load a single live map tile, unless it is known to be current in {@link Tile#cache}.
+     *
+     * @return an observable emitting the caches of the tile, if any
+     */
+    private static Observable<SearchResult> loadTile(final Tile tile, final MapTokens tokens, final Strategy strategy) {
+        return Observable.create(new OnSubscribe<SearchResult>() {
+            @Override
+            public void call(final Subscriber<? super SearchResult> subscriber) {
+                if (!Tile.cache.contains(tile)) {
+                    final SearchResult search = loadTile(tile, tokens, strategy, false);
+                    if (search != null) {
+                        subscriber.onNext(search);
+                    }
                 }
+                subscriber.onCompleted();
             }
+        });
+    }
 
-            // Check for vanished found caches
-            if (tiles.iterator().next().getZoomLevel() >= Tile.ZOOMLEVEL_MIN_PERSONALIZED) {
-                searchResult.addFilteredGeocodes(DataStore.getCachedMissingFromSearch(searchResult, tiles, GCConnector.getInstance(), Tile.ZOOMLEVEL_MIN_PERSONALIZED - 1));
+    /**
+     * Load and parse a live map tile. The server is only queried if the tile responses are not present in the
+     * persistent {@link Tile#responseCache}, and the parsed caches are put into the cache cache.
+     *
+     * The PNG and the JSON of a tile are requested one after the other, as the JSON request would
+     * always return with 204 - No Content if the PNG has not been requested first.
+     *
+     * @param prefetch
+     *            <tt>true</tt> if the tile is speculatively loaded, in which case the tile is neither parsed again if
+     *            its responses are already cached, nor marked as loaded in {@link Tile#cache}
+     * @return the caches of the tile, or <tt>null</tt> if there are none
+     */
+    @Nullable
+    private static SearchResult loadTile(final Tile tile, final MapTokens tokens, final Strategy strategy, final boolean prefetch) {
+        final Parameters params = new Parameters(
+                "x", String.valueOf(tile.getX()),
+                "y", String.valueOf(tile.getY()),
+                "z", String.valueOf(tile.getZoomLevel()),
+                "ep", "1",
+                "app", "cgeo");
+        if (tokens != null) {
+            params.put("k", tokens.getUserSession(), "st", tokens.getSessionToken());
+        }
+        final StringBuilder filter = new StringBuilder();
+        if (Settings.isExcludeMyCaches()) { // works only for PM
+            params.put("hf", "1", "hh", "1"); // hide found, hide hidden
+            filter.append("hf");
+        }
+        // ect: exclude cache type (probably), comma separated list
+        if (Settings.getCacheType() != CacheType.ALL) {
+            final String excludedTypes = getCacheTypeFilter(Settings.getCacheType());
+            params.put("ect", excludedTypes);
+            filter.append("ect").append(excludedTypes);
+        }
+        if (tile.getZoomLevel() != 14) {
+            params.put("_", String.valueOf(System.currentTimeMillis()));
+        }
+
+        final String cacheKey = TileResponseCache.getKey(tile, tokens != null ? tokens.getUserSession() : null, strategy, filter.toString());
+        if (prefetch && Tile.responseCache.contains(cacheKey)) {
+            return null;
+        }
+        final TileResponseCache.Response cachedResponse = prefetch ? null : Tile.responseCache.get(cacheKey);
+        final byte[] png;
+        final String data;
+        if (cachedResponse != null) {
+            png = cachedResponse.png;
+            data = cachedResponse.json;
+        } else {
+            // The PNG must be requested first, otherwise the following request would always return with 204 - No Content
+            png = Tile.requestMapTileData(params);
+            data = Tile.requestMapInfo(GCConstants.URL_MAP_INFO, params, GCConstants.URL_LIVE_MAP);
+            if (StringUtils.isNotEmpty(data)) {
+                Tile.responseCache.put(cacheKey, data, png);
             }
         }
 
-        if (strategy.flags.contains(StrategyFlag.SEARCH_NEARBY) && Settings.isGCPremiumMember()) {
-            final Geopoint center = viewport.getCenter();
-            if ((lastSearchViewport == null) || !lastSearchViewport.contains(center)) {
-                //FIXME We don't have a RecaptchaReceiver!?
-                SearchResult search = GCParser.searchByCoords(center, Settings.getCacheType(), false, null);
-                if (search != null && !search.isEmpty()) {
-                    final Set<String> geocodes = search.getGeocodes();
-                    lastSearchViewport = DataStore.getBounds(geocodes);
-                    searchResult.addGeocodes(geocodes);
-                }
+        if (StringUtils.isEmpty(data)) {
+            Log.w("GCMap.searchByViewport: No data from server for tile (" + tile.getX() + "/" + tile.getY() + ")");
+            return null;
+        }
+
+        Bitmap bitmap = Tile.decodeMapTile(png);
+
+        // Check bitmap size
+        if (bitmap != null && (bitmap.getWidth() != Tile.TILE_SIZE ||
+                bitmap.getHeight() != Tile.TILE_SIZE)) {
+            bitmap.recycle();
+            bitmap = null;
+        }
+
+        try {
+            final SearchResult search = GCMap.parseMapJSON(data, tile, bitmap, strategy);
+            if (!prefetch) {
+                Tile.cache.add(tile);
             }
+            if (CollectionUtils.isEmpty(search.getGeocodes())) {
+                Log.e("GCMap.searchByViewport: No cache parsed for tile " + tile);
+                return null;
+            }
+            return search;
+        } finally {
+            // release native bitmap memory
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Speculatively load the tiles surrounding the viewport, as well as the tiles of the next zoom level, so
+     * that panning or zooming the map can be served from the persistent tile cache. The tiles are loaded one by
+     * one on a low priority thread, and their caches are put into the cache cache.
+     *
+     * @param viewport
+     *            Area currently displayed, whose tiles are expected to be already loaded
+     * @param tokens
+     *            Live map tokens
+     * @return the subscription to unsubscribe from to stop prefetching, for example when the viewport changes
+     */
+    public static Subscription prefetchAroundViewport(final Viewport viewport, final MapTokens tokens) {
+        final Strategy strategy = getStrategy(getSpeed());
+        if (!strategy.flags.contains(StrategyFlag.LOAD_TILES)) {
+            return Subscriptions.empty();
         }
 
-        return searchResult;
+        final Set<Tile> tiles = Tile.getTilesForViewport(viewport);
+        final int zoomLevel = tiles.iterator().next().getZoomLevel();
+        final Set<Tile> prefetchTiles = new LinkedHashSet<Tile>(Tile.getSurroundingTiles(tiles));
+        if (zoomLevel < Tile.ZOOMLEVEL_MAX) {
+            prefetchTiles.addAll(Tile.getTilesForViewport(viewport, 2, zoomLevel + 1));
+        }
+        prefetchTiles.removeAll(tiles);
+
+        return Observable.create(new OnSubscribe<SearchResult>() {
+            @Override
+            public void call(final Subscriber<? super SearchResult> subscriber) {
+                int prefetched = 0;
+                for (final Tile tile : prefetchTiles) {
+                    if (subscriber.isUnsubscribed()) {
+                        Log.d("GCMap.prefetchAroundViewport: cancelled after " + prefetched + " of " + prefetchTiles.size() + " tiles");
+                        return;
+                    }
+                    if (!Tile.cache.contains(tile)) {
+                        loadTile(tile, tokens, strategy, true);
+                        prefetched++;
+                    }
+                }
+                Log.d("GCMap.prefetchAroundViewport: prefetched " + prefetched + " tiles");
+                subscriber.onCompleted();
+            }
+        }).subscribeOn(prefetchScheduler).subscribe();
     }
 
     /**
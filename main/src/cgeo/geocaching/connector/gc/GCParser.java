@@ -25,6 +25,7 @@ import cgeo.geocaching.gcvote.GCVoteRating;
 import cgeo.geocaching.geopoint.DistanceParser;
 import cgeo.geocaching.geopoint.Geopoint;
 import cgeo.geocaching.loaders.RecaptchaReceiver;
+import cgeo.geocaching.network.HttpCache;
 import cgeo.geocaching.network.Network;
 import cgeo.geocaching.network.Parameters;
 import cgeo.geocaching.settings.Settings;
@@ -45,6 +46,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import rx.functions.Func0;
 
 import android.net.Uri;
 import android.text.Html;
@@ -66,6 +68,17 @@ import java.util.regex.Pattern;
 public abstract class GCParser {
     private final static SynchronizedDateFormat dateTbIn1 = new SynchronizedDateFormat("EEEEE, dd MMMMM yyyy", Locale.ENGLISH); // Saturday, 28 March 2009
     private final static SynchronizedDateFormat dateTbIn2 = new SynchronizedDateFormat("EEEEE, MMMMM dd, yyyy", Locale.ENGLISH); // Saturday, March 28, 2009
+    /**
+     * The cache details pages depend on the login state, so that they are always validated with the server and stored
+     * for each user.
+     */
+    private final static HttpCache detailsCache = new HttpCache("gc", 10 * 1024 * 1024, 0, new Func0<String>() {
+        @Override
+        public String call() {
+            final GCLogin login = GCLogin.getInstance();
+            return login.isActualLoginStatus() ? login.getActualUserName() : null;
+        }
+    });
 
     private static SearchResult parseSearch(final String url, final String pageContent, final boolean showCaptcha, final RecaptchaReceiver recaptchaReceiver) {
         if (StringUtils.isBlank(pageContent)) {
@@ -1372,7 +1385,7 @@ public abstract class GCParser {
         params.put("log", log);
         params.put("numlogs", numlogs);
 
-        return GCLogin.getInstance().getRequestLogged("http://www.geocaching.com/seek/cache_details.aspx", params);
+        return GCLogin.getInstance().getRequestLogged("http://www.geocaching.com/seek/cache_details.aspx", params, detailsCache);
     }
 
     /**
@@ -1397,6 +1410,7 @@ public abstract class GCParser {
         final String uri = "http://www.geocaching.com/datastore/favorites.svc/update?u=" + userToken + "&f=" + Boolean.toString(add);
 
         final HttpResponse response = Network.postRequest(uri, null);
+        Network.release(response);
 
         if (response != null && response.getStatusLine().getStatusCode() == 200) {
             Log.i("GCParser.changeFavorite: cache added/removed to/from favorites");
@@ -1898,6 +1912,7 @@ public abstract class GCParser {
 
             final String uriPrefix = "http://www.geocaching.com/seek/cache_details.aspx/";
             final HttpResponse response = Network.postJsonRequest(uriPrefix + uriSuffix, jo);
+            Network.release(response);
             Log.i("Sending to " + uriPrefix + uriSuffix + " :" + jo.toString());
 
             if (response != null && response.getStatusLine().getStatusCode() == 200) {
@@ -1928,6 +1943,7 @@ public abstract class GCParser {
 
             final String uriPrefix = "http://www.geocaching.com/seek/cache_details.aspx/";
             final HttpResponse response = Network.postJsonRequest(uriPrefix + uriSuffix, jo);
+            Network.release(response);
             Log.i("Sending to " + uriPrefix + uriSuffix + " :" + jo.toString());
 
             if (response != null && response.getStatusLine().getStatusCode() == 200) {
@@ -6,6 +6,8 @@ import cgeo.geocaching.settings.Settings;
 
 import android.graphics.Bitmap;
 
+import java.util.Arrays;
+
 /**
  * icon decoder for cache icons
  *
@@ -25,109 +27,251 @@ public abstract class IconDecoder {
     private static final int CT_VIRTUAL = 11;
     private static final int CT_LETTERBOX = 12;
 
-    public static boolean parseMapPNG(final Geocache cache, Bitmap bitmap, UTFGridPosition xy, int zoomlevel) {
-        final int topX = xy.getX() * 4;
-        final int topY = xy.getY() * 4;
-        final int bitmapWidth = bitmap.getWidth();
-        final int bitmapHeight = bitmap.getHeight();
+    /** Number of cache types or states which can be detected. */
+    private static final int CT_COUNT = 13;
+
+    /** Classification of a pixel which shall not be used for detecting a cache type. */
+    private static final int CT_IGNORED = CT_COUNT;
+
+    /**
+     * Zoom classes, sharing the same classification trees. Level 12 and 13 are the "middle" class.
+     */
+    private static final int ZOOM_CLASS_SMALL = 0;
+    private static final int ZOOM_CLASS_MIDDLE = 1;
+    private static final int ZOOM_CLASS_LARGE = 2;
+
+    /**
+     * Colour lookup tables, one per zoom class, memoizing the classification of every colour found in the tiles.
+     *
+     * A tile only uses a small palette of colours, so the classification trees are evaluated once per colour
+     * instead of once per pixel. Every entry packs the RGB value with the classification in a single int, so that
+     * the tables can be shared by concurrent decoders without locking: a lost or not yet visible update only
+     * causes the classification to be computed again.
+     */
+    private static final int TABLE_BITS = 12;
+    private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+    private static final int MAX_PROBES = 8;
+    private static final int ENTRY_USED = 0x20;
+    private static final int ENTRY_VALUE_MASK = 0x1F;
+    private static final int[][] COLOR_TABLES = new int[3][1 << TABLE_BITS];
 
-        if ((topX < 0) || (topY < 0) || (topX + 4 > bitmapWidth) || (topY + 4 > bitmapHeight)) {
-            return false; //out of image position
+    /** Pixels buffers, one per thread, reused for every parsed tile. */
+    private static final ThreadLocal<TilePixels> TILE_PIXELS = new ThreadLocal<TilePixels>() {
+        @Override
+        protected TilePixels initialValue() {
+            return new TilePixels();
         }
+    };
 
-        int numberOfDetections = 7; //for level 12 and 13;
-        if (zoomlevel < 12) {
-            numberOfDetections = 5;
+    /**
+     * All the pixels of a tile, read at once from its bitmap.
+     */
+    public static final class TilePixels {
+        int[] pixels = new int[Tile.TILE_SIZE * Tile.TILE_SIZE];
+        int width;
+        int height;
+        /** Detections of every cache type for the position being parsed. */
+        final int[] counts = new int[CT_COUNT];
+
+        TilePixels() {
+            // use readPixels()
         }
-        if (zoomlevel > 13) {
-            numberOfDetections = 13;
+
+        /**
+         * Use the given ARGB pixels, stored row by row.
+         */
+        TilePixels(final int[] pixels, final int width, final int height) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Read all the pixels of a tile bitmap at once. The returned buffer is reused by the current thread, and is
+     * therefore only valid until the next call from the same thread.
+     */
+    public static TilePixels readPixels(final Bitmap bitmap) {
+        final TilePixels tilePixels = TILE_PIXELS.get();
+        tilePixels.width = bitmap.getWidth();
+        tilePixels.height = bitmap.getHeight();
+        if (tilePixels.pixels.length < tilePixels.width * tilePixels.height) {
+            tilePixels.pixels = new int[tilePixels.width * tilePixels.height];
+        }
+        bitmap.getPixels(tilePixels.pixels, 0, tilePixels.width, 0, 0, tilePixels.width, tilePixels.height);
+        return tilePixels;
+    }
+
+    /**
+     * Parse the icon of a single position. Use {@link #readPixels(Bitmap)} and
+     * {@link #parseMapPNG(Geocache, TilePixels, UTFGridPosition, int)} for parsing several positions of a tile.
+     */
+    public static boolean parseMapPNG(final Geocache cache, Bitmap bitmap, UTFGridPosition xy, int zoomlevel) {
+        return parseMapPNG(cache, readPixels(bitmap), xy, zoomlevel);
+    }
+
+    public static boolean parseMapPNG(final Geocache cache, final TilePixels tilePixels, final UTFGridPosition xy, final int zoomlevel) {
+        return parseMapPNG(cache, tilePixels, xy.getX(), xy.getY(), zoomlevel);
+    }
+
+    /**
+     * Parse the icon at the given grid position.
+     */
+    public static boolean parseMapPNG(final Geocache cache, final TilePixels tilePixels, final int gridX, final int gridY, final int zoomlevel) {
+        switch (detectType(tilePixels, gridX * 4, gridY * 4, zoomlevel)) {
+            case CT_TRADITIONAL:
+                cache.setType(CacheType.TRADITIONAL, zoomlevel);
+                return true;
+            case CT_MULTI:
+                cache.setType(CacheType.MULTI, zoomlevel);
+                return true;
+            case CT_MYSTERY:
+                cache.setType(CacheType.MYSTERY, zoomlevel);
+                return true;
+            case CT_EVENT:
+                cache.setType(CacheType.EVENT, zoomlevel);
+                return true;
+            case CT_EARTH:
+                cache.setType(CacheType.EARTH, zoomlevel);
+                return true;
+            case CT_FOUND:
+                cache.setFound(true);
+                return true;
+            case CT_OWN:
+                cache.setOwnerUserId(Settings.getUsername());
+                return true;
+            case CT_MEGAEVENT:
+                cache.setType(CacheType.MEGA_EVENT, zoomlevel);
+                return true;
+            case CT_CITO:
+                cache.setType(CacheType.CITO, zoomlevel);
+                return true;
+            case CT_WEBCAM:
+                cache.setType(CacheType.WEBCAM, zoomlevel);
+                return true;
+            case CT_WHERIGO:
+                cache.setType(CacheType.WHERIGO, zoomlevel);
+                return true;
+            case CT_VIRTUAL:
+                cache.setType(CacheType.VIRTUAL, zoomlevel);
+                return true;
+            case CT_LETTERBOX:
+                cache.setType(CacheType.LETTERBOX, zoomlevel);
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Detect the cache type or state from the icon at a position of a tile.
+     *
+     * @param tilePixels
+     *            the tile pixels
+     * @param topX
+     *            left pixel of the 4x4 block of the position
+     * @param topY
+     *            top pixel of the 4x4 block of the position
+     * @param zoomlevel
+     *            zoom level of the tile
+     * @return one of the CT_ values, or -1 if no type could be detected
+     */
+    static int detectType(final TilePixels tilePixels, final int topX, final int topY, final int zoomlevel) {
+        if ((topX < 0) || (topY < 0) || (topX + 4 > tilePixels.width) || (topY + 4 > tilePixels.height)) {
+            return -1; //out of image position
         }
 
-        int[] pngType = new int[numberOfDetections];
+        final int zoomClass = getZoomClass(zoomlevel);
+        final int[] pixels = tilePixels.pixels;
+        final int[] counts = tilePixels.counts;
+        Arrays.fill(counts, 0);
+        // neighbouring pixels of an icon often share the same colour
+        int lastColor = 0;
+        int lastType = CT_IGNORED;
         for (int x = topX; x < topX + 4; x++) {
             for (int y = topY; y < topY + 4; y++) {
-                int color = bitmap.getPixel(x, y);
+                final int color = pixels[y * tilePixels.width + x];
 
                 if ((color >>> 24) != 255) {
                     continue; //transparent pixels (or semi_transparent) are only shadows of border
                 }
 
-                int r = (color & 0xFF0000) >> 16;
-                int g = (color & 0xFF00) >> 8;
-                int b = color & 0xFF;
-
-                if (isPixelDuplicated(r, g, b, zoomlevel)) {
-                    continue;
+                if (color != lastColor) {
+                    lastColor = color;
+                    lastType = classifyColor(color & 0xFFFFFF, zoomClass, zoomlevel);
                 }
-
-                int type;
-                if (zoomlevel < 12) {
-                    type = getCacheTypeFromPixel11(r, g, b);
-                } else {
-                    if (zoomlevel > 13) {
-                        type = getCacheTypeFromPixel14(r, g, b);
-                    } else {
-                        type = getCacheTypeFromPixel13(r, g, b);
-                    }
+                if (lastType != CT_IGNORED) {
+                    counts[lastType]++;
                 }
-                pngType[type]++;
             }
         }
 
         int type = -1;
         int count = 0;
 
-        for (int x = 0; x < pngType.length; x++) {
-            if (pngType[x] > count) {
-                count = pngType[x];
+        for (int x = 0; x < counts.length; x++) {
+            if (counts[x] > count) {
+                count = counts[x];
                 type = x;
             }
         }
 
-        if (count > 1) { // 2 pixels need to detect same type and we say good to go
-            switch (type) {
-                case CT_TRADITIONAL:
-                    cache.setType(CacheType.TRADITIONAL, zoomlevel);
-                    return true;
-                case CT_MULTI:
-                    cache.setType(CacheType.MULTI, zoomlevel);
-                    return true;
-                case CT_MYSTERY:
-                    cache.setType(CacheType.MYSTERY, zoomlevel);
-                    return true;
-                case CT_EVENT:
-                    cache.setType(CacheType.EVENT, zoomlevel);
-                    return true;
-                case CT_EARTH:
-                    cache.setType(CacheType.EARTH, zoomlevel);
-                    return true;
-                case CT_FOUND:
-                    cache.setFound(true);
-                    return true;
-                case CT_OWN:
-                    cache.setOwnerUserId(Settings.getUsername());
-                    return true;
-                case CT_MEGAEVENT:
-                    cache.setType(CacheType.MEGA_EVENT, zoomlevel);
-                    return true;
-                case CT_CITO:
-                    cache.setType(CacheType.CITO, zoomlevel);
-                    return true;
-                case CT_WEBCAM:
-                    cache.setType(CacheType.WEBCAM, zoomlevel);
-                    return true;
-                case CT_WHERIGO:
-                    cache.setType(CacheType.WHERIGO, zoomlevel);
-                    return true;
-                case CT_VIRTUAL:
-                    cache.setType(CacheType.VIRTUAL, zoomlevel);
-                    return true;
-                case CT_LETTERBOX:
-                    cache.setType(CacheType.LETTERBOX, zoomlevel);
-                    return true;
+        // 2 pixels need to detect same type and we say good to go
+        return count > 1 ? type : -1;
+    }
+
+    private static int getZoomClass(final int zoomlevel) {
+        if (zoomlevel < 12) {
+            return ZOOM_CLASS_SMALL;
+        }
+        return zoomlevel > 13 ? ZOOM_CLASS_LARGE : ZOOM_CLASS_MIDDLE;
+    }
+
+    /**
+     * Classify an opaque colour using the lookup table of its zoom class.
+     *
+     * @return one of the CT_ values, or {@link #CT_IGNORED}
+     */
+    private static int classifyColor(final int rgb, final int zoomClass, final int zoomlevel) {
+        final int[] table = COLOR_TABLES[zoomClass];
+        final int key = rgb << 8;
+        int index = ((rgb * 0x9E3779B1) >>> (32 - TABLE_BITS)) & TABLE_MASK;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int entry = table[index];
+            if (entry == 0) {
+                final int type = classifyColorUncached(rgb, zoomlevel);
+                table[index] = key | ENTRY_USED | type;
+                return type;
+            }
+            if ((entry & ~0xFF) == key) {
+                return entry & ENTRY_VALUE_MASK;
             }
+            index = (index + 1) & TABLE_MASK;
         }
-        return false;
+        // too many colours, do not cache this one
+        return classifyColorUncached(rgb, zoomlevel);
+    }
+
+    /**
+     * Classify an opaque colour using the classification trees.
+     *
+     * @return one of the CT_ values, or {@link #CT_IGNORED}
+     */
+    static int classifyColorUncached(final int rgb, final int zoomlevel) {
+        final int r = (rgb & 0xFF0000) >> 16;
+        final int g = (rgb & 0xFF00) >> 8;
+        final int b = rgb & 0xFF;
+
+        if (isPixelDuplicated(r, g, b, zoomlevel)) {
+            return CT_IGNORED;
+        }
+
+        if (zoomlevel < 12) {
+            return getCacheTypeFromPixel11(r, g, b);
+        }
+        if (zoomlevel > 13) {
+            return getCacheTypeFromPixel14(r, g, b);
+        }
+        return getCacheTypeFromPixel13(r, g, b);
     }
 
     /**
@@ -9,7 +9,9 @@ import cgeo.geocaching.utils.LeastRecentlyUsedSet;
 import cgeo.geocaching.utils.Log;
 
 import ch.boye.httpclientandroidlib.HttpResponse;
+import org.apache.commons.io.IOUtils;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -45,6 +47,9 @@ public class Tile {
 
     public final static TileCache cache = new TileCache();
 
+    /** Persistent cache of the tiles responses, consulted before requesting a tile from the server. */
+    final static TileResponseCache responseCache = TileResponseCache.create();
+
     private final int tileX;
     private final int tileY;
     private final int zoomLevel;
@@ -238,15 +243,29 @@ public class Tile {
 
     /** Request .png image for a tile. */
     public static Bitmap requestMapTile(final Parameters params) {
+        return decodeMapTile(requestMapTileData(params));
+    }
+
+    /** Request the raw .png image data for a tile. */
+    @Nullable
+    static byte[] requestMapTileData(final Parameters params) {
         final HttpResponse response = Network.getRequest(GCConstants.URL_MAP_TILE, params, new Parameters("Referer", GCConstants.URL_LIVE_MAP));
         try {
-            return response != null ? BitmapFactory.decodeStream(response.getEntity().getContent()) : null;
+            return response != null ? IOUtils.toByteArray(response.getEntity().getContent()) : null;
         } catch (IOException e) {
             Log.e("Tile.requestMapTile() ", e);
+        } finally {
+            Network.release(response);
         }
         return null;
     }
 
+    /** Decode .png image data for a tile, as returned by {@link #requestMapTileData(Parameters)}. */
+    @Nullable
+    static Bitmap decodeMapTile(@Nullable final byte[] data) {
+        return data != null ? BitmapFactory.decodeByteArray(data, 0, data.length) : null;
+    }
+
     public boolean containsPoint(final @NonNull ICoordinates point) {
         return viewPort.contains(point);
     }
@@ -301,6 +320,43 @@ public class Tile {
         return tiles;
     }
 
+    /**
+     * Calculate the ring of tiles surrounding the given tiles, which must all have the same zoom level.
+     *
+     * @param tiles
+     *            the tiles, for example as returned by {@link #getTilesForViewport(Viewport)}
+     * @return the neighbouring tiles, not including the given ones
+     */
+    protected static Set<Tile> getSurroundingTiles(final Set<Tile> tiles) {
+        final Set<Tile> surrounding = new HashSet<Tile>();
+        if (tiles.isEmpty()) {
+            return surrounding;
+        }
+        final int zoom = tiles.iterator().next().getZoomLevel();
+        int xLow = Integer.MAX_VALUE;
+        int xHigh = Integer.MIN_VALUE;
+        int yLow = Integer.MAX_VALUE;
+        int yHigh = Integer.MIN_VALUE;
+        for (final Tile tile : tiles) {
+            xLow = Math.min(xLow, tile.getX());
+            xHigh = Math.max(xHigh, tile.getX());
+            yLow = Math.min(yLow, tile.getY());
+            yHigh = Math.max(yHigh, tile.getY());
+        }
+
+        final int numberOfTiles = NUMBER_OF_TILES[zoom];
+        for (int xNum = xLow - 1; xNum <= xHigh + 1; xNum++) {
+            for (int yNum = Math.max(0, yLow - 1); yNum <= Math.min(numberOfTiles - 1, yHigh + 1); yNum++) {
+                // tiles wrap around at the date line
+                final Tile tile = new Tile((xNum + numberOfTiles) % numberOfTiles, yNum, zoom);
+                if (!tiles.contains(tile)) {
+                    surrounding.add(tile);
+                }
+            }
+        }
+        return surrounding;
+    }
+
     public static class TileCache extends LeastRecentlyUsedSet<Tile> {
 
         private static final long serialVersionUID = -1942301031192719547L;
@@ -0,0 +1,277 @@
+package cgeo.geocaching.connector.gc;
+
+import cgeo.geocaching.enumerations.LiveMapStrategy.Strategy;
+import cgeo.geocaching.files.LocalStorage;
+import cgeo.geocaching.utils.CryptUtils;
+import cgeo.geocaching.utils.Log;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent cache of the live map tiles responses.
+ *
+ * For every tile, the UTFGrid JSON and the PNG bytes are stored in two files named after the entry key. Entries
+ * expire after a fixed time to live, and the least recently used entries are removed when the total size of the
+ * cache exceeds its limit. The cache index is built lazily from the content of the directory.
+ */
+final class TileResponseCache {
+
+    private static final String JSON_EXTENSION = ".json";
+    private static final String PNG_EXTENSION = ".png";
+
+    /** Time to live of the cached tiles. */
+    static final long DEFAULT_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(30);
+    /** Maximum size in bytes of the cached tiles on disk. */
+    static final long DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+    static final class Response {
+        final String json;
+        @Nullable
+        final byte[] png;
+
+        Response(final String json, @Nullable final byte[] png) {
+            this.json = json;
+            this.png = png;
+        }
+    }
+
+    private static final class Entry {
+        final long created;
+        final long size;
+
+        Entry(final long created, final long size) {
+            this.created = created;
+            this.size = size;
+        }
+    }
+
+    private final File directory;
+    private final long maxSize;
+    private final long timeToLive;
+
+    /** Cached entries with their size on disk, in access order. Null until the directory has been scanned. */
+    private LinkedHashMap<String, Entry> entries = null;
+    private long size = 0;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    TileResponseCache(final File directory, final long maxSize, final long timeToLive) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Create the cache in the default location.
+     */
+    static TileResponseCache create() {
+        return new TileResponseCache(LocalStorage.getTileCacheDirectory(), DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Compute the cache key of a tile.
+     *
+     * @param tile
+     *            the tile
+     * @param userSession
+     *            the user session of the map tokens, as the tiles are personalized, or <tt>null</tt>
+     * @param strategy
+     *            the live map strategy
+     * @param filter
+     *            the additional request parameters changing the tile content, such as the excluded cache types
+     * @return a key usable as a file name, starting with the tile coordinates
+     */
+    @NonNull
+    static String getKey(@NonNull final Tile tile, @Nullable final String userSession, @NonNull final Strategy strategy, @NonNull final String filter) {
+        return tile.getZoomLevel() + "_" + tile.getX() + "_" + tile.getY() + "_" +
+                CryptUtils.md5(StringUtils.defaultString(userSession) + "|" + strategy.name() + "|" + filter);
+    }
+
+    /**
+     * Get the cached response for a tile.
+     *
+     * @return the cached response, or <tt>null</tt> if the tile is not cached or has expired
+     */
+    @Nullable
+    Response get(@NonNull final String key) {
+        synchronized (this) {
+            loadEntries();
+            final Entry entry = entries.get(key);
+            if (entry == null || isExpired(entry)) {
+                if (entry != null) {
+                    removeEntry(key);
+                }
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        try {
+            final String json = FileUtils.readFileToString(getJsonFile(key), CharEncoding.UTF_8);
+            final File pngFile = getPngFile(key);
+            final byte[] png = pngFile.exists() ? FileUtils.readFileToByteArray(pngFile) : null;
+            final int hitCount = hits.incrementAndGet();
+            Log.d("TileResponseCache: hit for " + key + " (" + hitCount + " hits, " + misses.get() + " misses)");
+            return new Response(json, png);
+        } catch (final IOException e) {
+            Log.w("TileResponseCache: cannot read " + key, e);
+            synchronized (this) {
+                removeEntry(key);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Check whether a non expired response is cached for a tile, without reading it nor counting a hit or a miss.
+     */
+    synchronized boolean contains(@NonNull final String key) {
+        loadEntries();
+        final Entry entry = entries.get(key);
+        return entry != null && !isExpired(entry);
+    }
+
+    /**
+     * Store the response for a tile, evicting the least recently used tiles if needed.
+     */
+    void put(@NonNull final String key, @NonNull final String json, @Nullable final byte[] png) {
+        final File jsonFile = getJsonFile(key);
+        final File pngFile = getPngFile(key);
+        try {
+            FileUtils.forceMkdir(directory);
+            FileUtils.writeStringToFile(jsonFile, json, CharEncoding.UTF_8);
+            if (png != null) {
+                FileUtils.writeByteArrayToFile(pngFile, png);
+            } else {
+                FileUtils.deleteQuietly(pngFile);
+            }
+        } catch (final IOException e) {
+            Log.w("TileResponseCache: cannot write " + key, e);
+            FileUtils.deleteQuietly(jsonFile);
+            FileUtils.deleteQuietly(pngFile);
+            return;
+        }
+        synchronized (this) {
+            loadEntries();
+            final Entry previous = entries.remove(key);
+            if (previous != null) {
+                size -= previous.size;
+            }
+            final Entry entry = new Entry(System.currentTimeMillis(), jsonFile.length() + (png != null ? pngFile.length() : 0));
+            entries.put(key, entry);
+            size += entry.size;
+            evict();
+        }
+    }
+
+    int getHitCount() {
+        return hits.get();
+    }
+
+    int getMissCount() {
+        return misses.get();
+    }
+
+    synchronized long getSize() {
+        loadEntries();
+        return size;
+    }
+
+    private boolean isExpired(final Entry entry) {
+        return System.currentTimeMillis() - entry.created > timeToLive;
+    }
+
+    private File getJsonFile(final String key) {
+        return new File(directory, key + JSON_EXTENSION);
+    }
+
+    private File getPngFile(final String key) {
+        return new File(directory, key + PNG_EXTENSION);
+    }
+
+    private void removeEntry(final String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            size -= entry.size;
+        }
+        FileUtils.deleteQuietly(getJsonFile(key));
+        FileUtils.deleteQuietly(getPngFile(key));
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue().size;
+            FileUtils.deleteQuietly(getJsonFile(eldest.getKey()));
+            FileUtils.deleteQuietly(getPngFile(eldest.getKey()));
+        }
+    }
+
+    /**
+     * Build the index from the files found in the cache directory, oldest first. Expired tiles and orphaned
+     * PNG files are removed.
+     */
+    private void loadEntries() {
+        if (entries != null) {
+            return;
+        }
+        entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+        size = 0;
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        final List<File> jsonFiles = new ArrayList<File>();
+        for (final File file : files) {
+            final String name = file.getName();
+            if (name.endsWith(JSON_EXTENSION)) {
+                jsonFiles.add(file);
+            } else if (!name.endsWith(PNG_EXTENSION) || !getJsonFile(StringUtils.removeEnd(name, PNG_EXTENSION)).exists()) {
+                FileUtils.deleteQuietly(file);
+            }
+        }
+        final File[] sorted = jsonFiles.toArray(new File[jsonFiles.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(final File lhs, final File rhs) {
+                final long lhsModified = lhs.lastModified();
+                final long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (final File jsonFile : sorted) {
+            final String key = StringUtils.removeEnd(jsonFile.getName(), JSON_EXTENSION);
+            final File pngFile = getPngFile(key);
+            final Entry entry = new Entry(jsonFile.lastModified(), jsonFile.length() + (pngFile.exists() ? pngFile.length() : 0));
+            if (isExpired(entry)) {
+                FileUtils.deleteQuietly(jsonFile);
+                FileUtils.deleteQuietly(pngFile);
+            } else {
+                entries.put(key, entry);
+                size += entry.size;
+            }
+        }
+        evict();
+        Log.d("TileResponseCache: " + entries.size() + " tiles (" + size + " bytes) in " + directory);
+    }
+
+}
@@ -0,0 +1,572 @@
+package cgeo.geocaching.connector.gc;
+
+import org.json.JSONException;
+
+import java.util.Arrays;
+
+/**
+ * Streaming parser of the UTFGrid JSON of a live map tile.
+ *
+ * The response is read in a single pass without building a DOM. Every cache found in the data is assigned an index,
+ * and the grid positions of a cache are accumulated into primitive arrays: the bounds of all its positions, and the
+ * list of the positions where it is the only cache. All the buffers are reused by the following tiles parsed by the
+ * same instance, so that only the identifiers and names of the caches are allocated for a tile.
+ *
+ * Example JSON information:
+ *
+ * <pre>
+ * {"grid":[....],
+ *  "keys":["","(55, 55)","(55, 54)",...],
+ *  "data":{"(55, 55)":[{"i":"gEaR","n":"Spiel &amp; Sport"}],"(55, 54)":[{"i":"gEaR","n":"Spiel &amp; Sport"}],...}
+ * }
+ * </pre>
+ *
+ * The positions are taken from the keys of the data object, the grid and the keys arrays being only checked for
+ * presence.
+ */
+final class UTFGridParser {
+
+    private static final int GRID_SIZE = UTFGrid.GRID_MAXX + 1;
+
+    private static final ThreadLocal<UTFGridParser> PARSERS = new ThreadLocal<UTFGridParser>() {
+        @Override
+        protected UTFGridParser initialValue() {
+            return new UTFGridParser();
+        }
+    };
+
+    private CharSequence json;
+    private int pos;
+
+    // caches of the tile, by index
+    private int cacheCount;
+    private String[] ids = new String[64];
+    private String[] names = new String[64];
+    private int[] minX = new int[64];
+    private int[] maxX = new int[64];
+    private int[] minY = new int[64];
+    private int[] maxY = new int[64];
+    private int[] firstSingle = new int[64];
+    private int[] lastSingle = new int[64];
+
+    // positions where a single cache is found, chained by cache
+    private int singleCount;
+    private int[] singlePositions = new int[256];
+    private int[] nextSingle = new int[256];
+
+    // open addressing table of cache index + 1, by identifier hash
+    private int[] idTable = new int[128];
+
+    // caches of the data entry being parsed
+    private int entryCount;
+    private int[] entryCaches = new int[8];
+
+    // bounds of the last string token in json, or in buffer if it contained escapes
+    private int tokenStart;
+    private int tokenEnd;
+    private boolean tokenEscaped;
+    private final StringBuilder buffer = new StringBuilder();
+
+    UTFGridParser() {
+        // use get() to share the parser of the current thread
+    }
+
+    /**
+     * Get the parser of the current thread.
+     */
+    static UTFGridParser get() {
+        return PARSERS.get();
+    }
+
+    /**
+     * Parse a tile response. The results are available until the next call.
+     *
+     * @throws JSONException
+     *             if the response is not valid
+     */
+    void parse(final String data) throws JSONException {
+        json = data;
+        pos = 0;
+        cacheCount = 0;
+        singleCount = 0;
+        Arrays.fill(idTable, 0);
+        try {
+            parseTile();
+        } finally {
+            json = null;
+        }
+    }
+
+    private void parseTile() throws JSONException {
+        boolean hasGrid = false;
+        boolean hasKeys = false;
+        boolean hasData = false;
+        expect('{');
+        if (!tryConsume('}')) {
+            do {
+                readString();
+                expect(':');
+                if (tokenIs("grid")) {
+                    if (skipArray() != GRID_SIZE) {
+                        throw new JSONException("No grid inside JSON");
+                    }
+                    hasGrid = true;
+                } else if (tokenIs("keys")) {
+                    skipArray();
+                    hasKeys = true;
+                } else if (tokenIs("data")) {
+                    parseData();
+                    hasData = true;
+                } else {
+                    skipValue();
+                }
+            } while (tryConsume(','));
+            expect('}');
+        }
+        if (!hasGrid) {
+            throw new JSONException("No grid inside JSON");
+        }
+        if (!hasKeys) {
+            throw new JSONException("No keys inside JSON");
+        }
+        if (!hasData) {
+            throw new JSONException("No data inside JSON");
+        }
+    }
+
+    int getCacheCount() {
+        return cacheCount;
+    }
+
+    String getId(final int cache) {
+        return ids[cache];
+    }
+
+    String getName(final int cache) {
+        return names[cache];
+    }
+
+    /**
+     * @return the center of all the positions of the cache
+     */
+    UTFGridPosition getPosition(final int cache) {
+        return new UTFGridPosition((minX[cache] + maxX[cache]) / 2, (minY[cache] + maxY[cache]) / 2);
+    }
+
+    /**
+     * @return the first position where the cache is the only one, or -1
+     */
+    int getFirstSinglePosition(final int cache) {
+        return firstSingle[cache];
+    }
+
+    /**
+     * @return the next position where the same cache is the only one, or -1
+     */
+    int getNextSinglePosition(final int single) {
+        return nextSingle[single];
+    }
+
+    int getSingleX(final int single) {
+        return singlePositions[single] / GRID_SIZE;
+    }
+
+    int getSingleY(final int single) {
+        return singlePositions[single] % GRID_SIZE;
+    }
+
+    private void parseData() throws JSONException {
+        expect('{');
+        if (tryConsume('}')) {
+            return;
+        }
+        do {
+            readString();
+            final int position = parsePosition();
+            expect(':');
+            parseEntry();
+            for (int i = 0; i < entryCount; i++) {
+                addPosition(entryCaches[i], position, entryCount == 1);
+            }
+        } while (tryConsume(','));
+        expect('}');
+    }
+
+    /**
+     * Parse the array of caches found at a grid position.
+     */
+    private void parseEntry() throws JSONException {
+        entryCount = 0;
+        expect('[');
+        if (tryConsume(']')) {
+            return;
+        }
+        do {
+            final int cache = parseCache();
+            if (entryCount == entryCaches.length) {
+                entryCaches = grow(entryCaches, entryCount * 2);
+            }
+            entryCaches[entryCount++] = cache;
+        } while (tryConsume(','));
+        expect(']');
+    }
+
+    /**
+     * Parse a cache object and return its index.
+     */
+    private int parseCache() throws JSONException {
+        expect('{');
+        int cache = -1;
+        String name = null;
+        if (!tryConsume('}')) {
+            do {
+                readString();
+                expect(':');
+                if (tokenIs("i")) {
+                    readString();
+                    cache = lookupCache();
+                } else if (tokenIs("n") && (cache < 0 || names[cache] == null)) {
+                    readString();
+                    name = tokenToString();
+                } else {
+                    skipValue();
+                }
+            } while (tryConsume(','));
+            expect('}');
+        }
+        if (cache < 0) {
+            throw new JSONException("No id for cache at " + pos);
+        }
+        if (names[cache] == null) {
+            names[cache] = name;
+        }
+        return cache;
+    }
+
+    /**
+     * Find the cache with the identifier of the current token, creating it if needed.
+     */
+    private int lookupCache() {
+        final CharSequence source = tokenEscaped ? buffer : json;
+        final int length = tokenEnd - tokenStart;
+        int hash = 0;
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        final int mask = idTable.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (idTable[slot] != 0) {
+            final int cache = idTable[slot] - 1;
+            final String id = ids[cache];
+            if (id.length() == length && regionMatches(source, tokenStart, id)) {
+                return cache;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        final int cache = newCache(tokenToString());
+        idTable[slot] = cache + 1;
+        if (cacheCount * 2 > idTable.length) {
+            rehash();
+        }
+        return cache;
+    }
+
+    private static boolean regionMatches(final CharSequence source, final int start, final String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (source.charAt(start + i) != id.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        idTable = new int[idTable.length * 2];
+        final int mask = idTable.length - 1;
+        for (int cache = 0; cache < cacheCount; cache++) {
+            final int hash = ids[cache].hashCode();
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (idTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            idTable[slot] = cache + 1;
+        }
+    }
+
+    private int newCache(final String id) {
+        if (cacheCount == ids.length) {
+            final int capacity = cacheCount * 2;
+            ids = grow(ids, capacity);
+            names = grow(names, capacity);
+            minX = grow(minX, capacity);
+            maxX = grow(maxX, capacity);
+            minY = grow(minY, capacity);
+            maxY = grow(maxY, capacity);
+            firstSingle = grow(firstSingle, capacity);
+            lastSingle = grow(lastSingle, capacity);
+        }
+        final int cache = cacheCount++;
+        ids[cache] = id;
+        names[cache] = null;
+        minX[cache] = UTFGrid.GRID_MAXX;
+        maxX[cache] = 0;
+        minY[cache] = UTFGrid.GRID_MAXY;
+        maxY[cache] = 0;
+        firstSingle[cache] = -1;
+        lastSingle[cache] = -1;
+        return cache;
+    }
+
+    private void addPosition(final int cache, final int position, final boolean single) {
+        final int x = position / GRID_SIZE;
+        final int y = position % GRID_SIZE;
+        minX[cache] = Math.min(minX[cache], x);
+        maxX[cache] = Math.max(maxX[cache], x);
+        minY[cache] = Math.min(minY[cache], y);
+        maxY[cache] = Math.max(maxY[cache], y);
+        if (single) {
+            if (singleCount == singlePositions.length) {
+                singlePositions = grow(singlePositions, singleCount * 2);
+                nextSingle = grow(nextSingle, singleCount * 2);
+            }
+            final int index = singleCount++;
+            singlePositions[index] = position;
+            nextSingle[index] = -1;
+            if (lastSingle[cache] < 0) {
+                firstSingle[cache] = index;
+            } else {
+                nextSingle[lastSingle[cache]] = index;
+            }
+            lastSingle[cache] = index;
+        }
+    }
+
+    /**
+     * Decode the grid position of the current token, in the format "(12, 34)". Keys which cannot be parsed are
+     * mapped to the (0, 0) position, as done by {@link UTFGridPosition#fromString(String)}.
+     *
+     * @return x * 64 + y
+     */
+    private int parsePosition() {
+        final CharSequence source = tokenEscaped ? buffer : json;
+        int i = tokenStart;
+        while (i < tokenEnd && !isDigit(source.charAt(i))) {
+            i++;
+        }
+        int x = 0;
+        final int xStart = i;
+        while (i < tokenEnd && isDigit(source.charAt(i))) {
+            x = Math.min(x * 10 + source.charAt(i++) - '0', Integer.MAX_VALUE / 10);
+        }
+        if (i == xStart || i == tokenEnd || source.charAt(i++) != ',') {
+            return 0;
+        }
+        while (i < tokenEnd && Character.isWhitespace(source.charAt(i))) {
+            i++;
+        }
+        int y = 0;
+        final int yStart = i;
+        while (i < tokenEnd && isDigit(source.charAt(i))) {
+            y = Math.min(y * 10 + source.charAt(i++) - '0', Integer.MAX_VALUE / 10);
+        }
+        if (i == yStart) {
+            return 0;
+        }
+        while (i < tokenEnd) {
+            if (isDigit(source.charAt(i++))) {
+                return 0;
+            }
+        }
+        if (x > UTFGrid.GRID_MAXX || y > UTFGrid.GRID_MAXY) {
+            throw new IllegalArgumentException("position outside bounds");
+        }
+        return x * GRID_SIZE + y;
+    }
+
+    // Arrays.copyOf() is not available before API level 9
+    private static int[] grow(final int[] array, final int capacity) {
+        final int[] result = new int[capacity];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    private static String[] grow(final String[] array, final int capacity) {
+        final String[] result = new String[capacity];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private boolean tokenIs(final String expected) {
+        final CharSequence source = tokenEscaped ? buffer : json;
+        return tokenEnd - tokenStart == expected.length() && regionMatches(source, tokenStart, expected);
+    }
+
+    private String tokenToString() {
+        return (tokenEscaped ? buffer : json).subSequence(tokenStart, tokenEnd).toString();
+    }
+
+    /**
+     * Read a string token. The token refers directly to the JSON text unless it contains escape sequences, in which
+     * case it is decoded into the reused buffer.
+     */
+    private void readString() throws JSONException {
+        expect('"');
+        final int start = pos;
+        final int length = json.length();
+        while (pos < length) {
+            final char c = json.charAt(pos);
+            if (c == '"') {
+                tokenStart = start;
+                tokenEnd = pos++;
+                tokenEscaped = false;
+                return;
+            }
+            if (c == '\\') {
+                buffer.setLength(0);
+                buffer.append(json, start, pos);
+                readEscapedString();
+                return;
+            }
+            pos++;
+        }
+        throw new JSONException("Unterminated string at " + start);
+    }
+
+    private void readEscapedString() throws JSONException {
+        final int length = json.length();
+        while (pos < length) {
+            final char c = json.charAt(pos++);
+            if (c == '"') {
+                tokenStart = 0;
+                tokenEnd = buffer.length();
+                tokenEscaped = true;
+                return;
+            }
+            if (c != '\\') {
+                buffer.append(c);
+                continue;
+            }
+            if (pos >= length) {
+                break;
+            }
+            final char escaped = json.charAt(pos++);
+            switch (escaped) {
+                case 'b':
+                    buffer.append('\b');
+                    break;
+                case 'f':
+                    buffer.append('\f');
+                    break;
+                case 'n':
+                    buffer.append('\n');
+                    break;
+                case 'r':
+                    buffer.append('\r');
+                    break;
+                case 't':
+                    buffer.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > length) {
+                        throw new JSONException("Invalid escape sequence at " + pos);
+                    }
+                    try {
+                        buffer.append((char) Integer.parseInt(json.subSequence(pos, pos + 4).toString(), 16));
+                    } catch (final NumberFormatException e) {
+                        throw new JSONException("Invalid escape sequence at " + pos);
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    buffer.append(escaped);
+                    break;
+            }
+        }
+        throw new JSONException("Unterminated string");
+    }
+
+    /**
+     * Skip an array, returning its number of elements.
+     */
+    private int skipArray() throws JSONException {
+        expect('[');
+        if (tryConsume(']')) {
+            return 0;
+        }
+        int count = 0;
+        do {
+            skipValue();
+            count++;
+        } while (tryConsume(','));
+        expect(']');
+        return count;
+    }
+
+    private void skipValue() throws JSONException {
+        final char c = peek();
+        if (c == '"') {
+            readString();
+        } else if (c == '[') {
+            skipArray();
+        } else if (c == '{') {
+            pos++;
+            if (!tryConsume('}')) {
+                do {
+                    readString();
+                    expect(':');
+                    skipValue();
+                } while (tryConsume(','));
+                expect('}');
+            }
+        } else {
+            // number, true, false or null
+            final int start = pos;
+            final int length = json.length();
+            while (pos < length && ",]} \t\r\n".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            if (pos == start) {
+                throw new JSONException("Unexpected character '" + c + "' at " + pos);
+            }
+        }
+    }
+
+    private char peek() throws JSONException {
+        skipWhitespace();
+        if (pos >= json.length()) {
+            throw new JSONException("Unexpected end of data");
+        }
+        return json.charAt(pos);
+    }
+
+    private boolean tryConsume(final char c) throws JSONException {
+        if (peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final char c) throws JSONException {
+        if (!tryConsume(c)) {
+            throw new JSONException("Expected '" + c + "' at " + pos);
+        }
+    }
+
+    private void skipWhitespace() {
+        final int length = json.length();
+        while (pos < length) {
+            final char c = json.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+}
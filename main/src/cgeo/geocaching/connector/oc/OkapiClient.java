@@ -24,6 +24,7 @@ import cgeo.geocaching.enumerations.WaypointType;
 import cgeo.geocaching.geopoint.Geopoint;
 import cgeo.geocaching.geopoint.GeopointFormatter;
 import cgeo.geocaching.geopoint.Viewport;
+import cgeo.geocaching.network.HttpCache;
 import cgeo.geocaching.network.Network;
 import cgeo.geocaching.network.OAuth;
 import cgeo.geocaching.network.Parameters;
@@ -60,6 +61,11 @@ final class OkapiClient {
 
     private static final char SEPARATOR = '|';
     private static final String SEPARATOR_STRING = Character.toString(SEPARATOR);
+    /**
+     * Cache details, identified without the parameters which change with every signed request. The user is identified
+     * by the <tt>oauth_token</tt> parameter, which is part of the key.
+     */
+    private static final HttpCache CACHE_DETAILS = new HttpCache("okapi", 2 * 1024 * 1024, 0, null, "oauth_nonce", "oauth_timestamp", "oauth_signature");
     private static final SynchronizedDateFormat LOG_DATE_FORMAT = new SynchronizedDateFormat("yyyy-MM-dd HH:mm:ss.SSSZ", TimeZone.getTimeZone("UTC"), Locale.US);
     private static final SynchronizedDateFormat ISO8601DATEFORMAT = new SynchronizedDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.getDefault());
 
@@ -709,6 +715,9 @@ final class OkapiClient {
         }
 
         final String uri = "http://" + host + service.methodName;
+        if (service == OkapiService.SERVICE_CACHE) {
+            return new JSONResult(Network.getRequest(uri, params, CACHE_DETAILS));
+        }
         return new JSONResult(Network.getRequest(uri, params));
     }
 
@@ -2,6 +2,7 @@ package cgeo.geocaching.connector.ox;
 
 import cgeo.geocaching.Geocache;
 import cgeo.geocaching.files.GPX10Parser;
+import cgeo.geocaching.files.GPXParser;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jdt.annotation.NonNull;
@@ -15,6 +16,11 @@ public class OXGPXParser extends GPX10Parser {
         this.isDetailed = isDetailed;
     }
 
+    @Override
+    protected GPXParser newParser() {
+        return shareWaypoints(new OXGPXParser(getListId(), isDetailed));
+    }
+
     @Override
     protected void afterParsing(Geocache cache) {
         cache.setUpdated(System.currentTimeMillis());
@@ -54,6 +54,9 @@ public class OpenCachingApi {
         } catch (Exception e) {
             Log.e("Error importing from OpenCaching.com", e);
             return Collections.emptyList();
+        } finally {
+            // the parser may stop before the end of the body
+            Network.release(response);
         }
         return caches;
     }
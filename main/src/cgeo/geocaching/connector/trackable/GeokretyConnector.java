@@ -1,7 +1,9 @@
 package cgeo.geocaching.connector.trackable;
 
 import cgeo.geocaching.Trackable;
+import cgeo.geocaching.network.HttpCache;
 import cgeo.geocaching.network.Network;
+import cgeo.geocaching.network.Parameters;
 import cgeo.geocaching.utils.Log;
 
 import org.apache.commons.lang3.StringUtils;
@@ -13,6 +15,8 @@ import java.util.regex.Pattern;
 public class GeokretyConnector extends AbstractTrackableConnector {
 
     private static final Pattern PATTERN_GK_CODE = Pattern.compile("GK[0-9A-F]{4,}");
+    /** The trackable exports are used for 10 minutes before being validated again. */
+    private static final HttpCache EXPORT_CACHE = new HttpCache("geokrety", 1024 * 1024, 10 * 60 * 1000, null);
 
     @Override
     public boolean canHandleTrackable(String geocode) {
@@ -26,7 +30,7 @@ public class GeokretyConnector extends AbstractTrackableConnector {
 
     @Override
     public Trackable searchTrackable(String geocode, String guid, String id) {
-        final String page = Network.getResponseData(Network.getRequest("http://geokrety.org/export2.php?gkid=" + getId(geocode)));
+        final String page = Network.getResponseData(Network.getRequest("http://geokrety.org/export2.php", new Parameters("gkid", String.valueOf(getId(geocode))), EXPORT_CACHE));
         if (page == null) {
             return null;
         }
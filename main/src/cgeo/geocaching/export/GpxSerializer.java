@@ -6,7 +6,6 @@ import cgeo.geocaching.LogEntry;
 import cgeo.geocaching.Trackable;
 import cgeo.geocaching.Waypoint;
 import cgeo.geocaching.enumerations.CacheAttribute;
-import cgeo.geocaching.enumerations.LoadFlags;
 import cgeo.geocaching.geopoint.Geopoint;
 import cgeo.geocaching.utils.SynchronizedDateFormat;
 import cgeo.geocaching.utils.TextUtils;
@@ -21,11 +20,9 @@ import org.xmlpull.v1.XmlSerializer;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 
 public final class GpxSerializer {
 
@@ -36,17 +33,16 @@ public final class GpxSerializer {
     public static final String PREFIX_GSAK = "http://www.gsak.net/xmlv1/4";
     public static final String PREFIX_CGEO = "http://www.cgeo.org/wptext/1/0";
 
-    /**
-     * During the export, only this number of geocaches is fully loaded into memory.
-     */
-    public static final int CACHES_PER_BATCH = 100;
-
     /**
      * counter for exported caches, used for progress reporting
      */
     private int countExported;
     private ProgressListener progressListener;
     private final XmlSerializer gpx = new KXmlSerializer();
+    /** whether the logs element of the current cache has been started */
+    private boolean logsStarted;
+    /** whether the current cache is skipped */
+    private boolean skipCache;
 
     protected static interface ProgressListener {
 
@@ -54,10 +50,17 @@ public final class GpxSerializer {
 
     }
 
-    public void writeGPX(List<String> allGeocodesIn, Writer writer, final ProgressListener progressListener) throws IOException {
-        // create a copy of the geocode list, as we need to modify it, but it might be immutable
-        final ArrayList<String> allGeocodes = new ArrayList<String>(allGeocodesIn);
+    /**
+     * Export the caches in the order of the list. The caches are read from the database and written one at a time, so
+     * that the memory used does not depend on the number of caches.
+     */
+    public void writeGPX(List<String> allGeocodes, Writer writer, final ProgressListener progressListener) throws IOException {
+        startGPX(writer, progressListener);
+        DataStore.walkCaches(allGeocodes, cacheWriter);
+        endGPX();
+    }
 
+    void startGPX(final Writer writer, final ProgressListener progressListener) throws IOException {
         this.progressListener = progressListener;
         gpx.setOutput(writer);
 
@@ -74,88 +77,113 @@ public final class GpxSerializer {
                 PREFIX_GPX + " http://www.topografix.com/GPX/1/0/gpx.xsd " +
                         PREFIX_GROUNDSPEAK + " http://www.groundspeak.com/cache/1/0/1/cache.xsd " +
                         PREFIX_GSAK + " http://www.gsak.net/xmlv1/4/gsak.xsd");
+    }
 
-        // Split the overall set of geocodes into small chunks. That is a compromise between memory efficiency (because
-        // we don't load all caches fully into memory) and speed (because we don't query each cache separately).
-        while (!allGeocodes.isEmpty()) {
-            final List<String> batch = allGeocodes.subList(0, Math.min(CACHES_PER_BATCH, allGeocodes.size()));
-            exportBatch(gpx, batch);
-            batch.clear();
-        }
-
+    void endGPX() throws IOException {
         gpx.endTag(PREFIX_GPX, "gpx");
         gpx.endDocument();
     }
 
-    private void exportBatch(final XmlSerializer gpx, Collection<String> geocodesOfBatch) throws IOException {
-        final Set<Geocache> caches = DataStore.loadCaches(geocodesOfBatch, LoadFlags.LOAD_ALL_DB_ONLY);
-        for (final Geocache cache : caches) {
-            if (cache == null) {
-                continue;
-            }
+    /**
+     * Writes the caches walked in the database.
+     */
+    final DataStore.CacheVisitor cacheWriter = new DataStore.CacheVisitor() {
+
+        @Override
+        public void startCache(final Geocache cache) throws IOException {
             final Geopoint coords = cache.getCoords();
-            if (coords == null) {
-                // Export would be invalid without coordinates.
-                continue;
+            // Export would be invalid without coordinates.
+            skipCache = coords == null;
+            if (skipCache) {
+                return;
             }
-            gpx.startTag(PREFIX_GPX, "wpt");
-            gpx.attribute("", "lat", Double.toString(coords.getLatitude()));
-            gpx.attribute("", "lon", Double.toString(coords.getLongitude()));
+            logsStarted = false;
+            writeCacheStart(cache, coords);
+        }
 
-            final Date hiddenDate = cache.getHiddenDate();
-            if (hiddenDate != null) {
-                XmlUtils.simpleText(gpx, PREFIX_GPX, "time", dateFormatZ.format(hiddenDate));
+        @Override
+        public void log(final LogEntry log) throws IOException {
+            if (skipCache) {
+                return;
+            }
+            if (!logsStarted) {
+                gpx.startTag(PREFIX_GROUNDSPEAK, "logs");
+                logsStarted = true;
             }
+            writeLog(log);
+        }
 
-            XmlUtils.multipleTexts(gpx, PREFIX_GPX,
-                    "name", cache.getGeocode(),
-                    "desc", cache.getName(),
-                    "url", cache.getUrl(),
-                    "urlname", cache.getName(),
-                    "sym", cache.isFound() ? "Geocache Found" : "Geocache",
-                    "type", "Geocache|" + cache.getType().pattern);
-
-            gpx.startTag(PREFIX_GROUNDSPEAK, "cache");
-            gpx.attribute("", "id", cache.getCacheId());
-            gpx.attribute("", "available", !cache.isDisabled() ? "True" : "False");
-            gpx.attribute("", "archived", cache.isArchived() ? "True" : "False");
-
-            XmlUtils.multipleTexts(gpx, PREFIX_GROUNDSPEAK,
-                    "name", cache.getName(),
-                    "placed_by", cache.getOwnerDisplayName(),
-                    "owner", cache.getOwnerUserId(),
-                    "type", cache.getType().pattern,
-                    "container", cache.getSize().id,
-                    "difficulty", Float.toString(cache.getDifficulty()),
-                    "terrain", Float.toString(cache.getTerrain()),
-                    "country", cache.getLocation(),
-                    "state", "",
-                    "encoded_hints", cache.getHint());
-
-            writeAttributes(cache);
-
-            gpx.startTag(PREFIX_GROUNDSPEAK, "short_description");
-            gpx.attribute("", "html", TextUtils.containsHtml(cache.getShortDescription()) ? "True" : "False");
-            gpx.text(cache.getShortDescription());
-            gpx.endTag(PREFIX_GROUNDSPEAK, "short_description");
-
-            gpx.startTag(PREFIX_GROUNDSPEAK, "long_description");
-            gpx.attribute("", "html", TextUtils.containsHtml(cache.getDescription()) ? "True" : "False");
-            gpx.text(cache.getDescription());
-            gpx.endTag(PREFIX_GROUNDSPEAK, "long_description");
-
-            writeLogs(cache);
-            writeTravelBugs(cache);
-
-            gpx.endTag(PREFIX_GROUNDSPEAK, "cache");
-            gpx.endTag(PREFIX_GPX, "wpt");
+        @Override
+        public void endCache(final Geocache cache) throws IOException {
+            if (skipCache) {
+                return;
+            }
+            if (logsStarted) {
+                gpx.endTag(PREFIX_GROUNDSPEAK, "logs");
+            }
+            writeCacheEnd(cache);
+        }
+    };
 
-            writeWaypoints(cache);
+    private void writeCacheStart(final Geocache cache, final Geopoint coords) throws IOException {
+        gpx.startTag(PREFIX_GPX, "wpt");
+        gpx.attribute("", "lat", Double.toString(coords.getLatitude()));
+        gpx.attribute("", "lon", Double.toString(coords.getLongitude()));
 
-            countExported++;
-            if (progressListener != null) {
-                progressListener.publishProgress(countExported);
-            }
+        final Date hiddenDate = cache.getHiddenDate();
+        if (hiddenDate != null) {
+            XmlUtils.simpleText(gpx, PREFIX_GPX, "time", dateFormatZ.format(hiddenDate));
+        }
+
+        XmlUtils.multipleTexts(gpx, PREFIX_GPX,
+                "name", cache.getGeocode(),
+                "desc", cache.getName(),
+                "url", cache.getUrl(),
+                "urlname", cache.getName(),
+                "sym", cache.isFound() ? "Geocache Found" : "Geocache",
+                "type", "Geocache|" + cache.getType().pattern);
+
+        gpx.startTag(PREFIX_GROUNDSPEAK, "cache");
+        gpx.attribute("", "id", cache.getCacheId());
+        gpx.attribute("", "available", !cache.isDisabled() ? "True" : "False");
+        gpx.attribute("", "archived", cache.isArchived() ? "True" : "False");
+
+        XmlUtils.multipleTexts(gpx, PREFIX_GROUNDSPEAK,
+                "name", cache.getName(),
+                "placed_by", cache.getOwnerDisplayName(),
+                "owner", cache.getOwnerUserId(),
+                "type", cache.getType().pattern,
+                "container", cache.getSize().id,
+                "difficulty", Float.toString(cache.getDifficulty()),
+                "terrain", Float.toString(cache.getTerrain()),
+                "country", cache.getLocation(),
+                "state", "",
+                "encoded_hints", cache.getHint());
+
+        writeAttributes(cache);
+
+        gpx.startTag(PREFIX_GROUNDSPEAK, "short_description");
+        gpx.attribute("", "html", TextUtils.containsHtml(cache.getShortDescription()) ? "True" : "False");
+        gpx.text(cache.getShortDescription());
+        gpx.endTag(PREFIX_GROUNDSPEAK, "short_description");
+
+        gpx.startTag(PREFIX_GROUNDSPEAK, "long_description");
+        gpx.attribute("", "html", TextUtils.containsHtml(cache.getDescription()) ? "True" : "False");
+        gpx.text(cache.getDescription());
+        gpx.endTag(PREFIX_GROUNDSPEAK, "long_description");
+    }
+
+    private void writeCacheEnd(final Geocache cache) throws IOException {
+        writeTravelBugs(cache);
+
+        gpx.endTag(PREFIX_GROUNDSPEAK, "cache");
+        gpx.endTag(PREFIX_GPX, "wpt");
+
+        writeWaypoints(cache);
+
+        countExported++;
+        if (progressListener != null) {
+            progressListener.publishProgress(countExported);
         }
     }
 
@@ -237,34 +265,25 @@ public final class GpxSerializer {
         }
     }
 
-    private void writeLogs(final Geocache cache) throws IOException {
-        if (cache.getLogs().isEmpty()) {
-            return;
-        }
-        gpx.startTag(PREFIX_GROUNDSPEAK, "logs");
-
-        for (final LogEntry log : cache.getLogs()) {
-            gpx.startTag(PREFIX_GROUNDSPEAK, "log");
-            gpx.attribute("", "id", Integer.toString(log.id));
+    private void writeLog(final LogEntry log) throws IOException {
+        gpx.startTag(PREFIX_GROUNDSPEAK, "log");
+        gpx.attribute("", "id", Integer.toString(log.id));
 
-            XmlUtils.multipleTexts(gpx, PREFIX_GROUNDSPEAK,
-                    "date", dateFormatZ.format(new Date(log.date)),
-                    "type", log.type.type);
+        XmlUtils.multipleTexts(gpx, PREFIX_GROUNDSPEAK,
+                "date", dateFormatZ.format(new Date(log.date)),
+                "type", log.type.type);
 
-            gpx.startTag(PREFIX_GROUNDSPEAK, "finder");
-            gpx.attribute("", "id", "");
-            gpx.text(log.author);
-            gpx.endTag(PREFIX_GROUNDSPEAK, "finder");
+        gpx.startTag(PREFIX_GROUNDSPEAK, "finder");
+        gpx.attribute("", "id", "");
+        gpx.text(log.author);
+        gpx.endTag(PREFIX_GROUNDSPEAK, "finder");
 
-            gpx.startTag(PREFIX_GROUNDSPEAK, "text");
-            gpx.attribute("", "encoded", "False");
-            gpx.text(log.log);
-            gpx.endTag(PREFIX_GROUNDSPEAK, "text");
-
-            gpx.endTag(PREFIX_GROUNDSPEAK, "log");
-        }
+        gpx.startTag(PREFIX_GROUNDSPEAK, "text");
+        gpx.attribute("", "encoded", "False");
+        gpx.text(log.log);
+        gpx.endTag(PREFIX_GROUNDSPEAK, "text");
 
-        gpx.endTag(PREFIX_GROUNDSPEAK, "logs");
+        gpx.endTag(PREFIX_GROUNDSPEAK, "log");
     }
 
     private void writeTravelBugs(final Geocache cache) throws IOException {
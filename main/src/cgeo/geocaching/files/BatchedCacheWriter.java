@@ -0,0 +1,234 @@
+package cgeo.geocaching.files;
+
+import cgeo.geocaching.DataStore;
+import cgeo.geocaching.Geocache;
+import cgeo.geocaching.Waypoint;
+import cgeo.geocaching.enumerations.LoadFlags;
+import cgeo.geocaching.enumerations.LoadFlags.RemoveFlag;
+import cgeo.geocaching.enumerations.LoadFlags.SaveFlag;
+import cgeo.geocaching.utils.CancellableHandler;
+import cgeo.geocaching.utils.Log;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Persist imported caches on a separate thread, several caches per database transaction.
+ *
+ * The parser hands over the finished caches and waypoints through a bounded queue, so that parsing blocks instead of
+ * accumulating caches in memory when the database cannot keep up. Waypoints are merged into their parent cache on
+ * the writer thread, either in the batch waiting to be stored or in the cache loaded from the database.
+ */
+final class BatchedCacheWriter implements ParsedCacheSink {
+
+    /** Number of caches stored in a single transaction. */
+    static final int BATCH_SIZE = 50;
+
+    /** Message sent to the progress handler after each batch, with the caches per second and logs per second. */
+    static final int MSG_THROUGHPUT = 1;
+
+    private static final class Item {
+        final Geocache cache;
+        final String parentGeocode;
+        final String waypointName;
+        final Waypoint waypoint;
+
+        Item(final Geocache cache, final String parentGeocode, final String waypointName, final Waypoint waypoint) {
+            this.cache = cache;
+            this.parentGeocode = parentGeocode;
+            this.waypointName = waypointName;
+            this.waypoint = waypoint;
+        }
+    }
+
+    private static final Item END = new Item(null, null, null, null);
+
+    private final BlockingQueue<Item> queue;
+    private final int batchSize;
+    @Nullable
+    private final CancellableHandler progressHandler;
+    private final Thread thread;
+
+    /** Caches waiting for the next transaction, by geocode. Only accessed from the writer thread. */
+    private final LinkedHashMap<String, Geocache> batch = new LinkedHashMap<String, Geocache>();
+
+    private volatile RuntimeException failure = null;
+    private final long startTime;
+    private int storedCaches = 0;
+    private int storedLogs = 0;
+
+    BatchedCacheWriter(@Nullable final CancellableHandler progressHandler) {
+        this(BATCH_SIZE, progressHandler);
+    }
+
+    BatchedCacheWriter(final int batchSize, @Nullable final CancellableHandler progressHandler) {
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<Item>(2 * batchSize);
+        this.progressHandler = progressHandler;
+        this.thread = new Thread("BatchedCacheWriter") {
+            @Override
+            public void run() {
+                write();
+            }
+        };
+        startTime = System.currentTimeMillis();
+        thread.start();
+    }
+
+    /**
+     * Queue a cache to be stored, blocking while the queue is full.
+     */
+    @Override
+    public void addCache(@NonNull final Geocache cache) {
+        put(new Item(cache, null, null, null));
+    }
+
+    /**
+     * Queue an additional waypoint, to be merged into its parent cache once all previously added caches have been
+     * handled.
+     */
+    @Override
+    public void addWaypoint(@NonNull final String parentGeocode, @NonNull final String waypointName, @NonNull final Waypoint waypoint) {
+        put(new Item(null, parentGeocode, waypointName, waypoint));
+    }
+
+    /**
+     * Store the remaining caches and stop the writer thread. The writer thread is waited for even if the current
+     * thread is interrupted, the interruption is kept for the caller.
+     *
+     * @param aborted
+     *            <tt>true</tt> if the parsing has failed, in which case a failure of the writer thread is only logged
+     *            so as not to hide the failure of the parsing
+     * @throws RuntimeException
+     *             if the writer thread failed and the parsing did not
+     */
+    void close(final boolean aborted) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(END);
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            if (!aborted) {
+                throw failure;
+            }
+            Log.w("BatchedCacheWriter.close: the failure of the writer is not reported, the parsing has failed already");
+        }
+    }
+
+    private void put(final Item item) {
+        if (failure != null) {
+            throw failure;
+        }
+        try {
+            queue.put(item);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while queueing an imported cache", e);
+        }
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                final Item item = queue.take();
+                if (item == END) {
+                    break;
+                }
+                if (item.cache != null) {
+                    if (batch.put(item.cache.getGeocode(), item.cache) != null) {
+                        // the same cache came twice, the first one is replaced
+                        Log.w("BatchedCacheWriter: replacing " + item.cache.getGeocode() + " in the same batch");
+                    }
+                } else {
+                    mergeWaypoint(item);
+                }
+                if (batch.size() >= batchSize) {
+                    flush();
+                }
+            }
+            flush();
+        } catch (final InterruptedException e) {
+            Log.w("BatchedCacheWriter: interrupted");
+        } catch (final RuntimeException e) {
+            Log.e("BatchedCacheWriter: storing imported caches failed", e);
+            failure = e;
+            // let the parser continue, the failure is reported when closing
+            queue.clear();
+            drain();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (queue.take() != END) {
+                // discard
+            }
+        } catch (final InterruptedException e) {
+            // stop draining
+        }
+    }
+
+    private void mergeWaypoint(final Item item) {
+        Geocache parent = batch.get(item.parentGeocode);
+        if (parent == null) {
+            // lookup cache for waypoint in already stored caches
+            parent = DataStore.loadCache(item.parentGeocode, LoadFlags.LOAD_CACHE_OR_DB);
+            if (parent == null) {
+                return;
+            }
+        }
+        PendingWaypoints.mergeWaypoint(parent, item.waypointName, item.waypoint);
+        batch.put(parent.getGeocode(), parent);
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final ArrayList<Geocache> caches = new ArrayList<Geocache>(batch.values());
+        batch.clear();
+        DataStore.saveCaches(caches, EnumSet.of(SaveFlag.SAVE_DB));
+
+        // avoid the cachecache using lots of memory for caches which the user did not actually look at
+        final HashSet<String> geocodes = new HashSet<String>(caches.size());
+        for (final Geocache cache : caches) {
+            geocodes.add(cache.getGeocode());
+            storedLogs += cache.getLogs().size();
+        }
+        DataStore.removeCaches(geocodes, EnumSet.of(RemoveFlag.REMOVE_CACHE));
+        storedCaches += caches.size();
+
+        final long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        final int cachesPerSecond = (int) (storedCaches * 1000L / elapsed);
+        final int logsPerSecond = (int) (storedLogs * 1000L / elapsed);
+        Log.d(String.format(Locale.US, "BatchedCacheWriter: %d caches and %d logs stored in %d ms (%d caches/s, %d logs/s)",
+                storedCaches, storedLogs, elapsed, cachesPerSecond, logsPerSecond));
+        if (progressHandler != null) {
+            progressHandler.sendMessage(progressHandler.obtainMessage(MSG_THROUGHPUT, cachesPerSecond, logsPerSecond));
+        }
+    }
+
+}
@@ -8,6 +8,11 @@ public class GPX10Parser extends GPXParser {
         super(listIdIn, "http://www.topografix.com/GPX/1/0", "1.0");
     }
 
+    @Override
+    protected GPXParser newParser() {
+        return shareWaypoints(new GPX10Parser(getListId()));
+    }
+
     @Override
     protected Element getCacheParent(Element waypoint) {
         return waypoint;
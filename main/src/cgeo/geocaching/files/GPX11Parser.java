@@ -8,6 +8,11 @@ public final class GPX11Parser extends GPXParser {
         super(listIdIn, "http://www.topografix.com/GPX/1/1", "1.1");
     }
 
+    @Override
+    protected GPXParser newParser() {
+        return shareWaypoints(new GPX11Parser(getListId()));
+    }
+
     @Override
     protected Element getCacheParent(Element waypoint) {
         return waypoint.getChild(namespace, "extensions");
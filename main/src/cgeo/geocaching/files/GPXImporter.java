@@ -4,6 +4,7 @@ import cgeo.geocaching.DataStore;
 import cgeo.geocaching.Geocache;
 import cgeo.geocaching.R;
 import cgeo.geocaching.SearchResult;
+import cgeo.geocaching.StaticMapsDownloader;
 import cgeo.geocaching.StaticMapsProvider;
 import cgeo.geocaching.activity.ActivityMixin;
 import cgeo.geocaching.activity.Progress;
@@ -13,6 +14,8 @@ import cgeo.geocaching.ui.dialog.Dialogs;
 import cgeo.geocaching.utils.CancellableHandler;
 import cgeo.geocaching.utils.Log;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -30,12 +33,19 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 public class GPXImporter {
@@ -59,6 +69,8 @@ public class GPXImporter {
     private static final List<String> ZIP_MIME_TYPES = Arrays.asList("application/zip", "application/x-compressed", "application/x-zip-compressed", "application/x-zip", "application/octet-stream");
 
     private final Progress progress = new Progress(true);
+    /** Message of the current import step, completed with the import throughput. */
+    private String progressMessage = null;
 
     private final Resources res;
     private final int listId;
@@ -188,24 +200,83 @@ public class GPXImporter {
 
         protected abstract Collection<Geocache> doImport() throws IOException, ParserException;
 
+        /**
+         * Queue the static maps of all caches, and wait for their download. The progress is the number of caches whose
+         * maps are downloaded, and is updated while queueing already. Cancelling the import drops the queued maps of
+         * this import only.
+         */
         private boolean importStaticMaps(final SearchResult importedCaches) {
-            int storedCacheMaps = 0;
+            final List<Future<?>> downloads = new ArrayList<Future<?>>();
+            final List<List<Future<?>>> cacheDownloads = new ArrayList<List<Future<?>>>(importedCaches.getCount());
+            int done = 0;
             for (final String geocode : importedCaches.getGeocodes()) {
                 final Geocache cache = DataStore.loadCache(geocode, LoadFlags.LOAD_WAYPOINTS);
+                final List<Future<?>> queued;
                 if (cache != null) {
                     Log.d("GPXImporter.ImportThread.importStaticMaps start downloadMaps for cache " + geocode);
-                    StaticMapsProvider.downloadMaps(cache);
+                    // the preview is not waited for, so that all the maps are queued at once
+                    queued = StaticMapsProvider.downloadMaps(cache, false);
                 } else {
                     Log.d("GPXImporter.ImportThread.importStaticMaps: no data found for " + geocode);
+                    queued = Collections.emptyList();
                 }
-                storedCacheMaps++;
+                downloads.addAll(queued);
+                cacheDownloads.add(queued);
                 if (progressHandler.isCancelled()) {
+                    StaticMapsDownloader.getInstance().cancel(downloads);
                     return false;
                 }
-                progressHandler.sendMessage(progressHandler.obtainMessage(0, storedCacheMaps, 0));
+                // the maps are downloaded in the order of the caches
+                while (done < cacheDownloads.size() && isDone(cacheDownloads.get(done))) {
+                    done++;
+                }
+                progressHandler.sendMessage(progressHandler.obtainMessage(0, done, 0));
+            }
+            for (; done < cacheDownloads.size(); done++) {
+                for (final Future<?> download : cacheDownloads.get(done)) {
+                    if (!awaitDownload(download)) {
+                        StaticMapsDownloader.getInstance().cancel(downloads);
+                        return false;
+                    }
+                }
+                progressHandler.sendMessage(progressHandler.obtainMessage(0, done + 1, 0));
             }
             return true;
         }
+
+        private static boolean isDone(final List<Future<?>> downloads) {
+            for (final Future<?> download : downloads) {
+                if (!download.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Wait for a map download, checking every second whether the import has been cancelled.
+         *
+         * @return <tt>false</tt> if the import has been cancelled or interrupted
+         */
+        private boolean awaitDownload(final Future<?> download) {
+            while (!progressHandler.isCancelled()) {
+                try {
+                    download.get(1, TimeUnit.SECONDS);
+                    return true;
+                } catch (final TimeoutException e) {
+                    // check the cancellation again
+                } catch (final InterruptedException e) {
+                    Log.i("GPXImporter.ImportThread.importStaticMaps interrupted");
+                    return false;
+                } catch (final ExecutionException e) {
+                    Log.e("GPXImporter.ImportThread.importStaticMaps", e);
+                    return true;
+                } catch (final CancellationException e) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
     static class ImportLocFileThread extends ImportThread {
@@ -281,7 +352,7 @@ public class GPXImporter {
         protected Collection<Geocache> doImport(GPXParser parser) throws IOException, ParserException {
             Log.i("Import GPX file: " + cacheFile.getAbsolutePath());
             importStepHandler.sendMessage(importStepHandler.obtainMessage(IMPORT_STEP_READ_FILE, R.string.gpx_import_loading_caches, (int) cacheFile.length()));
-            Collection<Geocache> caches = parser.parse(cacheFile, progressHandler);
+            Collection<Geocache> caches = new ParallelGPXParser(parser, progressHandler).parse(cacheFile);
 
             final String wptsFilename = getWaypointsFileNameForGpxFile(cacheFile);
             if (wptsFilename != null) {
@@ -327,43 +398,74 @@ public class GPXImporter {
 
         @Override
         protected Collection<Geocache> doImport(GPXParser parser) throws IOException, ParserException {
+            // the waypoints are merged into their caches before these are stored, whatever the order of the files
+            parser.keepPendingWaypoints();
+            final Collection<Geocache> caches = importEntries(parser);
+            parser.storePendingWaypoints();
+            return caches;
+        }
+
+        /**
+         * Parse all files of the zip in a single pass. A GPX file coming before its waypoints file is copied to a
+         * temporary file, which is parsed once the waypoints are known.
+         */
+        protected Collection<Geocache> importEntries(final GPXParser parser) throws IOException, ParserException {
             Collection<Geocache> caches = Collections.emptySet();
-            // can't assume that GPX file comes before waypoint file in zip -> so we need two passes
-            // 1. parse GPX files
-            ZipInputStream zis = new ZipInputStream(new BufferedInputStream(getInputStream()));
+            final List<File> delayedFiles = new ArrayList<File>();
             try {
-                for (ZipEntry zipEntry = zis.getNextEntry(); zipEntry != null; zipEntry = zis.getNextEntry()) {
-                    if (StringUtils.endsWithIgnoreCase(zipEntry.getName(), GPX_FILE_EXTENSION)) {
-                        if (!StringUtils.endsWithIgnoreCase(zipEntry.getName(), WAYPOINTS_FILE_SUFFIX_AND_EXTENSION)) {
-                            importStepHandler.sendMessage(importStepHandler.obtainMessage(IMPORT_STEP_READ_FILE, R.string.gpx_import_loading_caches, (int) zipEntry.getSize()));
-                            caches = parser.parse(new NoCloseInputStream(zis), progressHandler);
+                boolean waypointsFileRead = false;
+                final ZipInputStream zis = new ZipInputStream(new BufferedInputStream(getInputStream()));
+                try {
+                    for (ZipEntry zipEntry = zis.getNextEntry(); zipEntry != null; zipEntry = zis.getNextEntry()) {
+                        checkGpxEntry(zipEntry);
+                        if (isWaypointsEntry(zipEntry)) {
+                            caches = parseEntry(parser, zipEntry, new NoCloseInputStream(zis));
+                            waypointsFileRead = true;
+                        } else if (waypointsFileRead) {
+                            caches = parseEntry(parser, zipEntry, new NoCloseInputStream(zis));
+                        } else {
+                            FileUtils.forceMkdir(LocalStorage.getStorage());
+                            final File delayedFile = File.createTempFile("import", GPX_FILE_EXTENSION, LocalStorage.getStorage());
+                            delayedFiles.add(delayedFile);
+                            FileUtils.copyInputStreamToFile(new NoCloseInputStream(zis), delayedFile);
                         }
-                    } else {
-                        throw new ParserException("Imported zip is not a GPX zip file.");
+                        zis.closeEntry();
                     }
-                    zis.closeEntry();
+                } finally {
+                    zis.close();
                 }
-            } finally {
-                zis.close();
-            }
 
-            // 2. parse waypoint files
-            zis = new ZipInputStream(new BufferedInputStream(getInputStream()));
-            try {
-                for (ZipEntry zipEntry = zis.getNextEntry(); zipEntry != null; zipEntry = zis.getNextEntry()) {
-                    if (StringUtils.endsWithIgnoreCase(zipEntry.getName(), WAYPOINTS_FILE_SUFFIX_AND_EXTENSION)) {
-                        importStepHandler.sendMessage(importStepHandler.obtainMessage(IMPORT_STEP_READ_WPT_FILE, R.string.gpx_import_loading_waypoints, (int) zipEntry.getSize()));
-                        caches = parser.parse(new NoCloseInputStream(zis), progressHandler);
-                    }
-                    zis.closeEntry();
+                for (final File delayedFile : delayedFiles) {
+                    importStepHandler.sendMessage(importStepHandler.obtainMessage(IMPORT_STEP_READ_FILE, R.string.gpx_import_loading_caches, (int) delayedFile.length()));
+                    caches = new ParallelGPXParser(parser, progressHandler).parse(delayedFile);
                 }
             } finally {
-                zis.close();
+                for (final File delayedFile : delayedFiles) {
+                    FileUtils.deleteQuietly(delayedFile);
+                }
             }
-
             return caches;
         }
 
+        protected Collection<Geocache> parseEntry(final GPXParser parser, final ZipEntry zipEntry, final InputStream stream) throws IOException, ParserException {
+            if (isWaypointsEntry(zipEntry)) {
+                importStepHandler.sendMessage(importStepHandler.obtainMessage(IMPORT_STEP_READ_WPT_FILE, R.string.gpx_import_loading_waypoints, (int) zipEntry.getSize()));
+            } else {
+                importStepHandler.sendMessage(importStepHandler.obtainMessage(IMPORT_STEP_READ_FILE, R.string.gpx_import_loading_caches, (int) zipEntry.getSize()));
+            }
+            return parser.parse(stream, progressHandler);
+        }
+
+        protected static void checkGpxEntry(final ZipEntry zipEntry) throws ParserException {
+            if (!StringUtils.endsWithIgnoreCase(zipEntry.getName(), GPX_FILE_EXTENSION)) {
+                throw new ParserException("Imported zip is not a GPX zip file.");
+            }
+        }
+
+        protected static boolean isWaypointsEntry(final ZipEntry zipEntry) {
+            return StringUtils.endsWithIgnoreCase(zipEntry.getName(), WAYPOINTS_FILE_SUFFIX_AND_EXTENSION);
+        }
+
         protected abstract InputStream getInputStream() throws IOException;
     }
 
@@ -376,6 +478,49 @@ public class GPXImporter {
             Log.i("Import zipped GPX: " + file);
         }
 
+        /**
+         * The directory of a zip file tells the files in advance, so that the waypoints files can be parsed first
+         * without copying the GPX files. The GPX files are then parsed at the same time.
+         */
+        @Override
+        protected Collection<Geocache> importEntries(final GPXParser parser) throws IOException, ParserException {
+            final ZipFile zipFile = new ZipFile(cacheFile);
+            try {
+                final List<ZipEntry> waypointsEntries = new ArrayList<ZipEntry>();
+                final List<ZipEntry> cachesEntries = new ArrayList<ZipEntry>();
+                for (final Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                    final ZipEntry zipEntry = entries.nextElement();
+                    checkGpxEntry(zipEntry);
+                    if (isWaypointsEntry(zipEntry)) {
+                        waypointsEntries.add(zipEntry);
+                    } else {
+                        cachesEntries.add(zipEntry);
+                    }
+                }
+
+                Collection<Geocache> caches = Collections.emptySet();
+                for (final ZipEntry zipEntry : waypointsEntries) {
+                    final InputStream stream = new BufferedInputStream(zipFile.getInputStream(zipEntry));
+                    try {
+                        caches = parseEntry(parser, zipEntry, stream);
+                    } finally {
+                        IOUtils.closeQuietly(stream);
+                    }
+                }
+                if (!cachesEntries.isEmpty()) {
+                    long size = 0;
+                    for (final ZipEntry zipEntry : cachesEntries) {
+                        size += Math.max(0, zipEntry.getSize());
+                    }
+                    importStepHandler.sendMessage(importStepHandler.obtainMessage(IMPORT_STEP_READ_FILE, R.string.gpx_import_loading_caches, (int) size));
+                    caches = new ParallelGPXParser(parser, progressHandler).parse(zipFile, cachesEntries);
+                }
+                return caches;
+            } finally {
+                zipFile.close();
+            }
+        }
+
         @Override
         protected InputStream getInputStream() throws IOException {
             return new FileInputStream(cacheFile);
@@ -402,7 +547,13 @@ public class GPXImporter {
     final private CancellableHandler progressHandler = new CancellableHandler() {
         @Override
         public void handleRegularMessage(Message msg) {
-            progress.setProgress(msg.arg1);
+            if (msg.what == BatchedCacheWriter.MSG_THROUGHPUT) {
+                if (progressMessage != null) {
+                    progress.setMessage(progressMessage + "\n" + res.getString(R.string.gpx_import_throughput, msg.arg1, msg.arg2));
+                }
+            } else {
+                progress.setProgress(msg.arg1);
+            }
         }
     };
 
@@ -417,11 +568,13 @@ public class GPXImporter {
 
                 case IMPORT_STEP_READ_FILE:
                 case IMPORT_STEP_READ_WPT_FILE:
-                    progress.setMessage(res.getString(msg.arg1));
+                    progressMessage = res.getString(msg.arg1);
+                    progress.setMessage(progressMessage);
                     progress.setMaxProgressAndReset(msg.arg2);
                     break;
 
                 case IMPORT_STEP_STORE_STATIC_MAPS:
+                    progressMessage = null;
                     progress.dismiss();
                     final Message skipMessage = importStepHandler.obtainMessage(IMPORT_STEP_STATIC_MAPS_SKIPPED, msg.arg2, 0);
                     progress.show(fromActivity, res.getString(R.string.gpx_import_title_static_maps), res.getString(R.string.gpx_import_store_static_maps), ProgressDialog.STYLE_HORIZONTAL, skipMessage);
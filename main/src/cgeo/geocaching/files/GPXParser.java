@@ -10,10 +10,7 @@ import cgeo.geocaching.Waypoint;
 import cgeo.geocaching.connector.ConnectorFactory;
 import cgeo.geocaching.enumerations.CacheSize;
 import cgeo.geocaching.enumerations.CacheType;
-import cgeo.geocaching.enumerations.LoadFlags;
 import cgeo.geocaching.enumerations.LoadFlags.LoadFlag;
-import cgeo.geocaching.enumerations.LoadFlags.RemoveFlag;
-import cgeo.geocaching.enumerations.LoadFlags.SaveFlag;
 import cgeo.geocaching.enumerations.LogType;
 import cgeo.geocaching.enumerations.WaypointType;
 import cgeo.geocaching.geopoint.Geopoint;
@@ -24,6 +21,7 @@ import cgeo.geocaching.utils.MatcherWrapper;
 import cgeo.geocaching.utils.SynchronizedDateFormat;
 
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jdt.annotation.Nullable;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
@@ -105,6 +103,14 @@ public abstract class GPXParser extends FileParser {
      */
     private final Set<String> result = new HashSet<String>(100);
     private ProgressInputStream progressStream;
+    /**
+     * Receives the parsed caches, usually to store them in the database during the parsing.
+     */
+    private ParsedCacheSink writer;
+    /**
+     * Additional waypoints waiting for their cache, or <tt>null</tt> to merge the waypoints into the stored caches.
+     */
+    private PendingWaypoints pendingWaypoints = null;
     /**
      * URL contained in the header of the GPX file. Used to guess where the file is coming from.
      */
@@ -249,6 +255,16 @@ public abstract class GPXParser extends FileParser {
         version = versionIn;
     }
 
+    /**
+     * Create a new parser for the same GPX flavor and list, sharing the waypoints kept by this parser. Used to parse
+     * several parts of an import at the same time.
+     */
+    protected abstract GPXParser newParser();
+
+    protected final int getListId() {
+        return listId;
+    }
+
     static Date parseDate(String inputUntrimmed) throws ParseException {
         String input = inputUntrimmed.trim();
         // remove milliseconds to reduce number of needed patterns
@@ -266,6 +282,24 @@ public abstract class GPXParser extends FileParser {
 
     @Override
     public Collection<Geocache> parse(final InputStream stream, final CancellableHandler progressHandler) throws IOException, ParserException {
+        final BatchedCacheWriter batchedWriter = new BatchedCacheWriter(progressHandler);
+        boolean parsed = false;
+        try {
+            parse(stream, progressHandler, batchedWriter);
+            parsed = true;
+        } finally {
+            // store what has been parsed, even before a cancellation or a parsing error
+            batchedWriter.close(!parsed);
+        }
+        return DataStore.loadCaches(result, EnumSet.of(LoadFlag.LOAD_DB_MINIMAL));
+    }
+
+    /**
+     * Parse the stream, handing the caches and additional waypoints over to the given sink in document order.
+     *
+     * @see #getParsedGeocodes()
+     */
+    void parse(final InputStream stream, final CancellableHandler progressHandler, final ParsedCacheSink sink) throws IOException, ParserException {
         resetCache();
         final RootElement root = new RootElement(namespace, "gpx");
         final Element waypoint = root.getChild(namespace, "wpt");
@@ -331,12 +365,13 @@ public abstract class GPXParser extends FileParser {
                     // modify cache depending on the use case/connector
                     afterParsing(cache);
 
-                    // finally store the cache in the database
-                    result.add(geocode);
-                    DataStore.saveCache(cache, EnumSet.of(SaveFlag.SAVE_DB));
+                    if (pendingWaypoints != null) {
+                        pendingWaypoints.mergeInto(cache);
+                    }
 
-                    // avoid the cachecache using lots of memory for caches which the user did not actually look at
-                    DataStore.removeCache(geocode, EnumSet.of(RemoveFlag.REMOVE_CACHE));
+                    // finally store the cache in the database, together with the next caches
+                    result.add(geocode);
+                    writer.addCache(cache);
                     showProgressMessage(progressHandler, progressStream.getProgress());
                 } else if (StringUtils.isNotBlank(cache.getName())
                         && StringUtils.containsIgnoreCase(type, "waypoint")) {
@@ -358,31 +393,24 @@ public abstract class GPXParser extends FileParser {
                             parentCacheCode = "GC" + cache.getName().substring(2).toUpperCase(Locale.US);
                         }
                     }
-                    // lookup cache for waypoint in already parsed caches
-                    final Geocache cacheForWaypoint = DataStore.loadCache(parentCacheCode, LoadFlags.LOAD_CACHE_OR_DB);
-                    if (cacheForWaypoint != null) {
-                        final Waypoint waypoint = new Waypoint(cache.getShortDescription(), convertWaypointSym2Type(sym), false);
-                        if (wptUserDefined) {
-                            waypoint.setUserDefined();
-                        }
-                        waypoint.setId(-1);
-                        waypoint.setGeocode(parentCacheCode);
-                        waypoint.setPrefix(cacheForWaypoint.getWaypointPrefix(cache.getName()));
-                        waypoint.setLookup("---");
-                        // there is no lookup code in gpx file
-                        waypoint.setCoords(cache.getCoords());
-                        waypoint.setNote(cache.getDescription());
-                        waypoint.setVisited(wptVisited);
-                        final ArrayList<Waypoint> mergedWayPoints = new ArrayList<Waypoint>();
-                        mergedWayPoints.addAll(cacheForWaypoint.getWaypoints());
-
-                        final ArrayList<Waypoint> newPoints = new ArrayList<Waypoint>();
-                        newPoints.add(waypoint);
-                        Waypoint.mergeWayPoints(newPoints, mergedWayPoints, true);
-                        cacheForWaypoint.setWaypoints(newPoints, false);
-                        DataStore.saveCache(cacheForWaypoint, EnumSet.of(SaveFlag.SAVE_DB));
-                        showProgressMessage(progressHandler, progressStream.getProgress());
+                    final Waypoint waypoint = new Waypoint(cache.getShortDescription(), convertWaypointSym2Type(sym), false);
+                    if (wptUserDefined) {
+                        waypoint.setUserDefined();
+                    }
+                    waypoint.setId(-1);
+                    waypoint.setGeocode(parentCacheCode);
+                    waypoint.setLookup("---");
+                    // there is no lookup code in gpx file
+                    waypoint.setCoords(cache.getCoords());
+                    waypoint.setNote(cache.getDescription());
+                    waypoint.setVisited(wptVisited);
+                    // the waypoint is merged into its cache later, the prefix depends on that cache
+                    if (pendingWaypoints != null) {
+                        pendingWaypoints.add(parentCacheCode, cache.getName(), waypoint);
+                    } else {
+                        writer.addWaypoint(parentCacheCode, cache.getName(), waypoint);
                     }
+                    showProgressMessage(progressHandler, progressStream.getProgress());
                 }
             }
         });
@@ -804,15 +832,69 @@ public abstract class GPXParser extends FileParser {
             });
         }
 
+        writer = sink;
         try {
             progressStream = new ProgressInputStream(stream);
             Xml.parse(progressStream, Xml.Encoding.UTF_8, root.getContentHandler());
-            return DataStore.loadCaches(result, EnumSet.of(LoadFlag.LOAD_DB_MINIMAL));
         } catch (final SAXException e) {
             throw new ParserException("Cannot parse .gpx file as GPX " + version + ": could not parse XML", e);
         }
     }
 
+    /**
+     * @return the geocodes of all caches parsed by this parser so far
+     */
+    Set<String> getParsedGeocodes() {
+        return result;
+    }
+
+    /**
+     * @return the waypoints kept for caches parsed later, or <tt>null</tt> if they are not kept
+     * @see #keepPendingWaypoints()
+     */
+    @Nullable
+    PendingWaypoints getPendingWaypoints() {
+        return pendingWaypoints;
+    }
+
+    /**
+     * Share the kept waypoints with a parser created by {@link #newParser()}.
+     */
+    protected final GPXParser shareWaypoints(final GPXParser parser) {
+        parser.pendingWaypoints = pendingWaypoints;
+        return parser;
+    }
+
+    /**
+     * Keep the additional waypoints in memory instead of merging them into the stored caches, so that they can be
+     * merged into caches parsed later, before these caches are stored. Used when the waypoints file comes before the
+     * caches file.
+     *
+     * @see #storePendingWaypoints()
+     */
+    void keepPendingWaypoints() {
+        if (pendingWaypoints == null) {
+            pendingWaypoints = new PendingWaypoints();
+        }
+    }
+
+    /**
+     * Merge the kept waypoints whose cache has not been parsed into the stored caches.
+     */
+    void storePendingWaypoints() {
+        if (pendingWaypoints == null || pendingWaypoints.isEmpty()) {
+            return;
+        }
+        final BatchedCacheWriter waypointWriter = new BatchedCacheWriter(null);
+        boolean flushed = false;
+        try {
+            pendingWaypoints.flushTo(waypointWriter);
+            flushed = true;
+        } finally {
+            waypointWriter.close(!flushed);
+        }
+    }
+
     /**
      * Add listeners for GSAK extensions
      *
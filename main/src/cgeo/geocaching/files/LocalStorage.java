@@ -82,6 +82,24 @@ public final class LocalStorage {
         return new File(getInternalStorageBase(), "databases");
     }
 
+    /**
+     * Return the directory holding the persistent cache of live map tiles, on the primary storage.
+     *
+     * @return the tiles cache directory
+     */
+    public static File getTileCacheDirectory() {
+        return new File(getStorage(), "_tiles");
+    }
+
+    /**
+     * Return the directory holding the responses stored by the HTTP caches, on the primary storage.
+     *
+     * @return the HTTP cache directory
+     */
+    public static File getHttpCacheDirectory() {
+        return new File(getStorage(), "_http");
+    }
+
     private static File getExternalStorageBase() {
         return new File(Environment.getExternalStorageDirectory(), LocalStorage.cache);
     }
@@ -0,0 +1,421 @@
+package cgeo.geocaching.files;
+
+import cgeo.geocaching.DataStore;
+import cgeo.geocaching.Geocache;
+import cgeo.geocaching.Waypoint;
+import cgeo.geocaching.concurrent.PriorityThreadFactory;
+import cgeo.geocaching.enumerations.LoadFlags.LoadFlag;
+import cgeo.geocaching.utils.CancellableHandler;
+import cgeo.geocaching.utils.Log;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Parse several GPX files, or several parts of a large GPX file, at the same time.
+ *
+ * Every part is parsed by its own parser into memory. The parsed caches are handed over to a single
+ * {@link BatchedCacheWriter} in the order of the parts, so that the result is the same as when parsing the parts one
+ * after the other. Only a few parts are parsed ahead of the writer, to bound the memory used.
+ */
+final class ParallelGPXParser {
+
+    /** Approximate size of the parts of a large GPX file. */
+    static final int CHUNK_SIZE = 2 * 1024 * 1024;
+    private static final int MAX_THREADS = 4;
+
+    private static final byte[] WPT_START = { '<', 'w', 'p', 't' };
+    private static final byte[] GPX_END = { '<', '/', 'g', 'p', 'x', '>' };
+
+    /**
+     * Part of an import which can be parsed on its own.
+     */
+    abstract static class Source {
+        /**
+         * @return the number of bytes of the source, used for the progress
+         */
+        abstract long getSize();
+
+        @NonNull
+        abstract InputStream open() throws IOException;
+    }
+
+    /**
+     * Part of a GPX file, made a valid GPX document by repeating the header of the file and closing the root element.
+     */
+    private static final class FileChunk extends Source {
+        private final File file;
+        private final long headerLength;
+        private final long start;
+        private final long end;
+        private final boolean last;
+
+        FileChunk(final File file, final long headerLength, final long start, final long end, final boolean last) {
+            this.file = file;
+            this.headerLength = headerLength;
+            this.start = start;
+            this.end = end;
+            this.last = last;
+        }
+
+        @Override
+        long getSize() {
+            return end - start;
+        }
+
+        @Override
+        @NonNull
+        InputStream open() throws IOException {
+            final Vector<InputStream> streams = new Vector<InputStream>(3);
+            if (start > 0) {
+                streams.add(new BoundedInputStream(new FileInputStream(file), headerLength));
+            }
+            final InputStream body = new FileInputStream(file);
+            IOUtils.skipFully(body, start);
+            streams.add(new BoundedInputStream(body, end - start));
+            if (!last) {
+                streams.add(new ByteArrayInputStream(GPX_END));
+            }
+            return new BufferedInputStream(new SequenceInputStream(streams.elements()));
+        }
+    }
+
+    private static final class ZipEntrySource extends Source {
+        private final ZipFile zipFile;
+        private final ZipEntry zipEntry;
+
+        ZipEntrySource(final ZipFile zipFile, final ZipEntry zipEntry) {
+            this.zipFile = zipFile;
+            this.zipEntry = zipEntry;
+        }
+
+        @Override
+        long getSize() {
+            return Math.max(0, zipEntry.getSize());
+        }
+
+        @Override
+        @NonNull
+        InputStream open() throws IOException {
+            return new BufferedInputStream(zipFile.getInputStream(zipEntry));
+        }
+    }
+
+    /**
+     * The caches and waypoints of a single source, in document order.
+     */
+    private static final class ChunkResult implements ParsedCacheSink {
+
+        private static final class Item {
+            final Geocache cache;
+            final String parentGeocode;
+            final String waypointName;
+            final Waypoint waypoint;
+
+            Item(final Geocache cache, final String parentGeocode, final String waypointName, final Waypoint waypoint) {
+                this.cache = cache;
+                this.parentGeocode = parentGeocode;
+                this.waypointName = waypointName;
+                this.waypoint = waypoint;
+            }
+        }
+
+        private final List<Item> items = new ArrayList<Item>();
+        private Collection<String> geocodes = Collections.emptySet();
+
+        @Override
+        public void addCache(@NonNull final Geocache cache) {
+            items.add(new Item(cache, null, null, null));
+        }
+
+        @Override
+        public void addWaypoint(@NonNull final String parentGeocode, @NonNull final String waypointName, @NonNull final Waypoint waypoint) {
+            items.add(new Item(null, parentGeocode, waypointName, waypoint));
+        }
+
+        void replay(final ParsedCacheSink sink) {
+            for (final Item item : items) {
+                if (item.cache != null) {
+                    sink.addCache(item.cache);
+                } else {
+                    sink.addWaypoint(item.parentGeocode, item.waypointName, item.waypoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream of a source stopping the parsing as soon as the import is cancelled or the parsing thread is interrupted,
+     * as the parsers of the sources do not get the progress handler.
+     */
+    private static final class CancellableInputStream extends FilterInputStream {
+        @Nullable
+        private final CancellableHandler handler;
+
+        CancellableInputStream(final InputStream in, @Nullable final CancellableHandler handler) {
+            super(in);
+            this.handler = handler;
+        }
+
+        private void checkCancelled() {
+            if (Thread.currentThread().isInterrupted() || (handler != null && handler.isCancelled())) {
+                throw new CancellationException();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkCancelled();
+            return super.read();
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int count) throws IOException {
+            checkCancelled();
+            return super.read(buffer, offset, count);
+        }
+    }
+
+    private final GPXParser parser;
+    @Nullable
+    private final CancellableHandler progressHandler;
+    private final int threads;
+    private final int chunkSize;
+
+    /**
+     * @param parser
+     *            the parser collecting the result, which is also used to create a parser for every source
+     */
+    ParallelGPXParser(@NonNull final GPXParser parser, @Nullable final CancellableHandler progressHandler) {
+        this(parser, progressHandler, CHUNK_SIZE);
+    }
+
+    ParallelGPXParser(@NonNull final GPXParser parser, @Nullable final CancellableHandler progressHandler, final int chunkSize) {
+        this.parser = parser;
+        this.progressHandler = progressHandler;
+        this.threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parse a GPX file, in several parts if it is large.
+     *
+     * Splitting a file cannot take all valid GPX constructs into account. If a part cannot be parsed, the whole file
+     * is parsed again in one piece. The kept waypoints are restored before, as the parts parsed ahead may have merged
+     * them into caches which have never been stored.
+     */
+    Collection<Geocache> parse(@NonNull final File file) throws IOException, ParserException {
+        final List<Source> chunks = split(file, chunkSize);
+        if (chunks.size() > 1) {
+            final PendingWaypoints pendingWaypoints = parser.getPendingWaypoints();
+            final PendingWaypoints savedWaypoints = pendingWaypoints != null ? pendingWaypoints.copy() : null;
+            try {
+                return parse(chunks);
+            } catch (final ParserException e) {
+                Log.w("ParallelGPXParser: cannot parse " + file.getName() + " in parts, parsing it in one piece", e);
+                if (pendingWaypoints != null) {
+                    pendingWaypoints.restore(savedWaypoints);
+                }
+            }
+        }
+        return parser.parse(file, progressHandler);
+    }
+
+    /**
+     * Parse all zip entries at the same time.
+     */
+    Collection<Geocache> parse(@NonNull final ZipFile zipFile, @NonNull final List<ZipEntry> zipEntries) throws IOException, ParserException {
+        final List<Source> sources = new ArrayList<Source>(zipEntries.size());
+        for (final ZipEntry zipEntry : zipEntries) {
+            sources.add(new ZipEntrySource(zipFile, zipEntry));
+        }
+        return parse(sources);
+    }
+
+    /**
+     * Parse all sources, storing their caches in the order of the sources.
+     *
+     * @return all caches parsed by the parser so far
+     */
+    Collection<Geocache> parse(@NonNull final List<Source> sources) throws IOException, ParserException {
+        if (sources.size() == 1) {
+            final InputStream stream = sources.get(0).open();
+            try {
+                return parser.parse(stream, progressHandler);
+            } finally {
+                IOUtils.closeQuietly(stream);
+            }
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new PriorityThreadFactory(Thread.NORM_PRIORITY));
+        final BatchedCacheWriter writer = new BatchedCacheWriter(progressHandler);
+        boolean parsed = false;
+        try {
+            final LinkedList<Future<ChunkResult>> running = new LinkedList<Future<ChunkResult>>();
+            int next = 0;
+            int done = 0;
+            long bytesRead = 0;
+            while (next < sources.size() || !running.isEmpty()) {
+                // parse a few sources ahead, without keeping too many parsed caches in memory
+                while (next < sources.size() && running.size() < 2 * threads) {
+                    running.add(executor.submit(newTask(sources.get(next))));
+                    next++;
+                }
+                final ChunkResult chunk = getResult(running.removeFirst());
+                chunk.replay(writer);
+                parser.getParsedGeocodes().addAll(chunk.geocodes);
+                bytesRead += sources.get(done++).getSize();
+                FileParser.showProgressMessage(progressHandler, (int) bytesRead);
+            }
+            parsed = true;
+        } finally {
+            // the parsers of the sources stop at their next read, they must not touch the shared state afterwards
+            executor.shutdownNow();
+            awaitTermination(executor);
+            writer.close(!parsed);
+        }
+        Log.i(String.format(Locale.US, "ParallelGPXParser: %d parts parsed in %d ms with %d threads",
+                sources.size(), System.currentTimeMillis() - startTime, threads));
+        return DataStore.loadCaches(parser.getParsedGeocodes(), EnumSet.of(LoadFlag.LOAD_DB_MINIMAL));
+    }
+
+    private Callable<ChunkResult> newTask(final Source source) {
+        final GPXParser chunkParser = parser.newParser();
+        return new Callable<ChunkResult>() {
+            @Override
+            public ChunkResult call() throws Exception {
+                final ChunkResult chunk = new ChunkResult();
+                final InputStream stream = new CancellableInputStream(source.open(), progressHandler);
+                try {
+                    chunkParser.parse(stream, null, chunk);
+                } finally {
+                    IOUtils.closeQuietly(stream);
+                }
+                chunk.geocodes = chunkParser.getParsedGeocodes();
+                return chunk;
+            }
+        };
+    }
+
+    private static void awaitTermination(final ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ChunkResult getResult(final Future<ChunkResult> future) throws IOException, ParserException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } catch (final ExecutionException e) {
+            if (progressHandler != null && progressHandler.isCancelled()) {
+                // the parser may have wrapped the cancellation
+                throw new CancellationException();
+            }
+            final Throwable cause = e.getCause();
+            if (cause instanceof ParserException) {
+                throw (ParserException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Split a GPX file into parts of about the given size, each part starting with a <tt>wpt</tt> element. Small files
+     * are not split.
+     */
+    static List<Source> split(@NonNull final File file, final int chunkSize) throws IOException {
+        final long length = file.length();
+        final List<Long> starts = new ArrayList<Long>();
+        long headerLength = -1;
+        if (length > 2L * chunkSize) {
+            final InputStream stream = new BufferedInputStream(new FileInputStream(file));
+            try {
+                long nextStart = chunkSize;
+                long position = 0;
+                int matched = 0;
+                int b;
+                while ((b = stream.read()) >= 0) {
+                    if (matched == WPT_START.length) {
+                        // the tag name must not continue, e.g. "<wpts"
+                        if (b == '>' || Character.isWhitespace(b)) {
+                            final long wptStart = position - WPT_START.length;
+                            if (headerLength < 0) {
+                                headerLength = wptStart;
+                            } else if (wptStart >= nextStart && length - wptStart >= chunkSize / 2) {
+                                starts.add(wptStart);
+                                nextStart = wptStart + chunkSize;
+                            }
+                        }
+                        matched = 0;
+                    }
+                    if (b == WPT_START[matched]) {
+                        matched++;
+                    } else {
+                        matched = b == WPT_START[0] ? 1 : 0;
+                    }
+                    position++;
+                }
+            } finally {
+                IOUtils.closeQuietly(stream);
+            }
+        }
+
+        final List<Source> chunks = new ArrayList<Source>(starts.size() + 1);
+        long start = 0;
+        for (final long end : starts) {
+            chunks.add(new FileChunk(file, headerLength, start, end, false));
+            start = end;
+        }
+        chunks.add(new FileChunk(file, headerLength, start, length, true));
+        return chunks;
+    }
+
+}
@@ -0,0 +1,21 @@
+package cgeo.geocaching.files;
+
+import cgeo.geocaching.Geocache;
+import cgeo.geocaching.Waypoint;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * Receiver of the caches and additional waypoints found by a {@link GPXParser}, in document order.
+ */
+interface ParsedCacheSink {
+
+    void addCache(@NonNull final Geocache cache);
+
+    /**
+     * @param waypointName
+     *            the name of the waypoint in the GPX file, used to compute the waypoint prefix
+     */
+    void addWaypoint(@NonNull final String parentGeocode, @NonNull final String waypointName, @NonNull final Waypoint waypoint);
+
+}
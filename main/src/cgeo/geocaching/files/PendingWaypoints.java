@@ -0,0 +1,111 @@
+package cgeo.geocaching.files;
+
+import cgeo.geocaching.Geocache;
+import cgeo.geocaching.Waypoint;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Additional waypoints read from a waypoints file, kept in memory by parent geocode until their cache is parsed.
+ *
+ * Merging the waypoints into the parsed cache before it is stored avoids loading and storing the cache a second
+ * time for every waypoint. Several parsers may merge waypoints at the same time.
+ */
+final class PendingWaypoints {
+
+    private static final class Entry {
+        final String name;
+        final Waypoint waypoint;
+
+        Entry(final String name, final Waypoint waypoint) {
+            this.name = name;
+            this.waypoint = waypoint;
+        }
+    }
+
+    private final Map<String, List<Entry>> waypoints = new HashMap<String, List<Entry>>();
+
+    /**
+     * @param waypointName
+     *            the name of the waypoint in the GPX file, used to compute the waypoint prefix
+     */
+    synchronized void add(@NonNull final String parentGeocode, @NonNull final String waypointName, @NonNull final Waypoint waypoint) {
+        List<Entry> entries = waypoints.get(parentGeocode);
+        if (entries == null) {
+            entries = new ArrayList<Entry>();
+            waypoints.put(parentGeocode, entries);
+        }
+        entries.add(new Entry(waypointName, waypoint));
+    }
+
+    synchronized boolean isEmpty() {
+        return waypoints.isEmpty();
+    }
+
+    /**
+     * Merge the pending waypoints of a cache into it, and forget them.
+     */
+    synchronized void mergeInto(@NonNull final Geocache cache) {
+        final List<Entry> entries = waypoints.remove(cache.getGeocode());
+        if (entries != null) {
+            for (final Entry entry : entries) {
+                mergeWaypoint(cache, entry.name, entry.waypoint);
+            }
+        }
+    }
+
+    /**
+     * Hand the waypoints whose cache has not been parsed to the writer, which merges them into the stored caches.
+     */
+    synchronized void flushTo(@NonNull final ParsedCacheSink writer) {
+        for (final Map.Entry<String, List<Entry>> parent : waypoints.entrySet()) {
+            for (final Entry entry : parent.getValue()) {
+                writer.addWaypoint(parent.getKey(), entry.name, entry.waypoint);
+            }
+        }
+        waypoints.clear();
+    }
+
+    /**
+     * @return a copy of the pending waypoints, to be restored before parsing again what has been partially parsed
+     */
+    @NonNull
+    synchronized PendingWaypoints copy() {
+        final PendingWaypoints copy = new PendingWaypoints();
+        for (final Map.Entry<String, List<Entry>> parent : waypoints.entrySet()) {
+            copy.waypoints.put(parent.getKey(), new ArrayList<Entry>(parent.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Replace the pending waypoints by a copy taken earlier.
+     */
+    void restore(@NonNull final PendingWaypoints copy) {
+        final PendingWaypoints restored = copy.copy();
+        synchronized (this) {
+            waypoints.clear();
+            waypoints.putAll(restored.waypoints);
+        }
+    }
+
+    /**
+     * Merge an additional waypoint into its cache, updating an existing waypoint with the same prefix.
+     */
+    static void mergeWaypoint(@NonNull final Geocache parent, @NonNull final String waypointName, @NonNull final Waypoint waypoint) {
+        waypoint.setPrefix(parent.getWaypointPrefix(waypointName));
+        final ArrayList<Waypoint> mergedWayPoints = new ArrayList<Waypoint>();
+        mergedWayPoints.addAll(parent.getWaypoints());
+
+        final ArrayList<Waypoint> newPoints = new ArrayList<Waypoint>();
+        newPoints.add(waypoint);
+        Waypoint.mergeWayPoints(newPoints, mergedWayPoints, true);
+        parent.setWaypoints(newPoints, false);
+    }
+
+}
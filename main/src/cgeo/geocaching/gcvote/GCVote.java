@@ -1,5 +1,6 @@
 package cgeo.geocaching.gcvote;
 
+import cgeo.geocaching.DataStore;
 import cgeo.geocaching.Geocache;
 import cgeo.geocaching.network.Network;
 import cgeo.geocaching.network.Parameters;
@@ -8,18 +9,24 @@ import cgeo.geocaching.utils.LeastRecentlyUsedMap;
 import cgeo.geocaching.utils.Log;
 import cgeo.geocaching.utils.MatcherWrapper;
 
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.eclipse.jdt.annotation.NonNull;
+import rx.Scheduler.Inner;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 public final class GCVote {
@@ -37,27 +44,73 @@ public final class GCVote {
     private static final float MIN_RATING = 1;
     private static final float MAX_RATING = 5;
 
+    /** Maximum number of caches whose ratings are requested at once */
+    private static final int MAX_BATCH_SIZE = 100;
+    /** Time during which the ratings requested for single caches are collected into a single request */
+    private static final long BATCH_WINDOW_MS = 200;
+    /** Age after which a stored rating is refreshed in the background */
+    private static final long RATING_MAX_AGE_MS = 24 * 60 * 60 * 1000;
+
+    private static final RatingRequests RATING_REQUESTS = new RatingRequests(new RatingRequests.Loader() {
+        @Override
+        public Map<String, GCVoteRating> load(@NonNull final List<String> geocodes) {
+            return requestRatings(geocodes);
+        }
+    }, MAX_BATCH_SIZE, BATCH_WINDOW_MS);
+    /** Geocodes whose rating is being refreshed in the background */
+    private static final Set<String> REFRESHING = new HashSet<String>();
+
     private GCVote() {
         // utility class
     }
 
     /**
-     * Get user rating for a given guid or geocode. For a guid first the ratings cache is checked
-     * before a request to gcvote.com is made.
+     * Get user rating for a given guid or geocode. For a geocode the stored rating is used, and a missing rating is
+     * requested from gcvote.com together with the ratings requested by other threads at the same time. For a guid
+     * only the ratings cache is checked before a request to gcvote.com is made.
      *
      * @param guid
      * @param geocode
      * @return
      */
     public static GCVoteRating getRating(final String guid, final String geocode) {
-        if (StringUtils.isNotBlank(guid) && RATINGS_CACHE.containsKey(guid)) {
-            return RATINGS_CACHE.get(guid);
+        final ImmutablePair<String, String> login = getVoteLogin();
+        if (StringUtils.isNotBlank(geocode)) {
+            final List<String> stale = new ArrayList<String>(1);
+            final GCVoteRating stored = DataStore.loadRatings(Collections.singleton(geocode), getStaleBefore(), stale, getVoter(login)).get(geocode);
+            if (stored != null) {
+                refreshInBackground(stale);
+                return isValidRating(stored.getRating()) ? stored : null;
+            }
+            return RATING_REQUESTS.get(geocode);
         }
 
-        final Map<String, GCVoteRating> ratings = getRating(singletonOrNull(guid), singletonOrNull(geocode));
+        if (StringUtils.isNotBlank(guid) && RATINGS_CACHE.containsKey(getCacheKey(guid, login))) {
+            return RATINGS_CACHE.get(getCacheKey(guid, login));
+        }
+
+        final Map<String, GCVoteRating> ratings = getRating(singletonOrNull(guid), null, login);
         return MapUtils.isNotEmpty(ratings) ? ratings.values().iterator().next() : null;
     }
 
+    /**
+     * @return the login sent with the requests of ratings, so that they contain the own votes, or <tt>null</tt>
+     */
+    private static ImmutablePair<String, String> getVoteLogin() {
+        return Settings.isLogin() ? Settings.getGCvoteLogin() : null;
+    }
+
+    private static String getVoter(final ImmutablePair<String, String> login) {
+        return login != null ? login.left : null;
+    }
+
+    /**
+     * The ratings are cached by guid and user, as they contain the own vote.
+     */
+    private static String getCacheKey(final String guid, final ImmutablePair<String, String> login) {
+        return guid + '\n' + StringUtils.defaultString(getVoter(login));
+    }
+
     private static List<String> singletonOrNull(final String item) {
         return StringUtils.isNotBlank(item) ? Collections.singletonList(item) : null;
     }
@@ -67,9 +120,11 @@ public final class GCVote {
      *
      * @param guids
      * @param geocodes
+     * @param login
+     *            the login to get the own votes with, or <tt>null</tt>
      * @return
      */
-    private static Map<String, GCVoteRating> getRating(final List<String> guids, final List<String> geocodes) {
+    private static Map<String, GCVoteRating> getRating(final List<String> guids, final List<String> geocodes, final ImmutablePair<String, String> login) {
         if (guids == null && geocodes == null) {
             return null;
         }
@@ -78,11 +133,8 @@ public final class GCVote {
 
         try {
             final Parameters params = new Parameters();
-            if (Settings.isLogin()) {
-                final ImmutablePair<String, String> login = Settings.getGCvoteLogin();
-                if (login != null) {
-                    params.put("userName", login.left, "password", login.right);
-                }
+            if (login != null) {
+                params.put("userName", login.left, "password", login.right);
             }
             // use guid or gccode for lookup
             boolean requestByGuids = true;
@@ -179,7 +231,9 @@ public final class GCVote {
                 if (StringUtils.isNotBlank(id)) {
                     GCVoteRating gcvoteRating = new GCVoteRating(rating, votes, myVote);
                     ratings.put(id, gcvoteRating);
-                    RATINGS_CACHE.put(guid, gcvoteRating);
+                    if (guid != null) {
+                        RATINGS_CACHE.put(getCacheKey(guid, login), gcvoteRating);
+                    }
                 }
             }
         } catch (RuntimeException e) {
@@ -218,7 +272,13 @@ public final class GCVote {
 
         final String result = Network.getResponseData(Network.getRequest("http://gcvote.com/setVote.php", params));
 
-        return result != null && result.trim().equalsIgnoreCase("ok");
+        final boolean success = result != null && result.trim().equalsIgnoreCase("ok");
+        if (success) {
+            // the stored rating does not contain the vote any longer
+            RATINGS_CACHE.remove(getCacheKey(cache.getGuid(), getVoteLogin()));
+            DataStore.removeRating(cache.getGeocode());
+        }
+        return success;
     }
 
     public static void loadRatings(final @NonNull ArrayList<Geocache> caches) {
@@ -232,25 +292,100 @@ public final class GCVote {
         }
 
         try {
-            final Map<String, GCVoteRating> ratings = GCVote.getRating(null, geocodes);
-
-            if (MapUtils.isNotEmpty(ratings)) {
-                // save found cache coordinates
-                for (Geocache cache : caches) {
-                    if (ratings.containsKey(cache.getGeocode())) {
-                        GCVoteRating rating = ratings.get(cache.getGeocode());
-
-                        cache.setRating(rating.getRating());
-                        cache.setVotes(rating.getVotes());
-                        cache.setMyVote(rating.getMyVote());
-                    }
+            // use the stored ratings, and only request the missing ones
+            final Set<String> stale = new HashSet<String>();
+            final Map<String, GCVoteRating> ratings = DataStore.loadRatings(geocodes, getStaleBefore(), stale, getVoter(getVoteLogin()));
+            final List<String> missing = new ArrayList<String>();
+            for (final String geocode : geocodes) {
+                if (!ratings.containsKey(geocode)) {
+                    missing.add(geocode);
                 }
             }
+            for (final List<String> batch : ListUtils.partition(missing, MAX_BATCH_SIZE)) {
+                final Map<String, GCVoteRating> requested = requestRatings(batch);
+                if (requested != null) {
+                    ratings.putAll(requested);
+                }
+            }
+
+            applyRatings(caches, ratings);
+            refreshInBackground(stale);
         } catch (Exception e) {
             Log.e("GCvote.loadRatings", e);
         }
     }
 
+    private static void applyRatings(final @NonNull Collection<Geocache> caches, final @NonNull Map<String, GCVoteRating> ratings) {
+        for (final Geocache cache : caches) {
+            final GCVoteRating rating = ratings.get(cache.getGeocode());
+            if (rating != null && isValidRating(rating.getRating())) {
+                cache.setRating(rating.getRating());
+                cache.setVotes(rating.getVotes());
+                cache.setMyVote(rating.getMyVote());
+            }
+        }
+    }
+
+    private static long getStaleBefore() {
+        return System.currentTimeMillis() - RATING_MAX_AGE_MS;
+    }
+
+    /**
+     * Request the ratings of caches from gcvote.com, and store them. Caches without a rating are stored as well, so
+     * that they are not requested again before their rating is outdated.
+     *
+     * @return the ratings by geocode, or <tt>null</tt> if the request failed
+     */
+    private static Map<String, GCVoteRating> requestRatings(final @NonNull List<String> geocodes) {
+        final ImmutablePair<String, String> login = getVoteLogin();
+        final Map<String, GCVoteRating> ratings = getRating(null, geocodes, login);
+        if (ratings == null) {
+            return null;
+        }
+        final Map<String, GCVoteRating> stored = new HashMap<String, GCVoteRating>(ratings);
+        for (final String geocode : geocodes) {
+            if (!stored.containsKey(geocode)) {
+                stored.put(geocode, new GCVoteRating(NO_RATING, 0, NO_RATING));
+            }
+        }
+        DataStore.saveRatings(stored, getVoter(login));
+        return ratings;
+    }
+
+    /**
+     * Refresh outdated ratings without waiting for the result. The refreshed ratings are only stored, the caches shown
+     * get them when they are loaded again.
+     */
+    private static void refreshInBackground(final @NonNull Collection<String> staleGeocodes) {
+        final List<String> geocodes = new ArrayList<String>(staleGeocodes.size());
+        synchronized (REFRESHING) {
+            for (final String geocode : staleGeocodes) {
+                if (REFRESHING.add(geocode)) {
+                    geocodes.add(geocode);
+                }
+            }
+        }
+        if (geocodes.isEmpty()) {
+            return;
+        }
+        Schedulers.io().schedule(new Action1<Inner>() {
+            @Override
+            public void call(final Inner inner) {
+                try {
+                    for (final List<String> batch : ListUtils.partition(geocodes, MAX_BATCH_SIZE)) {
+                        requestRatings(batch);
+                    }
+                } catch (final Exception e) {
+                    Log.e("GCVote.refreshInBackground", e);
+                } finally {
+                    synchronized (REFRESHING) {
+                        REFRESHING.removeAll(geocodes);
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * Get geocodes of all the caches, which can be used with GCVote. Non-GC caches will be filtered out.
      * 
@@ -0,0 +1,118 @@
+package cgeo.geocaching.gcvote;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Coalescing of the rating requests of single caches.
+ *
+ * The first caller waits for a short time for other callers, then loads the ratings of all the caches requested
+ * meanwhile with a single request, while the other callers wait for the result. A batch is loaded at once when it
+ * reaches its maximum size, and later callers start a new batch.
+ */
+final class RatingRequests {
+
+    interface Loader {
+        /**
+         * @return the ratings by geocode, or <tt>null</tt> if the request failed
+         */
+        @Nullable
+        Map<String, GCVoteRating> load(@NonNull final List<String> geocodes);
+    }
+
+    private static final class Batch {
+        final Set<String> geocodes = new LinkedHashSet<String>();
+        final CountDownLatch loaded = new CountDownLatch(1);
+        volatile Map<String, GCVoteRating> ratings = Collections.emptyMap();
+    }
+
+    private final Loader loader;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final Object lock = new Object();
+    /** The batch still accepting requests. Guarded by <tt>lock</tt>. */
+    private Batch open = null;
+
+    RatingRequests(@NonNull final Loader loader, final int maxBatchSize, final long windowMillis) {
+        this.loader = loader;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Get the rating of a cache, loaded together with the ratings requested by other threads at the same time.
+     *
+     * @return the rating, or <tt>null</tt> if the cache has no rating or the request failed
+     */
+    @Nullable
+    GCVoteRating get(@NonNull final String geocode) {
+        final Batch batch;
+        final boolean leader;
+        synchronized (lock) {
+            leader = open == null;
+            if (leader) {
+                open = new Batch();
+            }
+            batch = open;
+            batch.geocodes.add(geocode);
+            if (batch.geocodes.size() >= maxBatchSize) {
+                open = null;
+                lock.notifyAll();
+            }
+        }
+        if (leader) {
+            collect(batch);
+            load(batch);
+        } else {
+            try {
+                batch.loaded.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return batch.ratings.get(geocode);
+    }
+
+    /**
+     * Wait for other requests until the batch is full or the time window is over.
+     */
+    private void collect(final Batch batch) {
+        final long end = System.currentTimeMillis() + windowMillis;
+        synchronized (lock) {
+            try {
+                long remaining = end - System.currentTimeMillis();
+                while (open == batch && remaining > 0) {
+                    lock.wait(remaining);
+                    remaining = end - System.currentTimeMillis();
+                }
+            } catch (final InterruptedException e) {
+                // load the batch nevertheless, the other callers are waiting for it
+                Thread.currentThread().interrupt();
+            }
+            if (open == batch) {
+                open = null;
+            }
+        }
+    }
+
+    private void load(final Batch batch) {
+        try {
+            final Map<String, GCVoteRating> ratings = loader.load(new ArrayList<String>(batch.geocodes));
+            if (ratings != null) {
+                batch.ratings = ratings;
+            }
+        } finally {
+            batch.loaded.countDown();
+        }
+    }
+
+}
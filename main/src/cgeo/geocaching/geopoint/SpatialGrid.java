@@ -0,0 +1,130 @@
+package cgeo.geocaching.geopoint;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Fixed latitude/longitude grid used as a spatial index for stored coordinates.
+ *
+ * Every point is mapped to a cell number. Cells are numbered column by column (longitude first), so that
+ * all cells of one column overlapping a viewport form a single range of consecutive cell numbers. This
+ * allows a viewport query to be expressed as a few range lookups on a single indexed integer column.
+ *
+ * The cell computation is intentionally simple enough to be also expressed in plain SQL (see
+ * {@link #sqlCellExpression(String)}), so that existing rows can be indexed without loading them.
+ */
+public final class SpatialGrid {
+
+    /** Number of cells per degree, each cell spans 0.1 degree in both directions. */
+    public static final int CELLS_PER_DEGREE = 10;
+    static final int LONGITUDE_CELLS = 360 * CELLS_PER_DEGREE;
+    static final int LATITUDE_CELLS = 180 * CELLS_PER_DEGREE;
+
+    /**
+     * Maximum number of grid columns for which a range query is built. Larger viewports are better served by
+     * a plain coordinates comparison.
+     */
+    public static final int MAX_QUERY_COLUMNS = 32;
+
+    private SpatialGrid() {
+        // utility class
+    }
+
+    static int getColumn(final double longitude) {
+        return Math.max(0, Math.min(LONGITUDE_CELLS - 1, (int) ((longitude + 180.0) * CELLS_PER_DEGREE)));
+    }
+
+    static int getRow(final double latitude) {
+        return Math.max(0, Math.min(LATITUDE_CELLS - 1, (int) ((latitude + 90.0) * CELLS_PER_DEGREE)));
+    }
+
+    private static int getCell(final int column, final int row) {
+        return column * LATITUDE_CELLS + row;
+    }
+
+    /**
+     * Get the grid cell containing the given coordinates.
+     *
+     * @param coords
+     *            the coordinates
+     * @return the cell number
+     */
+    public static int getCell(final @NonNull Geopoint coords) {
+        return getCell(getColumn(coords.getLongitude()), getRow(coords.getLatitude()));
+    }
+
+    /**
+     * Get all the grid cells overlapping a viewport.
+     *
+     * @param viewport
+     *            the viewport
+     * @return the cell numbers, column by column
+     */
+    public static int[] getCells(final @NonNull Viewport viewport) {
+        final int columnMin = getColumn(viewport.getLongitudeMin());
+        final int columnMax = getColumn(viewport.getLongitudeMax());
+        final int rowMin = getRow(viewport.getLatitudeMin());
+        final int rowMax = getRow(viewport.getLatitudeMax());
+        final int rows = rowMax - rowMin + 1;
+        final int[] cells = new int[(columnMax - columnMin + 1) * rows];
+        for (int column = columnMin; column <= columnMax; column++) {
+            for (int row = rowMin; row <= rowMax; row++) {
+                cells[(column - columnMin) * rows + row - rowMin] = getCell(column, row);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Get the number of grid cells overlapping a viewport without computing them.
+     */
+    public static int countCells(final @NonNull Viewport viewport) {
+        return (getColumn(viewport.getLongitudeMax()) - getColumn(viewport.getLongitudeMin()) + 1) *
+                (getRow(viewport.getLatitudeMax()) - getRow(viewport.getLatitudeMin()) + 1);
+    }
+
+    /**
+     * Return the "where" part of a SQL query selecting the grid cells overlapping the viewport, or
+     * <tt>null</tt> if the viewport spans too many grid columns for the index to be useful.
+     *
+     * @param dbTable
+     *            the database table to use as prefix, or null if no prefix is required
+     * @param column
+     *            the name of the column holding the cell number
+     * @return the string without the "where" keyword, or <tt>null</tt>
+     */
+    @Nullable
+    public static StringBuilder sqlWhere(@Nullable final String dbTable, @NonNull final String column, @NonNull final Viewport viewport) {
+        final int columnMin = getColumn(viewport.getLongitudeMin());
+        final int columnMax = getColumn(viewport.getLongitudeMax());
+        if (columnMax - columnMin + 1 > MAX_QUERY_COLUMNS) {
+            return null;
+        }
+        final String qualifiedColumn = dbTable == null ? column : (dbTable + "." + column);
+        final int rowMin = getRow(viewport.getLatitudeMin());
+        final int rowMax = getRow(viewport.getLatitudeMax());
+        final StringBuilder where = new StringBuilder("(");
+        for (int gridColumn = columnMin; gridColumn <= columnMax; gridColumn++) {
+            if (gridColumn > columnMin) {
+                where.append(" or ");
+            }
+            where.append(qualifiedColumn).append(" between ").append(getCell(gridColumn, rowMin))
+                    .append(" and ").append(getCell(gridColumn, rowMax));
+        }
+        return where.append(')');
+    }
+
+    /**
+     * Return a SQL expression computing the cell number from the <tt>latitude</tt> and <tt>longitude</tt>
+     * columns, giving the same result as {@link #getCell(Geopoint)}.
+     *
+     * @param dbTable
+     *            the database table to use as prefix, or null if no prefix is required
+     */
+    @NonNull
+    public static String sqlCellExpression(@Nullable final String dbTable) {
+        final String prefix = dbTable == null ? "" : (dbTable + ".");
+        return "max(0, min(" + (LONGITUDE_CELLS - 1) + ", cast((" + prefix + "longitude + 180.0) * " + CELLS_PER_DEGREE + " as integer))) * " + LATITUDE_CELLS +
+                " + max(0, min(" + (LATITUDE_CELLS - 1) + ", cast((" + prefix + "latitude + 90.0) * " + CELLS_PER_DEGREE + " as integer)))";
+    }
+}
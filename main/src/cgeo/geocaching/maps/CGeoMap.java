@@ -1,15 +1,18 @@
 package cgeo.geocaching.maps;
 
+import cgeo.geocaching.BulkCacheStorer;
 import cgeo.geocaching.CacheListActivity;
 import cgeo.geocaching.CgeoApplication;
 import cgeo.geocaching.DataStore;
 import cgeo.geocaching.Geocache;
+import cgeo.geocaching.MapCacheRow;
 import cgeo.geocaching.R;
 import cgeo.geocaching.SearchResult;
 import cgeo.geocaching.Waypoint;
 import cgeo.geocaching.activity.ActivityMixin;
 import cgeo.geocaching.connector.ConnectorFactory;
 import cgeo.geocaching.connector.gc.GCLogin;
+import cgeo.geocaching.connector.gc.GCMap;
 import cgeo.geocaching.connector.gc.MapTokens;
 import cgeo.geocaching.connector.gc.Tile;
 import cgeo.geocaching.enumerations.CacheType;
@@ -30,6 +33,7 @@ import cgeo.geocaching.maps.interfaces.MapSource;
 import cgeo.geocaching.maps.interfaces.MapViewImpl;
 import cgeo.geocaching.maps.interfaces.OnMapDragListener;
 import cgeo.geocaching.sensors.GeoDirHandler;
+import cgeo.geocaching.sensors.GeoDirSampling;
 import cgeo.geocaching.sensors.IGeoData;
 import cgeo.geocaching.settings.Settings;
 import cgeo.geocaching.ui.dialog.LiveMapInfoDialogBuilder;
@@ -71,11 +75,13 @@ import android.widget.TextView;
 import android.widget.ViewSwitcher.ViewFactory;
 import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
+import rx.subscriptions.SerialSubscription;
 import rx.subscriptions.Subscriptions;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
@@ -92,6 +98,8 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
 
     /** max. number of caches displayed in the Live Map */
     public static final int MAX_CACHES = 500;
+    /** max. number of stored caches displayed as map rows in the Live Map when live download is off */
+    private static final int MAX_STORED_MAP_ROWS = 2000;
     private CompositeSubscription resumeSubscription;
 
     /** Controls the behavior of the map */
@@ -141,8 +149,8 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
     private WaypointType waypointTypeIntent = null;
     private int[] mapStateIntent = null;
     // status data
-    /** Last search result used for displaying header */
-    private SearchResult lastSearchResult = null;
+    /** Last search result used for displaying header, never modified once published */
+    private volatile SearchResult lastSearchResult = null;
     private MapTokens tokens = null;
     private boolean noMapTokenShowed = false;
     // map status data
@@ -152,6 +160,8 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
     // threads
     private Subscription loadTimer;
     private LoadDetails loadDetailsThread = null;
+    /** Prefetching of the live map tiles around the last downloaded viewport */
+    private final SerialSubscription prefetchSubscription = new SerialSubscription();
     /** Time of last {@link LoadRunnable} run */
     private volatile long loadThreadRun = 0L;
     //Interthread communication flag
@@ -172,13 +182,13 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
     private int cachesCnt = 0;
     /** List of caches in the viewport */
     private LeastRecentlyUsedSet<Geocache> caches = null;
+    /** Stored caches in the viewport, loaded as lightweight rows when the live map is not enabled */
+    private volatile List<MapCacheRow> storedRows = Collections.emptyList();
     /** List of waypoints in the viewport */
     private final LeastRecentlyUsedSet<Waypoint> waypoints = new LeastRecentlyUsedSet<Waypoint>(MAX_CACHES);
     // storing for offline
     private ProgressDialog waitDialog = null;
     private int detailTotal = 0;
-    private int detailProgress = 0;
-    private long detailProgressTime = 0L;
     // views
     private ImageSwitcher myLocSwitch = null;
 
@@ -272,22 +282,9 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
         @Override
         public void handleRegularMessage(Message msg) {
             if (msg.what == UPDATE_PROGRESS) {
-                if (waitDialog != null) {
-                    int secondsElapsed = (int) ((System.currentTimeMillis() - detailProgressTime) / 1000);
-                    int secondsRemaining;
-                    if (detailProgress > 0) {
-                        secondsRemaining = (detailTotal - detailProgress) * secondsElapsed / detailProgress;
-                    } else {
-                        secondsRemaining = (detailTotal - detailProgress) * secondsElapsed;
-                    }
-
-                    waitDialog.setProgress(detailProgress);
-                    if (secondsRemaining < 40) {
-                        waitDialog.setMessage(res.getString(R.string.caches_downloading) + " " + res.getString(R.string.caches_eta_ltm));
-                    } else {
-                        int minsRemaining = secondsRemaining / 60;
-                        waitDialog.setMessage(res.getString(R.string.caches_downloading) + " " + minsRemaining + " " + res.getQuantityString(R.plurals.caches_eta_mins, minsRemaining));
-                    }
+                if (waitDialog != null && loadDetailsThread != null) {
+                    waitDialog.setProgress(loadDetailsThread.storer.getStoredCount());
+                    waitDialog.setMessage(loadDetailsThread.storer.getProgressMessage(res));
                 }
             } else if (msg.what == FINISHED_LOADING_DETAILS) {
                 if (waitDialog != null) {
@@ -343,6 +340,11 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
                 }
             }
         }
+        for (final MapCacheRow row : storedRows) {
+            if (row.getCoords() != null && mapView.getViewport().contains(row)) {
+                count++;
+            }
+        }
         cachesCnt = count;
     }
 
@@ -516,6 +518,7 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
     @Override
     public void onPause() {
         resumeSubscription.unsubscribe();
+        prefetchSubscription.set(Subscriptions.empty());
         savePrefs();
 
         if (mapView != null) {
@@ -639,7 +642,6 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
                     }
 
                     detailTotal = geocodes.size();
-                    detailProgress = 0;
 
                     if (detailTotal == 0) {
                         ActivityMixin.showToast(activity, res.getString(R.string.warn_save_nothing));
@@ -778,6 +780,11 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
                 geocodes.add(cache.getGeocode());
             }
         }
+        for (final MapCacheRow row : storedRows) {
+            if (viewport.contains(row)) {
+                geocodes.add(row.getGeocode());
+            }
+        }
         return geocodes;
     }
 
@@ -886,6 +893,10 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
 
         private long timeLastPositionOverlayCalculation = 0;
 
+        public UpdateLoc() {
+            super(GeoDirSampling.MAP);
+        }
+
         @Override
         public void updateGeoDir(final IGeoData geo, final float dir) {
             if (geo.isPseudoLocation()) {
@@ -1054,9 +1065,15 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
                 showProgressHandler.sendEmptyMessage(SHOW_PROGRESS);
                 loadThreadRun = System.currentTimeMillis();
 
+                final boolean excludeMine = Settings.isExcludeMyCaches();
+                final boolean excludeDisabled = Settings.isExcludeDisabledCaches();
+
                 SearchResult searchResult;
                 if (mapMode == MapMode.LIVE) {
-                    searchResult = isLiveEnabled ? new SearchResult() : new SearchResult(DataStore.loadStoredInViewport(viewport, Settings.getCacheType()));
+                    searchResult = new SearchResult();
+                    // stored caches are only needed for display, do not materialize them
+                    storedRows = isLiveEnabled ? Collections.<MapCacheRow> emptyList() :
+                            CGeoMap.filterRows(DataStore.loadMapRowsInViewport(true, viewport, Settings.getCacheType(), excludeMine, excludeDisabled, MAX_STORED_MAP_ROWS));
                 } else {
                     // map started from another activity
                     searchResult = searchIntent != null ? new SearchResult(searchIntent) : new SearchResult();
@@ -1076,8 +1093,6 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
                 caches.removeAll(cachesFromSearchResult);
                 caches.addAll(cachesFromSearchResult);
 
-                final boolean excludeMine = Settings.isExcludeMyCaches();
-                final boolean excludeDisabled = Settings.isExcludeDisabledCaches();
                 if (mapMode == MapMode.LIVE) {
                     CGeoMap.filter(caches);
                 }
@@ -1108,6 +1123,8 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
                 displayExecutor.execute(new DisplayRunnable(viewport));
 
                 if (isLiveEnabled) {
+                    // the viewport has changed, stop prefetching around the previous one
+                    prefetchSubscription.set(Subscriptions.empty());
                     downloadExecutor.execute(new DownloadRunnable(viewport));
                 }
                 lastSearchResult = searchResult;
@@ -1141,25 +1158,41 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
                         }
                     }
                 }
-                final SearchResult searchResult = ConnectorFactory.searchByViewport(viewport.resize(0.8), tokens).toBlockingObservable().single();
+                // display the caches of every partial result (e.g. a live map tile) as soon as it has been parsed
+                final SearchResult searchResult = new SearchResult();
+                final Viewport searchViewport = viewport.resize(0.8);
+                ConnectorFactory.searchByViewportIncrementally(searchViewport, tokens).toBlockingObservable().forEach(new Action1<SearchResult>() {
+                    @Override
+                    public void call(final SearchResult partialResult) {
+                        searchResult.addSearchResult(partialResult);
+
+                        final Set<Geocache> result = partialResult.getCachesFromSearchResult(LoadFlags.LOAD_CACHE_OR_DB);
+                        CGeoMap.filter(result);
+                        // update the caches
+                        // first remove filtered out
+                        final Set<String> filteredCodes = partialResult.getFilteredGeocodes();
+                        if (!filteredCodes.isEmpty()) {
+                            Log.d("Filtering out " + filteredCodes.size() + " caches: " + filteredCodes.toString());
+                            caches.removeAll(DataStore.loadCaches(filteredCodes, LoadFlags.LOAD_CACHE_ONLY));
+                            DataStore.removeCaches(filteredCodes, EnumSet.of(RemoveFlag.REMOVE_CACHE));
+                        }
+                        // new collection type needs to remove first to refresh
+                        caches.removeAll(result);
+                        caches.addAll(result);
+                        // publish a copy, the search result is still being merged into on this thread
+                        lastSearchResult = new SearchResult(searchResult);
+
+                        //render
+                        displayExecutor.execute(new DisplayRunnable(viewport));
+                    }
+                });
                 downloaded = true;
+                lastSearchResult = new SearchResult(searchResult);
 
-                Set<Geocache> result = searchResult.getCachesFromSearchResult(LoadFlags.LOAD_CACHE_OR_DB);
-                CGeoMap.filter(result);
-                // update the caches
-                // first remove filtered out
-                final Set<String> filteredCodes = searchResult.getFilteredGeocodes();
-                Log.d("Filtering out " + filteredCodes.size() + " caches: " + filteredCodes.toString());
-                caches.removeAll(DataStore.loadCaches(filteredCodes, LoadFlags.LOAD_CACHE_ONLY));
-                DataStore.removeCaches(filteredCodes, EnumSet.of(RemoveFlag.REMOVE_CACHE));
-                // new collection type needs to remove first to refresh
-                caches.removeAll(result);
-                caches.addAll(result);
-                lastSearchResult = searchResult;
-
-                //render
-                displayExecutor.execute(new DisplayRunnable(viewport));
-
+                // once the visible tiles are loaded, speculatively load their neighbours
+                if (Settings.isGCConnectorActive()) {
+                    prefetchSubscription.set(GCMap.prefetchAroundViewport(searchViewport, tokens));
+                }
             } catch (ThreadDeath e) {
                 Log.d("DownloadThread stopped");
                 displayHandler.sendEmptyMessage(UPDATE_TITLE);
@@ -1188,10 +1221,11 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
 
                 // display caches
                 final List<Geocache> cachesToDisplay = caches.getAsList();
+                final List<MapCacheRow> rowsToDisplay = storedRows;
                 final List<Waypoint> waypointsToDisplay = new ArrayList<Waypoint>(waypoints);
                 final List<CachesOverlayItemImpl> itemsToDisplay = new ArrayList<CachesOverlayItemImpl>();
 
-                if (!cachesToDisplay.isEmpty()) {
+                if (!cachesToDisplay.isEmpty() || !rowsToDisplay.isEmpty()) {
                     // Only show waypoints for single view or setting
                     // when less than showWaypointsthreshold Caches shown
                     if (mapMode == MapMode.SINGLE || (cachesCnt < Settings.getWayPointsThreshold())) {
@@ -1204,12 +1238,21 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
                             itemsToDisplay.add(getWaypointItem(waypoint));
                         }
                     }
+                    // waypoints have the geocode of their cache, only the displayed caches replace the stored rows
+                    final Set<String> displayedGeocodes = new HashSet<String>();
                     for (Geocache cache : cachesToDisplay) {
 
                         if (cache == null || cache.getCoords() == null) {
                             continue;
                         }
-                        itemsToDisplay.add(getCacheItem(cache));
+                        itemsToDisplay.add(getCacheItem(new MapCacheRow(cache)));
+                        displayedGeocodes.add(cache.getGeocode());
+                    }
+                    for (final MapCacheRow row : rowsToDisplay) {
+                        if (row.getCoords() == null || displayedGeocodes.contains(row.getGeocode())) {
+                            continue;
+                        }
+                        itemsToDisplay.add(getCacheItem(row));
                     }
 
                     overlayCaches.updateItems(itemsToDisplay);
@@ -1279,18 +1322,10 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
             }
         });
 
-        float etaTime = detailTotal * 7.0f / 60.0f;
-        int roundedEta = Math.round(etaTime);
-        if (etaTime < 0.4) {
-            waitDialog.setMessage(res.getString(R.string.caches_downloading) + " " + res.getString(R.string.caches_eta_ltm));
-        } else {
-            waitDialog.setMessage(res.getString(R.string.caches_downloading) + " " + roundedEta + " " + res.getQuantityString(R.plurals.caches_eta_mins, roundedEta));
-        }
+        loadDetailsThread = new LoadDetails(loadDetailsHandler, geocodes, listId);
+        waitDialog.setMessage(loadDetailsThread.storer.getProgressMessage(res));
         waitDialog.show();
 
-        detailProgressTime = System.currentTimeMillis();
-
-        loadDetailsThread = new LoadDetails(loadDetailsHandler, geocodes, listId);
         loadDetailsThread.start();
     }
 
@@ -1301,13 +1336,11 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
     private class LoadDetails extends Thread {
 
         final private CancellableHandler handler;
-        final private List<String> geocodes;
-        final private int listId;
+        final private BulkCacheStorer storer;
 
         public LoadDetails(final CancellableHandler handler, final List<String> geocodes, final int listId) {
             this.handler = handler;
-            this.geocodes = geocodes;
-            this.listId = listId;
+            this.storer = new BulkCacheStorer(geocodes, listId, false, handler);
         }
 
         public void stopIt() {
@@ -1316,27 +1349,18 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
 
         @Override
         public void run() {
-            if (CollectionUtils.isEmpty(geocodes)) {
+            if (storer.getTotalCount() == 0) {
                 return;
             }
 
-            for (final String geocode : geocodes) {
-                try {
-                    if (handler.isCancelled()) {
-                        break;
-                    }
+            storer.storeAll(new BulkCacheStorer.Listener() {
 
-                    if (!DataStore.isOffline(geocode, null)) {
-                        Geocache.storeCache(null, geocode, listId, false, handler);
-                    }
-                } catch (Exception e) {
-                    Log.e("CGeoMap.LoadDetails.run", e);
-                } finally {
+                @Override
+                public void onCacheStored(final String geocode) {
                     // one more cache over
-                    detailProgress++;
                     handler.sendEmptyMessage(UPDATE_PROGRESS);
                 }
-            }
+            });
 
             // we're done
             handler.sendEmptyMessage(FINISHED_LOADING_DETAILS);
@@ -1356,6 +1380,23 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
         caches.removeAll(removeList);
     }
 
+    /**
+     * Remove the own caches from the map rows if requested, found and disabled caches are already excluded by the
+     * query.
+     */
+    private static List<MapCacheRow> filterRows(final List<MapCacheRow> rows) {
+        if (!Settings.isExcludeMyCaches()) {
+            return rows;
+        }
+        final List<MapCacheRow> filtered = new ArrayList<MapCacheRow>(rows.size());
+        for (final MapCacheRow row : rows) {
+            if (!row.isOwner()) {
+                filtered.add(row);
+            }
+        }
+        return filtered;
+    }
+
     private static boolean mapMoved(final Viewport referenceViewport, final Viewport newViewport) {
         return Math.abs(newViewport.getLatitudeSpan() - referenceViewport.getLatitudeSpan()) > 50e-6 ||
                 Math.abs(newViewport.getLongitudeSpan() - referenceViewport.getLongitudeSpan()) > 50e-6 ||
@@ -1530,7 +1571,7 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
         dirtyCaches.add(geocode);
     }
 
-    private CachesOverlayItemImpl getCacheItem(final Geocache cache) {
+    private CachesOverlayItemImpl getCacheItem(final MapCacheRow cache) {
         final CachesOverlayItemImpl item = mapItemFactory.getCachesOverlayItem(cache, cache.applyDistanceRule());
 
         final int hashcode = new HashCodeBuilder()
@@ -1541,7 +1582,7 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
                 .append(cache.isOwner())
                 .append(cache.isFound())
                 .append(cache.hasUserModifiedCoords())
-                .append(cache.getPersonalNote())
+                .append(cache.hasPersonalNote())
                 .append(cache.isLogOffline())
                 .append(cache.getListId() > 0)
                 .toHashCode();
@@ -1554,7 +1595,7 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
         return item;
     }
 
-    private LayerDrawable createCacheItem(final Geocache cache, final int hashcode) {
+    private LayerDrawable createCacheItem(final MapCacheRow cache, final int hashcode) {
         // Set initial capacities to the maximum of layers and insets to avoid dynamic reallocation
         final ArrayList<Drawable> layers = new ArrayList<Drawable>(9);
         final ArrayList<int[]> insets = new ArrayList<int[]>(8);
@@ -1595,7 +1636,7 @@ public class CGeoMap extends AbstractMap implements OnMapDragListener, ViewFacto
             insets.add(INSET_USERMODIFIEDCOORDS[resolution]);
         }
         // personal note
-        if (cache.getPersonalNote() != null) {
+        if (cache.hasPersonalNote()) {
             layers.add(getResources().getDrawable(R.drawable.marker_personalnote));
             insets.add(INSET_PERSONALNOTE[resolution]);
         }
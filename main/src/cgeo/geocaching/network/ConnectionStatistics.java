@@ -0,0 +1,90 @@
+package cgeo.geocaching.network;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Number of requests sent to every host, and how many of them have been sent over a connection kept alive from an
+ * earlier request instead of a new one.
+ */
+public final class ConnectionStatistics {
+
+    private static final class Counter {
+        int requests;
+        int reused;
+    }
+
+    private final Map<String, Counter> counters = new TreeMap<String, Counter>();
+
+    /**
+     * Count a request.
+     *
+     * @param reused
+     *            <tt>true</tt> if the request has been sent over a connection used before
+     */
+    public synchronized void record(@NonNull final String host, final boolean reused) {
+        Counter counter = counters.get(host);
+        if (counter == null) {
+            counter = new Counter();
+            counters.put(host, counter);
+        }
+        counter.requests++;
+        if (reused) {
+            counter.reused++;
+        }
+    }
+
+    /**
+     * @return the hosts requests have been sent to, in alphabetical order
+     */
+    @NonNull
+    public synchronized List<String> getHosts() {
+        return Collections.unmodifiableList(new ArrayList<String>(counters.keySet()));
+    }
+
+    public synchronized int getRequests(@NonNull final String host) {
+        final Counter counter = counters.get(host);
+        return counter != null ? counter.requests : 0;
+    }
+
+    /**
+     * @return the number of requests to the host which did not need a new connection
+     */
+    public synchronized int getReusedConnections(@NonNull final String host) {
+        final Counter counter = counters.get(host);
+        return counter != null ? counter.reused : 0;
+    }
+
+    /**
+     * @return the number of connections opened to the host
+     */
+    public synchronized int getNewConnections(@NonNull final String host) {
+        return getRequests(host) - getReusedConnections(host);
+    }
+
+    public synchronized void reset() {
+        counters.clear();
+    }
+
+    /**
+     * @return a line per host with the number of requests and reused connections
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder result = new StringBuilder();
+        for (final Map.Entry<String, Counter> entry : counters.entrySet()) {
+            final Counter counter = entry.getValue();
+            if (result.length() > 0) {
+                result.append('\n');
+            }
+            result.append(entry.getKey()).append(": ").append(counter.requests).append(" requests, ")
+                    .append(counter.reused).append(" on reused connections");
+        }
+        return result.toString();
+    }
+}
@@ -205,7 +205,7 @@ public class HtmlImage implements Html.ImageGetter {
                                 subscriber.onNext(image);
                             } else {
                                 subscriber.onNext(returnErrorImage ?
-                                        new BitmapDrawable(resources, BitmapFactory.decodeResource(resources, R.drawable.image_not_loaded)) :
+                                        new ErrorImage(resources) :
                                         getTransparent1x1Image(resources));
                             }
                             subscriber.onCompleted();
@@ -293,6 +293,22 @@ public class HtmlImage implements Html.ImageGetter {
         return new BitmapDrawable(res, BitmapFactory.decodeResource(resources, R.drawable.image_no_placement));
     }
 
+    /**
+     * Image returned instead of an image which could not be loaded, see {@link #isErrorImage(BitmapDrawable)}.
+     */
+    private static final class ErrorImage extends BitmapDrawable {
+        ErrorImage(final Resources res) {
+            super(res, BitmapFactory.decodeResource(res, R.drawable.image_not_loaded));
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the drawable was returned instead of an image which could not be loaded
+     */
+    public static boolean isErrorImage(@Nullable final BitmapDrawable drawable) {
+        return drawable instanceof ErrorImage;
+    }
+
     /**
      * Load an image from primary or secondary storage.
      *
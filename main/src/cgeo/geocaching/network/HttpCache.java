@@ -0,0 +1,350 @@
+package cgeo.geocaching.network;
+
+import cgeo.geocaching.files.LocalStorage;
+import cgeo.geocaching.utils.CryptUtils;
+import cgeo.geocaching.utils.Log;
+
+import ch.boye.httpclientandroidlib.Header;
+import ch.boye.httpclientandroidlib.HttpEntity;
+import ch.boye.httpclientandroidlib.HttpResponse;
+import ch.boye.httpclientandroidlib.HttpStatus;
+import ch.boye.httpclientandroidlib.HttpVersion;
+import ch.boye.httpclientandroidlib.NameValuePair;
+import ch.boye.httpclientandroidlib.entity.ByteArrayEntity;
+import ch.boye.httpclientandroidlib.message.BasicHttpResponse;
+import ch.boye.httpclientandroidlib.util.EntityUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import rx.functions.Func0;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cache of the responses to GET requests, stored on disk and validated by conditional requests.
+ *
+ * The body of a successful response is stored together with its <tt>ETag</tt> and <tt>Last-Modified</tt> headers. The
+ * next request for the same resource sends them back in <tt>If-None-Match</tt> or <tt>If-Modified-Since</tt>, and the
+ * stored body is returned if the server answers <tt>304 Not Modified</tt>. Every connector uses its own cache, with
+ * its own size limit and time during which a stored body is used without asking the server at all.
+ *
+ * A response is stored in a single file, holding the headers followed by the body, which is written under a
+ * temporary name and then renamed. Readers therefore never see a partially written response, nor the headers of
+ * another body.
+ *
+ * The stored bodies are read back as UTF-8, like {@link Network#getResponseData(HttpResponse)} reads bodies without
+ * a charset.
+ */
+public final class HttpCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    @NonNull
+    private final String name;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    @NonNull
+    private final Set<String> ignoredParameters;
+    @Nullable
+    private final Func0<String> user;
+
+    /**
+     * Stored response, read back from its file.
+     */
+    private static final class Entry {
+        @Nullable
+        final String etag;
+        @Nullable
+        final String lastModified;
+        @NonNull
+        final byte[] body;
+
+        Entry(@Nullable final String etag, @Nullable final String lastModified, @NonNull final byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+    }
+
+    /**
+     * @param name
+     *            the name of the directory holding the cache
+     * @param maxBytes
+     *            the size of the stored bodies above which the least recently validated ones are deleted
+     * @param maxAgeMillis
+     *            the time after its validation during which a stored body is returned without a request, or 0 to
+     *            always validate it with the server
+     * @param user
+     *            the name of the user logged in when the request is sent, if the responses depend on the login and the
+     *            parameters do not identify the user, or <tt>null</tt>
+     * @param ignoredParameters
+     *            the parameters which do not identify the resource, like the nonce of a signed request
+     */
+    public HttpCache(@NonNull final String name, final long maxBytes, final long maxAgeMillis, @Nullable final Func0<String> user, final String... ignoredParameters) {
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.user = user;
+        this.ignoredParameters = new HashSet<String>(Arrays.asList(ignoredParameters));
+    }
+
+    @NonNull
+    private File getDirectory() {
+        return new File(LocalStorage.getHttpCacheDirectory(), name);
+    }
+
+    /**
+     * Get the key identifying a resource for the logged in user, which does not depend on the ignored parameters.
+     */
+    @NonNull
+    String getKey(@NonNull final String uri, @Nullable final Parameters params) {
+        final Parameters keyParams = new Parameters();
+        if (params != null) {
+            for (final NameValuePair param : params) {
+                if (!ignoredParameters.contains(param.getName())) {
+                    keyParams.add(param);
+                }
+            }
+        }
+        final String resource = keyParams.isEmpty() ? uri : uri + '?' + keyParams;
+        return CryptUtils.md5(user != null ? StringUtils.defaultString(user.call()) + '\n' + resource : resource);
+    }
+
+    /**
+     * Get the file holding the stored response of a resource.
+     */
+    @NonNull
+    File getFile(@NonNull final String key) {
+        return new File(getDirectory(), key);
+    }
+
+    /**
+     * Get the headers of the conditional request for a resource.
+     *
+     * @return the <tt>If-None-Match</tt> or <tt>If-Modified-Since</tt> header, or <tt>null</tt> if the resource is not
+     *         stored
+     */
+    @Nullable
+    Parameters getConditionalHeaders(@NonNull final String key) {
+        final File file = getFile(key);
+        final Entry entry = file.exists() ? read(file, false) : null;
+        if (entry == null) {
+            return null;
+        }
+        // the ETag is a more robust check than a timestamp, and enough to identify the version of the resource
+        if (entry.etag != null) {
+            return new Parameters("If-None-Match", entry.etag);
+        }
+        return entry.lastModified != null ? new Parameters("If-Modified-Since", entry.lastModified) : null;
+    }
+
+    /**
+     * Get the stored response if it has been validated recently enough to be used without a request.
+     *
+     * @return the stored response, or <tt>null</tt> if the server must be asked
+     */
+    @Nullable
+    HttpResponse getFresh(@NonNull final String key) {
+        if (maxAgeMillis <= 0) {
+            return null;
+        }
+        final File file = getFile(key);
+        if (!file.exists() || System.currentTimeMillis() - file.lastModified() >= maxAgeMillis) {
+            return null;
+        }
+        return load(file);
+    }
+
+    /**
+     * Handle the response to a request for a resource: return the stored body if it has not been modified, or store
+     * the new body.
+     *
+     * @return the response to give to the caller, or <tt>null</tt> if the request failed
+     */
+    @Nullable
+    HttpResponse update(@NonNull final String key, @Nullable final HttpResponse response) {
+        if (response == null) {
+            return null;
+        }
+        final File file = getFile(key);
+        final int status = response.getStatusLine().getStatusCode();
+        if (status == HttpStatus.SC_NOT_MODIFIED) {
+            final HttpResponse stored = file.exists() ? load(file) : null;
+            if (stored == null) {
+                return response;
+            }
+            // the validation time is used for the freshness and to delete the least recently validated bodies first
+            file.setLastModified(System.currentTimeMillis());
+            return stored;
+        }
+        if (status != HttpStatus.SC_OK) {
+            return response;
+        }
+        if (!isStorable(response)) {
+            FileUtils.deleteQuietly(file);
+            return response;
+        }
+
+        // read the body before storing it, so that the caller gets it even if it cannot be stored
+        final HttpEntity entity = response.getEntity();
+        final byte[] body;
+        try {
+            body = EntityUtils.toByteArray(entity);
+        } catch (final IOException e) {
+            Log.w("HttpCache.update: cannot read response", e);
+            return null;
+        }
+        final ByteArrayEntity bodyEntity = new ByteArrayEntity(body);
+        bodyEntity.setContentType(entity.getContentType());
+        response.setEntity(bodyEntity);
+        try {
+            write(file, response, body);
+            trim(file.getParentFile());
+        } catch (final IOException e) {
+            Log.w("HttpCache.update: cannot store " + file, e);
+        }
+        return response;
+    }
+
+    /**
+     * A response can only be used later if it can be validated, or if it is used for some time without validation.
+     */
+    private boolean isStorable(@NonNull final HttpResponse response) {
+        if (response.getEntity() == null) {
+            return false;
+        }
+        for (final Header header : response.getHeaders("Cache-Control")) {
+            if (StringUtils.containsIgnoreCase(header.getValue(), "no-store")) {
+                return false;
+            }
+        }
+        return maxAgeMillis > 0 || response.containsHeader(LocalStorage.HEADER_ETAG) || response.containsHeader(LocalStorage.HEADER_LAST_MODIFIED);
+    }
+
+    /**
+     * Store a response under a temporary name, and replace the stored response by renaming it.
+     */
+    private static void write(@NonNull final File file, @NonNull final HttpResponse response, @NonNull final byte[] body) throws IOException {
+        final File directory = file.getParentFile();
+        FileUtils.forceMkdir(directory);
+        final File temp = File.createTempFile(file.getName(), TEMP_SUFFIX, directory);
+        try {
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                output.writeUTF(getHeader(response, LocalStorage.HEADER_ETAG));
+                output.writeUTF(getHeader(response, LocalStorage.HEADER_LAST_MODIFIED));
+                output.write(body);
+            } finally {
+                output.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("cannot rename " + temp + " to " + file);
+            }
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    @NonNull
+    private static String getHeader(@NonNull final HttpResponse response, @NonNull final String name) {
+        final Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : "";
+    }
+
+    /**
+     * @param withBody
+     *            <tt>false</tt> to only read the headers
+     */
+    @Nullable
+    private static Entry read(@NonNull final File file, final boolean withBody) {
+        try {
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                final String etag = input.readUTF();
+                final String lastModified = input.readUTF();
+                return new Entry(StringUtils.trimToNull(etag), StringUtils.trimToNull(lastModified), withBody ? IOUtils.toByteArray(input) : ArrayUtils.EMPTY_BYTE_ARRAY);
+            } finally {
+                input.close();
+            }
+        } catch (final IOException e) {
+            // deleted by trim() or replaced meanwhile
+            Log.w("HttpCache.read: cannot read " + file, e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static HttpResponse load(@NonNull final File file) {
+        final Entry entry = read(file, true);
+        if (entry == null) {
+            return null;
+        }
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.setEntity(new ByteArrayEntity(entry.body));
+        return response;
+    }
+
+    /**
+     * Delete the least recently validated bodies until their size is well below the limit.
+     */
+    private synchronized void trim(@NonNull final File directory) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // responses being written are not counted
+        final List<File> bodies = new ArrayList<File>(files.length);
+        long size = 0;
+        for (final File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // left over by a crash while writing
+                if (System.currentTimeMillis() - file.lastModified() > STALE_TEMP_MILLIS) {
+                    FileUtils.deleteQuietly(file);
+                }
+            } else {
+                bodies.add(file);
+                size += file.length();
+            }
+        }
+        if (size <= maxBytes) {
+            return;
+        }
+        Collections.sort(bodies, new Comparator<File>() {
+            @Override
+            public int compare(final File lhs, final File rhs) {
+                final long lhsModified = lhs.lastModified();
+                final long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        int deleted = 0;
+        for (final File file : bodies) {
+            if (size <= maxBytes * 3 / 4) {
+                break;
+            }
+            size -= file.length();
+            FileUtils.deleteQuietly(file);
+            deleted++;
+        }
+        Log.d("HttpCache: deleted " + deleted + " responses from " + name);
+    }
+
+}
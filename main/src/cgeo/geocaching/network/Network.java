@@ -5,7 +5,11 @@ import cgeo.geocaching.settings.Settings;
 import cgeo.geocaching.utils.Log;
 import cgeo.geocaching.utils.TextUtils;
 
+import ch.boye.httpclientandroidlib.HttpConnection;
 import ch.boye.httpclientandroidlib.HttpEntity;
+import ch.boye.httpclientandroidlib.HttpHost;
+import ch.boye.httpclientandroidlib.HttpRequest;
+import ch.boye.httpclientandroidlib.HttpRequestInterceptor;
 import ch.boye.httpclientandroidlib.HttpResponse;
 import ch.boye.httpclientandroidlib.NameValuePair;
 import ch.boye.httpclientandroidlib.client.HttpClient;
@@ -14,20 +18,28 @@ import ch.boye.httpclientandroidlib.client.methods.HttpGet;
 import ch.boye.httpclientandroidlib.client.methods.HttpPost;
 import ch.boye.httpclientandroidlib.client.methods.HttpRequestBase;
 import ch.boye.httpclientandroidlib.client.params.ClientPNames;
+import ch.boye.httpclientandroidlib.conn.ConnectionKeepAliveStrategy;
+import ch.boye.httpclientandroidlib.entity.BufferedHttpEntity;
 import ch.boye.httpclientandroidlib.entity.StringEntity;
 import ch.boye.httpclientandroidlib.entity.mime.MultipartEntity;
 import ch.boye.httpclientandroidlib.entity.mime.content.FileBody;
 import ch.boye.httpclientandroidlib.entity.mime.content.StringBody;
 import ch.boye.httpclientandroidlib.impl.client.DecompressingHttpClient;
+import ch.boye.httpclientandroidlib.impl.client.DefaultConnectionKeepAliveStrategy;
 import ch.boye.httpclientandroidlib.impl.client.DefaultHttpClient;
 import ch.boye.httpclientandroidlib.impl.client.LaxRedirectStrategy;
+import ch.boye.httpclientandroidlib.impl.conn.PoolingClientConnectionManager;
+import ch.boye.httpclientandroidlib.impl.conn.SchemeRegistryFactory;
 import ch.boye.httpclientandroidlib.params.BasicHttpParams;
 import ch.boye.httpclientandroidlib.params.CoreConnectionPNames;
 import ch.boye.httpclientandroidlib.params.CoreProtocolPNames;
 import ch.boye.httpclientandroidlib.params.HttpParams;
+import ch.boye.httpclientandroidlib.protocol.ExecutionContext;
+import ch.boye.httpclientandroidlib.protocol.HttpContext;
 import ch.boye.httpclientandroidlib.util.EntityUtils;
 import org.apache.commons.lang3.CharEncoding;
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -44,6 +56,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
 
 public abstract class Network {
 
@@ -68,18 +81,84 @@ public abstract class Network {
         Network.clientParams.setParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, 30000);
         Network.clientParams.setParameter(CoreConnectionPNames.SO_TIMEOUT, 90000);
         Network.clientParams.setParameter(ClientPNames.HANDLE_REDIRECTS,  true);
+        // a request waiting that long for a free connection of the pool fails instead of hanging, see release()
+        Network.clientParams.setParameter(ClientPNames.CONN_MANAGER_TIMEOUT, 30000L);
     }
 
+    /** Maximum number of open connections to all hosts */
+    private static final int MAX_CONNECTIONS = 20;
+    /** Maximum number of open connections to a single host */
+    private static final int MAX_CONNECTIONS_PER_HOST = 6;
+    /** Time an idle connection is kept open if the server does not tell */
+    private static final long KEEP_ALIVE_MS = 30000;
+    /** Time between two checks for connections idle for too long or closed by the server */
+    private static final long IDLE_CHECK_INTERVAL_MS = 30000;
+
+    private static final ConnectionStatistics connectionStatistics = new ConnectionStatistics();
+
+    private static final ConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = new DefaultConnectionKeepAliveStrategy() {
+        @Override
+        public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+            final long duration = super.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : KEEP_ALIVE_MS;
+        }
+    };
+
+    /**
+     * Count the requests by host, and whether they are sent over a connection which has already been used.
+     */
+    private static final HttpRequestInterceptor CONNECTION_COUNTER = new HttpRequestInterceptor() {
+        @Override
+        public void process(final HttpRequest request, final HttpContext context) {
+            final HttpConnection connection = (HttpConnection) context.getAttribute(ExecutionContext.HTTP_CONNECTION);
+            final HttpHost host = (HttpHost) context.getAttribute(ExecutionContext.HTTP_TARGET_HOST);
+            if (connection != null && host != null) {
+                connectionStatistics.record(host.getHostName(), connection.getMetrics().getRequestCount() > 0);
+            }
+        }
+    };
+
+    private static PoolingClientConnectionManager connectionManager;
+    private static HttpClient httpClient;
+    private static long lastIdleCheck;
+
     private static String hidePassword(final String message) {
         return message.replaceAll(Network.PATTERN_PASSWORD, "password=***");
     }
 
-    private static HttpClient getHttpClient() {
-        final DefaultHttpClient client = new DefaultHttpClient();
-        client.setCookieStore(Cookies.cookieStore);
-        client.setParams(clientParams);
-        client.setRedirectStrategy(new LaxRedirectStrategy());
-        return new DecompressingHttpClient(client);
+    /**
+     * Get the client shared by all requests. Its connections are kept open after a request, so that later requests
+     * to the same host do not need to connect again.
+     */
+    private static synchronized HttpClient getHttpClient() {
+        final long now = System.currentTimeMillis();
+        if (httpClient == null) {
+            connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault());
+            connectionManager.setMaxTotal(MAX_CONNECTIONS);
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+            final DefaultHttpClient client = new DefaultHttpClient(connectionManager, clientParams);
+            client.setCookieStore(Cookies.cookieStore);
+            client.setRedirectStrategy(new LaxRedirectStrategy());
+            client.setKeepAliveStrategy(KEEP_ALIVE_STRATEGY);
+            client.addRequestInterceptor(CONNECTION_COUNTER);
+            httpClient = new DecompressingHttpClient(client);
+            lastIdleCheck = now;
+        } else if (now - lastIdleCheck > IDLE_CHECK_INTERVAL_MS) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+            lastIdleCheck = now;
+            Log.d("Network connections:\n" + connectionStatistics);
+        }
+        return httpClient;
+    }
+
+    /**
+     * Get the number of requests sent to every host since the start of the application, and how many of them did
+     * not need to open a new connection.
+     */
+    @NonNull
+    public static ConnectionStatistics getConnectionStatistics() {
+        return connectionStatistics;
     }
 
     /**
@@ -232,15 +311,15 @@ public abstract class Network {
         final String reqLogStr = request.getMethod() + " " + Network.hidePassword(request.getURI().toString());
         Log.d(reqLogStr);
 
-        final HttpClient client = Network.getHttpClient();
         final long before = System.currentTimeMillis();
         try {
-            final HttpResponse response = client.execute(request);
+            final HttpResponse response = Network.getHttpClient().execute(request);
             int status = response.getStatusLine().getStatusCode();
             if (status == 200) {
                 Log.d(status + Network.formatTimeSpan(before) + reqLogStr);
             } else {
                 Log.w(status + " [" + response.getStatusLine().getReasonPhrase() + "]" + Network.formatTimeSpan(before) + reqLogStr);
+                bufferEntity(response);
             }
             return response;
         } catch (final IOException e) {
@@ -251,6 +330,33 @@ public abstract class Network {
         return null;
     }
 
+    /**
+     * Read the body of an unsuccessful response into memory. Most callers only look at the status of such a
+     * response, and the connection can only be reused once the body has been read.
+     */
+    private static void bufferEntity(final HttpResponse response) {
+        final HttpEntity entity = response.getEntity();
+        if (entity != null && entity.isStreaming()) {
+            try {
+                response.setEntity(new BufferedHttpEntity(entity));
+            } catch (final IOException e) {
+                EntityUtils.consumeQuietly(entity);
+                response.setEntity(null);
+            }
+        }
+    }
+
+    /**
+     * Release the connection of a response whose body is not needed, so that it can be used for another request.
+     *
+     * @param response a HTTP response, which can be null
+     */
+    public static void release(@Nullable final HttpResponse response) {
+        if (response != null) {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
     @Nullable
     private static Parameters cacheHeaders(@Nullable final File cacheFile) {
         if (cacheFile == null || !cacheFile.exists()) {
@@ -289,6 +395,28 @@ public abstract class Network {
     }
 
 
+    /**
+     * GET HTTP request, whose response is stored in a cache and validated by a conditional request the next time
+     *
+     * @param uri
+     *            the URI to request
+     * @param params
+     *            the parameters to add the the GET request
+     * @param cache
+     *            the cache of the connector
+     * @return the HTTP response, with the stored body if the resource has not been modified
+     */
+    @Nullable
+    public static HttpResponse getRequest(final String uri, @Nullable final Parameters params, @NonNull final HttpCache cache) {
+        final String key = cache.getKey(uri, params);
+        final HttpResponse fresh = cache.getFresh(key);
+        if (fresh != null) {
+            Log.d("cached " + Network.hidePassword(uri));
+            return fresh;
+        }
+        return cache.update(key, request("GET", uri, params, cache.getConditionalHeaders(key), null));
+    }
+
     /**
      * GET HTTP request
      *
@@ -6,7 +6,9 @@ import cgeo.geocaching.settings.Settings;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
 import rx.functions.Action1;
+import rx.subscriptions.Subscriptions;
 
 /**
  * GeoData and Direction handler.
@@ -14,10 +16,26 @@ import rx.functions.Action1;
  * To use this class, override {@link #updateGeoDir(IGeoData, Float)}. You need to start the handler using
  * {@link #start()}. A good place to do so might be the {@code onResume} method of the Activity. Stop the Handler
  * accordingly in {@code onPause}.
+ * <p>
+ * The updates are sampled according to the {@link GeoDirSampling} given at construction, and the delivered and
+ * dropped rates are logged when the handler is stopped.
  */
 public abstract class GeoDirHandler {
     private static final CgeoApplication app = CgeoApplication.getInstance();
 
+    private final GeoDirSampling sampling;
+
+    /**
+     * Create a handler receiving every update.
+     */
+    protected GeoDirHandler() {
+        this(GeoDirSampling.ALL);
+    }
+
+    protected GeoDirHandler(final GeoDirSampling sampling) {
+        this.sampling = sampling;
+    }
+
     /**
      * Update method called when new data is available.
      *
@@ -41,12 +59,22 @@ public abstract class GeoDirHandler {
      * preferences allow it).
      */
     public Subscription start() {
-        return app.geoDirObservable().subscribe(new Action1<ImmutablePair<IGeoData, Float>>() {
+        final GeoDirSampling.Gate gate = sampling.createGate();
+        final Subscription subscription = app.geoDirObservable().filter(gate).subscribe(new Action1<ImmutablePair<IGeoData, Float>>() {
             @Override
             public void call(final ImmutablePair<IGeoData, Float> geoDir) {
                 handleGeoDir(geoDir);
             }
         }, AndroidSchedulers.mainThread());
+        return Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                if (!subscription.isUnsubscribed()) {
+                    subscription.unsubscribe();
+                    gate.logStatistics(GeoDirHandler.this.getClass().getName());
+                }
+            }
+        });
     }
 
 }
@@ -0,0 +1,132 @@
+package cgeo.geocaching.sensors;
+
+import cgeo.geocaching.enumerations.LocationProviderType;
+import cgeo.geocaching.geopoint.Geopoint;
+import cgeo.geocaching.utils.AngleUtils;
+import cgeo.geocaching.utils.Log;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import rx.functions.Func1;
+
+import java.util.Locale;
+
+/**
+ * Sampling of the geo and direction updates for a kind of {@link GeoDirHandler}.
+ * <p>
+ * The location and direction sensors deliver their data at a much higher rate than most screens need. An update is
+ * dropped before reaching the main thread if it comes sooner than the minimum interval after the last delivered one,
+ * or if neither the position nor the direction has changed enough since then. A change of the location provider is
+ * always delivered.
+ */
+public final class GeoDirSampling {
+
+    /** Every update, for handlers doing their own filtering */
+    public static final GeoDirSampling ALL = new GeoDirSampling("all", 0, 0, 0);
+    /** Smooth rotation of a compass, at 25 Hz */
+    public static final GeoDirSampling COMPASS = new GeoDirSampling("compass", 40, 0, 0);
+    /** Distances and directions shown in lists and texts, once per second */
+    public static final GeoDirSampling LIST = new GeoDirSampling("list", 1000, 0, 0);
+    /** Position overlay of a map, only if the position or the heading has changed visibly */
+    public static final GeoDirSampling MAP = new GeoDirSampling("map", 100, 1, 5);
+
+    private final String name;
+    private final long minIntervalMillis;
+    private final float minDistanceMeters;
+    private final float minDirectionDegrees;
+
+    /**
+     * @param minDistanceMeters
+     *            minimum move for an update to be delivered, 0 to deliver all updates
+     * @param minDirectionDegrees
+     *            minimum turn for an update to be delivered regardless of the move, 0 for none
+     */
+    public GeoDirSampling(final String name, final long minIntervalMillis, final float minDistanceMeters, final float minDirectionDegrees) {
+        this.name = name;
+        this.minIntervalMillis = minIntervalMillis;
+        this.minDistanceMeters = minDistanceMeters;
+        this.minDirectionDegrees = minDirectionDegrees;
+    }
+
+    /**
+     * Create the filter of a subscription, which keeps its own statistics.
+     */
+    public Gate createGate() {
+        return new Gate();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Filter of the updates of one subscription, counting the delivered and dropped updates.
+     */
+    public final class Gate implements Func1<ImmutablePair<IGeoData, Float>, Boolean> {
+
+        private final long start = System.currentTimeMillis();
+        private long lastTime;
+        private Geopoint lastCoords = null;
+        private float lastDirection;
+        private LocationProviderType lastProvider = null;
+        private boolean lastPseudoLocation;
+        private volatile int delivered = 0;
+        private volatile int dropped = 0;
+
+        private Gate() {
+        }
+
+        @Override
+        public Boolean call(final ImmutablePair<IGeoData, Float> geoDir) {
+            final IGeoData geoData = geoDir.left;
+            return accept(System.currentTimeMillis(), geoData.getCoords(), geoData.getLocationProvider(), geoData.isPseudoLocation(), geoDir.right);
+        }
+
+        boolean accept(final long time, final Geopoint coords, final LocationProviderType provider, final boolean pseudoLocation, final float direction) {
+            final boolean first = delivered == 0;
+            final boolean providerChanged = provider != lastProvider || pseudoLocation != lastPseudoLocation;
+            if (!first && !providerChanged && (time - lastTime < minIntervalMillis || !hasChanged(coords, direction))) {
+                dropped++;
+                return false;
+            }
+            lastTime = time;
+            lastCoords = coords;
+            lastDirection = direction;
+            lastProvider = provider;
+            lastPseudoLocation = pseudoLocation;
+            delivered++;
+            return true;
+        }
+
+        private boolean hasChanged(final Geopoint coords, final float direction) {
+            if (minDistanceMeters <= 0) {
+                return true;
+            }
+            if (coords == null || lastCoords == null) {
+                return coords != lastCoords;
+            }
+            if (coords.distanceTo(lastCoords) * 1000 >= minDistanceMeters) {
+                return true;
+            }
+            return minDirectionDegrees > 0 && Math.abs(AngleUtils.difference(lastDirection, direction)) >= minDirectionDegrees;
+        }
+
+        public int getDelivered() {
+            return delivered;
+        }
+
+        public int getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Log the delivered and dropped update rates since the creation of the gate.
+         */
+        public void logStatistics(final String subscriber) {
+            final float seconds = Math.max(1, System.currentTimeMillis() - start) / 1000f;
+            Log.d(String.format(Locale.US, "GeoDirSampling %s for %s: %d delivered (%.1f/s), %d dropped (%.1f/s) in %.0f s",
+                    name, subscriber, delivered, delivered / seconds, dropped, dropped / seconds, seconds));
+        }
+    }
+
+}
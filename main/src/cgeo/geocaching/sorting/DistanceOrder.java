@@ -0,0 +1,181 @@
+package cgeo.geocaching.sorting;
+
+import cgeo.geocaching.Geocache;
+import cgeo.geocaching.geopoint.Geopoint;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incremental sort of a list of caches by distance, for the repeated sorts while the position changes.
+ *
+ * The coordinates of the caches and their distances are kept in primitive arrays. As a new position usually only
+ * swaps some neighbours, the current order is sorted again by insertion, which takes linear time for an almost sorted
+ * order. If too many caches move, the insertion sort is abandoned for a complete sort. Only the range of the list
+ * whose caches have moved is written back. The coordinates of the caches are read again at each sort, as they may
+ * have been changed in place.
+ *
+ * Like with {@link DistanceComparator}, caches without coordinates are sorted by their stored distance, or last if
+ * they have none.
+ */
+public final class DistanceOrder {
+
+    /** Average number of positions a cache may move before the insertion sort is abandoned */
+    private static final int MAX_MOVES_PER_CACHE = 8;
+
+    /** The caches and their data, in the order of the list when they were read */
+    private Geocache[] caches = new Geocache[0];
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private boolean[] located = new boolean[0];
+    /** Distance in kilometers of the caches without coordinates */
+    private float[] storedDistances = new float[0];
+    /** Sort key of the caches, which is the distance or its opposite for a descending order */
+    private float[] keys = new float[0];
+    /** Index of the cache at each position of the list */
+    private int[] order = new int[0];
+
+    private int firstMoved = -1;
+    private int lastMoved = -1;
+
+    /**
+     * Sort a list of caches by distance, in place.
+     *
+     * @param descending
+     *            <tt>true</tt> to sort the farthest caches first
+     * @return <tt>true</tt> if caches have moved
+     */
+    public boolean sort(@NonNull final List<Geocache> list, @NonNull final Geopoint coords, final boolean descending) {
+        read(list);
+        computeKeys(coords, descending);
+        firstMoved = -1;
+        lastMoved = -1;
+        if (!insertionSort()) {
+            completeSort();
+        }
+        if (firstMoved < 0) {
+            return false;
+        }
+        for (int position = firstMoved; position <= lastMoved; position++) {
+            list.set(position, caches[order[position]]);
+        }
+        return true;
+    }
+
+    /**
+     * Read the caches again if the list is not in the order of the last sort any longer, or only their coordinates
+     * otherwise.
+     */
+    private void read(final List<Geocache> list) {
+        final int size = list.size();
+        if (size == order.length) {
+            boolean unchanged = true;
+            for (int position = 0; position < size && unchanged; position++) {
+                unchanged = list.get(position) == caches[order[position]];
+            }
+            if (unchanged) {
+                for (int i = 0; i < size; i++) {
+                    readCoords(i);
+                }
+                return;
+            }
+        }
+        caches = list.toArray(new Geocache[size]);
+        latitudes = new double[size];
+        longitudes = new double[size];
+        located = new boolean[size];
+        storedDistances = new float[size];
+        keys = new float[size];
+        order = new int[size];
+        for (int i = 0; i < size; i++) {
+            readCoords(i);
+            order[i] = i;
+        }
+    }
+
+    private void readCoords(final int index) {
+        final Geopoint cacheCoords = caches[index].getCoords();
+        located[index] = cacheCoords != null;
+        if (cacheCoords != null) {
+            latitudes[index] = cacheCoords.getLatitude();
+            longitudes[index] = cacheCoords.getLongitude();
+        } else {
+            final Float distance = caches[index].getDistance();
+            storedDistances[index] = distance != null ? distance : Float.POSITIVE_INFINITY;
+        }
+    }
+
+    private void computeKeys(final Geopoint coords, final boolean descending) {
+        final double latitude = coords.getLatitude();
+        final double longitude = coords.getLongitude();
+        for (int i = 0; i < keys.length; i++) {
+            final float distance = located[i] ? (float) (Geopoint.getDistance(latitude, longitude, latitudes[i], longitudes[i]) / 1000) : storedDistances[i];
+            keys[i] = descending ? -distance : distance;
+        }
+    }
+
+    private void moved(final int from, final int to) {
+        if (firstMoved < 0 || from < firstMoved) {
+            firstMoved = from;
+        }
+        if (to > lastMoved) {
+            lastMoved = to;
+        }
+    }
+
+    /**
+     * Stable insertion sort of the order.
+     *
+     * @return <tt>false</tt> if abandoned because of too many moves, with the order partially sorted
+     */
+    private boolean insertionSort() {
+        final int maxMoves = MAX_MOVES_PER_CACHE * order.length;
+        int moves = 0;
+        for (int i = 1; i < order.length; i++) {
+            final int index = order[i];
+            final float key = keys[index];
+            int j = i - 1;
+            while (j >= 0 && keys[order[j]] > key) {
+                order[j + 1] = order[j];
+                j--;
+                moves++;
+                if (moves > maxMoves) {
+                    break;
+                }
+            }
+            if (j + 1 < i) {
+                order[j + 1] = index;
+                moved(j + 1, i);
+            }
+            if (moves > maxMoves) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stable sort of the order, using the primitive sort of the keys combined with the current positions.
+     */
+    private void completeSort() {
+        final int size = order.length;
+        final long[] sorted = new long[size];
+        for (int position = 0; position < size; position++) {
+            // flip the bits of negative floats, so that the integer order is the float order
+            final int bits = Float.floatToIntBits(keys[order[position]]);
+            final int sortable = bits ^ ((bits >> 31) & 0x7fffffff);
+            sorted[position] = ((long) sortable << 32) | position;
+        }
+        Arrays.sort(sorted);
+        final int[] previous = order.clone();
+        for (int position = 0; position < size; position++) {
+            order[position] = previous[(int) sorted[position]];
+            if (order[position] != previous[position]) {
+                moved(position, position);
+            }
+        }
+    }
+
+}
@@ -6,6 +6,7 @@ import cgeo.geocaching.geopoint.Geopoint;
 import cgeo.geocaching.sensors.IGeoData;
 import cgeo.geocaching.settings.Settings;
 import cgeo.geocaching.sensors.GeoDirHandler;
+import cgeo.geocaching.sensors.GeoDirSampling;
 import cgeo.geocaching.utils.Log;
 
 import org.apache.commons.lang3.StringUtils;
@@ -43,7 +44,7 @@ public class SpeechService extends Service implements OnInitListener {
     protected float direction;
     protected Geopoint position;
 
-    final GeoDirHandler geoDirHandler = new GeoDirHandler() {
+    final GeoDirHandler geoDirHandler = new GeoDirHandler(GeoDirSampling.LIST) {
         @Override
         public void updateGeoDir(final IGeoData newGeo, final float newDirection) {
             position = newGeo.getCoords();
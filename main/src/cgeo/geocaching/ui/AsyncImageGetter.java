@@ -0,0 +1,149 @@
+package cgeo.geocaching.ui;
+
+import cgeo.geocaching.network.HtmlImage;
+import cgeo.geocaching.utils.Log;
+
+import rx.Observable;
+import rx.functions.Action1;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.text.Html;
+import android.text.Spanned;
+import android.text.style.ImageSpan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Image getter returning empty placeholders at once and loading the images in the background, so that HTML can be
+ * parsed only once. The placeholders only take the size of their loaded image and show it once
+ * {@link #showLoadedImages(Spanned)} is called on the UI thread, right before the text is laid out again.
+ */
+public class AsyncImageGetter implements Html.ImageGetter {
+
+    private final HtmlImage htmlImage;
+    private final List<Observable<BitmapDrawable>> images = new ArrayList<Observable<BitmapDrawable>>();
+
+    public AsyncImageGetter(final HtmlImage htmlImage) {
+        this.htmlImage = htmlImage;
+    }
+
+    @Override
+    public Drawable getDrawable(final String url) {
+        final PlaceholderDrawable placeholder = new PlaceholderDrawable();
+        final Observable<BitmapDrawable> image = htmlImage.fetchDrawable(url).lastOrDefault(null).doOnNext(new Action1<BitmapDrawable>() {
+            @Override
+            public void call(final BitmapDrawable drawable) {
+                placeholder.setLoadedImage(drawable);
+            }
+        }).cache();
+        // start loading while the rest of the HTML is parsed
+        image.subscribe(new Action1<BitmapDrawable>() {
+            @Override
+            public void call(final BitmapDrawable drawable) {
+                // kept by the placeholder
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(final Throwable throwable) {
+                Log.w("AsyncImageGetter: cannot load " + url, throwable);
+            }
+        });
+        images.add(image);
+        return placeholder;
+    }
+
+    /**
+     * @return the number of images requested so far
+     */
+    public int getImageCount() {
+        return images.size();
+    }
+
+    /**
+     * Wait until all the images requested so far are loaded. Must not be called on the UI thread.
+     *
+     * @return <tt>true</tt> if all the images could be loaded, <tt>false</tt> if some of them are replaced by an error
+     *         image or missing
+     */
+    public boolean waitForImages() {
+        boolean allLoaded = true;
+        for (final Observable<BitmapDrawable> image : images) {
+            try {
+                final BitmapDrawable drawable = image.toBlockingObservable().lastOrDefault(null);
+                allLoaded &= drawable != null && !HtmlImage.isErrorImage(drawable);
+            } catch (final RuntimeException e) {
+                // already logged, the placeholder stays empty
+                allLoaded = false;
+            }
+        }
+        return allLoaded;
+    }
+
+    /**
+     * Let the placeholders of the text whose image is loaded take its size and show it. Must be called on the UI
+     * thread before the text is laid out, as the size of the images is only taken into account then.
+     */
+    public static void showLoadedImages(final Spanned text) {
+        for (final ImageSpan span : text.getSpans(0, text.length(), ImageSpan.class)) {
+            final Drawable drawable = span.getDrawable();
+            if (drawable instanceof PlaceholderDrawable) {
+                ((PlaceholderDrawable) drawable).showLoadedImage();
+            }
+        }
+    }
+
+    /**
+     * Drawable showing nothing until it is told to show its loaded image.
+     */
+    private static class PlaceholderDrawable extends Drawable {
+
+        /** Set by the loading thread */
+        private volatile Drawable loadedImage = null;
+        /** Only used on the UI thread */
+        private Drawable image = null;
+
+        public void setLoadedImage(final Drawable loadedImage) {
+            this.loadedImage = loadedImage;
+        }
+
+        public void showLoadedImage() {
+            final Drawable loaded = loadedImage;
+            if (loaded != null && loaded != image) {
+                setBounds(loaded.getBounds());
+                image = loaded;
+            }
+        }
+
+        @Override
+        public void draw(final Canvas canvas) {
+            if (image != null) {
+                image.draw(canvas);
+            }
+        }
+
+        @Override
+        public void setAlpha(final int alpha) {
+            if (image != null) {
+                image.setAlpha(alpha);
+            }
+        }
+
+        @Override
+        public void setColorFilter(final ColorFilter colorFilter) {
+            if (image != null) {
+                image.setColorFilter(colorFilter);
+            }
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+
+}
@@ -14,6 +14,7 @@ import cgeo.geocaching.geopoint.Geopoint;
 import cgeo.geocaching.settings.Settings;
 import cgeo.geocaching.sorting.CacheComparator;
 import cgeo.geocaching.sorting.DistanceComparator;
+import cgeo.geocaching.sorting.DistanceOrder;
 import cgeo.geocaching.sorting.EventDateComparator;
 import cgeo.geocaching.sorting.InverseComparator;
 import cgeo.geocaching.sorting.VisitComparator;
@@ -24,6 +25,8 @@ import cgeo.geocaching.utils.Log;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.eclipse.jdt.annotation.Nullable;
+import rx.functions.Action1;
 
 import android.app.Activity;
 import android.content.res.Resources;
@@ -70,6 +73,25 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
     /** Resulting list of caches */
     final private List<Geocache> list;
     private boolean inverseSort = false;
+    /** Incremental sort by distance, for the position updates */
+    final private DistanceOrder distanceOrder = new DistanceOrder();
+    /** Sort of all the caches, only queued once while a paged list is loaded */
+    final private Runnable sortAll = new Runnable() {
+        @Override
+        public void run() {
+            if (CollectionUtils.isEmpty(list) || selectMode) {
+                return;
+            }
+            if (isSortedByDistance()) {
+                lastSort = 0;
+                updateSortByDistance();
+            }
+            else {
+                Collections.sort(list, getPotentialInversion(cacheComparator));
+            }
+            notifyDataSetChanged();
+        }
+    };
 
     private static final int SWIPE_MIN_DISTANCE = 60;
     private static final int SWIPE_MAX_OFF_PATH = 100;
@@ -78,6 +100,10 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
      * time in milliseconds after which the list may be resorted due to position updates
      */
     private static final int PAUSE_BETWEEN_LIST_SORT = 1000;
+    /**
+     * distance in kilometers the position may move away from the center of the search and still keep its distance order
+     */
+    private static final float MAX_SEARCH_ORDER_DRIFT = 0.1f;
 
     private static final int[] RATING_BACKGROUND = new int[3];
     static {
@@ -121,6 +147,14 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
         this.res = activity.getResources();
         this.list = list;
         this.cacheListType = cacheListType;
+        if (list instanceof PagedCacheList) {
+            ((PagedCacheList) list).setOnPageLoaded(new Runnable() {
+                @Override
+                public void run() {
+                    notifyDataSetChanged();
+                }
+            });
+        }
         if (cacheListType == CacheListType.HISTORY) {
             cacheComparator = new VisitComparator();
         }
@@ -174,23 +208,67 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
     }
 
     public Geocache findCacheByGeocode(String geocode) {
-        for (int i = 0; i < getCount(); i++) {
-            if (getItem(i).getGeocode().equalsIgnoreCase(geocode)) {
-                return getItem(i);
+        // a cache of the context menu has been shown and is loaded
+        for (final Geocache cache : getLoadedCaches()) {
+            if (cache.getGeocode().equalsIgnoreCase(geocode)) {
+                return cache;
             }
         }
 
         return null;
     }
+
+    /**
+     * @return the caches of the list without loading the ones of a paged list, which includes all the checked caches
+     */
+    private List<Geocache> getLoadedCaches() {
+        return list instanceof PagedCacheList ? ((PagedCacheList) list).getLoaded() : list;
+    }
+
+    private boolean isPaged() {
+        return list instanceof PagedCacheList && ((PagedCacheList) list).isPaged();
+    }
+
+    /**
+     * Run an action needing all the caches of the list, once a paged list has loaded them in the background.
+     */
+    public void loadAllCaches(final Runnable action) {
+        if (list instanceof PagedCacheList) {
+            ((PagedCacheList) list).loadAll(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * A paged list is kept in the order of the search if that is by distance from the current position already, as
+     * sorting it loads all the caches.
+     */
+    private boolean isInSearchOrder() {
+        if (!isPaged() || !isSortedByDistance() || inverseSort || coords == null) {
+            return false;
+        }
+        final Geopoint orderCenter = ((PagedCacheList) list).getOrderCenter();
+        return orderCenter != null && orderCenter.distanceTo(coords) <= MAX_SEARCH_ORDER_DRIFT;
+    }
+
     /**
      * Called when a new page of caches was loaded.
      */
     public void reFilter() {
         if (currentFilter != null) {
-            // Back up the list again
-            originalList = new ArrayList<Geocache>(list);
-
-            currentFilter.filter(list);
+            loadAllCaches(new Runnable() {
+                @Override
+                public void run() {
+                    if (currentFilter != null) {
+                        // Back up the list again
+                        originalList = new ArrayList<Geocache>(list);
+
+                        currentFilter.filter(list);
+                        notifyDataSetChanged();
+                    }
+                }
+            });
         }
     }
 
@@ -198,6 +276,15 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
      * Called after a user action on the filter menu.
      */
     public void setFilter(final IFilter filter) {
+        loadAllCaches(new Runnable() {
+            @Override
+            public void run() {
+                applyFilter(filter);
+            }
+        });
+    }
+
+    private void applyFilter(final IFilter filter) {
         // Backup current caches list if it isn't backed up yet
         if (originalList == null) {
             originalList = new ArrayList<Geocache>(list);
@@ -229,7 +316,7 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
 
     public int getCheckedCount() {
         int checked = 0;
-        for (Geocache cache : list) {
+        for (Geocache cache : getLoadedCaches()) {
             if (cache.isStatusChecked()) {
                 checked++;
             }
@@ -241,7 +328,7 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
         this.selectMode = selectMode;
 
         if (!selectMode) {
-            for (final Geocache cache : list) {
+            for (final Geocache cache : getLoadedCaches()) {
                 cache.setStatusChecked(false);
             }
         }
@@ -257,10 +344,15 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
     }
 
     public void invertSelection() {
-        for (Geocache cache : list) {
-            cache.setStatusChecked(!cache.isStatusChecked());
-        }
-        notifyDataSetChanged();
+        loadAllCaches(new Runnable() {
+            @Override
+            public void run() {
+                for (Geocache cache : list) {
+                    cache.setStatusChecked(!cache.isStatusChecked());
+                }
+                notifyDataSetChanged();
+            }
+        });
     }
 
     public void forceSort() {
@@ -268,15 +360,12 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
             return;
         }
 
-        if (isSortedByDistance()) {
-            lastSort = 0;
-            updateSortByDistance();
-        }
-        else {
-            Collections.sort(list, getPotentialInversion(cacheComparator));
+        if (isInSearchOrder()) {
+            notifyDataSetChanged();
+            return;
         }
 
-        notifyDataSetChanged();
+        loadAllCaches(sortAll);
     }
 
     public void setActualCoordinates(final Geopoint coords) {
@@ -301,17 +390,19 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
         if ((System.currentTimeMillis() - lastSort) <= PAUSE_BETWEEN_LIST_SORT) {
             return;
         }
-        if (!isSortedByDistance()) {
+        if (!isSortedByDistance() || isInSearchOrder()) {
             return;
         }
         if (coords == null) {
             return;
         }
-        final ArrayList<Geocache> oldList = new ArrayList<Geocache>(list);
-        Collections.sort(list, getPotentialInversion(new DistanceComparator(coords, list)));
-
+        if (isPaged()) {
+            // sorted once all the caches are loaded
+            loadAllCaches(sortAll);
+            return;
+        }
         // avoid an update if the list has not changed due to location update
-        if (list.equals(oldList)) {
+        if (!distanceOrder.sort(list, coords, inverseSort)) {
             return;
         }
         notifyDataSetChanged();
@@ -630,7 +721,7 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
 
     public List<Geocache> getCheckedCaches() {
         final ArrayList<Geocache> result = new ArrayList<Geocache>();
-        for (Geocache cache : list) {
+        for (Geocache cache : getLoadedCaches()) {
             if (cache.isStatusChecked()) {
                 result.add(cache);
             }
@@ -638,12 +729,55 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
         return result;
     }
 
-    public List<Geocache> getCheckedOrAllCaches() {
+    /**
+     * Run an action with the checked caches, or with all the caches if none is checked. The caches of a paged list are
+     * loaded in the background first.
+     */
+    public void getCheckedOrAllCaches(final Action1<List<Geocache>> action) {
+        final List<Geocache> result = getCheckedCaches();
+        if (!result.isEmpty()) {
+            action.call(result);
+            return;
+        }
+        loadAllCaches(new Runnable() {
+            @Override
+            public void run() {
+                action.call(new ArrayList<Geocache>(list));
+            }
+        });
+    }
+
+    /**
+     * @return the checked caches, or all the caches if none is checked, or <tt>null</tt> if the caches of a paged list
+     *         are not loaded yet
+     */
+    @Nullable
+    public List<Geocache> getCheckedOrAllLoadedCaches() {
         final List<Geocache> result = getCheckedCaches();
         if (!result.isEmpty()) {
             return result;
         }
-        return new ArrayList<Geocache>(list);
+        return isPaged() ? null : new ArrayList<Geocache>(list);
+    }
+
+    /**
+     * @return the geocodes of the checked caches, or of all the caches if none is checked, without loading any cache
+     */
+    public List<String> getCheckedOrAllGeocodes() {
+        final List<String> result = new ArrayList<String>();
+        for (final Geocache cache : getCheckedCaches()) {
+            result.add(cache.getGeocode());
+        }
+        if (!result.isEmpty()) {
+            return result;
+        }
+        if (list instanceof PagedCacheList) {
+            return new ArrayList<String>(((PagedCacheList) list).getGeocodes());
+        }
+        for (final Geocache cache : list) {
+            result.add(cache.getGeocode());
+        }
+        return result;
     }
 
     public int getCheckedOrAllCount() {
@@ -663,7 +797,8 @@ public class CacheListAdapter extends ArrayAdapter<Geocache> {
         if (cacheListType == CacheListType.HISTORY) {
             comparator = new VisitComparator();
         } else {
-            if (CollectionUtils.isNotEmpty(list)) {
+            // checking a paged list would load all its caches
+            if (CollectionUtils.isNotEmpty(list) && !isPaged()) {
                 boolean eventsOnly = true;
                 for (final Geocache cache : list) {
                     if (!cache.isEventCache()) {
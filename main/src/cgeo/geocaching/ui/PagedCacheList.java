@@ -0,0 +1,416 @@
+package cgeo.geocaching.ui;
+
+import cgeo.geocaching.DataStore;
+import cgeo.geocaching.Geocache;
+import cgeo.geocaching.enumerations.LoadFlags;
+import cgeo.geocaching.geopoint.Geopoint;
+import cgeo.geocaching.utils.Log;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+import rx.util.async.Async;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * List of caches which can be backed by an ordered list of geocodes instead of the caches themselves.
+ *
+ * In that paged mode, the caches are loaded page by page in the background when accessed, and only the most recently
+ * accessed pages are kept, except for pages holding checked caches. Until its page is loaded, a cache is shown by a
+ * placeholder with its geocode only. Sorting, filtering or copying the list needs all the caches, which must be loaded
+ * in the background by {@link #loadAll(Runnable)} first. The list then behaves like an {@link ArrayList} until it is
+ * given geocodes again. Iterating or modifying a list still paged loads all its caches on the calling thread, so that
+ * no placeholder is ever handed out in bulk. The list must only be used from the UI thread.
+ */
+public class PagedCacheList extends AbstractList<Geocache> {
+
+    static final int PAGE_SIZE = 50;
+    static final int MAX_LOADED_PAGES = 8;
+
+    /** The caches when not paged. */
+    private List<Geocache> items = new ArrayList<Geocache>();
+
+    /** The geocodes in paged mode, <tt>null</tt> otherwise. */
+    private List<String> geocodes = null;
+    private Map<String, Integer> positions = null;
+    private Geocache[] loaded = null;
+    /** The indexes of the loaded pages, the most recently used last. */
+    private final LinkedList<Integer> loadedPages = new LinkedList<Integer>();
+    /** The indexes of the pages being loaded in the background. */
+    private final Set<Integer> loadingPages = new HashSet<Integer>();
+    /** The coordinates the geocodes are sorted by distance from, <tt>null</tt> if they are not sorted by distance. */
+    private Geopoint orderCenter = null;
+    private Runnable onPageLoaded = null;
+    /** The geocodes whose caches are all being loaded in the background, <tt>null</tt> if none. */
+    private List<String> loadingAll = null;
+    /** The actions waiting for all the caches to be loaded. */
+    private final Set<Runnable> waitingForAll = new LinkedHashSet<Runnable>();
+
+    /**
+     * Switch to paged mode, with the caches of the given geocodes in the given order.
+     *
+     * @param orderCenter
+     *            the coordinates the geocodes are sorted by distance from, or <tt>null</tt> if they are sorted
+     *            otherwise
+     */
+    public void setGeocodes(@NonNull final Collection<String> geocodes, @Nullable final Geopoint orderCenter) {
+        this.geocodes = new ArrayList<String>(geocodes);
+        this.orderCenter = orderCenter;
+        positions = new HashMap<String, Integer>(geocodes.size());
+        for (int i = 0; i < this.geocodes.size(); i++) {
+            positions.put(this.geocodes.get(i), i);
+        }
+        loaded = new Geocache[geocodes.size()];
+        loadedPages.clear();
+        loadingPages.clear();
+        items = null;
+        modCount++;
+    }
+
+    /**
+     * @return the coordinates the caches are sorted by distance from in paged mode, <tt>null</tt> if they are not
+     *         sorted by distance or not paged
+     */
+    @Nullable
+    public Geopoint getOrderCenter() {
+        return isPaged() ? orderCenter : null;
+    }
+
+    /**
+     * @param onPageLoaded
+     *            called on the UI thread when a page of caches has been loaded in the background
+     */
+    public void setOnPageLoaded(@Nullable final Runnable onPageLoaded) {
+        this.onPageLoaded = onPageLoaded;
+    }
+
+    /**
+     * @return <tt>true</tt> if the caches are loaded when accessed, in the order of the geocodes
+     */
+    public boolean isPaged() {
+        return geocodes != null;
+    }
+
+    /**
+     * @return the geocodes of all the caches, without loading anything
+     */
+    @NonNull
+    public List<String> getGeocodes() {
+        if (isPaged()) {
+            return Collections.unmodifiableList(geocodes);
+        }
+        final List<String> result = new ArrayList<String>(items.size());
+        for (final Geocache cache : items) {
+            result.add(cache.getGeocode());
+        }
+        return result;
+    }
+
+    /**
+     * Get the caches available without loading anything, which are all the caches unless in paged mode. All the
+     * checked caches are part of them.
+     */
+    @NonNull
+    public List<Geocache> getLoaded() {
+        if (!isPaged()) {
+            return items;
+        }
+        final List<Geocache> result = new ArrayList<Geocache>(loadedPages.size() * PAGE_SIZE);
+        for (final Geocache cache : loaded) {
+            if (cache != null) {
+                result.add(cache);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return isPaged() ? geocodes.size() : items.size();
+    }
+
+    @Override
+    public Geocache get(final int location) {
+        if (!isPaged()) {
+            return items.get(location);
+        }
+        if (location < 0 || location >= geocodes.size()) {
+            throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + geocodes.size());
+        }
+        final Geocache cache = loaded[location];
+        if (cache != null) {
+            return cache;
+        }
+        requestPage(location / PAGE_SIZE);
+        // the page may have been loaded at once
+        final Geocache loadedCache = loaded[location];
+        return loadedCache != null ? loadedCache : createPlaceholder(geocodes.get(location));
+    }
+
+    @Override
+    public int indexOf(final Object object) {
+        if (!isPaged()) {
+            return items.indexOf(object);
+        }
+        if (!(object instanceof Geocache)) {
+            return -1;
+        }
+        final Integer position = positions.get(((Geocache) object).getGeocode());
+        return position != null ? position : -1;
+    }
+
+    @Override
+    public boolean contains(final Object object) {
+        return indexOf(object) >= 0;
+    }
+
+    @Override
+    public Iterator<Geocache> iterator() {
+        materialize();
+        return super.iterator();
+    }
+
+    @Override
+    public ListIterator<Geocache> listIterator(final int location) {
+        // also used by toArray(), so that sorting and copying never see placeholders
+        materialize();
+        return super.listIterator(location);
+    }
+
+    @Override
+    public Geocache set(final int location, final Geocache cache) {
+        materialize();
+        return items.set(location, cache);
+    }
+
+    @Override
+    public void add(final int location, final Geocache cache) {
+        materialize();
+        items.add(location, cache);
+        modCount++;
+    }
+
+    @Override
+    public Geocache remove(final int location) {
+        materialize();
+        modCount++;
+        return items.remove(location);
+    }
+
+    @Override
+    public void clear() {
+        // nothing to load for an empty list
+        items = new ArrayList<Geocache>();
+        geocodes = null;
+        positions = null;
+        loaded = null;
+        loadedPages.clear();
+        loadingPages.clear();
+        orderCenter = null;
+        modCount++;
+    }
+
+    /**
+     * Leave paged mode once all the caches are loaded in the background, then run the given action on the UI thread.
+     * The action is run at once if the list is not paged. An action already waiting is only run once.
+     */
+    public void loadAll(@NonNull final Runnable onLoaded) {
+        if (!isPaged()) {
+            onLoaded.run();
+            return;
+        }
+        waitingForAll.add(onLoaded);
+        if (loadingAll == geocodes) {
+            return;
+        }
+        final List<String> pagedGeocodes = geocodes;
+        loadingAll = pagedGeocodes;
+        final List<String> missing = getMissingGeocodes();
+        loadInBackground(missing, new Action1<Collection<Geocache>>() {
+            @Override
+            public void call(final Collection<Geocache> caches) {
+                if (loadingAll == pagedGeocodes) {
+                    loadingAll = null;
+                }
+                // the list may have been given other geocodes or modified meanwhile
+                if (geocodes == pagedGeocodes) {
+                    fill(missing, caches);
+                    materialize();
+                }
+                final List<Runnable> actions = new ArrayList<Runnable>(waitingForAll);
+                waitingForAll.clear();
+                for (final Runnable action : actions) {
+                    loadAll(action);
+                }
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(final Throwable throwable) {
+                Log.e("PagedCacheList: cannot load all caches", throwable);
+                if (loadingAll == pagedGeocodes) {
+                    loadingAll = null;
+                    waitingForAll.clear();
+                }
+            }
+        });
+    }
+
+    private List<String> getMissingGeocodes() {
+        final List<String> missing = new ArrayList<String>();
+        for (int i = 0; i < loaded.length; i++) {
+            if (loaded[i] == null) {
+                missing.add(geocodes.get(i));
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Leave paged mode, loading the missing caches on the calling thread unless {@link #loadAll(Runnable)} did so.
+     */
+    private void materialize() {
+        if (!isPaged()) {
+            return;
+        }
+        final List<String> missing = getMissingGeocodes();
+        if (!missing.isEmpty()) {
+            fill(missing, loadCaches(missing));
+        }
+        final List<Geocache> all = new ArrayList<Geocache>(loaded.length);
+        for (final Geocache cache : loaded) {
+            all.add(cache);
+        }
+        clear();
+        items = all;
+    }
+
+    /**
+     * Load a page in the background, unless it is being loaded already.
+     */
+    private void requestPage(final int page) {
+        if (!loadingPages.add(page)) {
+            return;
+        }
+        final List<String> pagedGeocodes = geocodes;
+        final int start = page * PAGE_SIZE;
+        final List<String> pageGeocodes = new ArrayList<String>(geocodes.subList(start, Math.min(start + PAGE_SIZE, geocodes.size())));
+        loadInBackground(pageGeocodes, new Action1<Collection<Geocache>>() {
+            @Override
+            public void call(final Collection<Geocache> caches) {
+                // the list may have been given other geocodes or modified meanwhile
+                if (geocodes != pagedGeocodes) {
+                    return;
+                }
+                loadingPages.remove(page);
+                fill(pageGeocodes, caches);
+                loadedPages.remove(Integer.valueOf(page));
+                loadedPages.add(page);
+                evictPages();
+                if (onPageLoaded != null) {
+                    onPageLoaded.run();
+                }
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(final Throwable throwable) {
+                Log.e("PagedCacheList: cannot load page " + page, throwable);
+                if (geocodes == pagedGeocodes) {
+                    // try again when accessed next time
+                    loadingPages.remove(page);
+                }
+            }
+        });
+    }
+
+    /**
+     * Put the loaded caches of some geocodes into their positions.
+     */
+    private void fill(final List<String> pageGeocodes, final Collection<Geocache> caches) {
+        for (final Geocache cache : caches) {
+            final Integer position = positions.get(cache.getGeocode());
+            if (position != null) {
+                loaded[position] = cache;
+            }
+        }
+        for (final String geocode : pageGeocodes) {
+            final int position = positions.get(geocode);
+            if (loaded[position] == null) {
+                // the cache has been removed meanwhile, show its geocode only
+                loaded[position] = createPlaceholder(geocode);
+            }
+        }
+    }
+
+    private static Geocache createPlaceholder(final String geocode) {
+        final Geocache placeholder = new Geocache();
+        placeholder.setGeocode(geocode);
+        placeholder.setName(geocode);
+        return placeholder;
+    }
+
+    /**
+     * Drop the least recently used pages beyond the limit, but keep the pages with checked caches, which would lose
+     * their state when loaded again.
+     */
+    private void evictPages() {
+        // the pages loaded while loading all the caches are kept for leaving paged mode
+        if (loadingAll == geocodes) {
+            return;
+        }
+        int excess = loadedPages.size() - MAX_LOADED_PAGES;
+        for (int i = 0; excess > 0 && i < loadedPages.size() - 1; i++) {
+            final int page = loadedPages.get(i);
+            final int start = page * PAGE_SIZE;
+            final int end = Math.min(start + PAGE_SIZE, loaded.length);
+            boolean checked = false;
+            for (int position = start; position < end && !checked; position++) {
+                checked = loaded[position] != null && loaded[position].isStatusChecked();
+            }
+            if (!checked) {
+                for (int position = start; position < end; position++) {
+                    loaded[position] = null;
+                }
+                loadedPages.remove(i);
+                i--;
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Load the caches of some geocodes on a background thread, and hand them over on the UI thread. Can be overridden in tests.
+     */
+    protected void loadInBackground(@NonNull final List<String> pageGeocodes, @NonNull final Action1<Collection<Geocache>> onLoaded, @NonNull final Action1<Throwable> onError) {
+        Async.start(new Func0<Collection<Geocache>>() {
+            @Override
+            public Collection<Geocache> call() {
+                return loadCaches(pageGeocodes);
+            }
+        }, Schedulers.io()).observeOn(AndroidSchedulers.mainThread()).subscribe(onLoaded, onError);
+    }
+
+    /**
+     * Load the caches of some geocodes. Can be overridden in tests.
+     */
+    @NonNull
+    protected Collection<Geocache> loadCaches(@NonNull final List<String> pageGeocodes) {
+        return DataStore.loadCaches(pageGeocodes, LoadFlags.LOAD_CACHE_OR_DB);
+    }
+
+}
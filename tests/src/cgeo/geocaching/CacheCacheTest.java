@@ -0,0 +1,50 @@
+package cgeo.geocaching;
+
+import cgeo.CGeoTestCase;
+import cgeo.geocaching.enumerations.CacheType;
+import cgeo.geocaching.geopoint.Geopoint;
+import cgeo.geocaching.geopoint.Viewport;
+
+import java.util.Set;
+
+public class CacheCacheTest extends CGeoTestCase {
+
+    private static Geocache createCache(final String geocode, final Geopoint coords) {
+        final Geocache cache = new Geocache();
+        cache.setGeocode(geocode);
+        cache.setType(CacheType.TRADITIONAL);
+        cache.setCoords(coords);
+        return cache;
+    }
+
+    public static void testGetInViewport() {
+        final CacheCache cacheCache = new CacheCache();
+        cacheCache.putCacheInCache(createCache("GC1", new Geopoint(48.0, 11.0)));
+        cacheCache.putCacheInCache(createCache("GC2", new Geopoint(48.05, 11.05)));
+        cacheCache.putCacheInCache(createCache("GC3", new Geopoint(52.0, 13.0)));
+
+        final Set<String> geocodes = cacheCache.getInViewport(new Viewport(new Geopoint(47.9, 10.9), new Geopoint(48.1, 11.1)), CacheType.ALL);
+        assertEquals(2, geocodes.size());
+        assertTrue(geocodes.contains("GC1"));
+        assertTrue(geocodes.contains("GC2"));
+
+        // a large viewport scans all the buckets
+        assertEquals(3, cacheCache.getInViewport(new Viewport(new Geopoint(40.0, 0.0), new Geopoint(60.0, 20.0)), CacheType.ALL).size());
+        assertTrue(cacheCache.getInViewport(new Viewport(new Geopoint(47.9, 10.9), new Geopoint(48.1, 11.1)), CacheType.MULTI).isEmpty());
+    }
+
+    public static void testMovedAndRemovedCaches() {
+        final CacheCache cacheCache = new CacheCache();
+        cacheCache.putCacheInCache(createCache("GC1", new Geopoint(48.0, 11.0)));
+        cacheCache.putCacheInCache(createCache("GC1", new Geopoint(52.0, 13.0)));
+
+        final Viewport munich = new Viewport(new Geopoint(47.9, 10.9), new Geopoint(48.1, 11.1));
+        final Viewport berlin = new Viewport(new Geopoint(51.9, 12.9), new Geopoint(52.1, 13.1));
+        assertTrue(cacheCache.getInViewport(munich, CacheType.ALL).isEmpty());
+        assertEquals(1, cacheCache.getInViewport(berlin, CacheType.ALL).size());
+
+        cacheCache.removeCacheFromCache("GC1");
+        assertTrue(cacheCache.getInViewport(berlin, CacheType.ALL).isEmpty());
+    }
+
+}
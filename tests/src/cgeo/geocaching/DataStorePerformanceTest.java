@@ -0,0 +1,125 @@
+package cgeo.geocaching;
+
+import cgeo.CGeoTestCase;
+import cgeo.geocaching.enumerations.CacheType;
+import cgeo.geocaching.enumerations.LoadFlags;
+import cgeo.geocaching.geopoint.Geopoint;
+import cgeo.geocaching.geopoint.Viewport;
+import cgeo.geocaching.utils.Log;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Measure the latency of the map queries while a bulk store is written to the database, compared with the latency
+ * of the same queries on an idle database. With write-ahead logging, the queries use their own connection and are
+ * not blocked by the transactions of the store.
+ */
+public class DataStorePerformanceTest extends CGeoTestCase {
+
+    private static final int CACHES = 2000;
+    private static final int STORE_ROUNDS = 3;
+    private static final int IDLE_QUERIES = 50;
+    private static final Geopoint CENTER = new Geopoint(48.0, 11.0);
+    private static final Viewport VIEWPORT = new Viewport(CENTER, 0.5, 0.5);
+
+    private int listId;
+    private final List<Geocache> caches = new ArrayList<Geocache>(CACHES);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        listId = DataStore.createList("DataStorePerformanceTest");
+        for (int i = 0; i < CACHES; i++) {
+            final Geocache cache = new Geocache();
+            cache.setGeocode("GCY" + StringUtils.upperCase(Integer.toString(i, 36)));
+            cache.setName("Performance test " + i);
+            cache.setType(CacheType.TRADITIONAL);
+            cache.setCoords(new Geopoint(CENTER.getLatitude() - 0.2 + 0.4 * (i % 50) / 50, CENTER.getLongitude() - 0.2 + 0.4 * (i / 50) / (CACHES / 50)));
+            cache.setDescription(StringUtils.repeat("Some description. ", 100));
+            cache.setDetailed(true);
+            cache.setListId(listId);
+            caches.add(cache);
+        }
+        DataStore.saveCaches(caches, LoadFlags.SAVE_ALL);
+        DataStore.flush();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final Set<String> geocodes = new HashSet<String>(CACHES);
+        for (final Geocache cache : caches) {
+            geocodes.add(cache.getGeocode());
+        }
+        DataStore.removeCaches(geocodes, LoadFlags.REMOVE_ALL);
+        DataStore.removeList(listId);
+        super.tearDown();
+    }
+
+    public void testMapQueriesDuringBulkStore() throws InterruptedException {
+        final List<Long> idle = new ArrayList<Long>();
+        for (int i = 0; i < IDLE_QUERIES; i++) {
+            idle.add(queryMap());
+        }
+
+        final Thread store = new Thread() {
+            @Override
+            public void run() {
+                for (int round = 0; round < STORE_ROUNDS; round++) {
+                    for (final Geocache cache : caches) {
+                        cache.setUpdated(System.currentTimeMillis());
+                    }
+                    DataStore.saveCaches(caches, LoadFlags.SAVE_ALL);
+                    DataStore.flush();
+                }
+            }
+        };
+        final List<Long> storing = new ArrayList<Long>();
+        final long start = System.currentTimeMillis();
+        store.start();
+        while (store.isAlive()) {
+            storing.add(queryMap());
+        }
+        store.join();
+        final long storeMillis = System.currentTimeMillis() - start;
+
+        Log.d(String.format(Locale.US, "Map query latency (median/max): idle %d/%d ms, during a store of %d caches in %d ms %d/%d ms (%d queries)",
+                median(idle), max(idle), CACHES * STORE_ROUNDS, storeMillis, median(storing), max(storing), storing.size()));
+        assertFalse(storing.isEmpty());
+    }
+
+    /**
+     * Run the queries of a map refresh.
+     *
+     * @return the latency in milliseconds
+     */
+    private static long queryMap() {
+        final long start = System.nanoTime();
+        final int rows = DataStore.loadMapRowsInViewport(true, VIEWPORT, CacheType.ALL, false, false, 500).size();
+        DataStore.loadWaypoints(VIEWPORT, false, false, CacheType.ALL);
+        final long latency = (System.nanoTime() - start) / 1000000;
+        assertTrue(rows > 0);
+        return latency;
+    }
+
+    private static long median(final List<Long> values) {
+        final Long[] sorted = values.toArray(new Long[values.size()]);
+        Arrays.sort(sorted);
+        return sorted.length > 0 ? sorted[sorted.length / 2] : 0;
+    }
+
+    private static long max(final List<Long> values) {
+        long max = 0;
+        for (final Long value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+}
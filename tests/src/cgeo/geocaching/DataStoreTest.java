@@ -10,6 +10,7 @@ import cgeo.geocaching.geopoint.Geopoint;
 import cgeo.geocaching.geopoint.Viewport;
 import cgeo.geocaching.list.StoredList;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
@@ -226,4 +227,41 @@ public class DataStoreTest extends CGeoTestCase {
         assertFalse(filteredGeoCodes.contains(main.getGeocode()));
 
     }
+
+    public static void testMatchArgument() {
+        assertEquals("gc12* cache*", DataStore.getMatchArgument(" gc12 cache"));
+        assertEquals("Big* Tree*", DataStore.getMatchArgument("Big-Tree"));
+        assertEquals("Tom* and* Jerry*", DataStore.getMatchArgument("Tom AND Jerry"));
+        assertEquals("Öl*", DataStore.getMatchArgument("\"Öl\""));
+        assertNull(DataStore.getMatchArgument("* -"));
+        assertNull(DataStore.getMatchArgument(null));
+    }
+
+    public static void testSuggestions() {
+        final Geocache cache = new Geocache();
+        cache.setGeocode("GC1ZXFTS");
+        cache.setName("Suggestion test cache");
+        cache.setOwnerDisplayName("Suggestion Owner");
+        cache.setDetailed(true);
+        cache.setListId(StoredList.STANDARD_LIST_ID);
+        try {
+            DataStore.saveCache(cache, LoadFlags.SAVE_ALL);
+            // the suggestions do not wait for the queued writes
+            DataStore.flush();
+
+            assertTrue(ArrayUtils.contains(DataStore.getSuggestionsKeyword("sugg tes"), "Suggestion test cache"));
+            assertTrue(ArrayUtils.contains(DataStore.getSuggestionsOwnerName("own"), "Suggestion Owner"));
+            assertTrue(ArrayUtils.contains(DataStore.getSuggestionsGeocode("gc1zxf"), "GC1ZXFTS"));
+            assertFalse(ArrayUtils.contains(DataStore.getSuggestionsKeyword("uggestion"), "Suggestion test cache"));
+
+            cache.setName("Renamed cache");
+            DataStore.saveCache(cache, LoadFlags.SAVE_ALL);
+            DataStore.flush();
+            assertFalse(ArrayUtils.contains(DataStore.getSuggestionsKeyword("suggestion"), "Suggestion test cache"));
+            assertTrue(ArrayUtils.contains(DataStore.getSuggestionsKeyword("renamed"), "Renamed cache"));
+        } finally {
+            DataStore.removeCache(cache.getGeocode(), LoadFlags.REMOVE_ALL);
+        }
+        assertFalse(ArrayUtils.contains(DataStore.getSuggestionsGeocode("gc1zxf"), "GC1ZXFTS"));
+    }
 }
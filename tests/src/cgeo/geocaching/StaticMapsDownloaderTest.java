@@ -0,0 +1,170 @@
+package cgeo.geocaching;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class StaticMapsDownloaderTest extends TestCase {
+
+    /**
+     * Request counting its downloads, which can be blocked until released.
+     */
+    private static final class CountingRequest extends StaticMapsDownloader.Request {
+        final AtomicInteger downloads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release;
+        final String name;
+        final List<String> order;
+
+        CountingRequest(final String name, final CountDownLatch release) {
+            this(name, release, new ArrayList<String>());
+        }
+
+        CountingRequest(final String name, final CountDownLatch release, final List<String> order) {
+            super("http://maps.example.com/" + name, new File(System.getProperty("java.io.tmpdir"), "missing_" + name), false);
+            this.release = release;
+            this.name = name;
+            this.order = order;
+        }
+
+        @Override
+        void download() {
+            synchronized (order) {
+                order.add(name);
+            }
+            downloads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static void testIdenticalRequestsShareDownload() throws Exception {
+        final StaticMapsDownloader downloader = new StaticMapsDownloader(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingRequest request = new CountingRequest("same", release);
+        final Future<?> first = downloader.download(request);
+        final Future<?> second = downloader.download(new CountingRequest("same", release));
+        assertSame(first, second);
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(1, request.downloads.get());
+
+        // a finished download is requested again
+        final CountingRequest again = new CountingRequest("same", release);
+        downloader.download(again).get(5, TimeUnit.SECONDS);
+        assertEquals(1, again.downloads.get());
+    }
+
+    public static void testCancelDropsOnlyGivenQueuedDownloads() throws Exception {
+        final StaticMapsDownloader downloader = new StaticMapsDownloader(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingRequest running = new CountingRequest("running", release);
+        final Future<?> runningFuture = downloader.download(running);
+        assertTrue(running.started.await(5, TimeUnit.SECONDS));
+
+        final CountingRequest queued = new CountingRequest("queued", release);
+        final Future<?> queuedFuture = downloader.download(queued);
+        final CountingRequest other = new CountingRequest("other", release);
+        final Future<?> otherFuture = downloader.download(other);
+
+        downloader.cancel(Collections.singletonList(queuedFuture));
+        downloader.cancel(Collections.singletonList(runningFuture));
+        assertTrue(queuedFuture.isCancelled());
+        assertFalse(runningFuture.isCancelled());
+
+        release.countDown();
+        runningFuture.get(5, TimeUnit.SECONDS);
+        otherFuture.get(5, TimeUnit.SECONDS);
+        assertEquals(1, running.downloads.get());
+        assertEquals(0, queued.downloads.get());
+        assertEquals(1, other.downloads.get());
+    }
+
+    public static void testUrgentDownloadsFirst() throws Exception {
+        final StaticMapsDownloader downloader = new StaticMapsDownloader(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> order = new ArrayList<String>();
+        final CountingRequest running = new CountingRequest("running", release, order);
+        downloader.download(running);
+        assertTrue(running.started.await(5, TimeUnit.SECONDS));
+
+        downloader.download(new CountingRequest("first", release, order));
+        final Future<?> second = downloader.download(new CountingRequest("second", release, order));
+        downloader.download(new CountingRequest("urgent", release, order), true);
+        // an urgent request for a queued map moves it to the front too
+        assertSame(second, downloader.download(new CountingRequest("second", release, order), true));
+        final Future<?> last = downloader.download(new CountingRequest("last", release, order));
+
+        release.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        synchronized (order) {
+            assertEquals(Arrays.asList("running", "second", "urgent", "first", "last"), order);
+        }
+    }
+
+    public static void testProgress() throws Exception {
+        final StaticMapsDownloader downloader = new StaticMapsDownloader(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> progress = new ArrayList<String>();
+        downloader.addListener(new StaticMapsDownloader.Listener() {
+            @Override
+            public void onProgress(final int completed, final int total) {
+                synchronized (progress) {
+                    progress.add(completed + "/" + total);
+                }
+            }
+        });
+        final CountingRequest running = new CountingRequest("running", release);
+        downloader.download(running);
+        assertTrue(running.started.await(5, TimeUnit.SECONDS));
+        final Future<?> queued = downloader.download(new CountingRequest("queued", release));
+        final Future<?> last = downloader.download(new CountingRequest("last", release));
+        assertEquals(0, downloader.getCompletedCount());
+        assertEquals(3, downloader.getTotalCount());
+        assertEquals(-1, downloader.getRemainingSeconds());
+
+        downloader.cancel(Collections.singletonList(queued));
+        release.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        synchronized (progress) {
+            assertEquals(Arrays.asList("1/3", "2/3", "3/3"), progress);
+        }
+        // counting starts again once idle
+        assertEquals(0, downloader.getTotalCount());
+        assertEquals(0, downloader.getRemainingSeconds());
+    }
+
+    public static void testCancelKeepsSharedDownload() throws Exception {
+        final StaticMapsDownloader downloader = new StaticMapsDownloader(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingRequest running = new CountingRequest("running", release);
+        downloader.download(running);
+        assertTrue(running.started.await(5, TimeUnit.SECONDS));
+
+        final CountingRequest shared = new CountingRequest("shared", release);
+        final Future<?> future = downloader.download(shared);
+        assertSame(future, downloader.download(new CountingRequest("shared", release)));
+
+        // the second requester still needs the map
+        downloader.cancel(Collections.singletonList(future));
+        assertFalse(future.isCancelled());
+
+        release.countDown();
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, shared.downloads.get());
+    }
+
+}
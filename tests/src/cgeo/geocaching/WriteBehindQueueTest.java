@@ -0,0 +1,150 @@
+package cgeo.geocaching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class WriteBehindQueueTest extends TestCase {
+
+    private static class RecordingCommitter implements WriteBehindQueue.Committer<String> {
+        final List<String> saved = new ArrayList<String>();
+        final Map<String, Integer> moved = new LinkedHashMap<String, Integer>();
+        final Map<String, Long> visited = new LinkedHashMap<String, Long>();
+        /** Geocodes whose writes fail */
+        final Set<String> failing = new HashSet<String>();
+        int commits = 0;
+
+        @Override
+        public synchronized Set<String> commit(final Map<String, String> saves, final Map<String, Integer> moves, final Map<String, Long> visits) {
+            commits++;
+            final Set<String> failed = new HashSet<String>();
+            for (final Map.Entry<String, String> save : saves.entrySet()) {
+                if (failing.contains(save.getKey())) {
+                    failed.add(save.getKey());
+                } else {
+                    saved.add(save.getValue());
+                }
+            }
+            moved.putAll(moves);
+            visited.putAll(visits);
+            return failed;
+        }
+    }
+
+    private static Map<String, String> snapshot(final String geocode, final String state) {
+        return Collections.singletonMap(geocode, geocode + ":" + state);
+    }
+
+    public static void testFlushWaitsForWrites() {
+        final RecordingCommitter committer = new RecordingCommitter();
+        final WriteBehindQueue<String> queue = new WriteBehindQueue<String>(committer, 10000);
+        queue.save(snapshot("GC1", "a"));
+        queue.move(Collections.singletonList("GC2"), 3);
+        queue.visit(Collections.singletonList("GC3"), 42);
+
+        // the flush cuts the commit delay short
+        final long start = System.currentTimeMillis();
+        assertTrue(queue.flush());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+
+        synchronized (committer) {
+            assertEquals(Collections.singletonList("GC1:a"), committer.saved);
+            assertEquals(Integer.valueOf(3), committer.moved.get("GC2"));
+            assertEquals(Long.valueOf(42), committer.visited.get("GC3"));
+            assertEquals(1, committer.commits);
+        }
+    }
+
+    public static void testRepeatedWritesAreCoalesced() {
+        final RecordingCommitter committer = new RecordingCommitter();
+        final WriteBehindQueue<String> queue = new WriteBehindQueue<String>(committer, 10000);
+        for (int i = 0; i < 10; i++) {
+            queue.save(snapshot("GC1", Integer.toString(i)));
+            queue.move(Collections.singletonList("GC2"), i);
+        }
+        queue.flush();
+
+        synchronized (committer) {
+            // the last snapshot is written
+            assertEquals(Collections.singletonList("GC1:9"), committer.saved);
+            assertEquals(1, committer.moved.size());
+            assertEquals(Integer.valueOf(9), committer.moved.get("GC2"));
+        }
+    }
+
+    public static void testSaveOverridesEarlierMove() {
+        final RecordingCommitter committer = new RecordingCommitter();
+        final WriteBehindQueue<String> queue = new WriteBehindQueue<String>(committer, 10000);
+        queue.move(Collections.singletonList("GC1"), 5);
+        queue.visit(Collections.singletonList("GC1"), 42);
+        queue.save(snapshot("GC1", "a"));
+        queue.flush();
+
+        synchronized (committer) {
+            assertEquals(Collections.singletonList("GC1:a"), committer.saved);
+            assertTrue(committer.moved.isEmpty());
+            assertTrue(committer.visited.isEmpty());
+        }
+    }
+
+    public static void testFlushWithoutWrites() {
+        final RecordingCommitter committer = new RecordingCommitter();
+        assertTrue(new WriteBehindQueue<String>(committer, 10000).flush());
+        synchronized (committer) {
+            assertEquals(0, committer.commits);
+        }
+    }
+
+    public static void testFailedWritesAreRetriedThenReported() {
+        final RecordingCommitter committer = new RecordingCommitter();
+        committer.failing.add("GC1");
+        final WriteBehindQueue<String> queue = new WriteBehindQueue<String>(committer, 10);
+        queue.save(snapshot("GC1", "a"));
+        queue.save(snapshot("GC2", "b"));
+
+        assertFalse(queue.flush());
+        synchronized (committer) {
+            assertEquals(Collections.singletonList("GC2:b"), committer.saved);
+            assertEquals(WriteBehindQueue.MAX_ATTEMPTS, committer.commits);
+        }
+
+        // later writes are not reported for the earlier failure
+        queue.save(snapshot("GC3", "c"));
+        assertTrue(queue.flush());
+    }
+
+    public static void testFlushOfOtherCachesDoesNotWait() throws InterruptedException {
+        final CountDownLatch committing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final WriteBehindQueue<String> queue = new WriteBehindQueue<String>(new WriteBehindQueue.Committer<String>() {
+            @Override
+            public Set<String> commit(final Map<String, String> saves, final Map<String, Integer> moves, final Map<String, Long> visits) {
+                committing.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Collections.emptySet();
+            }
+        }, 0);
+        queue.save(snapshot("GC1", "a"));
+        try {
+            assertTrue(committing.await(5, TimeUnit.SECONDS));
+            // returns at once although the write of GC1 is blocked
+            assertTrue(queue.flush(Collections.singletonList("GC2")));
+        } finally {
+            release.countDown();
+        }
+        assertTrue(queue.flush(Collections.singletonList("GC1")));
+    }
+
+}
@@ -0,0 +1,58 @@
+package cgeo.geocaching.concurrent;
+
+import junit.framework.TestCase;
+
+public class TokenBucketTest extends TestCase {
+
+    private static final class ManualClockBucket extends TokenBucket {
+        long now = 0;
+
+        ManualClockBucket(final int capacity, final double tokensPerSecond) {
+            super(capacity, tokensPerSecond);
+        }
+
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+    }
+
+    public static void testBurst() {
+        final ManualClockBucket bucket = new ManualClockBucket(3, 1);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    public static void testRefill() {
+        final ManualClockBucket bucket = new ManualClockBucket(2, 4);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        // one token every 250 ms
+        bucket.now = 200000000L;
+        assertFalse(bucket.tryAcquire());
+        bucket.now = 250000000L;
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        // never more than the capacity
+        bucket.now = 10000000000L;
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    public static void testAcquireWaits() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(1, 20);
+        bucket.acquire();
+        final long start = System.nanoTime();
+        bucket.acquire();
+        bucket.acquire();
+        // two tokens at 20 per second take about 100 ms
+        assertTrue(System.nanoTime() - start >= 80000000L);
+    }
+
+}
@@ -67,4 +67,18 @@ public class AutoZoomTest extends TestCase {
 
         assertEquals(16, tiles.size());
     }
+
+    public static void testSurroundingTiles() {
+        final Geopoint bottomLeft = new Geopoint(49.3, 8.3);
+        final Geopoint topRight = new Geopoint(49.4, 8.4);
+
+        final Set<Tile> tiles = Tile.getTilesForViewport(new Viewport(bottomLeft, topRight));
+        final Set<Tile> surrounding = Tile.getSurroundingTiles(tiles);
+
+        // a ring around 2 tiles
+        assertEquals(10, surrounding.size());
+        for (final Tile tile : tiles) {
+            assertFalse(surrounding.contains(tile));
+        }
+    }
 }
@@ -0,0 +1,244 @@
+package cgeo.geocaching.connector.gc;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Micro-benchmark of the live map icon decoding, runnable on a desktop JVM.
+ *
+ * The recorded tiles of the tests resources are decoded and every grid position of every tile is classified,
+ * once with the former per pixel evaluation of the classification trees, and once with
+ * {@link IconDecoder#detectType} using the colour lookup tables. Both results are checked to be identical.
+ *
+ * The former implementation also read every pixel through a JNI call to <code>Bitmap.getPixel()</code>, which cannot
+ * be measured here, so that the speedup on a device is higher than the reported one.
+ *
+ * Usage (with the compiled main and test classes, commons-io and android.jar on the class path):
+ * <code>java cgeo.geocaching.connector.gc.IconDecoderBenchmark [tests/res/raw]</code>
+ */
+public final class IconDecoderBenchmark {
+
+    private static final int[] ZOOM_LEVELS = { 12, 13, 14 };
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 200;
+    private static final int POSITIONS = Tile.TILE_SIZE / 4;
+
+    private IconDecoderBenchmark() {
+        // utility class
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final File directory = new File(args.length > 0 ? args[0] : "tests/res/raw");
+        final IconDecoder.TilePixels[] tiles = new IconDecoder.TilePixels[ZOOM_LEVELS.length];
+        for (int i = 0; i < ZOOM_LEVELS.length; i++) {
+            tiles[i] = decodePNG(FileUtils.readFileToByteArray(new File(directory, "tile" + ZOOM_LEVELS[i] + ".png")));
+        }
+
+        for (int i = 0; i < ZOOM_LEVELS.length; i++) {
+            final int[] expected = detectAllPerPixel(tiles[i], ZOOM_LEVELS[i]);
+            final int[] actual = detectAllWithTables(tiles[i], ZOOM_LEVELS[i]);
+            if (!Arrays.equals(expected, actual)) {
+                throw new IllegalStateException("different results for zoom level " + ZOOM_LEVELS[i]);
+            }
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            runPerPixel(tiles);
+            runWithTables(tiles);
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            runPerPixel(tiles);
+        }
+        final long perPixel = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            runWithTables(tiles);
+        }
+        final long withTables = System.nanoTime() - start;
+
+        final long tilesCount = (long) MEASURED_ROUNDS * tiles.length;
+        System.out.println(String.format(Locale.US, "per pixel classification: %.1f µs/tile", perPixel / 1000.0 / tilesCount));
+        System.out.println(String.format(Locale.US, "colour lookup tables:     %.1f µs/tile", withTables / 1000.0 / tilesCount));
+        System.out.println(String.format(Locale.US, "speedup:                  %.2fx", (double) perPixel / withTables));
+    }
+
+    private static void runPerPixel(final IconDecoder.TilePixels[] tiles) {
+        for (int i = 0; i < tiles.length; i++) {
+            detectAllPerPixel(tiles[i], ZOOM_LEVELS[i]);
+        }
+    }
+
+    private static void runWithTables(final IconDecoder.TilePixels[] tiles) {
+        for (int i = 0; i < tiles.length; i++) {
+            detectAllWithTables(tiles[i], ZOOM_LEVELS[i]);
+        }
+    }
+
+    private static int[] detectAllWithTables(final IconDecoder.TilePixels tile, final int zoomlevel) {
+        final int[] types = new int[POSITIONS * POSITIONS];
+        for (int x = 0; x < POSITIONS; x++) {
+            for (int y = 0; y < POSITIONS; y++) {
+                types[x * POSITIONS + y] = IconDecoder.detectType(tile, x * 4, y * 4, zoomlevel);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Former implementation: a new counters array per position, and a full classification of every pixel.
+     */
+    private static int[] detectAllPerPixel(final IconDecoder.TilePixels tile, final int zoomlevel) {
+        final int[] types = new int[POSITIONS * POSITIONS];
+        for (int posX = 0; posX < POSITIONS; posX++) {
+            for (int posY = 0; posY < POSITIONS; posY++) {
+                final int[] counts = new int[13];
+                for (int x = posX * 4; x < posX * 4 + 4; x++) {
+                    for (int y = posY * 4; y < posY * 4 + 4; y++) {
+                        final int color = tile.pixels[y * tile.width + x];
+                        if ((color >>> 24) != 255) {
+                            continue;
+                        }
+                        final int type = IconDecoder.classifyColorUncached(color & 0xFFFFFF, zoomlevel);
+                        if (type < counts.length) {
+                            counts[type]++;
+                        }
+                    }
+                }
+                int type = -1;
+                int count = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > count) {
+                        count = counts[i];
+                        type = i;
+                    }
+                }
+                types[posX * POSITIONS + posY] = count > 1 ? type : -1;
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Minimal PNG decoder, supporting only the format of the live map tiles (8 bits RGBA, not interlaced).
+     */
+    static IconDecoder.TilePixels decodePNG(final byte[] png) throws IOException {
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(png));
+        input.skipBytes(8); // signature
+        int width = 0;
+        int height = 0;
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        while (true) {
+            final int length = input.readInt();
+            final byte[] type = new byte[4];
+            input.readFully(type);
+            final byte[] data = new byte[length];
+            input.readFully(data);
+            input.readInt(); // CRC
+            final String chunk = new String(type, "US-ASCII");
+            if ("IHDR".equals(chunk)) {
+                final DataInputStream header = new DataInputStream(new ByteArrayInputStream(data));
+                width = header.readInt();
+                height = header.readInt();
+                if (header.readUnsignedByte() != 8 || header.readUnsignedByte() != 6) {
+                    throw new IOException("only 8 bits RGBA images are supported");
+                }
+                header.skipBytes(2);
+                if (header.readUnsignedByte() != 0) {
+                    throw new IOException("interlaced images are not supported");
+                }
+            } else if ("IDAT".equals(chunk)) {
+                compressed.write(data);
+            } else if ("IEND".equals(chunk)) {
+                break;
+            }
+        }
+
+        final int stride = width * 4;
+        final byte[] raw = inflate(compressed.toByteArray(), (stride + 1) * height);
+        final int[] pixels = new int[width * height];
+        final byte[] previous = new byte[stride];
+        final byte[] current = new byte[stride];
+        for (int y = 0; y < height; y++) {
+            final int filter = raw[y * (stride + 1)];
+            System.arraycopy(raw, y * (stride + 1) + 1, current, 0, stride);
+            unfilter(filter, current, previous);
+            for (int x = 0; x < width; x++) {
+                final int r = current[x * 4] & 0xFF;
+                final int g = current[x * 4 + 1] & 0xFF;
+                final int b = current[x * 4 + 2] & 0xFF;
+                final int a = current[x * 4 + 3] & 0xFF;
+                pixels[y * width + x] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+            System.arraycopy(current, 0, previous, 0, stride);
+        }
+        return new IconDecoder.TilePixels(pixels, width, height);
+    }
+
+    private static byte[] inflate(final byte[] compressed, final int size) throws IOException {
+        final Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        final byte[] raw = new byte[size];
+        try {
+            int offset = 0;
+            while (offset < size && !inflater.finished()) {
+                offset += inflater.inflate(raw, offset, size - offset);
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    private static void unfilter(final int filter, final byte[] current, final byte[] previous) throws IOException {
+        for (int i = 0; i < current.length; i++) {
+            final int left = i >= 4 ? current[i - 4] & 0xFF : 0;
+            final int up = previous[i] & 0xFF;
+            final int upLeft = i >= 4 ? previous[i - 4] & 0xFF : 0;
+            final int value = current[i] & 0xFF;
+            switch (filter) {
+                case 0:
+                    break;
+                case 1:
+                    current[i] = (byte) (value + left);
+                    break;
+                case 2:
+                    current[i] = (byte) (value + up);
+                    break;
+                case 3:
+                    current[i] = (byte) (value + ((left + up) >> 1));
+                    break;
+                case 4:
+                    current[i] = (byte) (value + paeth(left, up, upLeft));
+                    break;
+                default:
+                    throw new IOException("unknown filter " + filter);
+            }
+        }
+    }
+
+    private static int paeth(final int a, final int b, final int c) {
+        final int p = a + b - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+}
@@ -0,0 +1,78 @@
+package cgeo.geocaching.connector.gc;
+
+import cgeo.geocaching.enumerations.LiveMapStrategy.Strategy;
+import cgeo.geocaching.geopoint.Geopoint;
+
+import org.apache.commons.io.FileUtils;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class TileResponseCacheTest extends AndroidTestCase {
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = new File(getContext().getCacheDir(), "tiles-test");
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteQuietly(directory);
+        super.tearDown();
+    }
+
+    public static void testGetKey() {
+        final Tile tile = new Tile(new Geopoint(48.0, 11.0), 14);
+        final String key = TileResponseCache.getKey(tile, "session", Strategy.FAST, "");
+        assertTrue(key.startsWith("14_" + tile.getX() + "_" + tile.getY() + "_"));
+        assertEquals(key, TileResponseCache.getKey(tile, "session", Strategy.FAST, ""));
+        assertFalse(key.equals(TileResponseCache.getKey(tile, "other", Strategy.FAST, "")));
+        assertFalse(key.equals(TileResponseCache.getKey(tile, "session", Strategy.DETAILED, "")));
+        assertFalse(key.equals(TileResponseCache.getKey(tile, "session", Strategy.FAST, "hf")));
+    }
+
+    public void testHitAndMiss() {
+        final TileResponseCache cache = new TileResponseCache(directory, 1024 * 1024, 60000);
+        assertNull(cache.get("a"));
+        cache.put("a", "{json}", new byte[] { 1, 2, 3 });
+        cache.put("b", "{other}", null);
+
+        final TileResponseCache.Response response = cache.get("a");
+        assertNotNull(response);
+        assertEquals("{json}", response.json);
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, response.png));
+        assertNull(cache.get("b").png);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // a new instance finds the persisted tiles
+        assertEquals("{json}", new TileResponseCache(directory, 1024 * 1024, 60000).get("a").json);
+    }
+
+    public void testExpiration() {
+        final TileResponseCache cache = new TileResponseCache(directory, 1024 * 1024, -1);
+        cache.put("a", "{json}", null);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testLeastRecentlyUsedEviction() {
+        final TileResponseCache cache = new TileResponseCache(directory, 20, 60000);
+        cache.put("a", "0123456789", null);
+        cache.put("b", "0123456789", null);
+        assertNotNull(cache.get("a"));
+        cache.put("c", "0123456789", null);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(20, cache.getSize());
+    }
+
+}
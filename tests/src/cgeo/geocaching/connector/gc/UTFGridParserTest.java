@@ -0,0 +1,73 @@
+package cgeo.geocaching.connector.gc;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONException;
+
+import junit.framework.TestCase;
+
+public class UTFGridParserTest extends TestCase {
+
+    private static String grid() {
+        return "[" + StringUtils.repeat("\"" + StringUtils.repeat(' ', 64) + "\"", ",", 64) + "]";
+    }
+
+    public static void testParse() throws Exception {
+        final UTFGridParser parser = new UTFGridParser();
+        parser.parse("{\"grid\":" + grid() + ",\"keys\":[\"\",\"(10, 20)\",\"(12,22)\",\"(11, 21)\"]," +
+                "\"data\":{\"(10, 20)\":[{\"i\":\"gEaR\",\"n\":\"Spiel & Sport\"}]," +
+                "\"(12,22)\":[{\"i\":\"gEaR\",\"n\":\"Spiel & Sport\"},{\"n\":\"Rath\\u00e4us \\\"1\\\"\",\"i\":\"Rkzt\"}]," +
+                "\"(11, 21)\":[{\"i\":\"Rkzt\",\"n\":\"Rath\\u00e4us \\\"1\\\"\"}]}}");
+
+        assertEquals(2, parser.getCacheCount());
+        assertEquals("gEaR", parser.getId(0));
+        assertEquals("Spiel & Sport", parser.getName(0));
+        assertEquals("Rkzt", parser.getId(1));
+        assertEquals("Rath\u00e4us \"1\"", parser.getName(1));
+
+        // center of all positions
+        assertEquals(11, parser.getPosition(0).getX());
+        assertEquals(21, parser.getPosition(0).getY());
+        assertEquals(11, parser.getPosition(1).getX());
+
+        // positions where the cache is the only one
+        final int single = parser.getFirstSinglePosition(0);
+        assertEquals(10, parser.getSingleX(single));
+        assertEquals(20, parser.getSingleY(single));
+        assertEquals(-1, parser.getNextSinglePosition(single));
+        assertEquals(11, parser.getSingleX(parser.getFirstSinglePosition(1)));
+    }
+
+    public static void testReuse() throws Exception {
+        final UTFGridParser parser = new UTFGridParser();
+        final StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) {
+                data.append(',');
+            }
+            data.append("\"(").append(i % 64).append(", ").append(i / 64).append(")\":[{\"i\":\"id").append(i).append("\",\"n\":\"name\"}]");
+        }
+        parser.parse("{\"grid\":" + grid() + ",\"keys\":[],\"data\":{" + data + "}}");
+        assertEquals(200, parser.getCacheCount());
+        assertEquals("id199", parser.getId(199));
+
+        parser.parse("{\"keys\":[],\"data\":{},\"grid\":" + grid() + "}");
+        assertEquals(0, parser.getCacheCount());
+    }
+
+    public static void testInvalid() {
+        assertInvalid("");
+        assertInvalid("{\"grid\":[],\"keys\":[],\"data\":{}}");
+        assertInvalid("{\"grid\":" + grid() + ",\"data\":{}}");
+        assertInvalid("{\"grid\":" + grid() + ",\"keys\":[],\"data\":{\"(1, 2)\":[{\"n\":\"no id\"}]}}");
+    }
+
+    private static void assertInvalid(final String data) {
+        try {
+            new UTFGridParser().parse(data);
+            fail("parsed invalid data " + data);
+        } catch (final JSONException e) {
+            // expected
+        }
+    }
+
+}
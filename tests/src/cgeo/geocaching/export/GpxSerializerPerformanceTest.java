@@ -0,0 +1,128 @@
+package cgeo.geocaching.export;
+
+import cgeo.geocaching.DataStore;
+import cgeo.geocaching.Geocache;
+import cgeo.geocaching.LogEntry;
+import cgeo.geocaching.enumerations.LoadFlags;
+import cgeo.geocaching.files.GPX10Parser;
+import cgeo.geocaching.files.LocalStorage;
+import cgeo.geocaching.test.AbstractResourceInstrumentationTestCase;
+import cgeo.geocaching.test.R;
+import cgeo.geocaching.utils.Log;
+
+import org.apache.commons.collections4.ListUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullWriter;
+import org.apache.commons.lang3.CharEncoding;
+import org.apache.commons.lang3.StringUtils;
+
+import android.os.SystemClock;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compare the streaming GPX export with the former export, which loaded batches of 100 fully initialized caches
+ * with {@link DataStore#loadCaches}, on a list of 10000 caches.
+ */
+public class GpxSerializerPerformanceTest extends AbstractResourceInstrumentationTestCase {
+
+    private static final int CACHES = 10000;
+    private static final int CACHES_PER_BATCH = 100;
+
+    private final List<String> geocodes = new ArrayList<String>(CACHES);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // multiply an exported cache into a large GPX file, and import it into the temporary list
+        assertNotNull(loadCacheFromResource(R.raw.gc1bkp3_gpx101));
+        final StringWriter template = new StringWriter();
+        new GpxSerializer().writeGPX(Collections.singletonList("GC1BKP3"), template, null);
+        final String gpx = template.toString();
+        final int headerEnd = gpx.indexOf('>', gpx.indexOf("<gpx")) + 1;
+        final String cache = gpx.substring(headerEnd, gpx.lastIndexOf("</gpx>"));
+
+        FileUtils.forceMkdir(LocalStorage.getStorage());
+        final File file = File.createTempFile("export", ".gpx", LocalStorage.getStorage());
+        try {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CharEncoding.UTF_8));
+            try {
+                writer.write(gpx.substring(0, headerEnd));
+                for (int i = 0; i < CACHES; i++) {
+                    final String geocode = "GCZ" + StringUtils.upperCase(Integer.toString(i, 36));
+                    geocodes.add(geocode);
+                    writer.write(StringUtils.replace(cache, "GC1BKP3", geocode));
+                }
+                writer.write("</gpx>");
+            } finally {
+                writer.close();
+            }
+            assertEquals(CACHES, new GPX10Parser(getTemporaryListId()).parse(file, null).size());
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    public void testExportPerformance() throws IOException {
+        // each export twice, to measure with warm database pages
+        final long[] former = new long[2];
+        final long[] streaming = new long[2];
+        for (int round = 0; round < 2; round++) {
+            former[round] = measure(new Export() {
+                @Override
+                public void run(final Writer writer) throws IOException {
+                    exportFormer(writer);
+                }
+            });
+            streaming[round] = measure(new Export() {
+                @Override
+                public void run(final Writer writer) throws IOException {
+                    new GpxSerializer().writeGPX(geocodes, writer, null);
+                }
+            });
+        }
+        Log.d(String.format(Locale.US, "GPX export of %d caches: former %d ms, streaming %d ms (%.2fx)",
+                CACHES, former[1], streaming[1], (double) former[1] / streaming[1]));
+    }
+
+    private interface Export {
+        void run(final Writer writer) throws IOException;
+    }
+
+    private static long measure(final Export export) throws IOException {
+        System.gc();
+        final long start = SystemClock.elapsedRealtime();
+        export.run(new BufferedWriter(new NullWriter()));
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    /**
+     * The former export: batches of fully loaded caches, whose texts are loaded by a query per cache.
+     */
+    private void exportFormer(final Writer writer) throws IOException {
+        final GpxSerializer serializer = new GpxSerializer();
+        serializer.startGPX(writer, null);
+        for (final List<String> batch : ListUtils.partition(geocodes, CACHES_PER_BATCH)) {
+            for (final Geocache cache : DataStore.loadCaches(batch, LoadFlags.LOAD_ALL_DB_ONLY)) {
+                serializer.cacheWriter.startCache(cache);
+                for (final LogEntry log : cache.getLogs()) {
+                    serializer.cacheWriter.log(log);
+                }
+                serializer.cacheWriter.endCache(cache);
+            }
+        }
+        serializer.endGPX();
+    }
+
+}
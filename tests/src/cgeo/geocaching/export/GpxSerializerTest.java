@@ -13,8 +13,10 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class GpxSerializerTest extends AbstractResourceInstrumentationTestCase {
@@ -77,13 +79,27 @@ public class GpxSerializerTest extends AbstractResourceInstrumentationTestCase {
         assertEquals(replaceLogIds(gpxFirst), replaceLogIds(gpxSecond));
     }
 
+    public void testListOrder() throws IOException, ParserException {
+        assertNotNull(loadCacheFromResource(R.raw.gc1bkp3_gpx101));
+        assertNotNull(loadCacheFromResource(R.raw.gc31j2h));
+
+        final String gpx = getGPX(Arrays.asList("GC31J2H", "GC1BKP3"));
+        assertTrue(gpx.indexOf("<name>GC31J2H</name>") < gpx.indexOf("<name>GC1BKP3</name>"));
+        final String reversed = getGPX(Arrays.asList("GC1BKP3", "GC31J2H"));
+        assertTrue(reversed.indexOf("<name>GC1BKP3</name>") < reversed.indexOf("<name>GC31J2H</name>"));
+    }
+
     private static String replaceLogIds(String gpx) {
         return gpx.replaceAll("log id=\"\\d*\"", "");
     }
 
     private static String getGPXFromCache(String geocode) throws IOException {
+        return getGPX(Collections.singletonList(geocode));
+    }
+
+    private static String getGPX(final List<String> geocodes) throws IOException {
         final StringWriter writer = new StringWriter();
-        new GpxSerializer().writeGPX(Collections.singletonList(geocode), writer, null);
+        new GpxSerializer().writeGPX(geocodes, writer, null);
         return writer.toString();
     }
 
@@ -0,0 +1,185 @@
+package cgeo.geocaching.files;
+
+import cgeo.geocaching.DataStore;
+import cgeo.geocaching.Geocache;
+import cgeo.geocaching.enumerations.LoadFlags;
+import cgeo.geocaching.test.AbstractResourceInstrumentationTestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class ParallelGPXParserTest extends AbstractResourceInstrumentationTestCase {
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<gpx version=\"1.0\">\n<name>test</name>\n";
+    private static final String GPX10_HEADER = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<gpx version=\"1.0\" creator=\"Groundspeak Pocket Query\" xmlns=\"http://www.topografix.com/GPX/1/0\">\n<name>test</name>\n";
+    private static final int CACHES = 60;
+    private static final int CHUNK_SIZE = 2000;
+
+    private static String waypoint(final int index) {
+        return "<wpt lat=\"1\" lon=\"2\"><name>GC" + index + "</name><desc>&lt;wpt&gt; <wpts/></desc></wpt>\n";
+    }
+
+    private static File createGpx(final int waypoints) throws IOException {
+        final StringBuilder gpx = new StringBuilder(HEADER);
+        for (int i = 0; i < waypoints; i++) {
+            gpx.append(waypoint(i));
+        }
+        gpx.append("</gpx>\n");
+        return write(gpx.toString());
+    }
+
+    private static File write(final String gpx) throws IOException {
+        final File file = File.createTempFile("parallel", ".gpx");
+        FileUtils.writeStringToFile(file, gpx, "UTF-8");
+        return file;
+    }
+
+    private static String geocode(final int index) {
+        return String.format(Locale.US, "GCZP%02d", index);
+    }
+
+    /**
+     * @param withTraps
+     *            <tt>true</tt> to add comments looking like the start of a waypoint in the second half of the file,
+     *            on which the file is split into parts which cannot be parsed
+     */
+    private static File createCachesGpx(final boolean withTraps) throws IOException {
+        final StringBuilder gpx = new StringBuilder(GPX10_HEADER);
+        for (int i = 0; i < CACHES; i++) {
+            gpx.append("<wpt lat=\"48.0\" lon=\"11.0\"><name>").append(geocode(i)).append("</name><type>Geocache|Traditional Cache</type>")
+                    .append("<groundspeak:cache id=\"").append(i).append("\" available=\"True\" archived=\"False\" xmlns:groundspeak=\"http://www.groundspeak.com/cache/1/0\">")
+                    .append("<groundspeak:name>Parallel ").append(i).append("</groundspeak:name>")
+                    .append("<groundspeak:type>Traditional Cache</groundspeak:type></groundspeak:cache></wpt>\n");
+            if (withTraps && i >= CACHES / 2) {
+                gpx.append("<!-- ").append(StringUtils.repeat('x', 400)).append(" <wpt lat=\"0\" lon=\"0\"> -->\n");
+            }
+        }
+        gpx.append("</gpx>\n");
+        return write(gpx.toString());
+    }
+
+    private static File createWaypointsGpx() throws IOException {
+        final StringBuilder gpx = new StringBuilder(GPX10_HEADER);
+        for (int i = 0; i < CACHES; i++) {
+            gpx.append("<wpt lat=\"48.1\" lon=\"11.1\"><name>01").append(geocode(i).substring(2))
+                    .append("</name><desc>Parking</desc><type>Waypoint|Parking Area</type></wpt>\n");
+        }
+        gpx.append("</gpx>\n");
+        return write(gpx.toString());
+    }
+
+    private static String read(final ParallelGPXParser.Source source) throws IOException {
+        final InputStream stream = source.open();
+        try {
+            return IOUtils.toString(stream, "UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+
+    public static void testSplit() throws IOException {
+        final File file = createGpx(100);
+        try {
+            final List<ParallelGPXParser.Source> chunks = ParallelGPXParser.split(file, 1000);
+            assertTrue(chunks.size() > 1);
+
+            final StringBuilder waypoints = new StringBuilder();
+            long size = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                final String chunk = read(chunks.get(i));
+                // every part is a complete document
+                assertTrue(chunk.startsWith(HEADER));
+                assertTrue(chunk.trim().endsWith("</gpx>"));
+                waypoints.append(i == 0 ? chunk.substring(0, chunk.lastIndexOf("</gpx>")) : chunk.substring(HEADER.length(), chunk.lastIndexOf("</gpx>")));
+                size += chunks.get(i).getSize();
+            }
+            // the parts contain all waypoints exactly once
+            assertEquals(FileUtils.readFileToString(file, "UTF-8").replace("</gpx>\n", ""), waypoints.toString());
+            assertEquals(file.length(), size);
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    public static void testSmallFileNotSplit() throws IOException {
+        final File file = createGpx(5);
+        try {
+            final List<ParallelGPXParser.Source> chunks = ParallelGPXParser.split(file, 1000);
+            assertEquals(1, chunks.size());
+            assertEquals(FileUtils.readFileToString(file, "UTF-8"), read(chunks.get(0)));
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    /**
+     * Import the waypoints then the caches, and remove the imported caches.
+     *
+     * @return the number of stored waypoints by geocode
+     */
+    private Map<String, Integer> importFiles(final File cachesFile, final File waypointsFile, final boolean parallel) throws IOException, ParserException {
+        final GPX10Parser parser = new GPX10Parser(getTemporaryListId());
+        parser.keepPendingWaypoints();
+        parser.parse(waypointsFile, null);
+        final Collection<Geocache> caches = parallel ? new ParallelGPXParser(parser, null, CHUNK_SIZE).parse(cachesFile) : parser.parse(cachesFile, null);
+        parser.storePendingWaypoints();
+
+        final Map<String, Integer> waypoints = new HashMap<String, Integer>();
+        for (final Geocache cache : caches) {
+            final Geocache stored = DataStore.loadCache(cache.getGeocode(), LoadFlags.LOAD_ALL_DB_ONLY);
+            assertNotNull(stored);
+            waypoints.put(cache.getGeocode(), stored.getWaypoints().size());
+            removeCacheCompletely(cache.getGeocode());
+        }
+        return waypoints;
+    }
+
+    private void assertSameAsSingleParser(final boolean withTraps) throws IOException, ParserException {
+        final File cachesFile = createCachesGpx(withTraps);
+        final File waypointsFile = createWaypointsGpx();
+        try {
+            assertTrue(ParallelGPXParser.split(cachesFile, CHUNK_SIZE).size() > 2);
+            final Map<String, Integer> parallel = importFiles(cachesFile, waypointsFile, true);
+            final Map<String, Integer> single = importFiles(cachesFile, waypointsFile, false);
+            assertEquals(CACHES, single.size());
+            assertEquals(single, parallel);
+            for (final Integer count : parallel.values()) {
+                assertEquals(1, count.intValue());
+            }
+        } finally {
+            FileUtils.deleteQuietly(cachesFile);
+            FileUtils.deleteQuietly(waypointsFile);
+        }
+    }
+
+    public void testParseInParts() throws IOException, ParserException {
+        assertSameAsSingleParser(false);
+    }
+
+    public void testFallbackKeepsPendingWaypoints() throws IOException, ParserException {
+        // make sure that the file is split inside a comment, so that the parsing in parts fails after some parts
+        final File cachesFile = createCachesGpx(true);
+        try {
+            boolean splitInComment = false;
+            for (final ParallelGPXParser.Source chunk : ParallelGPXParser.split(cachesFile, CHUNK_SIZE)) {
+                splitInComment |= read(chunk).startsWith(GPX10_HEADER + "<wpt lat=\"0\"");
+            }
+            assertTrue(splitInComment);
+        } finally {
+            FileUtils.deleteQuietly(cachesFile);
+        }
+        assertSameAsSingleParser(true);
+    }
+
+}
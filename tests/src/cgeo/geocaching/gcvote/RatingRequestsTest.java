@@ -0,0 +1,88 @@
+package cgeo.geocaching.gcvote;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.TestCase;
+
+public class RatingRequestsTest extends TestCase {
+
+    /**
+     * Loader rating every cache with the number of its geocode, and recording the batches.
+     */
+    private static final class RecordingLoader implements RatingRequests.Loader {
+        final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+
+        @Override
+        public Map<String, GCVoteRating> load(@NonNull final List<String> geocodes) {
+            batches.add(geocodes);
+            final Map<String, GCVoteRating> ratings = new HashMap<String, GCVoteRating>();
+            for (final String geocode : geocodes) {
+                ratings.put(geocode, new GCVoteRating(Integer.parseInt(geocode.substring(2)), 1, 0));
+            }
+            return ratings;
+        }
+    }
+
+    private static Map<String, GCVoteRating> requestConcurrently(final RatingRequests requests, final int count) throws InterruptedException {
+        final Map<String, GCVoteRating> results = new ConcurrentHashMap<String, GCVoteRating>();
+        final List<Thread> threads = new ArrayList<Thread>(count);
+        for (int i = 1; i <= count; i++) {
+            final String geocode = "GC" + i;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    final GCVoteRating rating = requests.get(geocode);
+                    if (rating != null) {
+                        results.put(geocode, rating);
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        return results;
+    }
+
+    public static void testCoalescing() throws InterruptedException {
+        final RecordingLoader loader = new RecordingLoader();
+        final Map<String, GCVoteRating> results = requestConcurrently(new RatingRequests(loader, 100, 1000), 10);
+
+        assertEquals(1, loader.batches.size());
+        assertEquals(10, loader.batches.get(0).size());
+        assertEquals(10, results.size());
+        assertEquals(7.0f, results.get("GC7").getRating());
+    }
+
+    public static void testBatchSize() throws InterruptedException {
+        final RecordingLoader loader = new RecordingLoader();
+        final Map<String, GCVoteRating> results = requestConcurrently(new RatingRequests(loader, 4, 1000), 10);
+
+        assertEquals(10, results.size());
+        assertTrue(loader.batches.size() >= 3);
+        for (final List<String> batch : loader.batches) {
+            assertTrue(batch.size() <= 4);
+        }
+    }
+
+    public static void testFailedRequest() {
+        final RatingRequests requests = new RatingRequests(new RatingRequests.Loader() {
+            @Override
+            public Map<String, GCVoteRating> load(@NonNull final List<String> geocodes) {
+                return null;
+            }
+        }, 100, 10);
+        assertNull(requests.get("GC1"));
+    }
+
+}
@@ -0,0 +1,42 @@
+package cgeo.geocaching.geopoint;
+
+import android.test.AndroidTestCase;
+
+public class SpatialGridTest extends AndroidTestCase {
+
+    final private static Viewport vpRef = new Viewport(new Geopoint(0.05, 0.05), new Geopoint(0.25, 0.15));
+
+    public static void testGetCell() {
+        assertEquals(1800 * SpatialGrid.LATITUDE_CELLS + 900, SpatialGrid.getCell(new Geopoint(0.05, 0.05)));
+        assertEquals(0, SpatialGrid.getCell(new Geopoint(-90.0, -180.0)));
+        assertEquals((SpatialGrid.LONGITUDE_CELLS - 1) * SpatialGrid.LATITUDE_CELLS + SpatialGrid.LATITUDE_CELLS - 1, SpatialGrid.getCell(new Geopoint(90.0, 180.0)));
+    }
+
+    public static void testGetCells() {
+        final int[] cells = SpatialGrid.getCells(vpRef);
+        assertEquals(SpatialGrid.countCells(vpRef), cells.length);
+        assertEquals(6, cells.length);
+        for (final int cell : cells) {
+            assertTrue(cell >= 1800 * SpatialGrid.LATITUDE_CELLS + 900);
+            assertTrue(cell <= 1801 * SpatialGrid.LATITUDE_CELLS + 902);
+        }
+    }
+
+    public static void testCellsContainPoints() {
+        final int[] cells = SpatialGrid.getCells(vpRef);
+        for (final Geopoint point : new Geopoint[] { vpRef.bottomLeft, vpRef.center, vpRef.topRight }) {
+            boolean found = false;
+            for (final int cell : cells) {
+                found |= cell == SpatialGrid.getCell(point);
+            }
+            assertTrue(found);
+        }
+    }
+
+    public static void testSqlWhere() {
+        assertEquals("(t.grid_cell between 3240900 and 3240902 or t.grid_cell between 3242700 and 3242702)", SpatialGrid.sqlWhere("t", "grid_cell", vpRef).toString());
+        assertEquals("(grid_cell between 3240900 and 3240902 or grid_cell between 3242700 and 3242702)", SpatialGrid.sqlWhere(null, "grid_cell", vpRef).toString());
+        assertNull(SpatialGrid.sqlWhere(null, "grid_cell", new Viewport(new Geopoint(0.0, 0.0), new Geopoint(10.0, 10.0))));
+    }
+
+}
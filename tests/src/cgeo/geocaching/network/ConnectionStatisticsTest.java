@@ -0,0 +1,31 @@
+package cgeo.geocaching.network;
+
+import junit.framework.TestCase;
+
+public class ConnectionStatisticsTest extends TestCase {
+
+    public static void testRecord() {
+        final ConnectionStatistics statistics = new ConnectionStatistics();
+        statistics.record("www.geocaching.com", false);
+        statistics.record("www.geocaching.com", true);
+        statistics.record("www.geocaching.com", true);
+        statistics.record("api.gcvote.com", false);
+
+        assertEquals(2, statistics.getHosts().size());
+        assertEquals("api.gcvote.com", statistics.getHosts().get(0));
+        assertEquals(3, statistics.getRequests("www.geocaching.com"));
+        assertEquals(2, statistics.getReusedConnections("www.geocaching.com"));
+        assertEquals(1, statistics.getNewConnections("www.geocaching.com"));
+        assertEquals(0, statistics.getReusedConnections("api.gcvote.com"));
+        assertEquals(0, statistics.getRequests("www.opencaching.de"));
+    }
+
+    public static void testReset() {
+        final ConnectionStatistics statistics = new ConnectionStatistics();
+        statistics.record("www.geocaching.com", true);
+        statistics.reset();
+        assertTrue(statistics.getHosts().isEmpty());
+        assertEquals(0, statistics.getRequests("www.geocaching.com"));
+    }
+
+}
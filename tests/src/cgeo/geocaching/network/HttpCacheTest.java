@@ -0,0 +1,107 @@
+package cgeo.geocaching.network;
+
+import ch.boye.httpclientandroidlib.HttpResponse;
+import ch.boye.httpclientandroidlib.HttpStatus;
+import ch.boye.httpclientandroidlib.HttpVersion;
+import ch.boye.httpclientandroidlib.entity.StringEntity;
+import ch.boye.httpclientandroidlib.message.BasicHttpResponse;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.CharEncoding;
+import rx.functions.Func0;
+
+import java.io.UnsupportedEncodingException;
+
+import junit.framework.TestCase;
+
+public class HttpCacheTest extends TestCase {
+
+    private static final String URI = "http://www.example.com/cache";
+
+    private HttpCache cache;
+    private String key;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = new HttpCache("test", 1024 * 1024, 0, null, "nonce");
+        key = cache.getKey(URI, new Parameters("id", "1"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteQuietly(cache.getFile(key));
+        super.tearDown();
+    }
+
+    private static HttpResponse response(final int status, final String body, final String... headers) throws UnsupportedEncodingException {
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "");
+        if (body != null) {
+            response.setEntity(new StringEntity(body, CharEncoding.UTF_8));
+        }
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        return response;
+    }
+
+    public void testKeyIgnoresParameters() {
+        assertEquals(key, cache.getKey(URI, new Parameters("id", "1", "nonce", "abc")));
+        assertFalse(key.equals(cache.getKey(URI, new Parameters("id", "2"))));
+        assertFalse(key.equals(cache.getKey(URI, null)));
+    }
+
+    public void testNotModified() throws Exception {
+        final HttpResponse first = cache.update(key, response(HttpStatus.SC_OK, "stored body", "ETag", "\"1\""));
+        assertEquals("stored body", Network.getResponseData(first, false));
+        assertTrue(cache.getFile(key).exists());
+        assertEquals(new Parameters("If-None-Match", "\"1\""), cache.getConditionalHeaders(key));
+
+        final HttpResponse second = cache.update(key, response(HttpStatus.SC_NOT_MODIFIED, null));
+        assertTrue(Network.isSuccess(second));
+        assertEquals("stored body", Network.getResponseData(second, false));
+    }
+
+    public void testModified() throws Exception {
+        cache.update(key, response(HttpStatus.SC_OK, "old body", "ETag", "\"1\""));
+        final HttpResponse second = cache.update(key, response(HttpStatus.SC_OK, "new body", "ETag", "\"2\""));
+        assertEquals("new body", Network.getResponseData(second, false));
+        assertEquals(new Parameters("If-None-Match", "\"2\""), cache.getConditionalHeaders(key));
+        assertEquals("new body", Network.getResponseData(cache.update(key, response(HttpStatus.SC_NOT_MODIFIED, null)), false));
+    }
+
+    public void testWithoutValidator() throws Exception {
+        final HttpResponse response = cache.update(key, response(HttpStatus.SC_OK, "body"));
+        assertEquals("body", Network.getResponseData(response, false));
+        assertFalse(cache.getFile(key).exists());
+        assertNull(cache.getFresh(key));
+        assertNull(cache.getConditionalHeaders(key));
+    }
+
+    public void testLastModified() throws Exception {
+        cache.update(key, response(HttpStatus.SC_OK, "body", "Last-Modified", "Sat, 18 Oct 2014 10:00:00 GMT"));
+        assertEquals(new Parameters("If-Modified-Since", "Sat, 18 Oct 2014 10:00:00 GMT"), cache.getConditionalHeaders(key));
+    }
+
+    public static void testKeyDependsOnUser() {
+        final String[] user = new String[] { "alice" };
+        final HttpCache userCache = new HttpCache("test", 1024 * 1024, 0, new Func0<String>() {
+            @Override
+            public String call() {
+                return user[0];
+            }
+        });
+        final String aliceKey = userCache.getKey(URI, null);
+        assertEquals(aliceKey, userCache.getKey(URI, null));
+        user[0] = "bob";
+        assertFalse(aliceKey.equals(userCache.getKey(URI, null)));
+        user[0] = null;
+        assertFalse(aliceKey.equals(userCache.getKey(URI, null)));
+    }
+
+    public void testFresh() throws Exception {
+        final HttpCache freshCache = new HttpCache("test", 1024 * 1024, 60000, null);
+        freshCache.update(key, response(HttpStatus.SC_OK, "fresh body"));
+        assertEquals("fresh body", Network.getResponseData(freshCache.getFresh(key), false));
+    }
+
+}
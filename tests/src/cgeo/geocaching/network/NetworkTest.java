@@ -1,13 +1,88 @@
 package cgeo.geocaching.network;
 
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.TestCase;
 
 public class NetworkTest extends TestCase {
 
+    /**
+     * Local HTTP server answering every request on a connection with a short body, and counting the connections.
+     */
+    private static final class KeepAliveServer extends Thread {
+        final ServerSocket serverSocket;
+        final AtomicInteger connections = new AtomicInteger();
+
+        KeepAliveServer() throws IOException {
+            serverSocket = new ServerSocket(0, 5, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+        String getUri() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    serve(socket);
+                }
+            } catch (final IOException e) {
+                // server closed
+            }
+        }
+
+        private static void serve(final Socket socket) {
+            try {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+                final OutputStream output = socket.getOutputStream();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0) {
+                        output.write("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 2\r\n\r\nok".getBytes("US-ASCII"));
+                        output.flush();
+                    }
+                }
+            } catch (final IOException e) {
+                // connection closed by the client
+            } finally {
+                IOUtils.closeQuietly(socket);
+            }
+        }
+    }
+
     public static void testRfc3986URLEncode() {
         assertEquals("*", Network.rfc3986URLEncode("*"));
         assertEquals("~", Network.rfc3986URLEncode("~"));
         assertEquals("%20", Network.rfc3986URLEncode(" "));
     }
 
+    public static void testConnectionReuse() throws IOException {
+        final KeepAliveServer server = new KeepAliveServer();
+        server.start();
+        try {
+            final ConnectionStatistics statistics = Network.getConnectionStatistics();
+            final int reused = statistics.getReusedConnections("127.0.0.1");
+            assertEquals("ok", Network.getResponseData(Network.getRequest(server.getUri())));
+            assertEquals("ok", Network.getResponseData(Network.getRequest(server.getUri())));
+            // the second request must not open a new connection
+            assertEquals(1, server.connections.get());
+            assertEquals(reused + 1, statistics.getReusedConnections("127.0.0.1"));
+        } finally {
+            server.serverSocket.close();
+        }
+    }
+
 }
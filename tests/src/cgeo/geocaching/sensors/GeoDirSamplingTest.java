@@ -0,0 +1,47 @@
+package cgeo.geocaching.sensors;
+
+import cgeo.geocaching.enumerations.LocationProviderType;
+import cgeo.geocaching.geopoint.Geopoint;
+
+import junit.framework.TestCase;
+
+public class GeoDirSamplingTest extends TestCase {
+
+    private static final Geopoint HERE = new Geopoint(48.0, 11.0);
+    // about 11 meters north
+    private static final Geopoint NORTH = new Geopoint(48.0001, 11.0);
+
+    public static void testAllUpdates() {
+        final GeoDirSampling.Gate gate = GeoDirSampling.ALL.createGate();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(gate.accept(1000, HERE, LocationProviderType.GPS, false, 0));
+        }
+        assertEquals(10, gate.getDelivered());
+        assertEquals(0, gate.getDropped());
+    }
+
+    public static void testMinimumInterval() {
+        final GeoDirSampling.Gate gate = GeoDirSampling.LIST.createGate();
+        assertTrue(gate.accept(1000, HERE, LocationProviderType.GPS, false, 0));
+        assertFalse(gate.accept(1500, NORTH, LocationProviderType.GPS, false, 90));
+        assertTrue(gate.accept(2000, NORTH, LocationProviderType.GPS, false, 90));
+        assertEquals(2, gate.getDelivered());
+        assertEquals(1, gate.getDropped());
+    }
+
+    public static void testMinimumChange() {
+        final GeoDirSampling.Gate gate = GeoDirSampling.MAP.createGate();
+        assertTrue(gate.accept(1000, HERE, LocationProviderType.GPS, false, 0));
+        // no change
+        assertFalse(gate.accept(2000, HERE, LocationProviderType.GPS, false, 1));
+        // turned enough
+        assertTrue(gate.accept(3000, HERE, LocationProviderType.GPS, false, 10));
+        // moved enough
+        assertTrue(gate.accept(4000, NORTH, LocationProviderType.GPS, false, 10));
+        // new provider
+        assertTrue(gate.accept(4010, NORTH, LocationProviderType.NETWORK, false, 10));
+        assertEquals(4, gate.getDelivered());
+        assertEquals(1, gate.getDropped());
+    }
+
+}
@@ -0,0 +1,105 @@
+package cgeo.geocaching.sorting;
+
+import cgeo.geocaching.Geocache;
+import cgeo.geocaching.geopoint.Geopoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class DistanceOrderTest extends TestCase {
+
+    private static List<Geocache> createCaches(final int count) {
+        final List<Geocache> caches = new ArrayList<Geocache>();
+        for (int i = 0; i < count; i++) {
+            final Geocache cache = new Geocache();
+            cache.setGeocode("GC" + i);
+            cache.setCoords(new Geopoint(48.0 + 0.01 * i, 11.0));
+            caches.add(cache);
+        }
+        return caches;
+    }
+
+    private static void assertSorted(final List<Geocache> caches, final Geopoint coords, final boolean descending) {
+        for (int i = 1; i < caches.size(); i++) {
+            final float previous = coords.distanceTo(caches.get(i - 1));
+            final float current = coords.distanceTo(caches.get(i));
+            assertTrue(descending ? previous >= current : previous <= current);
+        }
+    }
+
+    public static void testSortsShuffledCaches() {
+        final List<Geocache> caches = createCaches(500);
+        Collections.shuffle(caches);
+        final Geopoint coords = new Geopoint(48.0, 11.0);
+        final DistanceOrder order = new DistanceOrder();
+        assertTrue(order.sort(caches, coords, false));
+        assertSorted(caches, coords, false);
+        assertFalse(order.sort(caches, coords, false));
+
+        assertTrue(order.sort(caches, coords, true));
+        assertSorted(caches, coords, true);
+    }
+
+    public static void testSortsAgainAfterMoves() {
+        final List<Geocache> caches = createCaches(100);
+        final DistanceOrder order = new DistanceOrder();
+        assertFalse(order.sort(caches, new Geopoint(47.0, 11.0), false));
+
+        // the two nearest caches swap places
+        final Geopoint nearby = new Geopoint(48.006, 11.0);
+        assertTrue(order.sort(caches, nearby, false));
+        assertSorted(caches, nearby, false);
+        assertEquals("GC1", caches.get(0).getGeocode());
+        assertEquals("GC0", caches.get(1).getGeocode());
+        assertEquals("GC2", caches.get(2).getGeocode());
+
+        // the whole order is reversed
+        final Geopoint opposite = new Geopoint(50.0, 11.0);
+        assertTrue(order.sort(caches, opposite, false));
+        assertSorted(caches, opposite, false);
+        assertEquals("GC99", caches.get(0).getGeocode());
+    }
+
+    public static void testFollowsChangedCoordinates() {
+        final List<Geocache> caches = createCaches(10);
+        final DistanceOrder order = new DistanceOrder();
+        final Geopoint coords = new Geopoint(48.0, 11.0);
+        assertFalse(order.sort(caches, coords, false));
+
+        // the farthest cache is moved next to the position
+        caches.get(9).setCoords(new Geopoint(48.001, 11.0));
+        assertTrue(order.sort(caches, coords, false));
+        assertSorted(caches, coords, false);
+        assertEquals("GC9", caches.get(1).getGeocode());
+    }
+
+    public static void testCachesWithoutCoordinates() {
+        final List<Geocache> caches = createCaches(3);
+        final Geocache stored = new Geocache();
+        stored.setDistance(5.0f);
+        final Geocache unknown = new Geocache();
+        caches.add(0, unknown);
+        caches.add(1, stored);
+
+        new DistanceOrder().sort(caches, new Geopoint(48.0, 11.0), false);
+        assertEquals("GC0", caches.get(0).getGeocode());
+        assertSame(stored, caches.get(3));
+        assertSame(unknown, caches.get(4));
+    }
+
+    public static void testFollowsChangesOfTheList() {
+        final List<Geocache> caches = createCaches(10);
+        final DistanceOrder order = new DistanceOrder();
+        final Geopoint coords = new Geopoint(48.0, 11.0);
+        order.sort(caches, coords, false);
+        caches.remove(3);
+        Collections.reverse(caches);
+        assertTrue(order.sort(caches, coords, false));
+        assertEquals(9, caches.size());
+        assertSorted(caches, coords, false);
+    }
+
+}
@@ -0,0 +1,285 @@
+package cgeo.geocaching.ui;
+
+import cgeo.geocaching.Geocache;
+import cgeo.geocaching.geopoint.Geopoint;
+
+import rx.functions.Action1;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class PagedCacheListTest extends TestCase {
+
+    private static final int CACHES = PagedCacheList.PAGE_SIZE * (PagedCacheList.MAX_LOADED_PAGES + 2) + 7;
+
+    /**
+     * List loading its pages at once, or only when asked to if deferred.
+     */
+    private static class CountingCacheList extends PagedCacheList {
+        int loadedCaches = 0;
+        int pagesLoaded = 0;
+        boolean deferred = false;
+        final List<Runnable> pendingLoads = new ArrayList<Runnable>();
+
+        CountingCacheList() {
+            setOnPageLoaded(new Runnable() {
+                @Override
+                public void run() {
+                    pagesLoaded++;
+                }
+            });
+        }
+
+        @Override
+        protected void loadInBackground(final List<String> pageGeocodes, final Action1<Collection<Geocache>> onLoaded, final Action1<Throwable> onError) {
+            final Runnable load = new Runnable() {
+                @Override
+                public void run() {
+                    onLoaded.call(loadCaches(pageGeocodes));
+                }
+            };
+            if (deferred) {
+                pendingLoads.add(load);
+            } else {
+                load.run();
+            }
+        }
+
+        void runPendingLoads() {
+            final List<Runnable> loads = new ArrayList<Runnable>(pendingLoads);
+            pendingLoads.clear();
+            for (final Runnable load : loads) {
+                load.run();
+            }
+        }
+
+        @Override
+        protected Collection<Geocache> loadCaches(final List<String> pageGeocodes) {
+            final List<Geocache> caches = new ArrayList<Geocache>(pageGeocodes.size());
+            for (final String geocode : pageGeocodes) {
+                final Geocache cache = new Geocache();
+                cache.setGeocode(geocode);
+                caches.add(cache);
+            }
+            loadedCaches += caches.size();
+            // the database does not keep the order
+            Collections.reverse(caches);
+            return caches;
+        }
+    }
+
+    private static CountingCacheList createList() {
+        final List<String> geocodes = new ArrayList<String>(CACHES);
+        for (int i = 0; i < CACHES; i++) {
+            geocodes.add("GC" + i);
+        }
+        final CountingCacheList list = new CountingCacheList();
+        list.setGeocodes(geocodes, null);
+        return list;
+    }
+
+    public static void testLoadsPagesInOrder() {
+        final CountingCacheList list = createList();
+        assertTrue(list.isPaged());
+        assertEquals(CACHES, list.size());
+        assertEquals(0, list.loadedCaches);
+
+        assertEquals("GC0", list.get(0).getGeocode());
+        assertEquals("GC1", list.get(1).getGeocode());
+        assertEquals(PagedCacheList.PAGE_SIZE, list.loadedCaches);
+        assertEquals("GC" + (CACHES - 1), list.get(CACHES - 1).getGeocode());
+        assertEquals(PagedCacheList.PAGE_SIZE + 7, list.loadedCaches);
+        assertEquals(PagedCacheList.PAGE_SIZE + 7, list.getLoaded().size());
+    }
+
+    public static void testEvictsPagesWithoutCheckedCaches() {
+        final CountingCacheList list = createList();
+        list.get(0).setStatusChecked(true);
+        // iterating would leave paged mode
+        for (int i = 0; i < list.size(); i++) {
+            assertNotNull(list.get(i));
+        }
+        assertEquals(CACHES, list.loadedCaches);
+        // the checked page and the most recently used pages
+        final List<Geocache> loaded = list.getLoaded();
+        assertTrue(loaded.size() <= PagedCacheList.PAGE_SIZE * (PagedCacheList.MAX_LOADED_PAGES + 1));
+        assertTrue(loaded.get(0).isStatusChecked());
+        assertSame(loaded.get(0), list.get(0));
+    }
+
+    public static void testPlaceholderUntilPageIsLoaded() {
+        final CountingCacheList list = createList();
+        list.deferred = true;
+        final Geocache placeholder = list.get(1);
+        assertEquals("GC1", placeholder.getGeocode());
+        assertEquals(0, list.loadedCaches);
+        // the page is only requested once
+        list.get(2);
+        assertEquals(1, list.pendingLoads.size());
+
+        list.pendingLoads.get(0).run();
+        assertEquals(1, list.pagesLoaded);
+        assertEquals(PagedCacheList.PAGE_SIZE, list.getLoaded().size());
+        assertNotSame(placeholder, list.get(1));
+        assertEquals("GC1", list.get(1).getGeocode());
+    }
+
+    public static void testLoadAfterNewGeocodesIsIgnored() {
+        final CountingCacheList list = createList();
+        list.deferred = true;
+        list.get(0);
+        list.setGeocodes(Collections.singletonList("GC1"), null);
+        list.pendingLoads.get(0).run();
+        assertEquals(0, list.pagesLoaded);
+        assertTrue(list.getLoaded().isEmpty());
+    }
+
+    public static void testOrderCenter() {
+        final CountingCacheList list = createList();
+        assertNull(list.getOrderCenter());
+        list.setGeocodes(Collections.singletonList("GC1"), new Geopoint(48, 11));
+        assertEquals(new Geopoint(48, 11), list.getOrderCenter());
+        list.remove(0);
+        assertNull(list.getOrderCenter());
+    }
+
+    private static void assertNoPlaceholders(final List<Geocache> caches) {
+        for (final Geocache cache : caches) {
+            // placeholders are named by their geocode
+            assertNull(cache.getName());
+        }
+    }
+
+    public static void testLoadAllInBackground() {
+        final CountingCacheList list = createList();
+        list.deferred = true;
+        list.get(0);
+        final int[] runs = new int[1];
+        final Runnable action = new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+            }
+        };
+        list.loadAll(action);
+        list.loadAll(action);
+        assertEquals(0, runs[0]);
+        assertEquals(0, list.loadedCaches);
+
+        list.runPendingLoads();
+        assertEquals(1, runs[0]);
+        assertFalse(list.isPaged());
+        assertEquals(CACHES, list.size());
+        // the page requested before is loaded on its own too
+        assertEquals(CACHES + PagedCacheList.PAGE_SIZE, list.loadedCaches);
+        assertNoPlaceholders(list);
+
+        // nothing left to load
+        list.loadAll(action);
+        assertEquals(2, runs[0]);
+        assertTrue(list.pendingLoads.isEmpty());
+    }
+
+    public static void testLoadAllAfterNewGeocodes() {
+        final CountingCacheList list = createList();
+        list.deferred = true;
+        final int[] runs = new int[1];
+        list.loadAll(new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+            }
+        });
+        list.setGeocodes(Collections.singletonList("GC1"), null);
+        list.runPendingLoads();
+        // the action waits for the caches of the new geocodes
+        assertEquals(0, runs[0]);
+        assertTrue(list.isPaged());
+        list.runPendingLoads();
+        assertEquals(1, runs[0]);
+        assertFalse(list.isPaged());
+        assertEquals("GC1", list.get(0).getGeocode());
+    }
+
+    public static void testSortWithoutPlaceholders() {
+        final CountingCacheList list = createList();
+        list.deferred = true;
+        list.get(0);
+        Collections.sort(list, new Comparator<Geocache>() {
+            @Override
+            public int compare(final Geocache lhs, final Geocache rhs) {
+                return rhs.getGeocode().compareTo(lhs.getGeocode());
+            }
+        });
+        assertFalse(list.isPaged());
+        assertEquals(CACHES, list.size());
+        assertEquals("GC99", list.get(0).getGeocode());
+        assertNoPlaceholders(list);
+        // the page requested before is dropped
+        list.runPendingLoads();
+        assertEquals(0, list.pagesLoaded);
+        assertEquals("GC99", list.get(0).getGeocode());
+    }
+
+    public static void testFilterWithoutPlaceholders() {
+        final CountingCacheList list = createList();
+        list.deferred = true;
+        list.get(0);
+        final List<Geocache> original = new ArrayList<Geocache>(list);
+        assertEquals(CACHES, original.size());
+        assertNoPlaceholders(original);
+        final List<Geocache> toRemove = new ArrayList<Geocache>();
+        for (final Geocache cache : list) {
+            if (!cache.getGeocode().endsWith("0")) {
+                toRemove.add(cache);
+            }
+        }
+        list.removeAll(toRemove);
+        assertEquals(CACHES / 10 + 1, list.size());
+        assertNoPlaceholders(list);
+        assertSame(original.get(0), list.get(0));
+    }
+
+    public static void testIterationThenModification() {
+        final CountingCacheList list = createList();
+        list.deferred = true;
+        for (final Geocache cache : list) {
+            cache.setStatusChecked(!cache.isStatusChecked());
+        }
+        assertFalse(list.isPaged());
+        assertEquals(CACHES, list.loadedCaches);
+        list.remove(0);
+        assertEquals(CACHES - 1, list.size());
+        assertTrue(list.get(0).isStatusChecked());
+        assertEquals(CACHES - 1, list.getGeocodes().size());
+    }
+
+    public static void testIndexOfWithoutLoading() {
+        final CountingCacheList list = createList();
+        final Geocache cache = new Geocache();
+        cache.setGeocode("GC42");
+        assertEquals(42, list.indexOf(cache));
+        assertTrue(list.contains(cache));
+        assertEquals(0, list.loadedCaches);
+    }
+
+    public static void testModificationLoadsAllCaches() {
+        final CountingCacheList list = createList();
+        list.get(0);
+        list.remove(1);
+        assertFalse(list.isPaged());
+        assertEquals(CACHES - 1, list.size());
+        assertEquals(CACHES, list.loadedCaches);
+        assertEquals("GC2", list.get(1).getGeocode());
+
+        list.clear();
+        assertEquals(0, list.size());
+        assertFalse(list.isPaged());
+    }
+
+}